@@ -0,0 +1,284 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An implementation of {@link DataInput} that reads directly from a {@link ByteBuffer} using an absolute cursor.
+ * The buffer's own position and limit are not modified. This allows field types that are aware of the buffer to
+ * decode their values with bulk operations instead of byte-at-a-time reads.
+ */
+public class ByteBufferDataInput implements DataInput {
+  
+  private final ByteBuffer _buffer;
+  private int _position;
+  private int _limit;
+  
+  /**
+   * Creates a new {@link ByteBufferDataInput} reading from the current position to the limit of the buffer.
+   * 
+   * @param buffer the buffer to read from
+   */
+  public ByteBufferDataInput (final ByteBuffer buffer) {
+    if (buffer == null) {
+      throw new NullPointerException ("Must provide a ByteBuffer");
+    }
+    _buffer = buffer.duplicate ().order (ByteOrder.BIG_ENDIAN);
+    _position = buffer.position ();
+    _limit = buffer.limit ();
+  }
+  
+  /**
+   * Returns the underlying buffer. The buffer returned is big-endian and must not be modified; reads should use absolute
+   * operations starting at {@link #getPosition()}.
+   * 
+   * @return the buffer
+   */
+  public ByteBuffer getBuffer () {
+    return _buffer;
+  }
+  
+  /**
+   * Returns the absolute index within the buffer of the next byte to be read.
+   * 
+   * @return the position
+   */
+  public int getPosition () {
+    return _position;
+  }
+  
+  /**
+   * Moves the cursor to an absolute index within the buffer.
+   * 
+   * @param position the new position
+   */
+  public void setPosition (final int position) {
+    if ((position < 0) || (position > _limit)) {
+      throw new IndexOutOfBoundsException ("position " + position + " outside of buffer limit " + _limit);
+    }
+    _position = position;
+  }
+  
+  /**
+   * Returns the absolute index within the buffer at which reading stops.
+   * 
+   * @return the limit
+   */
+  public int getLimit () {
+    return _limit;
+  }
+  
+  /**
+   * Sets the absolute index within the buffer at which reading stops.
+   * 
+   * @param limit the new limit
+   */
+  public void setLimit (final int limit) {
+    if ((limit < _position) || (limit > _buffer.capacity ())) {
+      throw new IndexOutOfBoundsException ("limit " + limit + " outside of buffer");
+    }
+    _limit = limit;
+  }
+  
+  /**
+   * Returns the number of bytes left before the limit.
+   * 
+   * @return the number of bytes remaining
+   */
+  public int remaining () {
+    return _limit - _position;
+  }
+  
+  /**
+   * Advances the cursor, checking that the requested number of bytes are available.
+   * 
+   * @param bytes number of bytes to consume
+   * @return the position of the first byte consumed
+   * @throws EOFException if fewer than {@code bytes} bytes remain
+   * @throws IOException if {@code bytes} is negative
+   */
+  public int consume (final int bytes) throws IOException {
+    final int position = _position;
+    if (bytes < 0) {
+      throw new IOException ("Attempt to read a negative number of bytes, " + bytes);
+    }
+    if (bytes > _limit - position) {
+      throw new EOFException ("Attempt to read " + bytes + " bytes with only " + (_limit - position) + " remaining");
+    }
+    _position = position + bytes;
+    return position;
+  }
+
+  /**
+   * Consumes part of the buffer, returning a big-endian view of the consumed region. Field types may use the typed
+   * views of the returned buffer to decode arrays with bulk operations.
+   * 
+   * @param bytes number of bytes to consume
+   * @return a buffer positioned at the start of the consumed region, limited to its end
+   * @throws EOFException if fewer than {@code bytes} bytes remain
+   * @throws IOException if {@code bytes} is negative
+   */
+  public ByteBuffer slice (final int bytes) throws IOException {
+    final int position = consume (bytes);
+    final ByteBuffer view = _buffer.duplicate ();
+    view.limit (position + bytes);
+    view.position (position);
+    return view;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean readBoolean () throws IOException {
+    return _buffer.get (consume (1)) != 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public byte readByte () throws IOException {
+    return _buffer.get (consume (1));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public char readChar () throws IOException {
+    return _buffer.getChar (consume (2));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double readDouble () throws IOException {
+    return _buffer.getDouble (consume (8));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public float readFloat () throws IOException {
+    return _buffer.getFloat (consume (4));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void readFully (final byte[] b) throws IOException {
+    readFully (b, 0, b.length);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void readFully (final byte[] b, final int off, final int len) throws IOException {
+    final int position = consume (len);
+    if (_buffer.hasArray ()) {
+      System.arraycopy (_buffer.array (), _buffer.arrayOffset () + position, b, off, len);
+    } else {
+      final ByteBuffer slice = _buffer.duplicate ();
+      slice.position (position);
+      slice.get (b, off, len);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int readInt () throws IOException {
+    return _buffer.getInt (consume (4));
+  }
+
+  /**
+   * Not supported; Fudge data does not contain line terminated text.
+   * 
+   * @return never returns
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public String readLine () throws IOException {
+    throw new UnsupportedOperationException ("readLine not supported");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long readLong () throws IOException {
+    return _buffer.getLong (consume (8));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public short readShort () throws IOException {
+    return _buffer.getShort (consume (2));
+  }
+
+  /**
+   * Reads a modified UTF-8 string as defined by {@link DataInput}. Note that Fudge strings use standard UTF-8 and
+   * should be read using {@link UTF8#decode(ByteBuffer,int,int)}.
+   * 
+   * @return the string
+   * @throws IOException if the data is malformed or truncated
+   */
+  @Override
+  public String readUTF () throws IOException {
+    return DataInputStream.readUTF (this);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int readUnsignedByte () throws IOException {
+    return _buffer.get (consume (1)) & 0xFF;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int readUnsignedShort () throws IOException {
+    return _buffer.getShort (consume (2)) & 0xFFFF;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int skipBytes (final int n) {
+    final int skip = Math.max (0, Math.min (n, _limit - _position));
+    _position += skip;
+    return skip;
+  }
+  
+}
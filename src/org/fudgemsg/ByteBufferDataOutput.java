@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An implementation of {@link DataOutput} that writes directly into a {@link ByteBuffer}. Data is written from the
+ * buffer's position at construction using a big-endian view of the buffer; the position of the original buffer is
+ * not modified. Field types that are aware of the buffer may encode their values with bulk operations instead of
+ * byte-at-a-time writes.
+ * <p>
+ * Writing past the limit of the buffer will raise a {@link java.nio.BufferOverflowException}.
+ */
+public class ByteBufferDataOutput implements DataOutput {
+  
+  private final ByteBuffer _buffer;
+  
+  /**
+   * Creates a new {@link ByteBufferDataOutput} writing from the current position of the buffer.
+   * 
+   * @param buffer the buffer to write to
+   */
+  public ByteBufferDataOutput (final ByteBuffer buffer) {
+    if (buffer == null) {
+      throw new NullPointerException ("Must provide a ByteBuffer");
+    }
+    _buffer = buffer.duplicate ().order (ByteOrder.BIG_ENDIAN);
+  }
+  
+  /**
+   * Returns the big-endian buffer being written to. Its position is that of the next byte to be written.
+   * 
+   * @return the buffer
+   */
+  public ByteBuffer getBuffer () {
+    return _buffer;
+  }
+  
+  /**
+   * Returns the absolute index within the buffer of the next byte to be written.
+   * 
+   * @return the position
+   */
+  public int getPosition () {
+    return _buffer.position ();
+  }
+  
+  /**
+   * Moves the write cursor to an absolute index within the buffer.
+   * 
+   * @param position the new position
+   */
+  public void setPosition (final int position) {
+    _buffer.position (position);
+  }
+  
+  /**
+   * Returns the number of bytes that can be written before the limit of the buffer.
+   * 
+   * @return the number of bytes remaining
+   */
+  public int remaining () {
+    return _buffer.remaining ();
+  }
+  
+  /**
+   * Reserves part of the buffer, returning a big-endian view of the reserved region and advancing the write cursor past
+   * it. Field types may use the typed views of the returned buffer to encode arrays with bulk operations.
+   * 
+   * @param bytes number of bytes to reserve
+   * @return a buffer positioned at the start of the reserved region, limited to its end
+   * @throws java.nio.BufferOverflowException if fewer than {@code bytes} bytes remain
+   */
+  public ByteBuffer slice (final int bytes) {
+    final int position = _buffer.position ();
+    if (bytes > _buffer.remaining ()) {
+      throw new BufferOverflowException ();
+    }
+    final ByteBuffer view = _buffer.duplicate ();
+    view.limit (position + bytes);
+    _buffer.position (position + bytes);
+    return view.order (ByteOrder.BIG_ENDIAN);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write (final int b) {
+    _buffer.put ((byte)b);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write (final byte[] b) {
+    _buffer.put (b);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write (final byte[] b, final int off, final int len) {
+    _buffer.put (b, off, len);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeBoolean (final boolean v) {
+    _buffer.put (v ? (byte)1 : (byte)0);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeByte (final int v) {
+    _buffer.put ((byte)v);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeBytes (final String s) {
+    final int len = s.length ();
+    for (int i = 0; i < len; i++) {
+      _buffer.put ((byte)s.charAt (i));
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeChar (final int v) {
+    _buffer.putChar ((char)v);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeChars (final String s) {
+    final int len = s.length ();
+    for (int i = 0; i < len; i++) {
+      _buffer.putChar (s.charAt (i));
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeDouble (final double v) {
+    _buffer.putDouble (v);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeFloat (final float v) {
+    _buffer.putFloat (v);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeInt (final int v) {
+    _buffer.putInt (v);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeLong (final long v) {
+    _buffer.putLong (v);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeShort (final int v) {
+    _buffer.putShort ((short)v);
+  }
+
+  /**
+   * Writes a modified UTF-8 string as defined by {@link DataOutput}. Note that Fudge strings use standard UTF-8 and
+   * should be written using {@link UTF8#encode(String,ByteBuffer)}.
+   * 
+   * @param s the string to write
+   * @throws IOException if the string is too long to encode
+   */
+  @Override
+  public void writeUTF (final String s) throws IOException {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream (s.length () + 2);
+    new DataOutputStream (baos).writeUTF (s);
+    write (baos.toByteArray ());
+  }
+  
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+import org.fudgemsg.compression.FudgeCompressionCodec;
+
+/**
+ * Encoding and decoding of the bodies of envelopes with the {@link FudgeMsgEnvelope#COMPRESSED_DIRECTIVE} flag set.
+ * The 8 byte envelope header, whose size includes the compressed body, is followed by a one byte codec identifier,
+ * the four byte size of the uncompressed body and the compressed data.
+ */
+/* package */ final class EnvelopeCompression {
+  
+  /**
+   * The number of bytes between the envelope header and the compressed data.
+   */
+  /* package */ static final int COMPRESSION_HEADER_SIZE = 5;
+  
+  private EnvelopeCompression () {
+  }
+  
+  /**
+   * Reads and decompresses the body of a compressed envelope, positioned after the envelope header.
+   * 
+   * @param fudgeContext the context holding the registered codecs
+   * @param input the input to read from
+   * @param envelopeSize the size of the compressed envelope from its header
+   * @param maxSize the largest uncompressed body to accept
+   * @return the uncompressed body, the fields of the message
+   * @throws IOException if the body is malformed or too large, the codec is not registered or the input raises one
+   */
+  /* package */ static byte[] decompress (final FudgeContext fudgeContext, final DataInput input, final int envelopeSize, final int maxSize) throws IOException {
+    final int codecId = input.readUnsignedByte ();
+    final int size = input.readInt ();
+    final int compressedSize = envelopeSize - 8 - COMPRESSION_HEADER_SIZE;
+    if ((size < 0) || (compressedSize < 0)) {
+      throw new IOException ("Invalid compressed envelope of " + envelopeSize + " bytes, expanding to " + size + " bytes");
+    }
+    if (size > maxSize) {
+      throw new IOException ("Compressed envelope expanding to " + size + " bytes exceeds the maximum of " + maxSize);
+    }
+    final FudgeCompressionCodec codec = fudgeContext.getCompressionCodec (codecId);
+    if (codec == null) {
+      throw new IOException ("No compression codec registered for identifier " + codecId);
+    }
+    final byte[] compressed = new byte[compressedSize];
+    input.readFully (compressed);
+    final byte[] body = new byte[size];
+    codec.decompress (compressed, 0, compressedSize, body, 0, size);
+    return body;
+  }
+  
+}
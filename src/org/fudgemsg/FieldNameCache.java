@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+/**
+ * Cache of the UTF-8 encodings of field names, shared by the writers and {@link FudgeSize}.
+ * <p>
+ * The same few names are typically written in every message, so each is encoded once rather than on every field.
+ * The cache is a fixed size table indexed by the hash code of the name, which the string holds once computed. A
+ * name is matched by identity before equality, so an interned or constant name is found without comparing
+ * characters. A name that collides with another replaces it, bounding the memory used however many distinct names
+ * are written.
+ * <p>
+ * This class is thread-safe without locking. Entries are immutable, so a thread that reads a stale or replaced
+ * entry simply encodes the name again.
+ */
+/* package */ final class FieldNameCache {
+
+  /**
+   * The number of entries in the table, a power of two.
+   */
+  /* package */ static final int TABLE_SIZE = 1024;
+  /**
+   * The longest encoding that is cached, which is the longest field name allowed.
+   */
+  private static final int MAX_ENCODED_LENGTH = 0xFF;
+
+  /**
+   * An immutable table entry.
+   */
+  private static final class Entry {
+    private final String _name;
+    private final byte[] _encoded;
+
+    private Entry(final String name, final byte[] encoded) {
+      _name = name;
+      _encoded = encoded;
+    }
+  }
+
+  /**
+   * The table of entries, indexed by the hash code of the name.
+   */
+  private static final Entry[] s_entries = new Entry[TABLE_SIZE];
+
+  /**
+   * Restricted constructor.
+   */
+  private FieldNameCache() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Returns the UTF-8 encoding of a field name. The array returned may be shared and must not be modified.
+   * 
+   * @param name  the field name, not null
+   * @return the encoding, not null
+   */
+  /* package */ static byte[] encode(final String name) {
+    final int index = name.hashCode() & (TABLE_SIZE - 1);
+    final Entry entry = s_entries[index];
+    if ((entry != null) && ((entry._name == name) || entry._name.equals(name))) {
+      return entry._encoded;
+    }
+    final byte[] encoded = UTF8.encode(name);
+    if (encoded.length <= MAX_ENCODED_LENGTH) {
+      s_entries[index] = new Entry(name, encoded);
+    }
+    return encoded;
+  }
+
+  /**
+   * Returns the length in bytes of the UTF-8 encoding of a field name.
+   * 
+   * @param name  the field name, not null
+   * @return the number of bytes
+   */
+  /* package */ static int getLengthBytes(final String name) {
+    return encode(name).length;
+  }
+
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access to a file of Fudge message envelopes written by a {@link FudgeArchiveWriter}. The whole file is
+ * mapped into memory when the archive is opened, so locating message N is a lookup in the offset index and decoding
+ * it reads from the mapped region without any further system calls.
+ * <p>
+ * An archive file consists of a data region of concatenated envelopes, exactly as written to a stream by a
+ * {@link FudgeMsgWriter}, followed by the index and a trailer:
+ * <pre>
+ *   envelope 0 ... envelope N-1
+ *   int offset[0] ... int offset[N-1]
+ *   int dataSize, int N, int magic
+ * </pre>
+ * All integers are big-endian. The data region is therefore a valid Fudge stream that can be read with any of the
+ * other readers, for example through {@link #getDataRegion()}. Because a single mapping is used, an archive is limited
+ * to 2GB.
+ * <p>
+ * An open archive may be used from several threads. The mapping is released by the garbage collector once the archive
+ * and any messages decoded from it are no longer referenced.
+ */
+public class FudgeArchive implements Closeable {
+  
+  /**
+   * The magic number at the end of an archive file, "FDAR".
+   */
+  /* package */ static final int MAGIC = 0x46444152;
+  
+  /**
+   * The size of the trailer at the end of an archive file.
+   */
+  /* package */ static final int TRAILER_SIZE = 12;
+  
+  private final FudgeContext _fudgeContext;
+  private final File _file;
+  private volatile ByteBuffer _data;
+  private final IntBuffer _index;
+  
+  private FudgeArchive (final FudgeContext fudgeContext, final File file, final ByteBuffer data, final IntBuffer index) {
+    _fudgeContext = fudgeContext;
+    _file = file;
+    _data = data;
+    _index = index;
+  }
+  
+  /**
+   * Opens an archive file, mapping it into memory.
+   * 
+   * @param fudgeContext the {@link FudgeContext} to use for type and taxonomy resolution
+   * @param file the archive file
+   * @return the archive
+   * @throws FudgeRuntimeIOException if the file cannot be read or is not a valid archive. A file left without a
+   *  trailer by a writer that was not closed can be repaired by opening it with a {@link FudgeArchiveWriter} in
+   *  append mode.
+   */
+  public static FudgeArchive open (final FudgeContext fudgeContext, final File file) {
+    if (fudgeContext == null) {
+      throw new NullPointerException ("Must provide a Fudge Context");
+    }
+    if (file == null) {
+      throw new NullPointerException ("Must provide a File");
+    }
+    final MappedByteBuffer mapped;
+    try {
+      final RandomAccessFile raf = new RandomAccessFile (file, "r");
+      try {
+        final long length = raf.length ();
+        if (length > Integer.MAX_VALUE) {
+          throw new IOException ("Archive " + file + " of " + length + " bytes is too large to map");
+        }
+        mapped = raf.getChannel ().map (FileChannel.MapMode.READ_ONLY, 0, length);
+      } finally {
+        raf.close ();
+      }
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException (e);
+    }
+    final int[] trailer = readTrailer (mapped, file);
+    final ByteBuffer data = mapped.duplicate ();
+    data.limit (trailer[0]);
+    final ByteBuffer index = mapped.duplicate ();
+    index.limit (trailer[0] + trailer[1] * 4).position (trailer[0]);
+    return new FudgeArchive (fudgeContext, file, data, index.slice ().asIntBuffer ());
+  }
+  
+  /**
+   * Reads and validates the trailer at the end of an archive.
+   * 
+   * @param buffer the whole archive file
+   * @param file the archive file, for error messages
+   * @return the size of the data region and the number of envelopes
+   * @throws FudgeRuntimeIOException if the trailer is not valid
+   */
+  private static int[] readTrailer (final ByteBuffer buffer, final File file) {
+    final int length = buffer.limit ();
+    if (length < TRAILER_SIZE) {
+      throw new FudgeRuntimeIOException (new IOException ("File " + file + " is not a Fudge archive"));
+    }
+    return checkTrailer (buffer.getInt (length - TRAILER_SIZE), buffer.getInt (length - 8), buffer.getInt (length - 4), length, file);
+  }
+  
+  /**
+   * Validates the values from the trailer at the end of an archive.
+   * 
+   * @param dataSize the size of the data region
+   * @param count the number of envelopes
+   * @param magic the magic number
+   * @param length the length of the archive file
+   * @param file the archive file, for error messages
+   * @return the size of the data region and the number of envelopes
+   * @throws FudgeRuntimeIOException if the trailer is not valid
+   */
+  /* package */ static int[] checkTrailer (final int dataSize, final int count, final int magic, final long length, final File file) {
+    if (magic != MAGIC) {
+      throw new FudgeRuntimeIOException (new IOException ("File " + file + " is not a Fudge archive"));
+    }
+    if (!isValidTrailer (dataSize, count, magic, length)) {
+      throw new FudgeRuntimeIOException (new IOException ("Archive " + file + " has an invalid trailer"));
+    }
+    return new int[] { dataSize, count };
+  }
+  
+  /**
+   * Tests whether the values from the end of a file form a valid archive trailer.
+   * 
+   * @param dataSize the size of the data region
+   * @param count the number of envelopes
+   * @param magic the magic number
+   * @param length the length of the file
+   * @return {@code true} if the trailer is valid
+   */
+  /* package */ static boolean isValidTrailer (final int dataSize, final int count, final int magic, final long length) {
+    return (magic == MAGIC) && (dataSize >= 0) && (count >= 0) && ((long)dataSize + (long)count * 4 + TRAILER_SIZE == length);
+  }
+  
+  /**
+   * Returns the {@link FudgeContext} used for type and taxonomy resolution.
+   * 
+   * @return the {@code FudgeContext}
+   */
+  public FudgeContext getFudgeContext () {
+    return _fudgeContext;
+  }
+  
+  /**
+   * Returns the archive file.
+   * 
+   * @return the file
+   */
+  public File getFile () {
+    return _file;
+  }
+  
+  /**
+   * Returns the number of envelopes in the archive.
+   * 
+   * @return the number of envelopes
+   */
+  public int size () {
+    return _index.limit ();
+  }
+  
+  private ByteBuffer getData () {
+    final ByteBuffer data = _data;
+    if (data == null) {
+      throw new IllegalStateException ("Archive " + _file + " has been closed");
+    }
+    return data;
+  }
+  
+  /**
+   * Returns the offset of an envelope within the data region.
+   * 
+   * @param index the index of the envelope
+   * @return the offset in bytes
+   * @throws IndexOutOfBoundsException if the index is not less than {@link #size()}
+   */
+  public int getOffset (final int index) {
+    if ((index < 0) || (index >= size ())) {
+      throw new IndexOutOfBoundsException ("Envelope " + index + " not in archive of " + size ());
+    }
+    return _index.get (index);
+  }
+  
+  /**
+   * Returns the encoded form of an envelope, including its header, as a read-only view of the mapped region.
+   * 
+   * @param index the index of the envelope
+   * @return a buffer positioned over the encoded envelope
+   * @throws IndexOutOfBoundsException if the index is not less than {@link #size()}
+   */
+  public ByteBuffer getEncodedEnvelope (final int index) {
+    final int offset = getOffset (index);
+    final ByteBuffer buffer = getData ().asReadOnlyBuffer ();
+    buffer.limit (offset + buffer.getInt (offset + 4)).position (offset);
+    return buffer;
+  }
+  
+  /**
+   * Returns an envelope, decoding the header only. The message fields are decoded on demand from the mapped region, as
+   * described by {@link LazyFudgeMsg}.
+   * 
+   * @param index the index of the envelope
+   * @return the envelope
+   * @throws IndexOutOfBoundsException if the index is not less than {@link #size()}
+   */
+  public FudgeMsgEnvelope getEnvelope (final int index) {
+    return LazyFudgeMsg.decodeEnvelope (getFudgeContext (), getEncodedEnvelope (index));
+  }
+  
+  /**
+   * Returns the message from an envelope, decoding the fields on demand. See {@link #getEnvelope(int)}.
+   * 
+   * @param index the index of the envelope
+   * @return the message
+   * @throws IndexOutOfBoundsException if the index is not less than {@link #size()}
+   */
+  public FudgeFieldContainer getMessage (final int index) {
+    return getEnvelope (index).getMessage ();
+  }
+  
+  /**
+   * Returns the data region of the archive, holding the concatenated envelopes, as a read-only view of the mapped
+   * region. This can be passed to any of the buffer based readers, such as {@link FudgeParallelMsgReader}.
+   * 
+   * @return a buffer positioned over the data region
+   */
+  public ByteBuffer getDataRegion () {
+    return getData ().asReadOnlyBuffer ();
+  }
+  
+  /**
+   * Closes the archive. The mapping remains valid until it is released by the garbage collector, so messages already
+   * decoded may still be used, but no further messages may be read from the archive.
+   */
+  @Override
+  public void close () {
+    _data = null;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString () {
+    return "FudgeArchive{" + _file + ", " + size () + " envelopes}";
+  }
+  
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes message envelopes to an archive file that can be opened for random access with {@link FudgeArchive}. The
+ * envelopes are appended to the data region as they are written, and the offset index and trailer are added when the
+ * writer is closed. The file is not a valid archive until then.
+ * <p>
+ * An existing archive may be reopened to append further envelopes, in which case its index is read back and the
+ * index and trailer are replaced when the writer is closed. If the file has no valid trailer, because a writer did not
+ * close it, the index is rebuilt from the envelopes in its data region instead; a partially written envelope or index
+ * at the end of the file is discarded. Opening a file for appending and closing the writer therefore repairs it.
+ */
+public class FudgeArchiveWriter implements Flushable, Closeable {
+  
+  private final File _file;
+  private final DataOutputStream _output;
+  private final FudgeDataOutputStreamWriter _streamWriter;
+  private final FudgeMsgWriter _writer;
+  private final int _baseOffset;
+  private int[] _offsets;
+  private int _count;
+  private boolean _closed;
+  
+  /**
+   * Creates a new archive file, replacing any existing file.
+   * 
+   * @param fudgeContext the {@link FudgeContext} to use for type and taxonomy resolution
+   * @param file the archive file
+   * @throws FudgeRuntimeIOException if the file cannot be created
+   */
+  public FudgeArchiveWriter (final FudgeContext fudgeContext, final File file) {
+    this (fudgeContext, file, false);
+  }
+  
+  /**
+   * Creates a new archive file or opens an existing one to append to.
+   * 
+   * @param fudgeContext the {@link FudgeContext} to use for type and taxonomy resolution
+   * @param file the archive file
+   * @param append {@code true} to append to an existing archive, {@code false} to replace any existing file
+   * @throws FudgeRuntimeIOException if the file cannot be opened or is not a valid archive
+   */
+  public FudgeArchiveWriter (final FudgeContext fudgeContext, final File file, final boolean append) {
+    if (fudgeContext == null) {
+      throw new NullPointerException ("Must provide a Fudge Context");
+    }
+    if (file == null) {
+      throw new NullPointerException ("Must provide a File");
+    }
+    _file = file;
+    try {
+      if (append && file.exists ()) {
+        _baseOffset = readIndex ();
+      } else {
+        _baseOffset = 0;
+        _offsets = new int[1024];
+      }
+      _output = new DataOutputStream (new BufferedOutputStream (new FileOutputStream (file, append)));
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException (e);
+    }
+    _streamWriter = new FudgeDataOutputStreamWriter (fudgeContext, (DataOutput)_output);
+    _streamWriter.setFlushOnEnvelopeComplete (false);
+    _writer = new FudgeMsgWriter (_streamWriter);
+  }
+  
+  /**
+   * Reads the index of an existing archive, or rebuilds it if the file has no valid trailer, and truncates the file to
+   * its data region.
+   * 
+   * @return the size of the data region
+   * @throws IOException if the file cannot be read or is not an archive
+   */
+  private int readIndex () throws IOException {
+    final RandomAccessFile raf = new RandomAccessFile (_file, "rw");
+    try {
+      final long length = raf.length ();
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException ("File " + _file + " of " + length + " bytes is too large to be an archive");
+      }
+      int dataSize = -1;
+      if (length >= FudgeArchive.TRAILER_SIZE) {
+        raf.seek (length - FudgeArchive.TRAILER_SIZE);
+        final int size = raf.readInt ();
+        final int count = raf.readInt ();
+        if (FudgeArchive.isValidTrailer (size, count, raf.readInt (), length)) {
+          dataSize = size;
+          _count = count;
+          _offsets = new int[Math.max (count * 2, 1024)];
+          raf.seek (dataSize);
+          for (int i = 0; i < _count; i++) {
+            _offsets[i] = raf.readInt ();
+          }
+        }
+      }
+      if (dataSize < 0) {
+        dataSize = scanEnvelopes (raf, (int)length);
+      }
+      raf.setLength (dataSize);
+      return dataSize;
+    } finally {
+      raf.close ();
+    }
+  }
+  
+  /**
+   * Rebuilds the index of a file without a valid trailer by reading the header of each envelope in turn. The data
+   * region ends at the first position that does not hold a complete envelope, or at the start of a partially written
+   * index.
+   * 
+   * @param raf the file
+   * @param length the length of the file
+   * @return the size of the data region
+   * @throws IOException if the file cannot be read or does not start with an envelope
+   */
+  private int scanEnvelopes (final RandomAccessFile raf, final int length) throws IOException {
+    _offsets = new int[1024];
+    _count = 0;
+    int position = 0;
+    while ((position < length) && !isPartialIndex (raf, position, length)) {
+      if (length - position < 8) {
+        break;
+      }
+      raf.seek (position + 4);
+      final int size = raf.readInt ();
+      if ((size < 8) || (size > length - position)) {
+        break;
+      }
+      if (_count == _offsets.length) {
+        final int[] offsets = new int[_count * 2];
+        System.arraycopy (_offsets, 0, offsets, 0, _count);
+        _offsets = offsets;
+      }
+      _offsets[_count++] = position;
+      position += size;
+    }
+    if ((position == 0) && (length > 0) && !isPartialIndex (raf, 0, length)) {
+      throw new IOException ("File " + _file + " is not a Fudge archive");
+    }
+    return position;
+  }
+  
+  /**
+   * Tests whether the end of the file, from a given position, is the start of the index and trailer for the
+   * envelopes found before it.
+   * 
+   * @param raf the file
+   * @param position the possible end of the data region
+   * @param length the length of the file
+   * @return {@code true} if the remainder of the file matches the index that would follow the data region
+   * @throws IOException if the file cannot be read
+   */
+  private boolean isPartialIndex (final RandomAccessFile raf, final int position, final int length) throws IOException {
+    final int remaining = length - position;
+    if ((long)remaining > (long)_count * 4 + FudgeArchive.TRAILER_SIZE) {
+      return false;
+    }
+    final ByteBuffer expected = ByteBuffer.allocate (_count * 4 + FudgeArchive.TRAILER_SIZE);
+    expected.asIntBuffer ().put (_offsets, 0, _count).put (position).put (_count).put (FudgeArchive.MAGIC);
+    final byte[] actual = new byte[remaining];
+    raf.seek (position);
+    raf.readFully (actual);
+    for (int i = 0; i < remaining; i++) {
+      if (actual[i] != expected.get (i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Returns the archive file.
+   * 
+   * @return the file
+   */
+  public File getFile () {
+    return _file;
+  }
+  
+  /**
+   * Returns the number of envelopes in the archive, including any present before it was opened for appending.
+   * 
+   * @return the number of envelopes
+   */
+  public int size () {
+    return _count;
+  }
+  
+  /**
+   * Returns the size of the data region written so far.
+   * 
+   * @return the size in bytes
+   */
+  public int getDataSize () {
+    return _baseOffset + _output.size ();
+  }
+  
+  /**
+   * Writes a message with the given taxonomy. Default schema version and processing directive flags are used.
+   * 
+   * @param message message to write
+   * @param taxonomyId identifier of the taxonomy to use. If the taxonomy is recognized by the {@link FudgeContext} it will be used to reduce field names to ordinals where possible.
+   * @return the index of the envelope within the archive
+   */
+  public int writeMessage (final FudgeFieldContainer message, final int taxonomyId) {
+    return writeMessageEnvelope (new FudgeMsgEnvelope (message), taxonomyId);
+  }
+  
+  /**
+   * Writes a message. Default taxonomy, schema version and processing directive flags are used.
+   * 
+   * @param message message to write
+   * @return the index of the envelope within the archive
+   */
+  public int writeMessage (final FudgeFieldContainer message) {
+    return writeMessage (message, 0);
+  }
+  
+  /**
+   * Writes a message envelope with the given taxonomy.
+   * 
+   * @param envelope message envelope to write
+   * @param taxonomyId identifier of the taxonomy to use. If the taxonomy is recognized by the {@link FudgeContext} it will be used to reduce field names to ordinals where possible.
+   * @return the index of the envelope within the archive
+   * @throws FudgeRuntimeIOException if the archive would exceed 2GB, in which case nothing is written
+   */
+  public int writeMessageEnvelope (final FudgeMsgEnvelope envelope, final int taxonomyId) {
+    if (_closed) {
+      throw new IllegalStateException ("Archive " + _file + " has been closed");
+    }
+    if (envelope == null) {
+      throw new NullPointerException ("Cannot write a null envelope to an archive");
+    }
+    final int offset = getDataSize ();
+    if (taxonomyId != _streamWriter.getCurrentTaxonomyId ()) {
+      _streamWriter.setCurrentTaxonomyId (taxonomyId);
+    }
+    // the size is checked before writing so that an envelope that does not fit leaves the archive intact
+    final int size = FudgeSize.calculateMessageEnvelopeSize (_streamWriter.getCurrentTaxonomy (), envelope);
+    if ((long)offset + size + (long)(_count + 1) * 4 + FudgeArchive.TRAILER_SIZE >= Integer.MAX_VALUE) {
+      throw new FudgeRuntimeIOException (new IOException ("Archive " + _file + " would exceed the maximum size"));
+    }
+    _streamWriter.writeEnvelopeHeader (envelope.getProcessingDirectives (), envelope.getVersion (), size);
+    _streamWriter.writeFields (envelope.getMessage ());
+    _streamWriter.envelopeComplete ();
+    if (_count == _offsets.length) {
+      final int[] offsets = new int[_count * 2];
+      System.arraycopy (_offsets, 0, offsets, 0, _count);
+      _offsets = offsets;
+    }
+    _offsets[_count] = offset;
+    return _count++;
+  }
+  
+  /**
+   * Writes a message envelope. The default taxonomy is used.
+   * 
+   * @param envelope message envelope to write
+   * @return the index of the envelope within the archive
+   */
+  public int writeMessageEnvelope (final FudgeMsgEnvelope envelope) {
+    return writeMessageEnvelope (envelope, 0);
+  }
+  
+  /**
+   * Flushes the envelopes written so far to the file. The file does not become a valid archive until the writer is
+   * closed.
+   */
+  @Override
+  public void flush () {
+    _writer.flush ();
+  }
+  
+  /**
+   * Writes the offset index and trailer and closes the file.
+   */
+  @Override
+  public void close () {
+    if (_closed) {
+      return;
+    }
+    _closed = true;
+    try {
+      _writer.flush ();
+      final int dataSize = getDataSize ();
+      for (int i = 0; i < _count; i++) {
+        _output.writeInt (_offsets[i]);
+      }
+      _output.writeInt (dataSize);
+      _output.writeInt (_count);
+      _output.writeInt (FudgeArchive.MAGIC);
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException (e);
+    } finally {
+      _writer.close ();
+    }
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString () {
+    return "FudgeArchiveWriter{" + _file + "}";
+  }
+  
+}
@@ -0,0 +1,360 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the payload of a field holding an array of a primitive type incrementally, so that a large array can be
+ * processed in chunks without being decoded in full. The payload is presented as an {@link InputStream} of its
+ * big-endian encoding, and elements may be decoded in bulk with the typed read methods. Only the typed method
+ * matching the array type of the field may be used, and not after the stream has been left part way through an
+ * element by the byte-oriented methods.
+ * <p>
+ * A stream is obtained from {@link PrimitiveFudgeStreamReader#getFieldValueStream()} and reads directly from the underlying
+ * source. It remains valid until the reader is moved to the next element, at which point any unread part of the
+ * payload is skipped.
+ */
+public class FudgeArrayInputStream extends InputStream {
+  
+  /**
+   * Size of the buffer used to decode elements read from a source other than a {@link ByteBufferDataInput}.
+   */
+  private static final int CHUNK_SIZE = 8192;
+  
+  private final FudgeFieldType<?> _type;
+  private final int _elementSize;
+  private final int _size;
+  private DataInput _input;
+  private int _remaining;
+  private byte[] _chunk;
+  
+  /**
+   * Creates a new stream over a field payload.
+   * 
+   * @param type the field type, which must be a primitive array type
+   * @param input the source, positioned at the start of the payload
+   * @param size the number of bytes in the payload
+   */
+  /* package */ FudgeArrayInputStream (final FudgeFieldType<?> type, final DataInput input, final int size) {
+    _type = type;
+    _elementSize = getElementSize (type.getJavaType ());
+    _size = size;
+    _input = input;
+    _remaining = size;
+  }
+  
+  /**
+   * Creates a stream over the encoding of an array value that has already been decoded.
+   * 
+   * @param type the field type, which must be a primitive array type
+   * @param value the array value
+   * @return the stream
+   * @throws IllegalArgumentException if the type is not a primitive array type
+   */
+  @SuppressWarnings("unchecked")
+  public static FudgeArrayInputStream of (final FudgeFieldType<?> type, final Object value) {
+    if (!isArrayType (type)) {
+      throw new IllegalArgumentException ("Type " + type + " is not a primitive array type");
+    }
+    final int size = ((FudgeFieldType<Object>)type).getVariableSize (value, null);
+    final ByteBuffer buffer = ByteBuffer.allocate (size);
+    try {
+      ((FudgeFieldType<Object>)type).writeValue (new ByteBufferDataOutput (buffer), value);
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException (e);
+    }
+    return new FudgeArrayInputStream (type, new ByteBufferDataInput (buffer), size);
+  }
+  
+  /**
+   * Tests whether a field type holds a variable length array of a primitive type, and so can be read with a
+   * {@link FudgeArrayInputStream} or written with a {@link FudgeArrayOutputStream}.
+   * 
+   * @param type the field type
+   * @return {@code true} if the type is a primitive array type, {@code false} otherwise
+   */
+  public static boolean isArrayType (final FudgeFieldType<?> type) {
+    return type.isVariableSize () && (getElementSize (type.getJavaType ()) > 0);
+  }
+  
+  /**
+   * Returns the number of bytes used to encode each element of a primitive array type.
+   * 
+   * @param javaType the Java array type
+   * @return the element size, or {@code 0} if the type is not an array of a primitive numeric type
+   */
+  /* package */ static int getElementSize (final Class<?> javaType) {
+    if ((javaType == double[].class) || (javaType == long[].class)) {
+      return 8;
+    } else if ((javaType == float[].class) || (javaType == int[].class)) {
+      return 4;
+    } else if (javaType == short[].class) {
+      return 2;
+    } else if (javaType == byte[].class) {
+      return 1;
+    } else {
+      return 0;
+    }
+  }
+  
+  /**
+   * Returns the type of the field being read.
+   * 
+   * @return the field type
+   */
+  public FudgeFieldType<?> getFieldType () {
+    return _type;
+  }
+  
+  /**
+   * Returns the number of elements in the array.
+   * 
+   * @return the array length
+   */
+  public int getLength () {
+    return _size / _elementSize;
+  }
+  
+  /**
+   * Returns the number of whole elements not yet read.
+   * 
+   * @return the number of elements remaining
+   */
+  public int getRemaining () {
+    return _remaining / _elementSize;
+  }
+  
+  private DataInput getInput () throws IOException {
+    if (_input == null) {
+      throw new IOException ("Stream has been closed");
+    }
+    return _input;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read () throws IOException {
+    if (_remaining == 0) {
+      return -1;
+    }
+    final int b = getInput ().readUnsignedByte ();
+    _remaining--;
+    return b;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read (final byte[] b, final int off, final int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (_remaining == 0) {
+      return -1;
+    }
+    final int n = Math.min (len, _remaining);
+    getInput ().readFully (b, off, n);
+    _remaining -= n;
+    return n;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long skip (final long n) throws IOException {
+    if (n <= 0) {
+      return 0;
+    }
+    final int skip = (int)Math.min (n, _remaining);
+    FudgeDataInputStreamReader.skipFully (getInput (), skip);
+    _remaining -= skip;
+    return skip;
+  }
+  
+  /**
+   * Returns the number of bytes that can be read without blocking, which is the remainder of the payload if the
+   * source is a buffer.
+   * 
+   * @return the number of bytes available
+   */
+  @Override
+  public int available () {
+    return (_input instanceof ByteBufferDataInput) ? _remaining : 0;
+  }
+  
+  /**
+   * Skips the unread part of the payload and detaches the stream from the source. The underlying source is not closed.
+   * 
+   * @throws IOException if the source raises one
+   */
+  @Override
+  public void close () throws IOException {
+    if (_input != null) {
+      FudgeDataInputStreamReader.skipFully (_input, _remaining);
+      _remaining = 0;
+      _input = null;
+    }
+  }
+  
+  /**
+   * Reads the next chunk of elements from the payload, returning a big-endian buffer containing their encoding.
+   * 
+   * @param javaType the array type requested
+   * @param length the maximum number of elements to read
+   * @return the buffer, or {@code null} if there are no more whole elements
+   * @throws IOException if the source raises one
+   */
+  private ByteBuffer readChunk (final Class<?> javaType, final int length) throws IOException {
+    if (javaType != _type.getJavaType ()) {
+      throw new IllegalStateException ("Field type " + _type + " is not " + javaType.getSimpleName ());
+    }
+    if ((_size - _remaining) % _elementSize != 0) {
+      throw new IllegalStateException ("Stream is not positioned at the start of an element");
+    }
+    final DataInput input = getInput ();
+    int elements = Math.min (length, _remaining / _elementSize);
+    if (elements == 0) {
+      return null;
+    }
+    if (input instanceof ByteBufferDataInput) {
+      final int bytes = elements * _elementSize;
+      _remaining -= bytes;
+      return ((ByteBufferDataInput)input).slice (bytes);
+    }
+    elements = Math.min (elements, CHUNK_SIZE / _elementSize);
+    final int bytes = elements * _elementSize;
+    if (_chunk == null) {
+      _chunk = new byte[CHUNK_SIZE];
+    }
+    input.readFully (_chunk, 0, bytes);
+    _remaining -= bytes;
+    return ByteBuffer.wrap (_chunk, 0, bytes);
+  }
+  
+  /**
+   * Reads elements from a {@code double[]} field.
+   * 
+   * @param values the array to read into
+   * @param offset the index of the first element to write
+   * @param length the maximum number of elements to read
+   * @return the number of elements read, which may be fewer than requested, or {@code -1} if the end of the array
+   *         has been reached
+   * @throws IOException if the source raises one
+   * @throws IllegalStateException if the field is not a {@code double[]} field
+   */
+  public int readDoubles (final double[] values, final int offset, final int length) throws IOException {
+    final ByteBuffer chunk = readChunk (double[].class, length);
+    if (chunk == null) {
+      return (length == 0) ? 0 : -1;
+    }
+    final int n = chunk.remaining () / 8;
+    chunk.asDoubleBuffer ().get (values, offset, n);
+    return n;
+  }
+  
+  /**
+   * Reads elements from a {@code float[]} field.
+   * 
+   * @param values the array to read into
+   * @param offset the index of the first element to write
+   * @param length the maximum number of elements to read
+   * @return the number of elements read, which may be fewer than requested, or {@code -1} if the end of the array
+   *         has been reached
+   * @throws IOException if the source raises one
+   * @throws IllegalStateException if the field is not a {@code float[]} field
+   */
+  public int readFloats (final float[] values, final int offset, final int length) throws IOException {
+    final ByteBuffer chunk = readChunk (float[].class, length);
+    if (chunk == null) {
+      return (length == 0) ? 0 : -1;
+    }
+    final int n = chunk.remaining () / 4;
+    chunk.asFloatBuffer ().get (values, offset, n);
+    return n;
+  }
+  
+  /**
+   * Reads elements from a {@code long[]} field.
+   * 
+   * @param values the array to read into
+   * @param offset the index of the first element to write
+   * @param length the maximum number of elements to read
+   * @return the number of elements read, which may be fewer than requested, or {@code -1} if the end of the array
+   *         has been reached
+   * @throws IOException if the source raises one
+   * @throws IllegalStateException if the field is not a {@code long[]} field
+   */
+  public int readLongs (final long[] values, final int offset, final int length) throws IOException {
+    final ByteBuffer chunk = readChunk (long[].class, length);
+    if (chunk == null) {
+      return (length == 0) ? 0 : -1;
+    }
+    final int n = chunk.remaining () / 8;
+    chunk.asLongBuffer ().get (values, offset, n);
+    return n;
+  }
+  
+  /**
+   * Reads elements from an {@code int[]} field.
+   * 
+   * @param values the array to read into
+   * @param offset the index of the first element to write
+   * @param length the maximum number of elements to read
+   * @return the number of elements read, which may be fewer than requested, or {@code -1} if the end of the array
+   *         has been reached
+   * @throws IOException if the source raises one
+   * @throws IllegalStateException if the field is not an {@code int[]} field
+   */
+  public int readInts (final int[] values, final int offset, final int length) throws IOException {
+    final ByteBuffer chunk = readChunk (int[].class, length);
+    if (chunk == null) {
+      return (length == 0) ? 0 : -1;
+    }
+    final int n = chunk.remaining () / 4;
+    chunk.asIntBuffer ().get (values, offset, n);
+    return n;
+  }
+  
+  /**
+   * Reads elements from a {@code short[]} field.
+   * 
+   * @param values the array to read into
+   * @param offset the index of the first element to write
+   * @param length the maximum number of elements to read
+   * @return the number of elements read, which may be fewer than requested, or {@code -1} if the end of the array
+   *         has been reached
+   * @throws IOException if the source raises one
+   * @throws IllegalStateException if the field is not a {@code short[]} field
+   */
+  public int readShorts (final short[] values, final int offset, final int length) throws IOException {
+    final ByteBuffer chunk = readChunk (short[].class, length);
+    if (chunk == null) {
+      return (length == 0) ? 0 : -1;
+    }
+    final int n = chunk.remaining () / 2;
+    chunk.asShortBuffer ().get (values, offset, n);
+    return n;
+  }
+  
+}
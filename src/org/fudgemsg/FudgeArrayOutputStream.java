@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the payload of a field holding an array of a primitive type incrementally, so that a large array can be
+ * produced in chunks without being held in full. The payload is accepted as an {@link OutputStream} of its
+ * big-endian encoding, or elements may be encoded in bulk with the typed write methods. Only the typed method
+ * matching the array type of the field may be used.
+ * <p>
+ * A stream is obtained from {@link FudgeDataOutputStreamWriter#writeArrayField} once the field header has been
+ * written, and writes directly to the underlying target. Exactly the number of elements declared for the field must
+ * be written before anything else is written to the writer.
+ */
+public class FudgeArrayOutputStream extends OutputStream {
+  
+  /**
+   * Size of the buffer used to encode elements written to a target other than a {@link ByteBufferDataOutput}.
+   */
+  private static final int CHUNK_SIZE = 8192;
+  
+  private final FudgeFieldType<?> _type;
+  private final int _elementSize;
+  private final DataOutput _output;
+  private int _remaining;
+  private byte[] _chunk;
+  
+  /**
+   * Creates a new stream for a field payload.
+   * 
+   * @param type the field type, which must be a primitive array type
+   * @param output the target, positioned at the start of the payload
+   * @param size the number of bytes in the payload
+   */
+  /* package */ FudgeArrayOutputStream (final FudgeFieldType<?> type, final DataOutput output, final int size) {
+    _type = type;
+    _elementSize = FudgeArrayInputStream.getElementSize (type.getJavaType ());
+    _output = output;
+    _remaining = size;
+  }
+  
+  /**
+   * Returns the type of the field being written.
+   * 
+   * @return the field type
+   */
+  public FudgeFieldType<?> getFieldType () {
+    return _type;
+  }
+  
+  /**
+   * Returns the number of whole elements still to be written.
+   * 
+   * @return the number of elements remaining
+   */
+  public int getRemaining () {
+    return _remaining / _elementSize;
+  }
+  
+  /**
+   * Tests whether the full payload has been written.
+   * 
+   * @return {@code true} if all elements have been written, {@code false} otherwise
+   */
+  public boolean isComplete () {
+    return _remaining == 0;
+  }
+  
+  private void reserve (final int bytes) {
+    if (bytes > _remaining) {
+      throw new IllegalStateException ("Cannot write " + bytes + " bytes with only " + _remaining + " remaining in the array field");
+    }
+    _remaining -= bytes;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write (final int b) throws IOException {
+    reserve (1);
+    _output.write (b);
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write (final byte[] b, final int off, final int len) throws IOException {
+    reserve (len);
+    _output.write (b, off, len);
+  }
+  
+  /**
+   * Checks that the full payload has been written. The underlying target is not closed.
+   * 
+   * @throws IllegalStateException if elements remain to be written
+   */
+  @Override
+  public void close () {
+    if (_remaining > 0) {
+      throw new IllegalStateException (_remaining + " bytes of the array field have not been written");
+    }
+  }
+  
+  /**
+   * Reserves space for the next chunk of elements, returning a big-endian buffer to encode them into. If the target
+   * is not a buffer, the chunk must be passed to {@link #flushChunk} once encoded.
+   * 
+   * @param length the number of elements remaining to be written
+   * @return the buffer
+   */
+  private ByteBuffer nextChunk (final int length) {
+    if (_output instanceof ByteBufferDataOutput) {
+      final int bytes = length * _elementSize;
+      reserve (bytes);
+      return ((ByteBufferDataOutput)_output).slice (bytes);
+    }
+    final int bytes = Math.min (length, CHUNK_SIZE / _elementSize) * _elementSize;
+    reserve (bytes);
+    if (_chunk == null) {
+      _chunk = new byte[CHUNK_SIZE];
+    }
+    return ByteBuffer.wrap (_chunk, 0, bytes);
+  }
+  
+  /**
+   * Writes a chunk encoded into the buffer returned by {@link #nextChunk} to a target that is not a buffer.
+   * 
+   * @param chunk the encoded chunk
+   * @return the number of elements written
+   * @throws IOException if the target raises one
+   */
+  private int flushChunk (final ByteBuffer chunk) throws IOException {
+    if (!(_output instanceof ByteBufferDataOutput)) {
+      _output.write (_chunk, 0, chunk.remaining ());
+    }
+    return chunk.remaining () / _elementSize;
+  }
+  
+  private void checkType (final Class<?> javaType) {
+    if (javaType != _type.getJavaType ()) {
+      throw new IllegalStateException ("Field type " + _type + " is not " + javaType.getSimpleName ());
+    }
+  }
+  
+  /**
+   * Writes elements to a {@code double[]} field.
+   * 
+   * @param values the array to write from
+   * @param offset the index of the first element to write
+   * @param length the number of elements to write
+   * @throws IOException if the target raises one
+   * @throws IllegalStateException if the field is not a {@code double[]} field, or fewer elements remain
+   */
+  public void writeDoubles (final double[] values, int offset, int length) throws IOException {
+    checkType (double[].class);
+    while (length > 0) {
+      final ByteBuffer chunk = nextChunk (length);
+      chunk.asDoubleBuffer ().put (values, offset, chunk.remaining () / 8);
+      final int n = flushChunk (chunk);
+      offset += n;
+      length -= n;
+    }
+  }
+  
+  /**
+   * Writes elements to a {@code float[]} field.
+   * 
+   * @param values the array to write from
+   * @param offset the index of the first element to write
+   * @param length the number of elements to write
+   * @throws IOException if the target raises one
+   * @throws IllegalStateException if the field is not a {@code float[]} field, or fewer elements remain
+   */
+  public void writeFloats (final float[] values, int offset, int length) throws IOException {
+    checkType (float[].class);
+    while (length > 0) {
+      final ByteBuffer chunk = nextChunk (length);
+      chunk.asFloatBuffer ().put (values, offset, chunk.remaining () / 4);
+      final int n = flushChunk (chunk);
+      offset += n;
+      length -= n;
+    }
+  }
+  
+  /**
+   * Writes elements to a {@code long[]} field.
+   * 
+   * @param values the array to write from
+   * @param offset the index of the first element to write
+   * @param length the number of elements to write
+   * @throws IOException if the target raises one
+   * @throws IllegalStateException if the field is not a {@code long[]} field, or fewer elements remain
+   */
+  public void writeLongs (final long[] values, int offset, int length) throws IOException {
+    checkType (long[].class);
+    while (length > 0) {
+      final ByteBuffer chunk = nextChunk (length);
+      chunk.asLongBuffer ().put (values, offset, chunk.remaining () / 8);
+      final int n = flushChunk (chunk);
+      offset += n;
+      length -= n;
+    }
+  }
+  
+  /**
+   * Writes elements to an {@code int[]} field.
+   * 
+   * @param values the array to write from
+   * @param offset the index of the first element to write
+   * @param length the number of elements to write
+   * @throws IOException if the target raises one
+   * @throws IllegalStateException if the field is not an {@code int[]} field, or fewer elements remain
+   */
+  public void writeInts (final int[] values, int offset, int length) throws IOException {
+    checkType (int[].class);
+    while (length > 0) {
+      final ByteBuffer chunk = nextChunk (length);
+      chunk.asIntBuffer ().put (values, offset, chunk.remaining () / 4);
+      final int n = flushChunk (chunk);
+      offset += n;
+      length -= n;
+    }
+  }
+  
+  /**
+   * Writes elements to a {@code short[]} field.
+   * 
+   * @param values the array to write from
+   * @param offset the index of the first element to write
+   * @param length the number of elements to write
+   * @throws IOException if the target raises one
+   * @throws IllegalStateException if the field is not a {@code short[]} field, or fewer elements remain
+   */
+  public void writeShorts (final short[] values, int offset, int length) throws IOException {
+    checkType (short[].class);
+    while (length > 0) {
+      final ByteBuffer chunk = nextChunk (length);
+      chunk.asShortBuffer ().put (values, offset, chunk.remaining () / 2);
+      final int n = flushChunk (chunk);
+      offset += n;
+      length -= n;
+    }
+  }
+  
+}
@@ -0,0 +1,822 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.fudgemsg.taxon.FudgeTaxonomy;
+import org.fudgemsg.taxon.SessionTaxonomy;
+import org.fudgemsg.types.SecondaryFieldTypeBase;
+
+/**
+ * An implementation of {@link FudgeStreamReader} for consuming data directly from a {@code byte} array or
+ * {@link ByteBuffer}. The data is read with an absolute cursor rather than through stream layers, and primitive
+ * values, arrays and strings are decoded in place without intermediate copies. The position of a supplied
+ * {@code ByteBuffer} is not modified; use {@link #getPosition()} to find how much data has been consumed.
+ */
+public class FudgeByteBufferReader implements PrimitiveFudgeStreamReader {
+  
+  // Injected Inputs:
+  private ByteBufferDataInput _input;
+  
+  // Set to the underlying input while reading the decompressed body of a compressed envelope
+  private ByteBufferDataInput _outerInput;
+  private final FudgeContext _fudgeContext;
+  
+  // Runtime State:
+  private int[] _messageEnds = new int[8];
+  private FudgeFieldProjection[] _projections = new FudgeFieldProjection[8];
+  private int _depth;
+  private FudgeStreamElement _currentElement;
+  private FudgeTaxonomy _taxonomy;
+  
+  // Set for the envelope
+  private int _processingDirectives;
+  private int _schemaVersion;
+  private short _taxonomyId;
+  private int _envelopeSize;
+  
+  // Set for each non-sub-msg field
+  private FudgeFieldType<?> _fieldType;
+  private Integer _fieldOrdinal;
+  private String _fieldName;
+  private Object _fieldValue;
+  
+  // Set for a field of one of the standard primitive types, which is only boxed on request
+  private boolean _fieldPrimitive;
+  private long _fieldBits;
+  
+  // Set for a primitive array field, whose value is only decoded on request
+  private ByteBuffer _fieldArrayBuffer;
+  private int _fieldArrayStart;
+  private int _fieldArraySize;
+  
+  // Fields to decode, null for all
+  private FudgeFieldProjection _projection;
+  
+  // Field names learnt from the stream, and whether the current envelope uses them
+  private SessionTaxonomy _sessionTaxonomy;
+  private boolean _sessionEnvelope;
+  
+  // Set if the current envelope is in the compact profile, in which a long value is read with the field header
+  private boolean _compactEnvelope;
+  private boolean _fieldCompactLong;
+  private long _fieldLongBits;
+  
+  // Largest body a compressed envelope may expand to
+  private int _maxDecompressedSize;
+  
+  /**
+   * Creates a new {@link FudgeByteBufferReader} reading from the remaining content of a {@link ByteBuffer}.
+   * 
+   * @param fudgeContext the {@link FudgeContext} to associate with
+   * @param buffer the buffer to read Fudge elements from
+   */
+  public FudgeByteBufferReader (final FudgeContext fudgeContext, final ByteBuffer buffer) {
+    if (fudgeContext == null) {
+      throw new NullPointerException ("Must provide a FudgeContext");
+    }
+    if (buffer == null) {
+      throw new NullPointerException ("Must provide a ByteBuffer");
+    }
+    _fudgeContext = fudgeContext;
+    _input = new ByteBufferDataInput (buffer);
+    _maxDecompressedSize = fudgeContext.getMaxDecompressedSize ();
+  }
+  
+  /**
+   * Creates a new {@link FudgeByteBufferReader} reading from a {@code byte} array.
+   * 
+   * @param fudgeContext the {@link FudgeContext} to associate with
+   * @param bytes the array to read Fudge elements from
+   */
+  public FudgeByteBufferReader (final FudgeContext fudgeContext, final byte[] bytes) {
+    this (fudgeContext, ByteBuffer.wrap (bytes));
+  }
+  
+  /**
+   * Creates a new {@link FudgeByteBufferReader} reading from part of a {@code byte} array.
+   * 
+   * @param fudgeContext the {@link FudgeContext} to associate with
+   * @param bytes the array to read Fudge elements from
+   * @param offset index of the first byte to read
+   * @param length number of bytes available
+   */
+  public FudgeByteBufferReader (final FudgeContext fudgeContext, final byte[] bytes, final int offset, final int length) {
+    this (fudgeContext, ByteBuffer.wrap (bytes, offset, length));
+  }
+  
+  /**
+   * Returns the underlying {@link ByteBufferDataInput} holding the cursor.
+   * 
+   * @return the data input
+   */
+  protected ByteBufferDataInput getDataInput () {
+    return _input;
+  }
+  
+  /**
+   * Returns the absolute index within the underlying buffer of the next byte to be read. While reading a compressed
+   * envelope, and until the next envelope is started, this is an index within the decompressed body.
+   * 
+   * @return the position
+   */
+  public int getPosition () {
+    return _input.getPosition ();
+  }
+  
+  /**
+   * Returns a buffer over a region of the underlying data, for example the encoded form of a message read. The
+   * buffer shares content with the data being read, which is the decompressed body of a compressed envelope.
+   * 
+   * @param start absolute index of the first byte
+   * @param end absolute index after the last byte
+   * @return the buffer, positioned at {@code start} with a limit of {@code end}
+   */
+  public ByteBuffer getEncodedRegion (final int start, final int end) {
+    final ByteBuffer buffer = _input.getBuffer ().duplicate ();
+    buffer.limit (end);
+    buffer.position (start);
+    return buffer;
+  }
+  
+  /**
+   * Returns the size of the current message envelope, including the envelope header.
+   * 
+   * @return the envelope size in bytes
+   */
+  public int getEnvelopeSize () {
+    return _envelopeSize;
+  }
+  
+  /**
+   * Returns the current nesting depth; 0 between envelopes, 1 within the top level message and one more for each
+   * sub-message entered.
+   * 
+   * @return the depth
+   */
+  protected int getDepth () {
+    return _depth;
+  }
+  
+  /**
+   * Returns the absolute index within the buffer at which the current message or sub-message ends.
+   * 
+   * @return the end position, or the buffer limit if no message is being processed
+   */
+  protected int getMessageEnd () {
+    return (_depth > 0) ? _messageEnds[_depth - 1] : _input.getLimit ();
+  }
+  
+  private void pushMessageEnd (final int end, final FudgeFieldProjection projection) {
+    if (_depth == _messageEnds.length) {
+      final int[] messageEnds = new int[_depth * 2];
+      System.arraycopy (_messageEnds, 0, messageEnds, 0, _depth);
+      _messageEnds = messageEnds;
+      final FudgeFieldProjection[] projections = new FudgeFieldProjection[_depth * 2];
+      System.arraycopy (_projections, 0, projections, 0, _depth);
+      _projections = projections;
+    }
+    _projections[_depth] = projection;
+    _messageEnds[_depth++] = end;
+  }
+  
+  /**
+   * Returns the projection selecting the fields to decode.
+   * 
+   * @return the projection, or {@code null} if all fields are decoded
+   */
+  public FudgeFieldProjection getProjection () {
+    return _projection;
+  }
+  
+  /**
+   * Sets the projection selecting the fields to decode, taking effect from the next message envelope. Fields that
+   * are not selected are skipped without being decoded and are not returned by {@link #next()}.
+   * 
+   * @param projection the projection, or {@code null} to decode all fields
+   */
+  public void setProjection (final FudgeFieldProjection projection) {
+    _projection = projection;
+  }
+  
+  /**
+   * Returns the largest body, excluding the envelope header, that a compressed envelope may expand to.
+   * 
+   * @return the maximum size in bytes
+   */
+  public int getMaxDecompressedSize () {
+    return _maxDecompressedSize;
+  }
+  
+  /**
+   * Sets the largest body, excluding the envelope header, that a compressed envelope may expand to. The default is
+   * taken from {@link FudgeContext#getMaxDecompressedSize()} when the reader is created.
+   * 
+   * @param maxDecompressedSize the maximum size in bytes
+   */
+  public void setMaxDecompressedSize (final int maxDecompressedSize) {
+    _maxDecompressedSize = maxDecompressedSize;
+  }
+  
+  /**
+   * Returns the session taxonomy holding the field names learnt from envelopes written with the
+   * {@link FudgeMsgEnvelope#SESSION_TAXONOMY_DIRECTIVE} flag set.
+   * 
+   * @return the session taxonomy, or {@code null} if no such envelope has been read and none has been set
+   */
+  public SessionTaxonomy getSessionTaxonomy () {
+    return _sessionTaxonomy;
+  }
+  
+  /**
+   * Sets the session taxonomy to resolve and learn field names with. A reader creates its own when the first
+   * envelope using one is read; a session taxonomy should be set when the envelopes of a stream are read by a
+   * sequence of readers, so that each continues from the names learnt by the last.
+   * 
+   * @param sessionTaxonomy the session taxonomy, or {@code null} to create one when needed
+   */
+  public void setSessionTaxonomy (final SessionTaxonomy sessionTaxonomy) {
+    _sessionTaxonomy = sessionTaxonomy;
+  }
+  
+  /**
+   * Indicates whether the encoding of the current envelope can be retained and copied verbatim to another stream. This
+   * is not the case if it was written using a session taxonomy, as the encoding depends on the names sent before it,
+   * or in the compact profile.
+   * 
+   * @return {@code true} if the encoding is in the standard profile and self-contained
+   */
+  /* package */ boolean isEncodingPortable () {
+    return !_sessionEnvelope && !_compactEnvelope;
+  }
+  
+  /**
+   * Closes this reader, discarding any state. The underlying buffer is not affected.
+   */
+  @Override
+  public void close () {
+    _currentElement = null;
+    _depth = 0;
+    
+    _processingDirectives = 0;
+    _sessionEnvelope = false;
+    _compactEnvelope = false;
+    _schemaVersion = 0;
+    _taxonomyId = 0;
+    _envelopeSize = 0;
+    
+    _fieldType = null;
+    _fieldOrdinal = null;
+    _fieldName = null;
+    _fieldValue = null;
+    _fieldPrimitive = false;
+    _fieldArrayBuffer = null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public FudgeStreamElement getCurrentElement() {
+    return _currentElement;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getFieldName() {
+    return _fieldName;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Integer getFieldOrdinal() {
+    return _fieldOrdinal;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public FudgeFieldType<?> getFieldType() {
+    return _fieldType;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object getFieldValue() {
+    if (_fieldValue == null) {
+      if (_fieldPrimitive) {
+        _fieldValue = PrimitiveFudgeMsgField.box (_fieldType, _fieldBits);
+      } else if (_fieldArrayBuffer != null) {
+        try {
+          _fieldValue = readFieldValue (getFieldArrayInput (), _fieldType, _fieldArraySize);
+        } catch (IOException e) {
+          throw new FudgeRuntimeIOException (e);
+        }
+      }
+    }
+    return _fieldValue;
+  }
+
+  /**
+   * Returns a stream over the current field value. A primitive array that has not been decoded is read directly from
+   * the buffer, and remains available from {@link #getFieldValue()}.
+   * 
+   * @return the stream over the array elements
+   * @throws IllegalStateException if the current element is not a simple field holding a primitive array
+   */
+  @Override
+  public FudgeArrayInputStream getFieldValueStream () {
+    if (_fieldArrayBuffer != null) {
+      return new FudgeArrayInputStream (_fieldType, getFieldArrayInput (), _fieldArraySize);
+    }
+    final FudgeField field = getCurrentField ();
+    if (!FudgeArrayInputStream.isArrayType (field.getType ())) {
+      throw new IllegalStateException ("Field type " + field.getType () + " is not a primitive array type");
+    }
+    return FudgeArrayInputStream.of (field.getType (), field.getValue ());
+  }
+  
+  /**
+   * Returns an input over the payload of the current primitive array field.
+   * 
+   * @return the input, positioned at the start of the payload and limited to its end
+   */
+  private ByteBufferDataInput getFieldArrayInput () {
+    final ByteBuffer payload = _fieldArrayBuffer.duplicate ();
+    payload.limit (_fieldArrayStart + _fieldArraySize);
+    payload.position (_fieldArrayStart);
+    return new ByteBufferDataInput (payload);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getFieldValueAsDouble () {
+    if (_fieldPrimitive) {
+      return PrimitiveFudgeMsgField.toDouble (_fieldType, _fieldBits);
+    }
+    return getFudgeContext ().getTypeDictionary ().getFieldDoubleValue (getCurrentField ());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getFieldValueAsLong () {
+    if (_fieldPrimitive && (_fieldType.getTypeId () != FudgeTypeDictionary.FLOAT_TYPE_ID) && (_fieldType.getTypeId () != FudgeTypeDictionary.DOUBLE_TYPE_ID)) {
+      return _fieldBits;
+    }
+    return getFudgeContext ().getTypeDictionary ().getFieldLongValue (getCurrentField ());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getFieldValueAsInt () {
+    if (_fieldPrimitive && (_fieldType.getTypeId () != FudgeTypeDictionary.FLOAT_TYPE_ID) && (_fieldType.getTypeId () != FudgeTypeDictionary.DOUBLE_TYPE_ID)
+        && (_fieldBits >= Integer.MIN_VALUE) && (_fieldBits <= Integer.MAX_VALUE)) {
+      return (int)_fieldBits;
+    }
+    return getFudgeContext ().getTypeDictionary ().getFieldIntValue (getCurrentField ());
+  }
+  
+  /**
+   * Returns the current simple field, for conversion of its value.
+   * 
+   * @return the field
+   * @throws IllegalStateException if the current element is not a simple field
+   */
+  private FudgeField getCurrentField () {
+    if (_currentElement != FudgeStreamElement.SIMPLE_FIELD) {
+      throw new IllegalStateException ("Current element " + _currentElement + " is not a simple field");
+    }
+    return FudgeMsgField.of (_fieldType, getFieldValue ());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public FudgeContext getFudgeContext() {
+    return _fudgeContext;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getProcessingDirectives() {
+    return _processingDirectives;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getSchemaVersion() {
+    return _schemaVersion;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public FudgeTaxonomy getTaxonomy() {
+    return _taxonomy;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public short getTaxonomyId() {
+    return _taxonomyId;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean hasNext() {
+    if (_depth > 1) {
+      // Always have at least one more.
+      return true;
+    } else if (_depth == 1) {
+      try {
+        skipExcludedFields ();
+      } catch (IOException e) {
+        throw new FudgeRuntimeIOException (e);
+      }
+      if (_input.getPosition () < _messageEnds[0]) {
+        // More to read
+        return true;
+      } else {
+        // End of the outermost envelope, so clear the stack and return a temporary false
+        _depth = 0;
+        return false;
+      }
+    } else {
+      // Might have another envelope to read
+      endCompressedEnvelope ();
+      return _input.remaining () > 0;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public FudgeStreamElement next() {
+    try {
+      if (_depth == 0) {
+        // Must be an envelope (or the end of the buffer)
+        if (!consumeMessageEnvelope ()) {
+          return null;
+        }
+      } else {
+        skipExcludedFields ();
+        if ((_depth > 1) && (_input.getPosition () >= _messageEnds[_depth - 1])) {
+          _projections[--_depth] = null;
+          _currentElement = FudgeStreamElement.SUBMESSAGE_FIELD_END;
+          _fieldName = null;
+          _fieldOrdinal = null;
+          _fieldType = null;
+          _fieldValue = null;
+          _fieldPrimitive = false;
+          _fieldArrayBuffer = null;
+        } else {
+          consumeFieldData ();
+        }
+      }
+      assert _currentElement != null;
+      return _currentElement;
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException (e);
+    }
+  }
+  
+  /**
+   * Reads the next field prefix and header from the buffer, setting the field name, ordinal and type. The cursor is
+   * left positioned at the start of the field payload.
+   * 
+   * @return the number of bytes of payload data
+   * @throws IOException if the buffer is truncated or the field is malformed
+   */
+  protected int consumeFieldHeader () throws IOException {
+    final ByteBufferDataInput input = getDataInput ();
+    final byte fieldPrefix = input.readByte ();
+    final int typeId = input.readUnsignedByte ();
+    final boolean fixedWidth = FudgeFieldPrefixCodec.isFixedWidth (fieldPrefix);
+    
+    Integer ordinal = null;
+    if (FudgeFieldPrefixCodec.hasOrdinal (fieldPrefix)) {
+      if (_compactEnvelope) {
+        ordinal = Integer.valueOf (FudgeVarIntCodec.decodeOrdinal (FudgeVarIntCodec.readInt (input)));
+      } else {
+        ordinal = Integer.valueOf (input.readShort ());
+      }
+    }
+    
+    String name = null;
+    if (FudgeFieldPrefixCodec.hasName (fieldPrefix)) {
+      final int nameSize = input.readUnsignedByte ();
+      name = UTF8.decode (input.getBuffer (), input.consume (nameSize), nameSize);
+    } else if (ordinal != null) {
+      if (_sessionEnvelope && SessionTaxonomy.isSessionOrdinal (ordinal)) {
+        name = _sessionTaxonomy.getFieldName (ordinal.shortValue ());
+        if (name == null) {
+          throw new IOException ("Unknown session ordinal " + ordinal);
+        }
+        ordinal = null;
+      } else if (getTaxonomy () != null) {
+        name = getTaxonomy ().getFieldName (ordinal.shortValue ());
+      }
+    }
+    if (_sessionEnvelope && (ordinal == null) && FudgeFieldPrefixCodec.hasName (fieldPrefix)) {
+      _sessionTaxonomy.addFieldName (name);
+    }
+    
+    FudgeFieldType<?> type = getFudgeContext ().getTypeDictionary ().getByTypeId (typeId);
+    if (type == null) {
+      if (fixedWidth) {
+        throw new IOException ("Unknown fixed width type " + typeId + " for field " + ordinal + ":" + name + " cannot be handled.");
+      }
+      type = getFudgeContext ().getTypeDictionary ().getUnknownType (typeId);
+    }
+    
+    int size;
+    _fieldCompactLong = false;
+    if (_compactEnvelope && (typeId == FudgeTypeDictionary.LONG_TYPE_ID)) {
+      _fieldCompactLong = true;
+      _fieldLongBits = FudgeVarIntCodec.zigZagDecode (FudgeVarIntCodec.readLong (input));
+      size = 0;
+    } else if (_compactEnvelope && !fixedWidth) {
+      size = FudgeVarIntCodec.readInt (input);
+    } else if (fixedWidth) {
+      size = type.getFixedSize ();
+    } else {
+      final int varSizeBytes = FudgeFieldPrefixCodec.getFieldWidthByteCount (fieldPrefix);
+      switch (varSizeBytes) {
+      case 0: size = 0; break;
+      case 1: size = input.readUnsignedByte (); break;
+      case 2: size = input.readShort (); break;
+      case 4: size = input.readInt (); break;
+      default:
+        throw new IOException ("Illegal number of bytes indicated for variable width encoding: " + varSizeBytes);
+      }
+    }
+    if (size < 0) {
+      throw new IOException ("Negative size " + size + " for field " + ordinal + ":" + name);
+    }
+    
+    _fieldName = name;
+    _fieldOrdinal = ordinal;
+    _fieldType = type;
+    return size;
+  }
+
+  /**
+   * Reads the next field (prefix and value) from the buffer, setting internal state to be returned by getFieldName,
+   * getFieldOrdinal, getFieldType, getCurrentElement and getFieldValue. The cursor is left positioned at the start of
+   * the next field.
+   * 
+   * @throws IOException if the buffer is truncated or the field is malformed
+   */
+  protected void consumeFieldData () throws IOException {
+    final int size = consumeFieldHeader ();
+    _fieldArrayBuffer = null;
+    if (_fieldType.getTypeId () == FudgeTypeDictionary.FUDGE_MSG_TYPE_ID) {
+      _currentElement = FudgeStreamElement.SUBMESSAGE_FIELD_START;
+      _fieldValue = null;
+      _fieldPrimitive = false;
+      final FudgeFieldProjection projection = _projections[_depth - 1];
+      pushMessageEnd (_input.getPosition () + size, (projection != null) ? projection.getSubMessageProjection (_fieldName, _fieldOrdinal) : null);
+    } else {
+      _currentElement = FudgeStreamElement.SIMPLE_FIELD;
+      if (_fieldCompactLong) {
+        _fieldValue = null;
+        _fieldPrimitive = true;
+        _fieldBits = _fieldLongBits;
+      } else if (PrimitiveFudgeMsgField.isPrimitiveType (_fieldType)) {
+        _fieldValue = null;
+        _fieldPrimitive = true;
+        _fieldBits = PrimitiveFudgeMsgField.readBits (getDataInput (), _fieldType);
+      } else if (FudgeArrayInputStream.isArrayType (_fieldType)) {
+        _fieldValue = null;
+        _fieldPrimitive = false;
+        _fieldArrayBuffer = getDataInput ().getBuffer ();
+        _fieldArrayStart = getDataInput ().consume (size);
+        _fieldArraySize = size;
+      } else {
+        _fieldPrimitive = false;
+        _fieldValue = readFieldValue (getDataInput (), _fieldType, size);
+      }
+    }
+  }
+  
+  /**
+   * Skips any fields of the current message or sub-message not selected by its projection, leaving the cursor at the
+   * start of the next selected field or the end of the message. The state of the current element is not changed.
+   * 
+   * @throws IOException if the buffer is truncated or a field is malformed
+   */
+  private void skipExcludedFields () throws IOException {
+    final FudgeFieldProjection projection = _projections[_depth - 1];
+    if (projection == null) {
+      return;
+    }
+    final ByteBufferDataInput input = getDataInput ();
+    final int end = _messageEnds[_depth - 1];
+    final String fieldName = _fieldName;
+    final Integer fieldOrdinal = _fieldOrdinal;
+    final FudgeFieldType<?> fieldType = _fieldType;
+    try {
+      while (input.getPosition () < end) {
+        final int start = input.getPosition ();
+        final int size = consumeFieldHeader ();
+        if (projection.includes (_fieldName, _fieldOrdinal)) {
+          // leave the selected field to be consumed in full
+          input.setPosition (start);
+          break;
+        }
+        input.consume (size);
+      }
+    } finally {
+      _fieldName = fieldName;
+      _fieldOrdinal = fieldOrdinal;
+      _fieldType = fieldType;
+    }
+  }
+  
+  /**
+   * Reads a Fudge encoded field value from a buffer, decoding in place where possible. The cursor is left positioned
+   * immediately after the field value.
+   * 
+   * @param input the buffer to read from, positioned at the start of the field value
+   * @param type the {@link FudgeFieldType} of the data to read
+   * @param size number of bytes in the field payload
+   * @return the field value
+   * @throws IOException if the buffer is truncated or the value is malformed
+   */
+  public static Object readFieldValue (final ByteBufferDataInput input, final FudgeFieldType<?> type, final int size) throws IOException {
+    assert type != null;
+    assert input != null;
+    if (type instanceof SecondaryFieldTypeBase<?, ?, ?>) {
+      // registered to decode in place of the standard type, so reads its own representation
+      return readTypeValue (input, type, size);
+    }
+    switch (type.getTypeId ()) {
+    case FudgeTypeDictionary.BOOLEAN_TYPE_ID:
+      return input.readBoolean ();
+    case FudgeTypeDictionary.BYTE_TYPE_ID:
+      return input.readByte ();
+    case FudgeTypeDictionary.SHORT_TYPE_ID:
+      return input.readShort ();
+    case FudgeTypeDictionary.INT_TYPE_ID:
+      return input.readInt ();
+    case FudgeTypeDictionary.LONG_TYPE_ID:
+      return input.readLong ();
+    case FudgeTypeDictionary.FLOAT_TYPE_ID:
+      return input.readFloat ();
+    case FudgeTypeDictionary.DOUBLE_TYPE_ID:
+      return input.readDouble ();
+    case FudgeTypeDictionary.STRING_TYPE_ID:
+      return UTF8.decode (input.getBuffer (), input.consume (size), size);
+    case FudgeTypeDictionary.SHORT_ARRAY_TYPE_ID: {
+      final short[] result = new short[size / 2];
+      input.slice (size).asShortBuffer ().get (result);
+      return result;
+    }
+    case FudgeTypeDictionary.INT_ARRAY_TYPE_ID: {
+      final int[] result = new int[size / 4];
+      input.slice (size).asIntBuffer ().get (result);
+      return result;
+    }
+    case FudgeTypeDictionary.LONG_ARRAY_TYPE_ID: {
+      final long[] result = new long[size / 8];
+      input.slice (size).asLongBuffer ().get (result);
+      return result;
+    }
+    case FudgeTypeDictionary.FLOAT_ARRAY_TYPE_ID: {
+      final float[] result = new float[size / 4];
+      input.slice (size).asFloatBuffer ().get (result);
+      return result;
+    }
+    case FudgeTypeDictionary.DOUBLE_ARRAY_TYPE_ID: {
+      final double[] result = new double[size / 8];
+      input.slice (size).asDoubleBuffer ().get (result);
+      return result;
+    }
+    }
+    if (type.getJavaType () == byte[].class) {
+      final byte[] result = new byte[size];
+      input.readFully (result);
+      return result;
+    }
+    return readTypeValue (input, type, size);
+  }
+  
+  /**
+   * Reads a field value with {@link FudgeFieldType#readValue}, leaving the cursor positioned immediately after the
+   * field value.
+   * 
+   * @param input the buffer to read from, positioned at the start of the field value
+   * @param type the {@link FudgeFieldType} of the data to read
+   * @param size number of bytes in the field payload
+   * @return the field value
+   * @throws IOException if the buffer is truncated or the value is malformed
+   */
+  private static Object readTypeValue (final ByteBufferDataInput input, final FudgeFieldType<?> type, final int size) throws IOException {
+    final int end = input.getPosition () + size;
+    if (end > input.getLimit ()) {
+      throw new EOFException ("Field of " + size + " bytes exceeds the available data");
+    }
+    final Object value = type.readValue (input, type.isVariableSize () ? size : 0);
+    input.setPosition (end);
+    return value;
+  }
+  
+  /**
+   * Reads the next message envelope from the buffer, setting internal state to be returned by getCurrentElement,
+   * getProcessingDirectives, getSchemaVersion, getTaxonomyId and getEnvelopeSize. If the envelope body is compressed
+   * it is decompressed in full, and the fields are then read from the decompressed body.
+   * 
+   * @throws IOException if the buffer contains a partial envelope header
+   * @return {@code true} if there was an envelope to consume, {@code false} if the end of the buffer was reached
+   */
+  protected boolean consumeMessageEnvelope () throws IOException {
+    endCompressedEnvelope ();
+    final ByteBufferDataInput input = getDataInput ();
+    if (input.remaining () == 0) {
+      _currentElement = null;
+      return false;
+    }
+    final int start = input.getPosition ();
+    _currentElement = FudgeStreamElement.MESSAGE_ENVELOPE;
+    _processingDirectives = input.readUnsignedByte ();
+    _schemaVersion = input.readUnsignedByte ();
+    _taxonomyId = input.readShort ();
+    _envelopeSize = input.readInt ();
+    if (getFudgeContext ().getTaxonomyResolver () != null) {
+      _taxonomy = getFudgeContext ().getTaxonomyResolver ().resolveTaxonomy (_taxonomyId);
+    }
+    if ((_processingDirectives & FudgeMsgEnvelope.COMPRESSED_DIRECTIVE) != 0) {
+      final byte[] body = EnvelopeCompression.decompress (getFudgeContext (), input, _envelopeSize, getMaxDecompressedSize ());
+      _processingDirectives &= ~FudgeMsgEnvelope.COMPRESSED_DIRECTIVE;
+      _envelopeSize = 8 + body.length;
+      _outerInput = input;
+      _input = new ByteBufferDataInput (ByteBuffer.wrap (body));
+      pushMessageEnd (body.length, getProjection ());
+    } else {
+      pushMessageEnd (start + _envelopeSize, getProjection ());
+    }
+    _compactEnvelope = (_processingDirectives & FudgeMsgEnvelope.COMPACT_DIRECTIVE) != 0;
+    _processingDirectives &= ~FudgeMsgEnvelope.COMPACT_DIRECTIVE;
+    _sessionEnvelope = (_processingDirectives & FudgeMsgEnvelope.SESSION_TAXONOMY_DIRECTIVE) != 0;
+    if (_sessionEnvelope) {
+      _processingDirectives &= ~FudgeMsgEnvelope.SESSION_TAXONOMY_DIRECTIVE;
+      if (_sessionTaxonomy == null) {
+        _sessionTaxonomy = new SessionTaxonomy ();
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Returns to the underlying buffer after reading the decompressed body of a compressed envelope. Until the next
+   * envelope is read, positions continue to refer to the decompressed body so that the encoding of the last message
+   * can be retained.
+   */
+  private void endCompressedEnvelope () {
+    if (_outerInput != null) {
+      _input = _outerInput;
+      _outerInput = null;
+    }
+  }
+  
+}
@@ -0,0 +1,398 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.fudgemsg.taxon.FudgeTaxonomy;
+
+/**
+ * Implementation of a {@link FudgeStreamWriter} that encodes directly into a heap or direct {@link ByteBuffer}.
+ * Data is written from the buffer's position and the buffer's position is advanced as each envelope header or
+ * field is written, so that the buffer can be flipped and passed to a {@link java.nio.channels.WritableByteChannel}
+ * without an intermediate {@code byte} array. Primitive arrays are written with bulk operations.
+ * <p>
+ * A primitive array must be passed to {@link #writeField} in full. Streaming an array field in chunks with
+ * {@link FudgeDataOutputStreamWriter#writeArrayField} is only supported by the stream writer.
+ * <p>
+ * If there is not enough space in the buffer a {@link BufferOverflowException} is thrown. An envelope header is
+ * only written if the whole message will fit, otherwise nothing is written. If a field written outside of an
+ * envelope does not fit, the buffer position is restored to the start of that field. The caller may then retry
+ * with a larger buffer; {@link FudgeSize} can be used to determine the space required.
+ */
+public class FudgeByteBufferWriter implements FudgeStreamWriter {
+  
+  private final FudgeContext _fudgeContext;
+  private final ByteBuffer _buffer;
+  private final ByteBufferDataOutput _output;
+  private final int _startPosition;
+  private FudgeTaxonomy _taxonomy = null;
+  private int _taxonomyId = 0;
+  private Map<FudgeFieldContainer, Integer> _subMessageSizes;
+  private int _subMessageDepth;
+  
+  /**
+   * Creates a new {@link FudgeByteBufferWriter} associated with the given {@link FudgeContext}, writing to the
+   * buffer from its current position.
+   * 
+   * @param fudgeContext the {@code FudgeContext} to associate with
+   * @param buffer the buffer to write Fudge elements to
+   */
+  public FudgeByteBufferWriter (final FudgeContext fudgeContext, final ByteBuffer buffer) {
+    if (fudgeContext == null) {
+      throw new NullPointerException ("Must provide a Fudge Context");
+    }
+    if (buffer == null) {
+      throw new NullPointerException ("Must provide a ByteBuffer");
+    }
+    _fudgeContext = fudgeContext;
+    _buffer = buffer;
+    _output = new ByteBufferDataOutput (buffer);
+    _startPosition = buffer.position ();
+  }
+  
+  /**
+   * Returns the buffer being written to.
+   * 
+   * @return the buffer
+   */
+  public ByteBuffer getBuffer () {
+    return _buffer;
+  }
+  
+  /**
+   * Returns the big-endian output the data is written through.
+   * 
+   * @return the output
+   */
+  protected ByteBufferDataOutput getDataOutput () {
+    return _output;
+  }
+  
+  /**
+   * Returns the number of bytes written to the buffer by this writer.
+   * 
+   * @return the number of bytes written
+   */
+  public int getBytesWritten () {
+    return _output.getPosition () - _startPosition;
+  }
+  
+  /**
+   * Returns the number of bytes that can still be written before the buffer overflows.
+   * 
+   * @return the number of bytes remaining
+   */
+  public int remaining () {
+    return _output.remaining ();
+  }
+  
+  /**
+   * Updates the position of the caller's buffer to reflect the data written.
+   */
+  private void updateBufferPosition () {
+    _buffer.position (_output.getPosition ());
+  }
+  
+  /**
+   * Updates the buffer position. There is nothing else to flush.
+   */
+  @Override
+  public void flush () {
+    updateBufferPosition ();
+  }
+  
+  /**
+   * Updates the buffer position and resets the taxonomy state. The buffer itself is not affected.
+   */
+  @Override
+  public void close () {
+    flush ();
+    _taxonomy = null;
+    _taxonomyId = 0;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public FudgeContext getFudgeContext () {
+    return _fudgeContext;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public FudgeTaxonomy getCurrentTaxonomy () {
+    return _taxonomy;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setCurrentTaxonomyId (final int taxonomyId) {
+    _taxonomyId = taxonomyId;
+    if (getFudgeContext ().getTaxonomyResolver () != null) {
+      _taxonomy = getFudgeContext ().getTaxonomyResolver ().resolveTaxonomy ((short)taxonomyId);
+    } else {
+      _taxonomy = null;
+    }
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getCurrentTaxonomyId () {
+    return _taxonomyId;
+  }
+
+  /**
+   * Writes the envelope header. If the buffer does not have {@code messageSize} bytes remaining, a
+   * {@link BufferOverflowException} is thrown and nothing is written.
+   * 
+   * @param processingDirectives the processing directive flags
+   * @param schemaVersion the schema version value
+   * @param messageSize the Fudge encoded size of the underlying message, including the message envelope
+   */
+  @Override
+  public void writeEnvelopeHeader (final int processingDirectives, final int schemaVersion, final int messageSize) {
+    if (messageSize > _output.remaining ()) {
+      throw new BufferOverflowException ();
+    }
+    final ByteBufferDataOutput output = getDataOutput ();
+    output.writeByte (processingDirectives);
+    output.writeByte (schemaVersion);
+    output.writeShort (getCurrentTaxonomyId ());
+    output.writeInt (messageSize);
+    updateBufferPosition ();
+  }
+  
+  /**
+   * No data is written - the end of the envelope is implied by the size from the header.
+   */
+  @Override
+  public void envelopeComplete () {
+    updateBufferPosition ();
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeFields (final FudgeFieldContainer msg) {
+    final ByteBuffer encoded = FudgeSize.getRetainedEncoding (getCurrentTaxonomy (), msg);
+    if (encoded != null) {
+      // an unmodified message can be copied verbatim
+      getDataOutput ().getBuffer ().put (encoded);
+      updateBufferPosition ();
+      return;
+    }
+    for (FudgeField field : msg.getAllFields ()) {
+      writeField (field);
+    }
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeField (final FudgeField field) {
+    if (field == null) {
+      throw new NullPointerException ("Cannot write a null field to a Fudge stream");
+    }
+    writeField (field.getOrdinal (), field.getName (), field.getType (), field.getValue ());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeField (Short ordinal, String name, final FudgeFieldType type, final Object fieldValue) {
+    if (fieldValue == null) {
+      throw new NullPointerException ("Cannot write a null field value to a Fudge stream.");
+    }
+    if ((name != null) && (ordinal == null) && (getCurrentTaxonomy () != null)) {
+      ordinal = getCurrentTaxonomy ().getFieldOrdinal (name);
+      if (ordinal != null) {
+        name = null;
+      }
+    }
+    final ByteBufferDataOutput output = getDataOutput ();
+    final int start = output.getPosition ();
+    try {
+      writeFieldImpl (ordinal, name, type, fieldValue);
+    } catch (BufferOverflowException e) {
+      output.setPosition (start);
+      updateBufferPosition ();
+      throw e;
+    }
+    updateBufferPosition ();
+  }
+  
+  @SuppressWarnings("unchecked")
+  private void writeFieldImpl (final Short ordinal, final String name, final FudgeFieldType type, final Object fieldValue) {
+    int valueSize;
+    int varDataSize;
+    if (fieldValue instanceof FudgeFieldContainer) {
+      valueSize = getSubMessageSize ((FudgeFieldContainer)fieldValue);
+      varDataSize = valueSize;
+    } else if (type.isVariableSize ()) {
+      valueSize = type.getVariableSize (fieldValue, getCurrentTaxonomy ());
+      varDataSize = valueSize;
+    } else {
+      valueSize = type.getFixedSize ();
+      varDataSize = 0;
+    }
+    final int fieldPrefix = FudgeFieldPrefixCodec.composeFieldPrefix (!type.isVariableSize (), varDataSize, (ordinal != null), (name != null));
+    final ByteBuffer buffer = getDataOutput ().getBuffer ();
+    buffer.put ((byte)fieldPrefix);
+    buffer.put ((byte)type.getTypeId ());
+    if (ordinal != null) {
+      buffer.putShort (ordinal);
+    }
+    if (name != null) {
+      final byte[] utf8 = FieldNameCache.encode (name);
+      if (utf8.length > 0xFF) {
+        throw new IllegalArgumentException ("UTF-8 encoded field name cannot exceed 255 characters. Name \"" + name + "\" is " + utf8.length + " bytes encoded.");
+      }
+      buffer.put ((byte)utf8.length);
+      buffer.put (utf8);
+    }
+    writeFieldValue (type, fieldValue, valueSize);
+  }
+
+  /**
+   * Returns the encoded size of a sub-message. The sizes of a top level sub-message and everything nested within it
+   * are calculated once and held until the sub-message has been written, so that nested sub-messages are not sized
+   * again at each level.
+   * 
+   * @param subMessage the sub-message
+   * @return the size of the sub-message payload in bytes
+   */
+  protected int getSubMessageSize (final FudgeFieldContainer subMessage) {
+    if (_subMessageSizes == null) {
+      _subMessageSizes = new IdentityHashMap<FudgeFieldContainer, Integer> ();
+    } else if (_subMessageDepth == 0) {
+      // discard anything left from a previous field that failed to write
+      _subMessageSizes.clear ();
+    }
+    return FudgeSize.calculateSubMessageSize (getCurrentTaxonomy (), subMessage, _subMessageSizes);
+  }
+  
+  /**
+   * Writes a field value, preceded by its size if the type is variable width. Known types are written directly
+   * to the buffer; primitive arrays use bulk transfers through view buffers.
+   * 
+   * @param type the {@link FudgeFieldType} defining how to write this
+   * @param value the value to write
+   * @param valueSize the size of the value
+   */
+  @SuppressWarnings("unchecked")
+  protected void writeFieldValue (final FudgeFieldType type, final Object value, final int valueSize) {
+    final ByteBuffer buffer = getDataOutput ().getBuffer ();
+    switch (type.getTypeId ()) {
+    case FudgeTypeDictionary.BOOLEAN_TYPE_ID:
+      buffer.put (((Boolean)value) ? (byte)1 : (byte)0);
+      return;
+    case FudgeTypeDictionary.BYTE_TYPE_ID:
+      buffer.put ((Byte)value);
+      return;
+    case FudgeTypeDictionary.SHORT_TYPE_ID:
+      buffer.putShort ((Short)value);
+      return;
+    case FudgeTypeDictionary.INT_TYPE_ID:
+      buffer.putInt ((Integer)value);
+      return;
+    case FudgeTypeDictionary.LONG_TYPE_ID:
+      buffer.putLong ((Long)value);
+      return;
+    case FudgeTypeDictionary.FLOAT_TYPE_ID:
+      buffer.putFloat ((Float)value);
+      return;
+    case FudgeTypeDictionary.DOUBLE_TYPE_ID:
+      buffer.putDouble ((Double)value);
+      return;
+    }
+    if (type.isVariableSize ()) {
+      // This is correct. We read this using a .readUnsignedByte(), so we can go to
+      // 255 here.
+      if (valueSize <= 255) {
+        buffer.put ((byte)valueSize);
+      } else if (valueSize <= Short.MAX_VALUE) {
+        buffer.putShort ((short)valueSize);
+      } else {
+        buffer.putInt (valueSize);
+      }
+    }
+    final int typeId = type.getTypeId ();
+    if (value instanceof FudgeFieldContainer) {
+      _subMessageDepth++;
+      try {
+        writeFields ((FudgeFieldContainer)value);
+      } finally {
+        if ((--_subMessageDepth == 0) && (_subMessageSizes != null)) {
+          _subMessageSizes.clear ();
+        }
+      }
+    } else if ((typeId == FudgeTypeDictionary.STRING_TYPE_ID) && (value instanceof String)) {
+      UTF8.encode ((String)value, buffer);
+    } else if ((type.getJavaType () == byte[].class) && (value instanceof byte[]) && (type.isVariableSize () || (((byte[])value).length == type.getFixedSize ()))) {
+      buffer.put ((byte[])value);
+    } else if ((typeId == FudgeTypeDictionary.DOUBLE_ARRAY_TYPE_ID) && (value instanceof double[])) {
+      final double[] array = (double[])value;
+      buffer.asDoubleBuffer ().put (array);
+      buffer.position (buffer.position () + array.length * 8);
+    } else if ((typeId == FudgeTypeDictionary.FLOAT_ARRAY_TYPE_ID) && (value instanceof float[])) {
+      final float[] array = (float[])value;
+      buffer.asFloatBuffer ().put (array);
+      buffer.position (buffer.position () + array.length * 4);
+    } else if ((typeId == FudgeTypeDictionary.LONG_ARRAY_TYPE_ID) && (value instanceof long[])) {
+      final long[] array = (long[])value;
+      buffer.asLongBuffer ().put (array);
+      buffer.position (buffer.position () + array.length * 8);
+    } else if ((typeId == FudgeTypeDictionary.INT_ARRAY_TYPE_ID) && (value instanceof int[])) {
+      final int[] array = (int[])value;
+      buffer.asIntBuffer ().put (array);
+      buffer.position (buffer.position () + array.length * 4);
+    } else if ((typeId == FudgeTypeDictionary.SHORT_ARRAY_TYPE_ID) && (value instanceof short[])) {
+      final short[] array = (short[])value;
+      buffer.asShortBuffer ().put (array);
+      buffer.position (buffer.position () + array.length * 2);
+    } else {
+      try {
+        type.writeValue (getDataOutput (), value);
+      } catch (IOException e) {
+        throw new FudgeRuntimeIOException (e);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString () {
+    return "FudgeByteBufferWriter{" + getBuffer () + "}";
+  }
+  
+}
@@ -21,7 +21,12 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
+import org.fudgemsg.compression.DeflateCompressionCodec;
+import org.fudgemsg.compression.FudgeCompressionCodec;
+import org.fudgemsg.compression.LZ4CompressionCodec;
 import org.fudgemsg.mapping.FudgeDeserializationContext;
 import org.fudgemsg.mapping.FudgeObjectDictionary;
 import org.fudgemsg.mapping.FudgeObjectReader;
@@ -72,16 +77,25 @@ public class FudgeContext implements FudgeMessageFactory {
    */
   public static final FudgeMsgEnvelope EMPTY_MESSAGE_ENVELOPE = new FudgeMsgEnvelope (EMPTY_MESSAGE);
   
+  /**
+   * The default upper limit on the size a compressed envelope may expand to.
+   */
+  public static final int DEFAULT_MAX_DECOMPRESSED_SIZE = 64 * 1024 * 1024;
+  
   private FudgeTypeDictionary _typeDictionary;
   private FudgeObjectDictionary _objectDictionary;
   private TaxonomyResolver _taxonomyResolver = null;
+  private volatile FudgeCompressionCodec[] _compressionCodecs = new FudgeCompressionCodec[256];
+  private volatile int _maxDecompressedSize = DEFAULT_MAX_DECOMPRESSED_SIZE;
 
   /**
-   * Constructs a new FudgeContext with a default type and object dictionary.
+   * Constructs a new FudgeContext with a default type and object dictionary, and the standard compression codecs.
    */
   public FudgeContext() {
     _typeDictionary = new FudgeTypeDictionary();
     _objectDictionary = new FudgeObjectDictionary();
+    _compressionCodecs[DeflateCompressionCodec.CODEC_ID] = new DeflateCompressionCodec();
+    _compressionCodecs[LZ4CompressionCodec.CODEC_ID] = new LZ4CompressionCodec();
   }
 
   /**
@@ -93,6 +107,8 @@ public class FudgeContext implements FudgeMessageFactory {
   public FudgeContext(final FudgeContext other) {
     _typeDictionary = new FudgeTypeDictionary(other.getTypeDictionary());
     _objectDictionary = new FudgeObjectDictionary(other.getObjectDictionary());
+    _compressionCodecs = other._compressionCodecs.clone();
+    _maxDecompressedSize = other._maxDecompressedSize;
   }
 
   /**
@@ -160,6 +176,60 @@ public class FudgeContext implements FudgeMessageFactory {
     _objectDictionary = objectDictionary;
   }
   
+  /**
+   * Returns the compression codec registered with an identifier, used to decompress envelopes with the
+   * {@link FudgeMsgEnvelope#COMPRESSED_DIRECTIVE} flag set. A new {@code FudgeContext} starts with the
+   * {@link DeflateCompressionCodec} and {@link LZ4CompressionCodec} registered.
+   * 
+   * @param codecId the codec identifier
+   * @return the codec, or {@code null} if none is registered
+   */
+  public FudgeCompressionCodec getCompressionCodec(final int codecId) {
+    if ((codecId < 0) || (codecId > 255)) {
+      return null;
+    }
+    return _compressionCodecs[codecId];
+  }
+
+  /**
+   * Registers a compression codec, replacing any already registered with the same identifier.
+   * 
+   * @param codec the codec to register
+   */
+  public synchronized void registerCompressionCodec(final FudgeCompressionCodec codec) {
+    final int codecId = codec.getCodecId();
+    if ((codecId < 0) || (codecId > 255)) {
+      throw new IllegalArgumentException("Codec identifier " + codecId + " must fit in one byte");
+    }
+    final FudgeCompressionCodec[] codecs = _compressionCodecs.clone();
+    codecs[codecId] = codec;
+    _compressionCodecs = codecs;
+  }
+
+  /**
+   * Returns the largest body, excluding the envelope header, that a compressed envelope may expand to. The size of the
+   * uncompressed body is read from the envelope before it is decompressed, so envelopes claiming a larger size are
+   * rejected before any space is allocated for them.
+   * 
+   * @return the maximum size in bytes
+   */
+  public int getMaxDecompressedSize() {
+    return _maxDecompressedSize;
+  }
+
+  /**
+   * Sets the largest body, excluding the envelope header, that a compressed envelope may expand to. The default is
+   * {@link #DEFAULT_MAX_DECOMPRESSED_SIZE}.
+   * 
+   * @param maxDecompressedSize the maximum size in bytes
+   */
+  public void setMaxDecompressedSize(final int maxDecompressedSize) {
+    if (maxDecompressedSize < 0) {
+      throw new IllegalArgumentException("Maximum decompressed size must not be negative");
+    }
+    _maxDecompressedSize = maxDecompressedSize;
+  }
+  
   /**
    * {@inheritDoc}
    */ 
@@ -209,6 +279,39 @@ public class FudgeContext implements FudgeMessageFactory {
     writer.writeMessageEnvelope(envelope, realTaxonomyId);
   }
   
+  /**
+   * Encodes a Fudge message object directly into a {@link ByteBuffer} with an
+   * optional taxonomy reference. The message is written at the buffer's position
+   * and the position is advanced past the encoded message.
+   * <p>
+   * If the buffer does not have enough space remaining a {@link BufferOverflowException}
+   * is thrown and the buffer position is left unchanged. The caller may retry with a buffer
+   * of at least {@link FudgeSize#calculateMessageEnvelopeSize(FudgeFieldContainer)} bytes.
+   * 
+   * @param msg
+   *          the {@code FudgeFieldContainer} to write
+   * @param taxonomyId
+   *          the identifier of the taxonomy to use. Specify {@code null} for no
+   *          taxonomy.
+   * @param buffer
+   *          the {@code ByteBuffer} to write to
+   * @return the number of bytes written
+   * @throws BufferOverflowException if the buffer is too small
+   */
+  public int serialize(FudgeFieldContainer msg, Short taxonomyId, ByteBuffer buffer) {
+    int realTaxonomyId = (taxonomyId == null) ? 0 : taxonomyId.intValue();
+    final int position = buffer.position();
+    FudgeByteBufferWriter streamWriter = new FudgeByteBufferWriter(this, buffer);
+    FudgeMsgWriter writer = new FudgeMsgWriter(streamWriter);
+    try {
+      writer.writeMessageEnvelope(new FudgeMsgEnvelope(msg), realTaxonomyId);
+    } catch (BufferOverflowException e) {
+      buffer.position(position);
+      throw e;
+    }
+    return streamWriter.getBytesWritten();
+  }
+
   /**
    * Returns the Fudge encoded form of a {@link FudgeFieldContainer} as a {@code byte} array
    * with a taxonomy reference. The encoding includes an envelope header.
@@ -249,6 +352,10 @@ public class FudgeContext implements FudgeMessageFactory {
   /**
    * Decodes a Fudge message from a {@code byte} array. If the array is
    * larger than the Fudge envelope, any additional data is ignored.
+   * <p>
+   * The array is decoded through the same stream reader as {@link #deserialize(InputStream)},
+   * keeping a single decoder on the common path. Wrap the array and call
+   * {@link #deserialize(ByteBuffer)} to decode it in place with a {@link FudgeByteBufferReader}.
    * 
    * @param bytes
    *          an array containing the encoded Fudge message including its envelope
@@ -258,7 +365,47 @@ public class FudgeContext implements FudgeMessageFactory {
     ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
     return deserialize(bais);
   }
-  
+
+  /**
+   * Decodes a Fudge message from the remaining content of a {@link ByteBuffer}. If the buffer
+   * contains more than the Fudge envelope, any additional data is ignored. The position of the
+   * buffer is not changed.
+   * 
+   * @param buffer a buffer containing the encoded Fudge message including its envelope
+   * @return the decoded {@link FudgeMsgEnvelope}
+   */
+  public FudgeMsgEnvelope deserialize(ByteBuffer buffer) {
+    FudgeMsgReader reader = createMessageReader (buffer);
+    FudgeMsgEnvelope envelope = reader.nextMessageEnvelope ();
+    return envelope;
+  }
+
+  /**
+   * Decodes a Fudge message from a {@code byte} array lazily. Fields are only parsed and
+   * decoded when they are requested from the returned {@link LazyFudgeMsg}, so the array
+   * must not be modified while the message is in use.
+   *
+   * @param bytes
+   *          an array containing the encoded Fudge message including its envelope
+   * @return the {@link FudgeMsgEnvelope} containing a {@link LazyFudgeMsg}
+   */
+  public FudgeMsgEnvelope deserializeLazy(byte[] bytes) {
+    return deserializeLazy(ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * Decodes a Fudge message from the remaining content of a {@link ByteBuffer} lazily. Fields
+   * are only parsed and decoded when they are requested from the returned {@link LazyFudgeMsg},
+   * so the buffer content must not be modified while the message is in use. The position of the
+   * buffer is not changed.
+   *
+   * @param buffer a buffer containing the encoded Fudge message including its envelope
+   * @return the {@link FudgeMsgEnvelope} containing a {@link LazyFudgeMsg}
+   */
+  public FudgeMsgEnvelope deserializeLazy(ByteBuffer buffer) {
+    return LazyFudgeMsg.decodeEnvelope(this, buffer);
+  }
+
   /**
    * Creates a new reader for extracting Fudge stream elements from an {@link InputStream}.
    * 
@@ -279,6 +426,26 @@ public class FudgeContext implements FudgeMessageFactory {
     return new FudgeDataInputStreamReader (this, di);
   }
   
+  /**
+   * Creates a new reader for extracting Fudge stream elements directly from a {@code byte} array.
+   * 
+   * @param bytes the array to read from
+   * @return the {@link FudgeStreamReader}
+   */
+  public FudgeStreamReader createReader (final byte[] bytes) {
+    return new FudgeByteBufferReader (this, bytes);
+  }
+  
+  /**
+   * Creates a new reader for extracting Fudge stream elements directly from the remaining content of a {@link ByteBuffer}.
+   * 
+   * @param buffer the buffer to read from
+   * @return the {@link FudgeStreamReader}
+   */
+  public FudgeStreamReader createReader (final ByteBuffer buffer) {
+    return new FudgeByteBufferReader (this, buffer);
+  }
+  
   /**
    * Creates a new writer for encoding Fudge stream elements to a {@link OutputStream}.
    * 
@@ -289,6 +456,16 @@ public class FudgeContext implements FudgeMessageFactory {
     return new FudgeDataOutputStreamWriter(this, outputStream);
   }
   
+  /**
+   * Creates a new writer for encoding Fudge stream elements directly into a {@link ByteBuffer}.
+   * 
+   * @param buffer the {@code ByteBuffer} to write to
+   * @return the {@link FudgeStreamWriter}
+   */
+  public FudgeStreamWriter createWriter (final ByteBuffer buffer) {
+    return new FudgeByteBufferWriter (this, buffer);
+  }
+  
   /**
    * Creates a new writer for encoding Fudge stream elements to a {@link DataOutput}.
    * 
@@ -319,6 +496,16 @@ public class FudgeContext implements FudgeMessageFactory {
     return new FudgeMsgReader (createReader (inputStream));
   }
   
+  /**
+   * Creates a new reader for extracting whole Fudge messages directly from the remaining content of a {@link ByteBuffer}.
+   * 
+   * @param buffer the source of data
+   * @return the {@code FudgeMsgReader}
+   */
+  public FudgeMsgReader createMessageReader (final ByteBuffer buffer) {
+    return new FudgeMsgReader (createReader (buffer));
+  }
+  
   /**
    * Creates a new writer for sending whole Fudge messages to a {@link DataOutput} target.
    * 
@@ -329,6 +516,16 @@ public class FudgeContext implements FudgeMessageFactory {
     return new FudgeMsgWriter (createWriter (dataOutput));
   }
   
+  /**
+   * Creates a new writer for sending whole Fudge messages directly into a {@link ByteBuffer}.
+   * 
+   * @param buffer the buffer to write to
+   * @return the {@link FudgeMsgWriter}
+   */
+  public FudgeMsgWriter createMessageWriter (final ByteBuffer buffer) {
+    return new FudgeMsgWriter (createWriter (buffer));
+  }
+  
   /**
    * Creates a new writer for sending whole Fudge messages to a {@link OutputStream} target.
    * 
@@ -22,24 +22,30 @@ import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Stack;
 
 import org.fudgemsg.taxon.FudgeTaxonomy;
+import org.fudgemsg.taxon.SessionTaxonomy;
 
 /**
  * An implementation of {@link FudgeStreamReader} for consuming data from a {@link DataInput}.
  */
-public class FudgeDataInputStreamReader implements FudgeStreamReader {
+public class FudgeDataInputStreamReader implements PrimitiveFudgeStreamReader {
   
   private static class MessageProcessingState {
     public int messageSize;
     public int consumed;
+    public FudgeFieldProjection projection;
   }
   
   // Injected Inputs:
   private final DataInput _dataInput;
   private final FudgeContext _fudgeContext;
   
+  // Set to the decompressed body while reading a compressed envelope
+  private DataInput _envelopeInput;
+  
   // Runtime State:
   private final Stack<MessageProcessingState> _processingStack = new Stack<MessageProcessingState>();
   private FudgeStreamElement _currentElement;
@@ -57,6 +63,38 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
   private String _fieldName;
   private Object _fieldValue;
   
+  // Set for a field of one of the standard primitive types, which is only boxed on request
+  private boolean _fieldPrimitive;
+  private long _fieldBits;
+  
+  // Set for a primitive array field, whose value is only read from the stream on request
+  private boolean _fieldArrayPending;
+  private DataInput _fieldArrayInput;
+  private int _fieldArraySize;
+  private FudgeArrayInputStream _fieldArrayStream;
+  
+  // Fields to decode, null for all
+  private FudgeFieldProjection _projection;
+  // Projection applied to the current envelope, null if all fields are decoded
+  private FudgeFieldProjection _envelopeProjection;
+  
+  // Set when the header of the next field has been read ahead to apply a projection
+  private boolean _headerPending;
+  private boolean _pendingFixedWidth;
+  private FudgeFieldType<?> _pendingType;
+  private Integer _pendingOrdinal;
+  private String _pendingName;
+  private int _pendingSize;
+  
+  // Field names learnt from the stream, and whether the current envelope uses them
+  private SessionTaxonomy _sessionTaxonomy;
+  private boolean _sessionEnvelope;
+  
+  // Set if the current envelope is in the compact profile, in which a long value is read with the field header
+  private boolean _compactEnvelope;
+  private boolean _pendingCompactLong;
+  private long _pendingLongBits;
+  
   private static DataInput convertInputStream (final InputStream inputStream) {
     //System.out.println ("FudgeDataInputStreamReader::convertInputStream(" + inputStream + ")");
     if (inputStream == null) {
@@ -114,8 +152,12 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
     }
     _currentElement = null;
     _processingStack.clear();
+    _envelopeInput = null;
+    _envelopeProjection = null;
     
     _processingDirectives = 0;
+    _sessionEnvelope = false;
+    _compactEnvelope = false;
     _schemaVersion = 0;
     _taxonomyId = 0;
     _envelopeSize = 0;
@@ -124,6 +166,54 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
     _fieldOrdinal = null;
     _fieldName = null;
     _fieldValue = null;
+    _fieldPrimitive = false;
+    _fieldArrayPending = false;
+    _fieldArrayInput = null;
+    _fieldArrayStream = null;
+    
+    _headerPending = false;
+    _pendingType = null;
+    _pendingOrdinal = null;
+    _pendingName = null;
+  }
+  
+  /**
+   * Returns the projection selecting the fields to decode.
+   * 
+   * @return the projection, or {@code null} if all fields are decoded
+   */
+  public FudgeFieldProjection getProjection () {
+    return _projection;
+  }
+  
+  /**
+   * Sets the projection selecting the fields to decode, taking effect from the next message envelope. Fields that
+   * are not selected are skipped without being decoded and are not returned by {@link #next()}.
+   * 
+   * @param projection the projection, or {@code null} to decode all fields
+   */
+  public void setProjection (final FudgeFieldProjection projection) {
+    _projection = projection;
+  }
+  
+  /**
+   * Returns the session taxonomy holding the field names learnt from envelopes written with the
+   * {@link FudgeMsgEnvelope#SESSION_TAXONOMY_DIRECTIVE} flag set.
+   * 
+   * @return the session taxonomy, or {@code null} if no such envelope has been read and none has been set
+   */
+  public SessionTaxonomy getSessionTaxonomy () {
+    return _sessionTaxonomy;
+  }
+  
+  /**
+   * Sets the session taxonomy to resolve and learn field names with. The reader creates its own when the first
+   * envelope using one is read, so this need only be set if reading continues a stream started by another reader.
+   * 
+   * @param sessionTaxonomy the session taxonomy, or {@code null} to create one when needed
+   */
+  public void setSessionTaxonomy (final SessionTaxonomy sessionTaxonomy) {
+    _sessionTaxonomy = sessionTaxonomy;
   }
 
   /**
@@ -163,9 +253,116 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
    */
   @Override
   public Object getFieldValue() {
+    if (_fieldPrimitive && (_fieldValue == null)) {
+      _fieldValue = PrimitiveFudgeMsgField.box (_fieldType, _fieldBits);
+    } else if (_fieldArrayPending) {
+      _fieldArrayPending = false;
+      _fieldValue = readFieldValue (_fieldArrayInput, _fieldType, _fieldArraySize);
+    } else if (_fieldArrayStream != null) {
+      throw new IllegalStateException ("Field value has already been streamed");
+    }
     return _fieldValue;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public FudgeArrayInputStream getFieldValueStream () {
+    if (_fieldArrayPending) {
+      _fieldArrayPending = false;
+      _fieldArrayStream = new FudgeArrayInputStream (_fieldType, _fieldArrayInput, _fieldArraySize);
+      return _fieldArrayStream;
+    }
+    if (_fieldArrayStream != null) {
+      throw new IllegalStateException ("Field value has already been streamed");
+    }
+    final FudgeField field = getCurrentField ();
+    if (!FudgeArrayInputStream.isArrayType (field.getType ())) {
+      throw new IllegalStateException ("Field type " + field.getType () + " is not a primitive array type");
+    }
+    return FudgeArrayInputStream.of (field.getType (), field.getValue ());
+  }
+  
+  /**
+   * Skips any part of the current field value that has not been read, leaving the input stream positioned at the
+   * start of the next field.
+   * 
+   * @throws IOException if the underlying stream raises one
+   */
+  private void skipFieldValue () throws IOException {
+    if (_fieldArrayPending) {
+      _fieldArrayPending = false;
+      skipFully (_fieldArrayInput, _fieldArraySize);
+    } else if (_fieldArrayStream != null) {
+      _fieldArrayStream.close ();
+      _fieldArrayStream = null;
+    }
+  }
+
+  /**
+   * Moves the input stream past any part of the current field value that has not been read, without changing the
+   * value later returned for the field. A pending array is decoded so that {@link #getFieldValue()} still returns it;
+   * the unread part of a partially read array stream is skipped, as it would be by the next call to {@link #next()}.
+   * 
+   * @throws IOException if the underlying stream raises one
+   */
+  private void readPastFieldValue () throws IOException {
+    if (_fieldArrayPending) {
+      _fieldArrayPending = false;
+      _fieldValue = readFieldValue (_fieldArrayInput, _fieldType, _fieldArraySize);
+    } else if (_fieldArrayStream != null) {
+      _fieldArrayStream.close ();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getFieldValueAsDouble () {
+    if (_fieldPrimitive) {
+      return PrimitiveFudgeMsgField.toDouble (_fieldType, _fieldBits);
+    }
+    return getFudgeContext ().getTypeDictionary ().getFieldDoubleValue (getCurrentField ());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getFieldValueAsLong () {
+    if (_fieldPrimitive && (_fieldType.getTypeId () != FudgeTypeDictionary.FLOAT_TYPE_ID) && (_fieldType.getTypeId () != FudgeTypeDictionary.DOUBLE_TYPE_ID)) {
+      return _fieldBits;
+    }
+    return getFudgeContext ().getTypeDictionary ().getFieldLongValue (getCurrentField ());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getFieldValueAsInt () {
+    if (_fieldPrimitive && (_fieldType.getTypeId () != FudgeTypeDictionary.FLOAT_TYPE_ID) && (_fieldType.getTypeId () != FudgeTypeDictionary.DOUBLE_TYPE_ID)
+        && (_fieldBits >= Integer.MIN_VALUE) && (_fieldBits <= Integer.MAX_VALUE)) {
+      return (int)_fieldBits;
+    }
+    return getFudgeContext ().getTypeDictionary ().getFieldIntValue (getCurrentField ());
+  }
+  
+  /**
+   * Returns the current simple field, for conversion of its value.
+   * 
+   * @return the field
+   * @throws IllegalStateException if the current element is not a simple field
+   */
+  private FudgeField getCurrentField () {
+    if (_currentElement != FudgeStreamElement.SIMPLE_FIELD) {
+      throw new IllegalStateException ("Current element " + _currentElement + " is not a simple field");
+    }
+    return FudgeMsgField.of (_fieldType, getFieldValue ());
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -216,12 +413,23 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
       return true;
     } else if(_processingStack.size() == 1) {
       MessageProcessingState messageProcessingState = _processingStack.peek();
-      if (messageProcessingState.consumed < messageProcessingState.messageSize) {
+      try {
+        // The size of an unread field value is already counted in consumed, so only look past it to find the next
+        // field header for a projection
+        if (messageProcessingState.projection != null && !_headerPending && (messageProcessingState.consumed < messageProcessingState.messageSize)) {
+          readPastFieldValue ();
+          skipExcludedFields ();
+        }
+      } catch (IOException e) {
+        throw new FudgeRuntimeIOException (e);
+      }
+      if (_headerPending || (messageProcessingState.consumed < messageProcessingState.messageSize)) {
         // More to read
         return true;
       } else {
         // End of the outermost envelope, so clear the stack and return a temporary false
         _processingStack.pop ();
+        _envelopeInput = null;
         return false;
       }
     } else {
@@ -237,18 +445,24 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
   public FudgeStreamElement next() {
     //System.out.println ("FudgeDataInputStreamReader::next()");
     try {
+      skipFieldValue();
       if(_processingStack.isEmpty()) {
         // Must be an envelope (or an EOF)
         if (!consumeMessageEnvelope()) {
           return null;
         }
-      } else if(isEndOfSubMessage()) {
-        _currentElement = FudgeStreamElement.SUBMESSAGE_FIELD_END;
-        _fieldName = null;
-        _fieldOrdinal = null;
-        _fieldType = null; 
       } else {
-        consumeFieldData();
+        skipExcludedFields();
+        if(isEndOfSubMessage()) {
+          _currentElement = FudgeStreamElement.SUBMESSAGE_FIELD_END;
+          _fieldName = null;
+          _fieldOrdinal = null;
+          _fieldType = null; 
+          _fieldValue = null;
+          _fieldPrimitive = false;
+        } else {
+          consumeFieldData();
+        }
       }
       assert _currentElement != null;
       return _currentElement;
@@ -270,7 +484,7 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
       return false;
     }
     MessageProcessingState processingState = _processingStack.peek();
-    if(processingState.consumed >= processingState.messageSize) {
+    if(!_headerPending && (processingState.consumed >= processingState.messageSize)) {
       _processingStack.pop();
       _processingStack.peek().consumed += processingState.consumed;
       return true;
@@ -279,12 +493,13 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
   }
   
   /**
-   * Returns the underlying {@link DataInput}.
+   * Returns the {@link DataInput} to read from; the underlying source, or the decompressed body of the current
+   * envelope if it was compressed.
    * 
    * @return the {@code DataInput}
    */
   protected DataInput getDataInput () {
-    return _dataInput;
+    return (_envelopeInput != null) ? _envelopeInput : _dataInput;
   }
 
   /**
@@ -295,6 +510,57 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
    */
   protected void consumeFieldData() throws IOException {
     //System.out.println ("FudgeDataInputStreamReader::consumeFieldData()");
+    MessageProcessingState currMsgProcessingState = _processingStack.peek();
+    if (!_headerPending) {
+      currMsgProcessingState.consumed += consumeFieldHeader ();
+    }
+    _headerPending = false;
+    _fieldName = _pendingName;
+    _fieldOrdinal = _pendingOrdinal;
+    _fieldType = _pendingType;
+    if(_fieldType.getTypeId() == FudgeTypeDictionary.FUDGE_MSG_TYPE_ID) {
+      _currentElement = FudgeStreamElement.SUBMESSAGE_FIELD_START;
+      _fieldValue = null;
+      _fieldPrimitive = false;
+      MessageProcessingState subState = new MessageProcessingState();
+      subState.messageSize = _pendingSize;
+      subState.consumed = 0;
+      if (currMsgProcessingState.projection != null) {
+        subState.projection = currMsgProcessingState.projection.getSubMessageProjection (_fieldName, _fieldOrdinal);
+      }
+      _processingStack.add(subState);
+    } else {
+      _currentElement = FudgeStreamElement.SIMPLE_FIELD;
+      if (_pendingCompactLong) {
+        _fieldValue = null;
+        _fieldPrimitive = true;
+        _fieldBits = _pendingLongBits;
+      } else if (PrimitiveFudgeMsgField.isPrimitiveType (_fieldType)) {
+        _fieldValue = null;
+        _fieldPrimitive = true;
+        _fieldBits = PrimitiveFudgeMsgField.readBits (getDataInput (), _fieldType);
+      } else if (!_pendingFixedWidth && FudgeArrayInputStream.isArrayType (_fieldType)) {
+        _fieldValue = null;
+        _fieldPrimitive = false;
+        _fieldArrayPending = true;
+        _fieldArrayInput = getDataInput ();
+        _fieldArraySize = _pendingSize;
+      } else {
+        _fieldPrimitive = false;
+        _fieldValue = readFieldValue(getDataInput(), _fieldType, _pendingFixedWidth ? 0 : _pendingSize);
+      }
+      currMsgProcessingState.consumed += _pendingSize;
+    }
+  }
+  
+  /**
+   * Reads the next field prefix and header from the input stream, holding the name, ordinal, type and payload size
+   * until the field is consumed. The input stream is left positioned at the start of the field payload.
+   * 
+   * @return the number of bytes read
+   * @throws IOException if the underlying stream raises one
+   */
+  private int consumeFieldHeader () throws IOException {
     byte fieldPrefix = getDataInput().readByte();
     int typeId = getDataInput().readUnsignedByte();
     int nRead = 2;
@@ -304,8 +570,14 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
     
     Integer ordinal = null;
     if(hasOrdinal) {
-      ordinal = new Integer(getDataInput().readShort());
-      nRead += 2;
+      if(_compactEnvelope) {
+        final int encoded = FudgeVarIntCodec.readInt(getDataInput());
+        ordinal = Integer.valueOf(FudgeVarIntCodec.decodeOrdinal(encoded));
+        nRead += FudgeVarIntCodec.getSize(encoded);
+      } else {
+        ordinal = Integer.valueOf(getDataInput().readShort());
+        nRead += 2;
+      }
     }
     
     String name = null;
@@ -315,10 +587,19 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
       name = UTF8.readString(getDataInput(), nameSize);
       nRead += nameSize;
     } else if(ordinal != null) {
-      if(getTaxonomy() != null) {
+      if(_sessionEnvelope && SessionTaxonomy.isSessionOrdinal(ordinal)) {
+        name = _sessionTaxonomy.getFieldName(ordinal.shortValue());
+        if(name == null) {
+          throw new IOException("Unknown session ordinal " + ordinal);
+        }
+        ordinal = null;
+      } else if(getTaxonomy() != null) {
         name = getTaxonomy().getFieldName(ordinal.shortValue());
       }
     }
+    if(_sessionEnvelope && hasName && (ordinal == null)) {
+      _sessionTaxonomy.addFieldName(name);
+    }
     
     FudgeFieldType<?> type = getFudgeContext().getTypeDictionary().getByTypeId(typeId);
     if(type == null) {
@@ -329,7 +610,16 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
     }
     
     int varSize = 0;
-    if(!fixedWidth) {
+    _pendingCompactLong = false;
+    if(_compactEnvelope && (typeId == FudgeTypeDictionary.LONG_TYPE_ID)) {
+      final long encoded = FudgeVarIntCodec.readLong(getDataInput());
+      nRead += FudgeVarIntCodec.getSize(encoded);
+      _pendingCompactLong = true;
+      _pendingLongBits = FudgeVarIntCodec.zigZagDecode(encoded);
+    } else if(_compactEnvelope && !fixedWidth) {
+      varSize = FudgeVarIntCodec.readInt(getDataInput());
+      nRead += FudgeVarIntCodec.getSize(varSize);
+    } else if(!fixedWidth) {
       int varSizeBytes = FudgeFieldPrefixCodec.getFieldWidthByteCount(fieldPrefix);
       switch(varSizeBytes) {
       case 0: varSize = 0; break;
@@ -340,26 +630,59 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
         throw new IOException("Illegal number of bytes indicated for variable width encoding: " + varSizeBytes);
       }
     }
+    if(varSize < 0) {
+      throw new IOException("Negative size " + varSize + " for field " + ordinal + ":" + name);
+    }
     
-    _fieldName = name;
-    _fieldOrdinal = ordinal;
-    _fieldType = type;
-    MessageProcessingState currMsgProcessingState = _processingStack.peek();
-    currMsgProcessingState.consumed += nRead;
-    if(typeId == FudgeTypeDictionary.FUDGE_MSG_TYPE_ID) {
-      _currentElement = FudgeStreamElement.SUBMESSAGE_FIELD_START;
-      _fieldValue = null;
-      MessageProcessingState subState = new MessageProcessingState();
-      subState.messageSize = varSize;
-      subState.consumed = 0;
-      _processingStack.add(subState);
-    } else {
-      _currentElement = FudgeStreamElement.SIMPLE_FIELD;
-      _fieldValue = readFieldValue(getDataInput(), _fieldType, varSize);
-      if(fixedWidth) {
-        currMsgProcessingState.consumed += type.getFixedSize();
+    _headerPending = true;
+    _pendingFixedWidth = fixedWidth;
+    _pendingName = name;
+    _pendingOrdinal = ordinal;
+    _pendingType = type;
+    _pendingSize = (fixedWidth && !_pendingCompactLong) ? type.getFixedSize() : varSize;
+    return nRead;
+  }
+  
+  /**
+   * Skips any fields of the current message or sub-message not selected by its projection, stopping at the next
+   * selected field, whose header is held for {@link #consumeFieldData()}, or the end of the message.
+   * 
+   * @throws IOException if the underlying stream raises one
+   */
+  private void skipExcludedFields () throws IOException {
+    if (_envelopeProjection == null) {
+      return;
+    }
+    final MessageProcessingState processingState = _processingStack.peek ();
+    if (processingState.projection == null) {
+      return;
+    }
+    while (!_headerPending && (processingState.consumed < processingState.messageSize)) {
+      processingState.consumed += consumeFieldHeader ();
+      if (!processingState.projection.includes (_pendingName, _pendingOrdinal)) {
+        _headerPending = false;
+        skipFully (getDataInput (), _pendingSize);
+        processingState.consumed += _pendingSize;
+      }
+    }
+  }
+  
+  /**
+   * Skips over bytes of a {@link DataInput}.
+   * 
+   * @param is the {@link DataInput} to skip within
+   * @param length number of bytes to skip
+   * @throws IOException if the end of the input is reached, or the input raises one
+   */
+  /* package */ static void skipFully (final DataInput is, int length) throws IOException {
+    while (length > 0) {
+      final int skipped = is.skipBytes (length);
+      if (skipped > 0) {
+        length -= skipped;
       } else {
-        currMsgProcessingState.consumed += varSize;
+        // skipBytes may give up before the end of the input; a read will either progress or detect the end
+        is.readByte ();
+        length--;
       }
     }
   }
@@ -405,12 +728,15 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
 
   /**
    * Reads the next message envelope from the input stream, setting internal state go be returned by getCurrentElement, getProcessingDirectives, getSchemaVersion, getTaxonomyId and getEnvelopeSize.
+   * If the envelope body is compressed it is read and decompressed in full, and the envelope is then presented as if it
+   * had not been compressed.
    * 
    * @throws IOException if the underlying data source raises an {@link IOException} other than an {@link EOFException} on the first byte of the envelope
    * @return {@code true} if there was an envelope to consume, {@code false} if an EOF was found on reading the first byte
    */
   protected boolean consumeMessageEnvelope() throws IOException {
     //System.out.println ("FudgeDataInputStreamReader::consumeMessageEnvelope()");
+    _envelopeInput = null;
     try {
       _processingDirectives = getDataInput().readUnsignedByte();
     } catch (EOFException e) {
@@ -421,6 +747,21 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
     _schemaVersion = getDataInput().readUnsignedByte();
     _taxonomyId = getDataInput().readShort();
     _envelopeSize = getDataInput().readInt();
+    if ((_processingDirectives & FudgeMsgEnvelope.COMPRESSED_DIRECTIVE) != 0) {
+      final byte[] body = EnvelopeCompression.decompress (getFudgeContext (), _dataInput, _envelopeSize, getFudgeContext ().getMaxDecompressedSize ());
+      _processingDirectives &= ~FudgeMsgEnvelope.COMPRESSED_DIRECTIVE;
+      _envelopeSize = 8 + body.length;
+      _envelopeInput = new ByteBufferDataInput (ByteBuffer.wrap (body));
+    }
+    _compactEnvelope = (_processingDirectives & FudgeMsgEnvelope.COMPACT_DIRECTIVE) != 0;
+    _processingDirectives &= ~FudgeMsgEnvelope.COMPACT_DIRECTIVE;
+    _sessionEnvelope = (_processingDirectives & FudgeMsgEnvelope.SESSION_TAXONOMY_DIRECTIVE) != 0;
+    if (_sessionEnvelope) {
+      _processingDirectives &= ~FudgeMsgEnvelope.SESSION_TAXONOMY_DIRECTIVE;
+      if (_sessionTaxonomy == null) {
+        _sessionTaxonomy = new SessionTaxonomy ();
+      }
+    }
     if(getFudgeContext().getTaxonomyResolver() != null) {
       FudgeTaxonomy taxonomy = getFudgeContext().getTaxonomyResolver().resolveTaxonomy(_taxonomyId);
       _taxonomy = taxonomy;
@@ -428,6 +769,8 @@ public class FudgeDataInputStreamReader implements FudgeStreamReader {
     MessageProcessingState processingState = new MessageProcessingState();
     processingState.consumed = 8;
     processingState.messageSize = _envelopeSize;
+    _envelopeProjection = getProjection ();
+    processingState.projection = _envelopeProjection;
     _processingStack.add(processingState);
     return true;
   }
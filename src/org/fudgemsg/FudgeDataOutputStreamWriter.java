@@ -22,19 +22,96 @@ import java.io.DataOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
+import org.fudgemsg.compression.FudgeCompressionCodec;
 import org.fudgemsg.taxon.FudgeTaxonomy;
+import org.fudgemsg.taxon.SessionTaxonomy;
 
 /**
  * Implementation of a {@link FudgeStreamWriter} that writes to a {@link DataOutput}.
  */
 public class FudgeDataOutputStreamWriter implements FudgeStreamWriter {
   
+  /**
+   * The default size of envelope, including the header, from which envelopes are compressed.
+   */
+  public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+  
   private final FudgeContext _fudgeContext;
   private final DataOutput _dataOutput;
   private FudgeTaxonomy _taxonomy = null;
   private int _taxonomyId = 0;
   private boolean _automaticFlush = true;
+  private Map<FudgeFieldContainer, Integer> _subMessageSizes;
+  private int _subMessageDepth;
+  
+  // Compression settings
+  private FudgeCompressionCodec _compressionCodec;
+  private int _compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+  
+  // Set while the body of an envelope to be compressed is being captured
+  private ByteBuffer _compressionBuffer;
+  private ByteBufferDataOutput _compressionOutput;
+  private int _compressionDirectives;
+  private int _compressionVersion;
+  
+  // Field names sent so far, when writing with a session taxonomy
+  private SessionTaxonomy _sessionTaxonomy;
+  
+  // Set to write envelopes in the compact wire profile
+  private boolean _compact;
+  
+  // Set while the elements of an array field are being written
+  private FudgeArrayOutputStream _arrayOutput;
+  
+  /**
+   * The taxonomy used to size a message written with a session taxonomy. Names are looked up in the current
+   * taxonomy, then the session taxonomy, and then in the names that will have been added to the session taxonomy
+   * by the time the field is written. The lookups must be made in the order that the fields will be written.
+   */
+  private static final class SessionSizingTaxonomy implements FudgeTaxonomy {
+    
+    private final FudgeTaxonomy _taxonomy;
+    private final SessionTaxonomy _sessionTaxonomy;
+    private Map<String, Short> _added;
+    
+    private SessionSizingTaxonomy (final FudgeTaxonomy taxonomy, final SessionTaxonomy sessionTaxonomy) {
+      _taxonomy = taxonomy;
+      _sessionTaxonomy = sessionTaxonomy;
+    }
+    
+    @Override
+    public String getFieldName (final short ordinal) {
+      if (SessionTaxonomy.isSessionOrdinal (ordinal)) {
+        return _sessionTaxonomy.getFieldName (ordinal);
+      }
+      return (_taxonomy != null) ? _taxonomy.getFieldName (ordinal) : null;
+    }
+    
+    @Override
+    public Short getFieldOrdinal (final String fieldName) {
+      Short ordinal = (_taxonomy != null) ? _taxonomy.getFieldOrdinal (fieldName) : null;
+      if (ordinal == null) {
+        ordinal = _sessionTaxonomy.getFieldOrdinal (fieldName);
+        if (ordinal == null) {
+          if (_added == null) {
+            _added = new HashMap<String, Short> ();
+          }
+          ordinal = _added.get (fieldName);
+          final int size = _sessionTaxonomy.size () + _added.size ();
+          if ((ordinal == null) && (size < SessionTaxonomy.MAX_SIZE)) {
+            _added.put (fieldName, (short)(-1 - size));
+          }
+        }
+      }
+      return ordinal;
+    }
+    
+  }
   
   private static DataOutput convertOutputStream (final OutputStream outputStream) {
     if (outputStream instanceof DataOutput) {
@@ -95,7 +172,7 @@ public class FudgeDataOutputStreamWriter implements FudgeStreamWriter {
    */
   @Override
   public void flush () {
-    final Object out = getDataOutput ();
+    final Object out = _dataOutput;
     if (out instanceof Flushable) {
       try {
         ((Flushable)out).flush ();
@@ -114,17 +191,118 @@ public class FudgeDataOutputStreamWriter implements FudgeStreamWriter {
   }
   
   /**
+   * Returns the {@link DataOutput} to write to; the underlying target, or a buffer capturing the body of an envelope
+   * that is to be compressed.
+   * 
    * @return the dataOutput
    */
   protected DataOutput getDataOutput() {
-    return _dataOutput;
+    return (_compressionOutput != null) ? _compressionOutput : _dataOutput;
+  }
+  
+  /**
+   * Returns the codec used to compress envelopes.
+   * 
+   * @return the codec, or {@code null} if envelopes are not compressed
+   */
+  public FudgeCompressionCodec getCompressionCodec () {
+    return _compressionCodec;
+  }
+  
+  /**
+   * Sets the codec used to compress envelopes at least as large as the compression threshold. The body of such an
+   * envelope is held in memory until the envelope is complete, then compressed and written with the
+   * {@link FudgeMsgEnvelope#COMPRESSED_DIRECTIVE} flag set. If compression would not make the envelope smaller it
+   * is written uncompressed. The codec must be registered with the {@link FudgeContext} of the reader.
+   * 
+   * @param compressionCodec the codec, or {@code null} to not compress envelopes (the default)
+   */
+  public void setCompressionCodec (final FudgeCompressionCodec compressionCodec) {
+    _compressionCodec = compressionCodec;
+  }
+  
+  /**
+   * Returns the size of envelope, including the header, from which envelopes are compressed.
+   * 
+   * @return the size in bytes
+   */
+  public int getCompressionThreshold () {
+    return _compressionThreshold;
+  }
+  
+  /**
+   * Sets the size of envelope, including the header, from which envelopes are compressed if a compression codec
+   * has been set. The default is {@link #DEFAULT_COMPRESSION_THRESHOLD}.
+   * 
+   * @param compressionThreshold the size in bytes
+   */
+  public void setCompressionThreshold (final int compressionThreshold) {
+    if (compressionThreshold < 0) {
+      throw new IllegalArgumentException ("Compression threshold cannot be negative");
+    }
+    _compressionThreshold = compressionThreshold;
   }
 
   /**
-   * {@inheritDoc}
+   * Returns the session taxonomy holding the field names sent so far.
+   * 
+   * @return the session taxonomy, or {@code null} if one is not being used (the default)
+   */
+  public SessionTaxonomy getSessionTaxonomy () {
+    return _sessionTaxonomy;
+  }
+  
+  /**
+   * Sets a session taxonomy with which to send field names. The first field written with a given name and no
+   * ordinal carries the name in full, which is then added to the session taxonomy so that later fields with the
+   * name are written with a session ordinal only. Envelopes are written with the
+   * {@link FudgeMsgEnvelope#SESSION_TAXONOMY_DIRECTIVE} flag set, from which a reader learns the same names. The
+   * session taxonomy should be set before the first envelope is written and the reader must see every envelope
+   * written from then on, so this is suited to long-lived connections rather than files or broadcast streams.
+   * <p>
+   * Fields may not be written with explicit ordinals from the session range while a session taxonomy is used.
+   * 
+   * @param sessionTaxonomy the session taxonomy, or {@code null} to send names in full
+   */
+  public void setSessionTaxonomy (final SessionTaxonomy sessionTaxonomy) {
+    _sessionTaxonomy = sessionTaxonomy;
+  }
+
+  /**
+   * Indicates whether envelopes are written in the compact wire profile.
+   * 
+   * @return {@code true} if envelopes are written in the compact profile, {@code false} otherwise
+   */
+  public boolean isCompact () {
+    return _compact;
+  }
+  
+  /**
+   * Sets whether to write envelopes in the compact wire profile, with the {@link FudgeMsgEnvelope#COMPACT_DIRECTIVE}
+   * flag set. Ordinals and the sizes of variable width values are written as variable length integers rather than
+   * fixed width, and long values are zig-zag encoded and written as variable length integers. This suits messages of
+   * many small fields, whose headers can otherwise be larger than their values. The envelope header is unchanged so
+   * that the stream can still be framed without decoding it. Messages to be written in the compact profile must be
+   * sized with {@link FudgeSize#calculateCompactMessageEnvelopeSize}, as {@link FudgeMsgWriter} does.
+   * 
+   * @param compact {@code true} to write in the compact profile, {@code false} for the standard profile (the default)
+   */
+  public void setCompact (final boolean compact) {
+    _compact = compact;
+  }
+
+  /**
+   * Returns the taxonomy to size messages with. If a session taxonomy is being used, this is a view of the current
+   * and session taxonomies that also tracks the names that will be added as the message is written, so a new view
+   * is returned for each message to be sized.
+   * 
+   * @return the taxonomy, or {@code null} if there is none
    */
   @Override
   public FudgeTaxonomy getCurrentTaxonomy() {
+    if (_sessionTaxonomy != null) {
+      return new SessionSizingTaxonomy (_taxonomy, _sessionTaxonomy);
+    }
     return _taxonomy;
   }
 
@@ -151,30 +329,85 @@ public class FudgeDataOutputStreamWriter implements FudgeStreamWriter {
   }
 
   /**
-   * {@inheritDoc}
+   * Writes the envelope header, or, if the envelope is to be compressed, starts capturing its body.
+   * 
+   * @param processingDirectives the processing directive flags
+   * @param schemaVersion the schema version value
+   * @param messageSize the Fudge encoded size of the underlying message, including the message envelope
    */
   @Override
   public void writeEnvelopeHeader(
       int processingDirectives,
       int schemaVersion,
       int messageSize) {
+    checkArrayFieldComplete ();
+    if (getSessionTaxonomy () != null) {
+      processingDirectives |= FudgeMsgEnvelope.SESSION_TAXONOMY_DIRECTIVE;
+    }
+    if (isCompact ()) {
+      processingDirectives |= FudgeMsgEnvelope.COMPACT_DIRECTIVE;
+    }
+    if ((getCompressionCodec () != null) && (messageSize >= getCompressionThreshold ()) && (messageSize > 8)) {
+      final int bodySize = messageSize - 8;
+      if ((_compressionBuffer == null) || (_compressionBuffer.capacity () < bodySize)) {
+        _compressionBuffer = ByteBuffer.allocate (bodySize);
+      }
+      _compressionBuffer.clear ();
+      _compressionOutput = new ByteBufferDataOutput (_compressionBuffer);
+      _compressionDirectives = processingDirectives;
+      _compressionVersion = schemaVersion;
+      return;
+    }
+    _compressionOutput = null;
+    writeHeader (processingDirectives, schemaVersion, messageSize);
+  }
+  
+  private void writeHeader (final int processingDirectives, final int schemaVersion, final int messageSize) {
+    try {
+      _dataOutput.writeByte(processingDirectives);
+      _dataOutput.writeByte(schemaVersion);
+      _dataOutput.writeShort(getCurrentTaxonomyId ());
+      _dataOutput.writeInt(messageSize);
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException (e);
+    }
+  }
+  
+  /**
+   * Compresses the captured body of an envelope and writes the envelope to the underlying target.
+   */
+  private void writeCompressedEnvelope () {
+    final int bodySize = _compressionOutput.getPosition ();
+    _compressionOutput = null;
+    final byte[] body = _compressionBuffer.array ();
+    final byte[] compressed = getCompressionCodec ().compress (body, 0, bodySize);
     try {
-      getDataOutput().writeByte(processingDirectives);
-      getDataOutput().writeByte(schemaVersion);
-      getDataOutput().writeShort(getCurrentTaxonomyId ());
-      getDataOutput().writeInt(messageSize);
+      if (compressed.length + EnvelopeCompression.COMPRESSION_HEADER_SIZE < bodySize) {
+        writeHeader (_compressionDirectives | FudgeMsgEnvelope.COMPRESSED_DIRECTIVE, _compressionVersion, 8 + EnvelopeCompression.COMPRESSION_HEADER_SIZE + compressed.length);
+        _dataOutput.writeByte (getCompressionCodec ().getCodecId ());
+        _dataOutput.writeInt (bodySize);
+        _dataOutput.write (compressed);
+      } else {
+        writeHeader (_compressionDirectives, _compressionVersion, 8 + bodySize);
+        _dataOutput.write (body, 0, bodySize);
+      }
     } catch (IOException e) {
       throw new FudgeRuntimeIOException (e);
     }
   }
   
   /**
-   * No data is written - the end of the envelope is implied by the size from the header. If the writer is set
-   * to automatically flush on message completion (the default) then {@link #flush()} will be called to flush
-   * the underlying stream if possible.
+   * No data is written - the end of the envelope is implied by the size from the header - unless the envelope is
+   * being compressed, in which case the compressed envelope is written. If the writer is set to automatically flush
+   * on message completion (the default) then {@link #flush()} will be called to flush the underlying stream if
+   * possible.
    */
   @Override
   public void envelopeComplete () {
+    checkArrayFieldComplete ();
+    if (_compressionOutput != null) {
+      writeCompressedEnvelope ();
+    }
     if (isFlushOnEnvelopeComplete ()) {
       flush ();
     }
@@ -203,11 +436,41 @@ public class FudgeDataOutputStreamWriter implements FudgeStreamWriter {
    */
   @Override
   public void writeFields(FudgeFieldContainer msg) {
+    // a retained encoding is in the standard profile
+    final ByteBuffer encoded = isCompact () ? null : FudgeSize.getRetainedEncoding (getCurrentTaxonomy (), msg);
+    if (encoded != null) {
+      writeEncoded (encoded);
+      return;
+    }
     for(FudgeField field : msg.getAllFields()) {
       writeField(field);
     }
   }
   
+  /**
+   * Copies already encoded data, such as the retained encoding of an unmodified message or a batch of envelopes
+   * encoded elsewhere, to the output verbatim.
+   * 
+   * @param encoded buffer positioned over the encoded data
+   */
+  protected void writeEncoded (final ByteBuffer encoded) {
+    checkArrayFieldComplete ();
+    try {
+      if (encoded.hasArray ()) {
+        getDataOutput ().write (encoded.array (), encoded.arrayOffset () + encoded.position (), encoded.remaining ());
+      } else {
+        final byte[] chunk = new byte[Math.min (encoded.remaining (), 8192)];
+        while (encoded.hasRemaining ()) {
+          final int length = Math.min (encoded.remaining (), chunk.length);
+          encoded.get (chunk, 0, length);
+          getDataOutput ().write (chunk, 0, length);
+        }
+      }
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException (e);
+    }
+  }
+  
 /**
  * {@inheritDoc}
  */
@@ -236,46 +499,280 @@ public class FudgeDataOutputStreamWriter implements FudgeStreamWriter {
     //11/12/09 Andrew: If a taxonomy is being used, should we attempt to validate against it (i.e. refuse a mismatching fieldname/ordinal)
     //11/12/09 Andrew: If name, ordinal and taxonomy are supplied, should we not write out the name (this would happen if no ordinal was supplied) 
     
-    if((name != null) && (ordinal == null) && (getCurrentTaxonomy() != null)) {
-      ordinal = getCurrentTaxonomy().getFieldOrdinal(name);
+    checkArrayFieldComplete();
+    if(ordinal == null) {
+      ordinal = resolveOrdinal(name);
       if(ordinal != null) {
         name = null;
       }
+    } else {
+      checkOrdinal(ordinal);
+    }
+    if(isCompact()) {
+      writeCompactField(ordinal, name, type, fieldValue);
+      return;
     }
     int valueSize = 0;
     int varDataSize = 0;
-    if(type.isVariableSize()) {
+    if(fieldValue instanceof FudgeFieldContainer) {
+      valueSize = getSubMessageSize((FudgeFieldContainer)fieldValue);
+      varDataSize = valueSize;
+    } else if(type.isVariableSize()) {
       valueSize = type.getVariableSize(fieldValue, getCurrentTaxonomy());
       varDataSize = valueSize;
     } else {
       valueSize = type.getFixedSize();
       varDataSize = 0;
     }
-    int fieldPrefix = FudgeFieldPrefixCodec.composeFieldPrefix(!type.isVariableSize(), varDataSize, (ordinal != null), (name != null));
     
     // Start writing.
     try {
-      getDataOutput().writeByte(fieldPrefix);
-      getDataOutput().writeByte(type.getTypeId());
-      if(ordinal != null) {
-        getDataOutput().writeShort(ordinal.intValue());
+      writeFieldHeader(type, varDataSize, ordinal, name);
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException (e);
+    }
+    
+    writeFieldValue(type, fieldValue, valueSize);
+  }
+  
+  /**
+   * Starts writing a field holding an array of a primitive type, returning a stream to write the elements to. The
+   * field header is written immediately, and the elements are written to the underlying target as they are passed to
+   * the stream, so the array need never be held in full. Exactly {@code length} elements must be written to the
+   * stream before any other field is written or the envelope completed.
+   * <p>
+   * The size of the field, for the envelope header, is given by
+   * {@link FudgeSize#calculateArrayFieldSize(FudgeTaxonomy, Short, String, FudgeFieldType, int)}, or by
+   * {@link FudgeSize#calculateCompactArrayFieldSize(FudgeTaxonomy, Short, String, FudgeFieldType, int)} in the compact
+   * profile.
+   * <p>
+   * Streamed array fields are only supported by this writer. A {@link FudgeByteBufferWriter} must be given the whole
+   * array, which it writes with a bulk transfer.
+   * 
+   * @param ordinal the ordinal index of the field, or {@code null} to omit
+   * @param name the name of the field, or {@code null} to omit
+   * @param type the field type, which must hold a variable length array of a primitive type
+   * @param length the number of elements in the array
+   * @return the stream to write the elements to
+   * @throws IllegalArgumentException if the type is not a primitive array type, or the length is not valid
+   * @throws IllegalStateException if a previous array field has not been completed
+   */
+  public FudgeArrayOutputStream writeArrayField (Short ordinal, String name, final FudgeFieldType<?> type, final int length) {
+    if (!FudgeArrayInputStream.isArrayType (type)) {
+      throw new IllegalArgumentException ("Type " + type + " is not a primitive array type");
+    }
+    final int elementSize = FudgeArrayInputStream.getElementSize (type.getJavaType ());
+    if ((length < 0) || (length > Integer.MAX_VALUE / elementSize)) {
+      throw new IllegalArgumentException ("Invalid array length " + length);
+    }
+    checkArrayFieldComplete ();
+    if (ordinal == null) {
+      ordinal = resolveOrdinal (name);
+      if (ordinal != null) {
+        name = null;
+      }
+    } else {
+      checkOrdinal (ordinal);
+    }
+    final int size = length * elementSize;
+    try {
+      writeFieldHeader (type, isCompact () ? 0 : size, ordinal, name);
+      if (isCompact ()) {
+        FudgeVarIntCodec.write (getDataOutput (), size);
+      } else {
+        writeVariableSize (size);
+      }
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException (e);
+    }
+    _arrayOutput = new FudgeArrayOutputStream (type, getDataOutput (), size);
+    return _arrayOutput;
+  }
+  
+  /**
+   * Checks that all elements of the last field started with {@link #writeArrayField} have been written.
+   * 
+   * @throws IllegalStateException if the field is incomplete
+   */
+  private void checkArrayFieldComplete () {
+    if (_arrayOutput != null) {
+      if (!_arrayOutput.isComplete ()) {
+        throw new IllegalStateException (_arrayOutput.getRemaining () + " elements of the current array field have not been written");
       }
-      if(name != null) {
-        int utf8size = UTF8.getLengthBytes(name);
-        if(utf8size > 0xFF) {
-          throw new IllegalArgumentException("UTF-8 encoded field name cannot exceed 255 characters. Name \"" + name + "\" is " + utf8size + " bytes encoded.");
+      _arrayOutput = null;
+    }
+  }
+  
+  /**
+   * Checks an explicit ordinal can be written.
+   * 
+   * @param ordinal the ordinal
+   * @throws IllegalArgumentException if the ordinal is reserved for the session taxonomy
+   */
+  private void checkOrdinal (final Short ordinal) {
+    if ((getSessionTaxonomy () != null) && SessionTaxonomy.isSessionOrdinal (ordinal)) {
+      throw new IllegalArgumentException ("Ordinal " + ordinal + " is reserved for the session taxonomy");
+    }
+  }
+  
+  /**
+   * Looks up the ordinal to write a field that has only a name with, from the session taxonomy if one is in use or
+   * the current taxonomy otherwise.
+   * 
+   * @param name the field name, or {@code null} for none
+   * @return the ordinal, or {@code null} if the name must be written in full
+   */
+  private Short resolveOrdinal (final String name) {
+    if (name == null) {
+      return null;
+    } else if (getSessionTaxonomy () != null) {
+      return lookupSessionOrdinal (name);
+    } else if (getCurrentTaxonomy () != null) {
+      return getCurrentTaxonomy ().getFieldOrdinal (name);
+    } else {
+      return null;
+    }
+  }
+  
+  /**
+   * Writes the field prefix, type, ordinal and name of a field. In the compact profile the ordinal is written as a
+   * variable length integer.
+   * 
+   * @param type the field type
+   * @param varDataSize the size of a variable width value, used to set the width bits of the field prefix
+   * @param ordinal the field ordinal, or {@code null} for none
+   * @param name the field name, or {@code null} for none
+   * @throws IOException if the underlying target raises one
+   */
+  private void writeFieldHeader (final FudgeFieldType<?> type, final int varDataSize, final Short ordinal, final String name) throws IOException {
+    final DataOutput output = getDataOutput ();
+    output.writeByte (FudgeFieldPrefixCodec.composeFieldPrefix (!type.isVariableSize (), varDataSize, (ordinal != null), (name != null)));
+    output.writeByte (type.getTypeId ());
+    if (ordinal != null) {
+      if (isCompact ()) {
+        FudgeVarIntCodec.write (output, FudgeVarIntCodec.zigZagEncode ((int)ordinal));
+      } else {
+        output.writeShort (ordinal.intValue ());
+      }
+    }
+    if (name != null) {
+      final byte[] utf8 = FieldNameCache.encode (name);
+      if (utf8.length > 0xFF) {
+        throw new IllegalArgumentException ("UTF-8 encoded field name cannot exceed 255 characters. Name \"" + name + "\" is " + utf8.length + " bytes encoded.");
+      }
+      output.writeByte (utf8.length);
+      output.write (utf8);
+    }
+  }
+  
+  /**
+   * Writes the size prefix of a variable width value in the standard profile.
+   * 
+   * @param valueSize the size of the value
+   * @throws IOException if the underlying target raises one
+   */
+  private void writeVariableSize (final int valueSize) throws IOException {
+    // This is correct. We read this using a .readUnsignedByte(), so we can go to
+    // 255 here.
+    if (valueSize <= 255) {
+      getDataOutput ().writeByte (valueSize);
+    } else if (valueSize <= Short.MAX_VALUE) {
+      getDataOutput ().writeShort (valueSize);
+    } else {
+      getDataOutput ().writeInt (valueSize);
+    }
+  }
+  
+  /**
+   * Writes a field in the compact wire profile. The ordinal, the size of a variable width value and a long value are
+   * written as variable length integers. As the size of a variable width value always follows the header, the width
+   * bits of the field prefix are those of a one byte size and are ignored by readers.
+   * 
+   * @param ordinal the field ordinal, or {@code null} for none
+   * @param name the field name, or {@code null} for none
+   * @param type the field type
+   * @param fieldValue the field value
+   */
+  @SuppressWarnings("unchecked")
+  private void writeCompactField (final Short ordinal, final String name, final FudgeFieldType type, final Object fieldValue) {
+    final DataOutput output = getDataOutput ();
+    try {
+      writeFieldHeader (type, 0, ordinal, name);
+      if (fieldValue instanceof FudgeFieldContainer) {
+        FudgeVarIntCodec.write (output, getSubMessageSize ((FudgeFieldContainer)fieldValue));
+        _subMessageDepth++;
+        try {
+          writeFields ((FudgeFieldContainer)fieldValue);
+        } finally {
+          if ((--_subMessageDepth == 0) && (_subMessageSizes != null)) {
+            _subMessageSizes.clear ();
+          }
         }
-        getDataOutput().writeByte(utf8size);
-        UTF8.writeString(getDataOutput(), name);
+      } else if (type.getTypeId () == FudgeTypeDictionary.LONG_TYPE_ID) {
+        FudgeVarIntCodec.write (output, FudgeVarIntCodec.zigZagEncode (((Number)fieldValue).longValue ()));
+      } else if (type.isVariableSize ()) {
+        FudgeVarIntCodec.write (output, type.getVariableSize (fieldValue, getCurrentTaxonomy ()));
+        type.writeValue (output, fieldValue);
+      } else {
+        writeFieldValue (type, fieldValue, type.getFixedSize ());
       }
     } catch (IOException e) {
       throw new FudgeRuntimeIOException (e);
     }
-    
-    writeFieldValue(type, fieldValue, valueSize);
   }
       
 
+  /**
+   * Looks up the ordinal to write a named field with when using a session taxonomy. A name that is not in the current
+   * taxonomy or the session taxonomy is added to the session taxonomy, before the field is sized, in the same order
+   * as by {@link SessionSizingTaxonomy}.
+   * 
+   * @param name the field name
+   * @return the ordinal, or {@code null} if the name must be written in full
+   */
+  private Short lookupSessionOrdinal (final String name) {
+    Short ordinal = (_taxonomy != null) ? _taxonomy.getFieldOrdinal (name) : null;
+    if (ordinal == null) {
+      ordinal = _sessionTaxonomy.getFieldOrdinal (name);
+      if (ordinal == null) {
+        final int utf8size = FieldNameCache.getLengthBytes (name);
+        if (utf8size > 0xFF) {
+          throw new IllegalArgumentException ("UTF-8 encoded field name cannot exceed 255 characters. Name \"" + name + "\" is " + utf8size + " bytes encoded.");
+        }
+        _sessionTaxonomy.addFieldName (name);
+      }
+    }
+    return ordinal;
+  }
+
+  /**
+   * Returns the encoded size of a sub-message. The sizes of a top level sub-message and everything nested within it
+   * are calculated once and held until the sub-message has been written, so that nested sub-messages are not sized
+   * again at each level, in either profile. When using a session taxonomy each sub-message is sized as it is written,
+   * as the size depends on the names sent before it.
+   * 
+   * @param subMessage the sub-message
+   * @return the size of the sub-message payload in bytes
+   */
+  protected int getSubMessageSize (final FudgeFieldContainer subMessage) {
+    if (_sessionTaxonomy != null) {
+      if (isCompact ()) {
+        return FudgeSize.calculateCompactMessageSize (getCurrentTaxonomy (), subMessage);
+      }
+      return FudgeSize.calculateMessageSize (getCurrentTaxonomy (), subMessage);
+    }
+    if (_subMessageSizes == null) {
+      _subMessageSizes = new IdentityHashMap<FudgeFieldContainer, Integer> ();
+    } else if (_subMessageDepth == 0) {
+      // discard anything left from a previous field that failed to write
+      _subMessageSizes.clear ();
+    }
+    if (isCompact ()) {
+      return FudgeSize.calculateCompactSubMessageSize (getCurrentTaxonomy (), subMessage, _subMessageSizes);
+    }
+    return FudgeSize.calculateSubMessageSize (getCurrentTaxonomy (), subMessage, _subMessageSizes);
+  }
+  
   /**
    * @param type the {@link FudgeFieldType} defining how to write this
    * @param value the value to write
@@ -311,19 +808,18 @@ public class FudgeDataOutputStreamWriter implements FudgeStreamWriter {
         getDataOutput().writeDouble((Double)value);
       default :
         if(type.isVariableSize()) {
-          // This is correct. We read this using a .readUnsignedByte(), so we can go to
-          // 255 here.
-          if(valueSize <= 255) {
-            getDataOutput().writeByte(valueSize);
-          } else if(valueSize <= Short.MAX_VALUE) {
-            getDataOutput().writeShort(valueSize);
-          } else {
-            getDataOutput().writeInt(valueSize);
-          }
+          writeVariableSize(valueSize);
         }
         if(value instanceof FudgeFieldContainer) {
           FudgeFieldContainer subMsg = (FudgeFieldContainer) value;
-          writeFields(subMsg);
+          _subMessageDepth++;
+          try {
+            writeFields(subMsg);
+          } finally {
+            if ((--_subMessageDepth == 0) && (_subMessageSizes != null)) {
+              _subMessageSizes.clear ();
+            }
+          }
         } else {
           type.writeValue(getDataOutput(), value);
         }
@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads messages written by a {@link FudgeDeltaWriter} from a {@link FudgeMsgReader}, reconstructing each message from
+ * the last message read for the same key. Every message written must be read, in order, from the start of the stream.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class FudgeDeltaReader {
+  
+  private final FudgeMsgReader _reader;
+  
+  /**
+   * The fields of the last message read for each key.
+   */
+  private final Map<String, FudgeField[]> _previous = new HashMap<String, FudgeField[]> ();
+  
+  /**
+   * The key of the last message read.
+   */
+  private String _key;
+  
+  /**
+   * Creates a new {@link FudgeDeltaReader} reading from the given {@link FudgeMsgReader}.
+   * 
+   * @param reader the message reader
+   */
+  public FudgeDeltaReader (final FudgeMsgReader reader) {
+    if (reader == null) {
+      throw new NullPointerException ("reader cannot be null");
+    }
+    _reader = reader;
+  }
+  
+  /**
+   * Returns the underlying {@link FudgeMsgReader}.
+   * 
+   * @return the message reader
+   */
+  public FudgeMsgReader getMessageReader () {
+    return _reader;
+  }
+  
+  /**
+   * Returns the {@link FudgeContext} of the underlying reader.
+   * 
+   * @return the {@code FudgeContext}
+   */
+  public FudgeContext getFudgeContext () {
+    return getMessageReader ().getFudgeContext ();
+  }
+  
+  /**
+   * Returns true if there are more messages to read from the underlying reader.
+   * 
+   * @return {@code true} if {@link #nextMessage()} will return a message
+   */
+  public boolean hasNext () {
+    return getMessageReader ().hasNext ();
+  }
+  
+  /**
+   * Returns the key of the last message returned by {@link #nextMessage()}.
+   * 
+   * @return the key, or {@code null} if no message has been read
+   */
+  public String getKey () {
+    return _key;
+  }
+  
+  /**
+   * Reads the next message, reconstructing it if it was written as a delta.
+   * 
+   * @return the message, or {@code null} if there are no more messages
+   * @throws IllegalArgumentException if the message is not a valid delta
+   * @throws IllegalStateException if there is no previous message for the key of a delta
+   */
+  public FudgeFieldContainer nextMessage () {
+    final FudgeFieldContainer delta = getMessageReader ().nextMessage ();
+    if (delta == null) {
+      return null;
+    }
+    final String key = delta.getString (FudgeDeltaWriter.KEY_ORDINAL);
+    if (key == null) {
+      throw new IllegalArgumentException ("Message does not contain a delta key");
+    }
+    final FudgeField[] fields;
+    final FudgeFieldContainer full = delta.getMessage (FudgeDeltaWriter.FULL_ORDINAL);
+    if (full != null) {
+      final List<FudgeField> fieldList = full.getAllFields ();
+      fields = fieldList.toArray (new FudgeField[fieldList.size ()]);
+    } else {
+      final FudgeField[] previous = _previous.get (key);
+      if (previous == null) {
+        throw new IllegalStateException ("No previous message for delta with key " + key);
+      }
+      fields = applyDelta (delta, previous);
+    }
+    _previous.put (key, fields);
+    _key = key;
+    final MutableFudgeFieldContainer message = getFudgeContext ().newMessage ();
+    for (FudgeField field : fields) {
+      message.add (field);
+    }
+    return message;
+  }
+  
+  /**
+   * Applies a delta to the fields of the previous message.
+   * 
+   * @param delta the delta message
+   * @param previous the fields of the previous message
+   * @return the fields of the new message
+   */
+  private static FudgeField[] applyDelta (final FudgeFieldContainer delta, final FudgeField[] previous) {
+    final FudgeField[] updated = previous.clone ();
+    int count = updated.length;
+    final FudgeFieldContainer changed = delta.getMessage (FudgeDeltaWriter.CHANGED_ORDINAL);
+    if (changed != null) {
+      for (FudgeField field : changed) {
+        final int position = getPosition (field.getOrdinal (), previous.length);
+        final FudgeField replaced = previous[position];
+        updated[position] = new FudgeMsgField (field.getType (), field.getValue (), replaced.getName (), replaced.getOrdinal ());
+      }
+    }
+    final Object removed = delta.getValue (FudgeDeltaWriter.REMOVED_ORDINAL);
+    if (removed != null) {
+      if (!(removed instanceof int[])) {
+        throw new IllegalArgumentException ("Invalid removed field positions " + removed);
+      }
+      for (int removedPosition : (int[])removed) {
+        final int position = getPosition (removedPosition, previous.length);
+        if (updated[position] != null) {
+          updated[position] = null;
+          count--;
+        }
+      }
+    }
+    final FudgeFieldContainer added = delta.getMessage (FudgeDeltaWriter.ADDED_ORDINAL);
+    final List<FudgeField> addedFields = (added != null) ? added.getAllFields () : Collections.<FudgeField>emptyList ();
+    final FudgeField[] fields = new FudgeField[count + addedFields.size ()];
+    int i = 0;
+    for (FudgeField field : updated) {
+      if (field != null) {
+        fields[i++] = field;
+      }
+    }
+    for (FudgeField field : addedFields) {
+      fields[i++] = field;
+    }
+    return fields;
+  }
+  
+  private static int getPosition (final Number position, final int length) {
+    if ((position == null) || (position.intValue () < 0) || (position.intValue () >= length)) {
+      throw new IllegalArgumentException ("Invalid field position " + position + " in delta against message of " + length + " fields");
+    }
+    return position.intValue ();
+  }
+  
+  /**
+   * Discards the last messages read for all keys.
+   */
+  public void reset () {
+    _previous.clear ();
+    _key = null;
+  }
+  
+  /**
+   * Closes the underlying reader.
+   */
+  public void close () {
+    getMessageReader ().close ();
+    reset ();
+  }
+  
+}
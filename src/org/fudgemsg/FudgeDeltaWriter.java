@@ -0,0 +1,249 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.Flushable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes messages to a {@link FudgeMsgWriter} as differences from the last message written for the same key. This suits
+ * streams of updates, such as ticking market data, where each message is mostly the same as the last one for its key.
+ * <p>
+ * Each message is written as a Fudge message holding the key and either the full message or a delta against the last
+ * message for the key. The fields of a delta are lined up with the previous fields in order, matching on name and
+ * ordinal. A delta holds:
+ * <ul>
+ * <li>the fields whose value or type has changed, each written with the position of the field it replaces in the
+ * previous message as its ordinal and no name;</li>
+ * <li>the positions of any previous fields that have been removed; and</li>
+ * <li>any fields added after the last of the previous fields kept, written in full.</li>
+ * </ul>
+ * The message is written in full for the first message with a key, or if the delta would not be smaller. A
+ * {@link FudgeDeltaReader} reconstructs the messages, so must read every message written from the start.
+ * <p>
+ * The fields of a message are held until the next message for its key is written, so a message, including any
+ * sub-messages, must not be modified after it has been written. This class is not thread-safe.
+ */
+public class FudgeDeltaWriter implements Flushable {
+  
+  /* package */ static final int KEY_ORDINAL = 0;
+  /* package */ static final int FULL_ORDINAL = 1;
+  /* package */ static final int CHANGED_ORDINAL = 2;
+  /* package */ static final int REMOVED_ORDINAL = 3;
+  /* package */ static final int ADDED_ORDINAL = 4;
+  
+  /**
+   * The largest number of fields a previous message can have for a delta to be written, as positions are written
+   * as ordinals.
+   */
+  /* package */ static final int MAX_DELTA_FIELDS = Short.MAX_VALUE + 1;
+  
+  private final FudgeMsgWriter _writer;
+  
+  /**
+   * The fields of the last message written for each key.
+   */
+  private final Map<String, FudgeField[]> _previous = new HashMap<String, FudgeField[]> ();
+  
+  /**
+   * Creates a new {@link FudgeDeltaWriter} writing to the given {@link FudgeMsgWriter}.
+   * 
+   * @param writer the message writer
+   */
+  public FudgeDeltaWriter (final FudgeMsgWriter writer) {
+    if (writer == null) {
+      throw new NullPointerException ("writer cannot be null");
+    }
+    _writer = writer;
+  }
+  
+  /**
+   * Returns the underlying {@link FudgeMsgWriter}.
+   * 
+   * @return the message writer
+   */
+  public FudgeMsgWriter getMessageWriter () {
+    return _writer;
+  }
+  
+  /**
+   * Returns the {@link FudgeContext} of the underlying writer.
+   * 
+   * @return the {@code FudgeContext}
+   */
+  public FudgeContext getFudgeContext () {
+    return getMessageWriter ().getFudgeContext ();
+  }
+  
+  /**
+   * Writes a message as a delta against the last message written for its key, or in full if there was none.
+   * 
+   * @param key the key identifying the series of messages, not null
+   * @param message the message to write, not null
+   */
+  public void writeMessage (final String key, final FudgeFieldContainer message) {
+    if (key == null) {
+      throw new NullPointerException ("key cannot be null");
+    }
+    if (message == null) {
+      throw new NullPointerException ("message cannot be null");
+    }
+    final List<FudgeField> fieldList = message.getAllFields ();
+    final FudgeField[] fields = fieldList.toArray (new FudgeField[fieldList.size ()]);
+    FudgeFieldContainer delta = null;
+    final FudgeField[] previous = _previous.get (key);
+    if ((previous != null) && (previous.length <= MAX_DELTA_FIELDS)) {
+      delta = createDelta (key, previous, fields);
+    }
+    if (delta == null) {
+      final MutableFudgeFieldContainer full = getFudgeContext ().newMessage ();
+      full.add (null, KEY_ORDINAL, key);
+      full.add (null, FULL_ORDINAL, message);
+      delta = full;
+    }
+    getMessageWriter ().writeMessage (delta);
+    _previous.put (key, fields);
+  }
+  
+  /**
+   * Creates the delta between two messages.
+   * 
+   * @param key the message key
+   * @param previous the fields of the previous message
+   * @param current the fields of the message to write
+   * @return the delta, or {@code null} if it would not be smaller than the full message
+   */
+  private FudgeFieldContainer createDelta (final String key, final FudgeField[] previous, final FudgeField[] current) {
+    final FudgeContext context = getFudgeContext ();
+    MutableFudgeFieldContainer changed = null;
+    int changedCount = 0;
+    final int[] removed = new int[previous.length];
+    int removedCount = 0;
+    int i = 0;
+    int j = 0;
+    while ((i < current.length) && (j < previous.length)) {
+      if (isSameField (previous[j], current[i])) {
+        if (!isSameValue (previous[j], current[i])) {
+          if (changed == null) {
+            changed = context.newMessage ();
+          }
+          changed.add (null, j, current[i].getType (), current[i].getValue ());
+          changedCount++;
+        }
+        i++;
+      } else {
+        removed[removedCount++] = j;
+      }
+      j++;
+    }
+    while (j < previous.length) {
+      removed[removedCount++] = j++;
+    }
+    if (changedCount + removedCount + (current.length - i) >= current.length) {
+      return null;
+    }
+    final MutableFudgeFieldContainer delta = context.newMessage ();
+    delta.add (null, KEY_ORDINAL, key);
+    if (changed != null) {
+      delta.add (null, CHANGED_ORDINAL, changed);
+    }
+    if (removedCount > 0) {
+      delta.add (null, REMOVED_ORDINAL, Arrays.copyOf (removed, removedCount));
+    }
+    if (i < current.length) {
+      final MutableFudgeFieldContainer added = context.newMessage ();
+      while (i < current.length) {
+        added.add (current[i++]);
+      }
+      delta.add (null, ADDED_ORDINAL, added);
+    }
+    return delta;
+  }
+  
+  private static boolean isSameField (final FudgeField a, final FudgeField b) {
+    return equal (a.getName (), b.getName ()) && equal (a.getOrdinal (), b.getOrdinal ());
+  }
+  
+  private static boolean isSameValue (final FudgeField a, final FudgeField b) {
+    if (!a.getType ().equals (b.getType ())) {
+      return false;
+    }
+    final Object valueA = a.getValue ();
+    final Object valueB = b.getValue ();
+    if ((valueA instanceof FudgeFieldContainer) && (valueB instanceof FudgeFieldContainer)) {
+      return isSameMessage ((FudgeFieldContainer)valueA, (FudgeFieldContainer)valueB);
+    }
+    // wrapped so that arrays of primitives are compared by content
+    return Arrays.deepEquals (new Object[] {valueA }, new Object[] {valueB });
+  }
+  
+  private static boolean isSameMessage (final FudgeFieldContainer a, final FudgeFieldContainer b) {
+    if (a == b) {
+      return true;
+    }
+    final List<FudgeField> fieldsA = a.getAllFields ();
+    final List<FudgeField> fieldsB = b.getAllFields ();
+    if (fieldsA.size () != fieldsB.size ()) {
+      return false;
+    }
+    for (int i = 0; i < fieldsA.size (); i++) {
+      if (!isSameField (fieldsA.get (i), fieldsB.get (i)) || !isSameValue (fieldsA.get (i), fieldsB.get (i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  private static boolean equal (final Object a, final Object b) {
+    return (a == b) || ((a != null) && a.equals (b));
+  }
+  
+  /**
+   * Discards the last message written for a key, so that the next message for it is written in full.
+   * 
+   * @param key the message key
+   */
+  public void reset (final String key) {
+    _previous.remove (key);
+  }
+  
+  /**
+   * Discards the last messages written for all keys, so that the next message for each is written in full.
+   */
+  public void reset () {
+    _previous.clear ();
+  }
+  
+  /**
+   * Flushes the underlying writer.
+   */
+  @Override
+  public void flush () {
+    getMessageWriter ().flush ();
+  }
+  
+  /**
+   * Flushes and closes the underlying writer.
+   */
+  public void close () {
+    getMessageWriter ().close ();
+    _previous.clear ();
+  }
+  
+}
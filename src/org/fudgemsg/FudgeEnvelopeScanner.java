@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds the boundaries of the Fudge message envelopes held in a buffer without decoding their fields. Only the
+ * 8 byte envelope header is read: the processing directives, schema version, taxonomy identifier and envelope
+ * size. Each envelope can then be forwarded as a whole, for example routed by taxonomy or schema version, using
+ * its offset and size or the view returned by {@link #getEnvelope()}.
+ * <p>
+ * Scanning starts at the buffer's position and stops at the first envelope that is not held in full before the
+ * buffer's limit, whose start is available from {@link #getPosition()}. The buffer itself is not modified.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class FudgeEnvelopeScanner {
+  
+  private static final int ENVELOPE_HEADER_SIZE = 8;
+  
+  private final ByteBuffer _buffer;
+  private final int _limit;
+  private int _position;
+  
+  // Set for the current envelope
+  private int _offset = -1;
+  private int _processingDirectives;
+  private int _schemaVersion;
+  private short _taxonomyId;
+  private int _envelopeSize;
+  
+  /**
+   * Creates a new {@link FudgeEnvelopeScanner} over the data between a buffer's position and limit.
+   * 
+   * @param buffer the buffer holding the envelopes
+   */
+  public FudgeEnvelopeScanner (final ByteBuffer buffer) {
+    if (buffer == null) {
+      throw new NullPointerException ("Must provide a ByteBuffer");
+    }
+    _buffer = buffer.duplicate ().order (ByteOrder.BIG_ENDIAN);
+    _position = buffer.position ();
+    _limit = buffer.limit ();
+  }
+  
+  /**
+   * Creates a new {@link FudgeEnvelopeScanner} over part of an array.
+   * 
+   * @param bytes the array holding the envelopes
+   * @param offset the index of the first envelope
+   * @param length the number of bytes to scan
+   */
+  public FudgeEnvelopeScanner (final byte[] bytes, final int offset, final int length) {
+    this (ByteBuffer.wrap (bytes, offset, length));
+  }
+  
+  /**
+   * Creates a new {@link FudgeEnvelopeScanner} over an array.
+   * 
+   * @param bytes the array holding the envelopes
+   */
+  public FudgeEnvelopeScanner (final byte[] bytes) {
+    this (bytes, 0, bytes.length);
+  }
+  
+  /**
+   * Moves to the next envelope, reading its header.
+   * 
+   * @return {@code true} if there is another envelope held in full, {@code false} otherwise
+   * @throws FudgeRuntimeIOException if the envelope header gives an invalid size
+   */
+  public boolean next () {
+    final int available = _limit - _position;
+    if (available < ENVELOPE_HEADER_SIZE) {
+      _offset = -1;
+      return false;
+    }
+    final int size = _buffer.getInt (_position + 4);
+    if (size < ENVELOPE_HEADER_SIZE) {
+      throw new FudgeRuntimeIOException (new IOException ("Invalid envelope size " + size + " at " + _position));
+    }
+    if (size > available) {
+      _offset = -1;
+      return false;
+    }
+    _offset = _position;
+    _processingDirectives = _buffer.get (_position) & 0xFF;
+    _schemaVersion = _buffer.get (_position + 1) & 0xFF;
+    _taxonomyId = _buffer.getShort (_position + 2);
+    _envelopeSize = size;
+    _position += size;
+    return true;
+  }
+  
+  /**
+   * Returns the index within the buffer of the start of the data not yet scanned. After {@link #next()} has returned
+   * {@code false} this is the start of the incomplete envelope, if any.
+   * 
+   * @return the position
+   */
+  public int getPosition () {
+    return _position;
+  }
+  
+  /**
+   * Returns the index within the buffer of the start of the current envelope.
+   * 
+   * @return the offset
+   * @throws IllegalStateException if there is no current envelope
+   */
+  public int getOffset () {
+    checkCurrent ();
+    return _offset;
+  }
+  
+  /**
+   * Returns the processing directives of the current envelope.
+   * 
+   * @return the processing directive flags
+   * @throws IllegalStateException if there is no current envelope
+   */
+  public int getProcessingDirectives () {
+    checkCurrent ();
+    return _processingDirectives;
+  }
+  
+  /**
+   * Returns the schema version of the current envelope.
+   * 
+   * @return the schema version
+   * @throws IllegalStateException if there is no current envelope
+   */
+  public int getSchemaVersion () {
+    checkCurrent ();
+    return _schemaVersion;
+  }
+  
+  /**
+   * Returns the taxonomy identifier of the current envelope.
+   * 
+   * @return the taxonomy identifier
+   * @throws IllegalStateException if there is no current envelope
+   */
+  public short getTaxonomyId () {
+    checkCurrent ();
+    return _taxonomyId;
+  }
+  
+  /**
+   * Returns the size of the current envelope, including its header.
+   * 
+   * @return the envelope size
+   * @throws IllegalStateException if there is no current envelope
+   */
+  public int getEnvelopeSize () {
+    checkCurrent ();
+    return _envelopeSize;
+  }
+  
+  /**
+   * Returns a view of the current envelope, including its header. The view shares the content of the buffer being
+   * scanned, with its position at the start of the envelope and its limit at the end.
+   * 
+   * @return the envelope
+   * @throws IllegalStateException if there is no current envelope
+   */
+  public ByteBuffer getEnvelope () {
+    checkCurrent ();
+    final ByteBuffer envelope = _buffer.duplicate ();
+    envelope.limit (_offset + _envelopeSize).position (_offset);
+    return envelope;
+  }
+  
+  private void checkCurrent () {
+    if (_offset < 0) {
+      throw new IllegalStateException ("No current envelope");
+    }
+  }
+  
+}
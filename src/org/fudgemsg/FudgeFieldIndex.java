@@ -0,0 +1,260 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.util.List;
+
+/**
+ * A lookup index over the fields of a message by name and ordinal.
+ * <p>
+ * Names are held in an open-addressed hash table. Ordinals are held in a dense table
+ * when the range of ordinals present is compact, or an open-addressed table otherwise.
+ * Each table entry references the position of the first matching field, and each field
+ * position references the next field with the same name or ordinal. Positions are
+ * therefore always visited in message order.
+ * <p>
+ * The index is a snapshot of the field list at the time it was built and must be
+ * discarded if the list is modified.
+ * <p>
+ * This class is immutable and thread-safe.
+ */
+/* package */ final class FudgeFieldIndex {
+
+  /**
+   * The maximum span of ordinals, relative to the number of fields, for which a dense table is used.
+   */
+  private static final int DENSE_ORDINAL_FACTOR = 4;
+  /**
+   * The minimum span of ordinals for which a dense table will always be used.
+   */
+  private static final int DENSE_ORDINAL_MINIMUM = 256;
+
+  /**
+   * The hash table of field names, null for an empty slot.
+   */
+  private final String[] _names;
+  /**
+   * The position of the first field for each slot in the name table.
+   */
+  private final int[] _nameHeads;
+  /**
+   * The position of the first field with no name, -1 if none.
+   */
+  private final int _nullNameHead;
+  /**
+   * The position of the next field with the same name, indexed by field position.
+   */
+  private final int[] _nextByName;
+  /**
+   * The smallest ordinal present, used as the base of a dense ordinal table.
+   */
+  private final int _ordinalBase;
+  /**
+   * The hash table of ordinals, null if the dense table is in use.
+   */
+  private final int[] _ordinals;
+  /**
+   * The position of the first field for each slot in the ordinal table, -1 for an empty slot.
+   */
+  private final int[] _ordinalHeads;
+  /**
+   * The position of the next field with the same ordinal, indexed by field position.
+   */
+  private final int[] _nextByOrdinal;
+
+  /**
+   * Builds an index over the given fields.
+   *
+   * @param fields  the fields to index, not null
+   */
+  /* package */ FudgeFieldIndex(final List<FudgeField> fields) {
+    final int size = fields.size();
+    final int tableSize = tableSize(size);
+    _names = new String[tableSize];
+    _nameHeads = new int[tableSize];
+    _nextByName = new int[size];
+    _nextByOrdinal = new int[size];
+    int minOrdinal = Integer.MAX_VALUE;
+    int maxOrdinal = Integer.MIN_VALUE;
+    int nullNameHead = -1;
+    // walk backwards so that each chain is threaded in message order
+    for (int i = size; --i >= 0;) {
+      final FudgeField field = fields.get(i);
+      final String name = field.getName();
+      if (name == null) {
+        _nextByName[i] = nullNameHead;
+        nullNameHead = i;
+      } else {
+        final int slot = findNameSlot(name);
+        if (_names[slot] == null) {
+          _names[slot] = name;
+          _nextByName[i] = -1;
+        } else {
+          _nextByName[i] = _nameHeads[slot];
+        }
+        _nameHeads[slot] = i;
+      }
+      final Short ordinal = field.getOrdinal();
+      if (ordinal != null) {
+        minOrdinal = Math.min(minOrdinal, ordinal);
+        maxOrdinal = Math.max(maxOrdinal, ordinal);
+      }
+    }
+    _nullNameHead = nullNameHead;
+    if (minOrdinal > maxOrdinal) {
+      // no ordinals present
+      _ordinalBase = 0;
+      _ordinals = null;
+      _ordinalHeads = new int[0];
+      return;
+    }
+    final int span = maxOrdinal - minOrdinal + 1;
+    if (span <= Math.max(DENSE_ORDINAL_MINIMUM, size * DENSE_ORDINAL_FACTOR)) {
+      _ordinalBase = minOrdinal;
+      _ordinals = null;
+      _ordinalHeads = new int[span];
+    } else {
+      _ordinalBase = 0;
+      _ordinals = new int[tableSize];
+      _ordinalHeads = new int[tableSize];
+    }
+    for (int i = 0; i < _ordinalHeads.length; i++) {
+      _ordinalHeads[i] = -1;
+    }
+    for (int i = size; --i >= 0;) {
+      final Short ordinal = fields.get(i).getOrdinal();
+      if (ordinal == null) {
+        _nextByOrdinal[i] = -1;
+      } else {
+        final int slot;
+        if (_ordinals == null) {
+          slot = ordinal - _ordinalBase;
+        } else {
+          slot = findOrdinalSlot(ordinal);
+          _ordinals[slot] = ordinal;
+        }
+        _nextByOrdinal[i] = _ordinalHeads[slot];
+        _ordinalHeads[slot] = i;
+      }
+    }
+  }
+
+  /**
+   * Calculates the size of a hash table, a power of two at least twice the number of entries.
+   *
+   * @param entries  the maximum number of entries
+   * @return the table size
+   */
+  private static int tableSize(final int entries) {
+    int size = 4;
+    while (size < entries * 2) {
+      size <<= 1;
+    }
+    return size;
+  }
+
+  /**
+   * Spreads the bits of a hash code so that similar keys do not cluster in the table.
+   *
+   * @param hash  the hash code
+   * @return the spread hash code
+   */
+  private static int spread(int hash) {
+    hash ^= (hash >>> 16);
+    hash *= 0x85EBCA6B;
+    return hash ^ (hash >>> 13);
+  }
+
+  /**
+   * Finds the slot in the name table holding the given name, or the empty slot where it would go.
+   *
+   * @param name  the name to find, not null
+   * @return the slot
+   */
+  private int findNameSlot(final String name) {
+    final int mask = _names.length - 1;
+    int slot = spread(name.hashCode()) & mask;
+    while (_names[slot] != null && !name.equals(_names[slot])) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Finds the slot in the ordinal hash table holding the given ordinal, or the empty slot where it would go.
+   *
+   * @param ordinal  the ordinal to find
+   * @return the slot
+   */
+  private int findOrdinalSlot(final int ordinal) {
+    final int mask = _ordinals.length - 1;
+    int slot = spread(ordinal) & mask;
+    while (_ordinalHeads[slot] >= 0 && _ordinals[slot] != ordinal) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the position of the first field with the given name.
+   *
+   * @param name  the field name, null matches fields without a name
+   * @return the field position, -1 if no field matches
+   */
+  /* package */ int getFirstByName(final String name) {
+    if (name == null) {
+      return _nullNameHead;
+    }
+    final int slot = findNameSlot(name);
+    return (_names[slot] != null) ? _nameHeads[slot] : -1;
+  }
+
+  /**
+   * Gets the position of the next field with the same name as the field at the given position.
+   *
+   * @param position  the position of a field previously returned by this index
+   * @return the field position, -1 if there are no further matches
+   */
+  /* package */ int getNextByName(final int position) {
+    return _nextByName[position];
+  }
+
+  /**
+   * Gets the position of the first field with the given ordinal.
+   *
+   * @param ordinal  the field ordinal
+   * @return the field position, -1 if no field matches
+   */
+  /* package */ int getFirstByOrdinal(final int ordinal) {
+    if (_ordinals == null) {
+      final int slot = ordinal - _ordinalBase;
+      return (slot >= 0 && slot < _ordinalHeads.length) ? _ordinalHeads[slot] : -1;
+    }
+    return _ordinalHeads[findOrdinalSlot(ordinal)];
+  }
+
+  /**
+   * Gets the position of the next field with the same ordinal as the field at the given position.
+   *
+   * @param position  the position of a field previously returned by this index
+   * @return the field position, -1 if there are no further matches
+   */
+  /* package */ int getNextByOrdinal(final int position) {
+    return _nextByOrdinal[position];
+  }
+
+}
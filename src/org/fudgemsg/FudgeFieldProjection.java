@@ -0,0 +1,231 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A selection of the fields of a message to be decoded, by name or ordinal.
+ * <p>
+ * A projection can be given to a {@link FudgeMsgReader} or directly to a {@link FudgeDataInputStreamReader}
+ * or {@link FudgeByteBufferReader}. Fields that are not selected are skipped using the size in their
+ * header without their values being decoded. A sub-message field can be selected in full, or with a
+ * nested projection selecting only some of its fields.
+ * <p>
+ * A field is selected if either its name or its ordinal is selected. Names are matched after any
+ * resolution from the taxonomy in use.
+ * <p>
+ * This class is mutable while being set up. It may be shared between threads once it is no longer modified.
+ */
+public class FudgeFieldProjection {
+
+  /**
+   * The selected names, mapped to the nested projection or null if the whole field is selected.
+   */
+  private final Map<String, FudgeFieldProjection> _names = new HashMap<String, FudgeFieldProjection>();
+  /**
+   * The selected ordinals, mapped to the nested projection or null if the whole field is selected.
+   */
+  private final Map<Integer, FudgeFieldProjection> _ordinals = new HashMap<Integer, FudgeFieldProjection>();
+
+  /**
+   * Creates an empty projection that selects no fields.
+   */
+  public FudgeFieldProjection() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Selects all fields with the given name, including the whole of any sub-message.
+   * 
+   * @param name  the field name, not null
+   * @return this projection, for chaining
+   */
+  public FudgeFieldProjection addName(final String name) {
+    if (name == null) {
+      throw new NullPointerException("name cannot be null");
+    }
+    _names.put(name, null);
+    return this;
+  }
+
+  /**
+   * Selects all fields with the given ordinal, including the whole of any sub-message.
+   * 
+   * @param ordinal  the field ordinal
+   * @return this projection, for chaining
+   */
+  public FudgeFieldProjection addOrdinal(final int ordinal) {
+    _ordinals.put(ordinal, null);
+    return this;
+  }
+
+  /**
+   * Selects all fields with the given name, applying a nested projection to any that are sub-messages.
+   * If the field is already selected in full, it remains so. If it is already selected with another
+   * nested projection, the fields selected by either projection are selected.
+   * <p>
+   * The nested projection must not be modified afterwards. It is never modified by this projection.
+   * 
+   * @param name  the field name, not null
+   * @param projection  the projection to apply within the sub-message, not null
+   * @return this projection, for chaining
+   */
+  public FudgeFieldProjection addSubMessage(final String name, final FudgeFieldProjection projection) {
+    if (name == null) {
+      throw new NullPointerException("name cannot be null");
+    }
+    if (projection == null) {
+      throw new NullPointerException("projection cannot be null");
+    }
+    if (!_names.containsKey(name)) {
+      _names.put(name, projection);
+    } else if (_names.get(name) != null) {
+      _names.put(name, merge(_names.get(name), projection));
+    }
+    return this;
+  }
+
+  /**
+   * Selects all fields with the given ordinal, applying a nested projection to any that are sub-messages.
+   * If the field is already selected in full, it remains so. If it is already selected with another
+   * nested projection, the fields selected by either projection are selected.
+   * <p>
+   * The nested projection must not be modified afterwards. It is never modified by this projection.
+   * 
+   * @param ordinal  the field ordinal
+   * @param projection  the projection to apply within the sub-message, not null
+   * @return this projection, for chaining
+   */
+  public FudgeFieldProjection addSubMessage(final int ordinal, final FudgeFieldProjection projection) {
+    if (projection == null) {
+      throw new NullPointerException("projection cannot be null");
+    }
+    if (!_ordinals.containsKey(ordinal)) {
+      _ordinals.put(ordinal, projection);
+    } else if (_ordinals.get(ordinal) != null) {
+      _ordinals.put(ordinal, merge(_ordinals.get(ordinal), projection));
+    }
+    return this;
+  }
+
+  /**
+   * Selects a field by a path of names through nested sub-messages. The last field on the path
+   * is selected in full, and each field before it is selected with a nested projection.
+   * 
+   * @param path  the field names, outermost first, not empty
+   * @return this projection, for chaining
+   */
+  public FudgeFieldProjection addPath(final String... path) {
+    if (path.length == 0) {
+      throw new IllegalArgumentException("path cannot be empty");
+    }
+    for (String name : path) {
+      if (name == null) {
+        throw new NullPointerException("path cannot contain null");
+      }
+    }
+    // build the nested projections innermost first, so that no existing projection is modified
+    FudgeFieldProjection projection = null;
+    for (int i = path.length - 1; i > 0; i--) {
+      projection = (projection == null) ? new FudgeFieldProjection().addName(path[i]) : new FudgeFieldProjection().addSubMessage(path[i], projection);
+    }
+    return (projection == null) ? addName(path[0]) : addSubMessage(path[0], projection);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Checks whether a field is selected by this projection.
+   * 
+   * @param name  the field name, null if none
+   * @param ordinal  the field ordinal, null if none
+   * @return true if the field should be decoded
+   */
+  public boolean includes(final String name, final Integer ordinal) {
+    return (name != null && _names.containsKey(name)) || (ordinal != null && _ordinals.containsKey(ordinal));
+  }
+
+  /**
+   * Gets the projection to apply within a selected sub-message field.
+   * 
+   * @param name  the field name, null if none
+   * @param ordinal  the field ordinal, null if none
+   * @return the nested projection, null if all fields of the sub-message are selected
+   */
+  public FudgeFieldProjection getSubMessageProjection(final String name, final Integer ordinal) {
+    FudgeFieldProjection byName = null;
+    if (name != null && _names.containsKey(name)) {
+      byName = _names.get(name);
+      if (byName == null) {
+        return null;
+      }
+    }
+    FudgeFieldProjection byOrdinal = null;
+    if (ordinal != null && _ordinals.containsKey(ordinal)) {
+      byOrdinal = _ordinals.get(ordinal);
+      if (byOrdinal == null) {
+        return null;
+      }
+    }
+    if (byName == null || byOrdinal == null) {
+      return (byName != null) ? byName : byOrdinal;
+    }
+    return merge(byName, byOrdinal);
+  }
+
+  /**
+   * Creates a projection selecting every field selected by either of two projections.
+   * Neither projection is modified, although nested projections may be shared with the result.
+   * 
+   * @param first  the first projection, null if all fields are selected
+   * @param second  the second projection, null if all fields are selected
+   * @return the merged projection, null if all fields are selected
+   */
+  private static FudgeFieldProjection merge(final FudgeFieldProjection first, final FudgeFieldProjection second) {
+    if (first == null || second == null) {
+      return null;
+    }
+    final FudgeFieldProjection merged = new FudgeFieldProjection();
+    merged._names.putAll(first._names);
+    for (Map.Entry<String, FudgeFieldProjection> entry : second._names.entrySet()) {
+      if (merged._names.containsKey(entry.getKey())) {
+        merged._names.put(entry.getKey(), merge(merged._names.get(entry.getKey()), entry.getValue()));
+      } else {
+        merged._names.put(entry.getKey(), entry.getValue());
+      }
+    }
+    merged._ordinals.putAll(first._ordinals);
+    for (Map.Entry<Integer, FudgeFieldProjection> entry : second._ordinals.entrySet()) {
+      if (merged._ordinals.containsKey(entry.getKey())) {
+        merged._ordinals.put(entry.getKey(), merge(merged._ordinals.get(entry.getKey()), entry.getValue()));
+      } else {
+        merged._ordinals.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return merged;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "FudgeFieldProjection[names=" + _names + ", ordinals=" + _ordinals + "]";
+  }
+
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the envelopes of a journal written by a {@link FudgeJournalWriter}, following the segment being written as
+ * new envelopes are committed and moving on to the next segment when the writer starts one.
+ * <p>
+ * A partial envelope at the end of a segment that has been followed by another, such as may be left if the writing
+ * process failed, is discarded. This class is not thread-safe.
+ */
+public class FudgeJournalReader implements Closeable {
+  
+  private static final long MAX_POLL_INTERVAL_MILLIS = 50;
+  
+  private final File _directory;
+  private final FudgeMsgDecoder _decoder;
+  private long _segmentNumber;
+  private FileChannel _segment;
+  
+  /**
+   * Creates a reader starting from the earliest segment in a journal directory.
+   * 
+   * @param fudgeContext the {@link FudgeContext} to use for type and taxonomy resolution
+   * @param directory the journal directory
+   */
+  public FudgeJournalReader (final FudgeContext fudgeContext, final File directory) {
+    this (fudgeContext, directory, firstSegment (directory));
+  }
+  
+  /**
+   * Creates a reader starting from a given segment in a journal directory.
+   * 
+   * @param fudgeContext the {@link FudgeContext} to use for type and taxonomy resolution
+   * @param directory the journal directory
+   * @param segmentNumber the number of the first segment to read
+   */
+  public FudgeJournalReader (final FudgeContext fudgeContext, final File directory, final long segmentNumber) {
+    if (directory == null) {
+      throw new NullPointerException ("Must provide a directory");
+    }
+    _decoder = new FudgeMsgDecoder (fudgeContext);
+    _directory = directory;
+    _segmentNumber = segmentNumber;
+  }
+  
+  private static long firstSegment (final File directory) {
+    if (directory == null) {
+      throw new NullPointerException ("Must provide a directory");
+    }
+    final long[] segments = FudgeJournalWriter.listSegments (directory);
+    return (segments.length > 0) ? segments[0] : 0;
+  }
+  
+  /**
+   * Returns the {@link FudgeContext} used for type and taxonomy resolution.
+   * 
+   * @return the {@code FudgeContext}
+   */
+  public FudgeContext getFudgeContext () {
+    return _decoder.getFudgeContext ();
+  }
+  
+  /**
+   * Returns the segment currently being read.
+   * 
+   * @return the segment file
+   */
+  public File getCurrentSegment () {
+    return FudgeJournalWriter.getSegmentFile (_directory, _segmentNumber);
+  }
+  
+  /**
+   * Returns the next envelope in the journal if one has been written.
+   * 
+   * @return the envelope, or {@code null} if no further envelopes are currently available
+   * @throws FudgeRuntimeIOException if a segment cannot be read or contains a malformed envelope
+   */
+  public FudgeMsgEnvelope poll () {
+    while (true) {
+      final FudgeMsgEnvelope envelope = _decoder.poll ();
+      if (envelope != null) {
+        return envelope;
+      }
+      if ((_segment == null) && !openSegment ()) {
+        return null;
+      }
+      if (_decoder.readFrom (_segment) > 0) {
+        continue;
+      }
+      if (!FudgeJournalWriter.getSegmentFile (_directory, _segmentNumber + 1).exists ()) {
+        return null;
+      }
+      // The writer has moved on so the segment is complete, but may have been extended since the last read
+      if (_decoder.readFrom (_segment) > 0) {
+        continue;
+      }
+      closeSegment ();
+      _decoder.reset ();
+      _segmentNumber++;
+    }
+  }
+  
+  /**
+   * Returns the next envelope in the journal, waiting for one to be written if necessary.
+   * 
+   * @param timeout the maximum time to wait
+   * @param unit the unit of the timeout
+   * @return the envelope, or {@code null} if none was written before the timeout elapsed
+   * @throws FudgeRuntimeIOException if a segment cannot be read or contains a malformed envelope
+   * @throws FudgeRuntimeException if the thread is interrupted while waiting
+   */
+  public FudgeMsgEnvelope poll (final long timeout, final TimeUnit unit) {
+    final long deadline = System.nanoTime () + unit.toNanos (timeout);
+    long interval = 1;
+    FudgeMsgEnvelope envelope;
+    while ((envelope = poll ()) == null) {
+      final long remaining = TimeUnit.NANOSECONDS.toMillis (deadline - System.nanoTime ());
+      if (remaining <= 0) {
+        return null;
+      }
+      try {
+        Thread.sleep (Math.min (interval, remaining));
+      } catch (InterruptedException e) {
+        Thread.currentThread ().interrupt ();
+        throw new FudgeRuntimeException ("Interrupted while waiting for the journal", e);
+      }
+      interval = Math.min (interval * 2, MAX_POLL_INTERVAL_MILLIS);
+    }
+    return envelope;
+  }
+  
+  /**
+   * Opens the current segment, or the next one present if it does not exist, for example if the writer was restarted
+   * after the earlier segments were removed.
+   * 
+   * @return {@code true} if a segment was opened, {@code false} if the writer has not yet created it
+   */
+  private boolean openSegment () {
+    try {
+      _segment = new FileInputStream (getCurrentSegment ()).getChannel ();
+      return true;
+    } catch (FileNotFoundException e) {
+      for (long segmentNumber : FudgeJournalWriter.listSegments (_directory)) {
+        if (segmentNumber > _segmentNumber) {
+          _segmentNumber = segmentNumber;
+          return openSegment ();
+        }
+      }
+      return false;
+    }
+  }
+  
+  private void closeSegment () {
+    try {
+      _segment.close ();
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException (e);
+    } finally {
+      _segment = null;
+    }
+  }
+  
+  /**
+   * Closes the segment being read.
+   */
+  @Override
+  public void close () {
+    if (_segment != null) {
+      closeSegment ();
+    }
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString () {
+    return "FudgeJournalReader{" + getCurrentSegment () + "}";
+  }
+  
+}
@@ -0,0 +1,471 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.fudgemsg.taxon.FudgeTaxonomy;
+
+/**
+ * An append-only journal of message envelopes, written as a sequence of segment files in a directory. Each segment
+ * is a plain Fudge stream of concatenated envelopes, and a new segment is started when the current one reaches a
+ * configurable size. A {@link FudgeJournalReader} can follow the journal as it is written.
+ * <p>
+ * Appends may be made concurrently from any number of threads. Each thread encodes its own envelope, and the encoded
+ * envelopes of all threads waiting to append are then written to the segment together, with a single write and, if
+ * requested by the {@link SyncPolicy}, a single {@code fsync}. An append returns once its envelope has been written
+ * in this way, so the cost of the write and sync is shared by every thread that arrives while the previous group is
+ * being committed rather than being paid for each message.
+ */
+public class FudgeJournalWriter implements Closeable {
+  
+  /**
+   * When the journal is forced to the storage device.
+   */
+  public static enum SyncPolicy {
+    /**
+     * Never explicitly forced; written data is left to the operating system.
+     */
+    NONE,
+    /**
+     * Forced when a segment is completed and when the journal is closed.
+     */
+    SEGMENT,
+    /**
+     * Forced after each group of envelopes is written, before the appending threads return.
+     */
+    COMMIT
+  }
+  
+  /**
+   * The default size at which a new segment is started, 64MB.
+   */
+  public static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+  
+  private static final String SEGMENT_PREFIX = "journal-";
+  private static final String SEGMENT_SUFFIX = ".fudge";
+  
+  private final FudgeContext _fudgeContext;
+  private final File _directory;
+  private volatile long _maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+  private volatile SyncPolicy _syncPolicy = SyncPolicy.SEGMENT;
+  
+  /**
+   * Guards the commit state below.
+   */
+  private final Object _lock = new Object ();
+  private List<ByteBuffer> _pending = new ArrayList<ByteBuffer> ();
+  private long _appended;
+  private long _committed;
+  private boolean _writing;
+  private boolean _closed;
+  private FudgeRuntimeIOException _failure;
+  
+  /**
+   * The current segment, only accessed by the thread committing a group.
+   */
+  private volatile long _segmentNumber;
+  private FileChannel _segment;
+  private long _segmentSize;
+  
+  /**
+   * Opens a journal in a directory, creating the directory if necessary. Appends are written to a new segment
+   * following any already in the directory.
+   * 
+   * @param fudgeContext the {@link FudgeContext} to use for type and taxonomy resolution
+   * @param directory the journal directory
+   * @throws FudgeRuntimeIOException if the first segment cannot be created
+   */
+  public FudgeJournalWriter (final FudgeContext fudgeContext, final File directory) {
+    if (fudgeContext == null) {
+      throw new NullPointerException ("Must provide a Fudge Context");
+    }
+    if (directory == null) {
+      throw new NullPointerException ("Must provide a directory");
+    }
+    _fudgeContext = fudgeContext;
+    _directory = directory;
+    try {
+      if (!directory.isDirectory () && !directory.mkdirs ()) {
+        throw new IOException ("Unable to create journal directory " + directory);
+      }
+      final long[] segments = listSegments (directory);
+      _segmentNumber = (segments.length > 0) ? segments[segments.length - 1] + 1 : 0;
+      openSegment ();
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException (e);
+    }
+  }
+  
+  /**
+   * Returns the file of a journal segment.
+   * 
+   * @param directory the journal directory
+   * @param segmentNumber the segment number
+   * @return the segment file
+   */
+  /* package */ static File getSegmentFile (final File directory, final long segmentNumber) {
+    final StringBuilder sb = new StringBuilder (SEGMENT_PREFIX);
+    final String number = Long.toString (segmentNumber);
+    for (int i = number.length (); i < 16; i++) {
+      sb.append ('0');
+    }
+    return new File (directory, sb.append (number).append (SEGMENT_SUFFIX).toString ());
+  }
+  
+  /**
+   * Returns the numbers of the segments present in a journal directory, in ascending order.
+   * 
+   * @param directory the journal directory
+   * @return the segment numbers
+   */
+  /* package */ static long[] listSegments (final File directory) {
+    final String[] names = directory.list ();
+    if (names == null) {
+      return new long[0];
+    }
+    final long[] segments = new long[names.length];
+    int count = 0;
+    for (String name : names) {
+      if (name.startsWith (SEGMENT_PREFIX) && name.endsWith (SEGMENT_SUFFIX)) {
+        try {
+          segments[count++] = Long.parseLong (name.substring (SEGMENT_PREFIX.length (), name.length () - SEGMENT_SUFFIX.length ()));
+        } catch (NumberFormatException e) {
+          count--;
+        }
+      }
+    }
+    final long[] result = new long[count];
+    System.arraycopy (segments, 0, result, 0, count);
+    Arrays.sort (result);
+    return result;
+  }
+  
+  /**
+   * Returns the {@link FudgeContext} used for type and taxonomy resolution.
+   * 
+   * @return the {@code FudgeContext}
+   */
+  public FudgeContext getFudgeContext () {
+    return _fudgeContext;
+  }
+  
+  /**
+   * Returns the journal directory.
+   * 
+   * @return the directory
+   */
+  public File getDirectory () {
+    return _directory;
+  }
+  
+  /**
+   * Returns the size at which a new segment is started.
+   * 
+   * @return the size in bytes
+   */
+  public long getMaxSegmentSize () {
+    return _maxSegmentSize;
+  }
+  
+  /**
+   * Sets the size at which a new segment is started. A segment may be smaller if the next envelope would take it past
+   * this size, or larger if it holds a single envelope larger than this size.
+   * 
+   * @param maxSegmentSize the size in bytes, at least 1
+   */
+  public void setMaxSegmentSize (final long maxSegmentSize) {
+    if (maxSegmentSize < 1) {
+      throw new IllegalArgumentException ("Maximum segment size must be at least 1");
+    }
+    _maxSegmentSize = maxSegmentSize;
+  }
+  
+  /**
+   * Returns when the journal is forced to the storage device.
+   * 
+   * @return the policy
+   */
+  public SyncPolicy getSyncPolicy () {
+    return _syncPolicy;
+  }
+  
+  /**
+   * Sets when the journal is forced to the storage device. The default is {@link SyncPolicy#SEGMENT}.
+   * 
+   * @param syncPolicy the policy
+   */
+  public void setSyncPolicy (final SyncPolicy syncPolicy) {
+    if (syncPolicy == null) {
+      throw new NullPointerException ("Must provide a SyncPolicy");
+    }
+    _syncPolicy = syncPolicy;
+  }
+  
+  /**
+   * Returns the number of envelopes written to the journal since it was opened.
+   * 
+   * @return the number of envelopes
+   */
+  public long getCommittedCount () {
+    synchronized (_lock) {
+      return _committed;
+    }
+  }
+  
+  /**
+   * Appends a message with the given taxonomy. Default schema version and processing directive flags are used.
+   * 
+   * @param message message to append
+   * @param taxonomyId identifier of the taxonomy to use. If the taxonomy is recognized by the {@link FudgeContext} it will be used to reduce field names to ordinals where possible.
+   * @throws FudgeRuntimeIOException if the journal cannot be written
+   */
+  public void append (final FudgeFieldContainer message, final int taxonomyId) {
+    appendEnvelope (new FudgeMsgEnvelope (message), taxonomyId);
+  }
+  
+  /**
+   * Appends a message. Default taxonomy, schema version and processing directive flags are used.
+   * 
+   * @param message message to append
+   * @throws FudgeRuntimeIOException if the journal cannot be written
+   */
+  public void append (final FudgeFieldContainer message) {
+    append (message, 0);
+  }
+  
+  /**
+   * Appends a message envelope using the default taxonomy.
+   * 
+   * @param envelope message envelope to append
+   * @throws FudgeRuntimeIOException if the journal cannot be written
+   */
+  public void appendEnvelope (final FudgeMsgEnvelope envelope) {
+    appendEnvelope (envelope, 0);
+  }
+  
+  /**
+   * Appends a message envelope with the given taxonomy, returning once it has been written to the journal as part of
+   * a group commit.
+   * 
+   * @param envelope message envelope to append
+   * @param taxonomyId identifier of the taxonomy to use. If the taxonomy is recognized by the {@link FudgeContext} it will be used to reduce field names to ordinals where possible.
+   * @throws FudgeRuntimeIOException if the journal cannot be written
+   */
+  public void appendEnvelope (final FudgeMsgEnvelope envelope, final int taxonomyId) {
+    if (envelope == null) {
+      throw new NullPointerException ("Cannot append a null envelope to a journal");
+    }
+    commit (encode (envelope, taxonomyId));
+  }
+  
+  /**
+   * Encodes an envelope into a buffer of its own, on the calling thread.
+   * 
+   * @param envelope message envelope to encode
+   * @param taxonomyId identifier of the taxonomy to use
+   * @return the encoded envelope
+   */
+  private ByteBuffer encode (final FudgeMsgEnvelope envelope, final int taxonomyId) {
+    FudgeTaxonomy taxonomy = null;
+    if (getFudgeContext ().getTaxonomyResolver () != null) {
+      taxonomy = getFudgeContext ().getTaxonomyResolver ().resolveTaxonomy ((short)taxonomyId);
+    }
+    final int size = FudgeSize.calculateMessageEnvelopeSize (taxonomy, envelope);
+    final ByteBuffer buffer = ByteBuffer.allocate (size);
+    final FudgeByteBufferWriter writer = new FudgeByteBufferWriter (getFudgeContext (), buffer);
+    writer.setCurrentTaxonomyId (taxonomyId);
+    writer.writeEnvelopeHeader (envelope.getProcessingDirectives (), envelope.getVersion (), size);
+    writer.writeFields (envelope.getMessage ());
+    buffer.flip ();
+    return buffer;
+  }
+  
+  /**
+   * Adds an encoded envelope to the pending group and waits for it to be written. If no group is being written, the
+   * calling thread writes the pending group itself.
+   * 
+   * @param encoded the encoded envelope
+   */
+  private void commit (final ByteBuffer encoded) {
+    // an interrupt closes the segment channel if it arrives while this thread writes to it, so the interrupt status is
+    // held back until the group has been written
+    boolean interrupted = Thread.interrupted ();
+    try {
+      final List<ByteBuffer> group;
+      final long last;
+      synchronized (_lock) {
+        checkWritable ();
+        _pending.add (encoded);
+        final long ticket = ++_appended;
+        while (_writing && (_committed < ticket) && (_failure == null)) {
+          try {
+            _lock.wait ();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        if (_committed >= ticket) {
+          return;
+        }
+        if (_failure != null) {
+          throw _failure;
+        }
+        _writing = true;
+        group = _pending;
+        last = _appended;
+        _pending = new ArrayList<ByteBuffer> ();
+      }
+      FudgeRuntimeIOException failure = null;
+      try {
+        writeGroup (group);
+      } catch (IOException e) {
+        failure = new FudgeRuntimeIOException (e);
+      }
+      synchronized (_lock) {
+        _writing = false;
+        if (failure != null) {
+          _failure = failure;
+        } else {
+          _committed = last;
+        }
+        _lock.notifyAll ();
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread ().interrupt ();
+      }
+    }
+  }
+  
+  private void checkWritable () {
+    if (_failure != null) {
+      throw _failure;
+    }
+    if (_closed) {
+      throw new IllegalStateException ("Journal " + _directory + " has been closed");
+    }
+  }
+  
+  /**
+   * Writes a group of encoded envelopes to the current segment, starting new segments as necessary.
+   * 
+   * @param group the encoded envelopes
+   * @throws IOException if the segment cannot be written
+   */
+  private void writeGroup (final List<ByteBuffer> group) throws IOException {
+    final long maxSegmentSize = getMaxSegmentSize ();
+    int start = 0;
+    while (start < group.size ()) {
+      if ((_segmentSize > 0) && (_segmentSize + group.get (start).remaining () > maxSegmentSize)) {
+        closeSegment ();
+        _segmentNumber++;
+        openSegment ();
+      }
+      long size = _segmentSize + group.get (start).remaining ();
+      int end = start + 1;
+      while ((end < group.size ()) && (size + group.get (end).remaining () <= maxSegmentSize)) {
+        size += group.get (end++).remaining ();
+      }
+      final ByteBuffer[] buffers = group.subList (start, end).toArray (new ByteBuffer[end - start]);
+      while (buffers[buffers.length - 1].hasRemaining ()) {
+        _segment.write (buffers);
+      }
+      _segmentSize = size;
+      start = end;
+    }
+    if (getSyncPolicy () == SyncPolicy.COMMIT) {
+      _segment.force (false);
+    }
+  }
+  
+  private void openSegment () throws IOException {
+    _segment = new FileOutputStream (getSegmentFile (_directory, _segmentNumber)).getChannel ();
+    _segmentSize = 0;
+  }
+  
+  private void closeSegment () throws IOException {
+    try {
+      if (getSyncPolicy () != SyncPolicy.NONE) {
+        _segment.force (false);
+      }
+    } finally {
+      _segment.close ();
+    }
+  }
+  
+  /**
+   * Returns the file of the segment currently being written to.
+   * 
+   * @return the segment file
+   */
+  public File getCurrentSegment () {
+    return getSegmentFile (_directory, _segmentNumber);
+  }
+  
+  /**
+   * Closes the journal once any appends in progress have been written. Further appends will fail.
+   */
+  @Override
+  public void close () {
+    // as for an append, the interrupt status is held back so that it cannot close the segment channel while it is forced
+    boolean interrupted = Thread.interrupted ();
+    try {
+      synchronized (_lock) {
+        if (_closed) {
+          return;
+        }
+        while (_writing || (!_pending.isEmpty () && (_failure == null))) {
+          try {
+            _lock.wait ();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        _closed = true;
+        try {
+          closeSegment ();
+        } catch (IOException e) {
+          throw new FudgeRuntimeIOException (e);
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread ().interrupt ();
+      }
+    }
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString () {
+    return "FudgeJournalWriter{" + _directory + "}";
+  }
+  
+}
@@ -15,6 +15,7 @@
  */
 package org.fudgemsg;
 
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 
 import org.fudgemsg.taxon.FudgeTaxonomy;
@@ -34,10 +35,27 @@ import org.fudgemsg.types.SecondaryFieldType;
  * instance or a {@link MutableFudgeFieldContainer} rather than this class
  * for future flexibility.
  * <p>
+ * A message read by a {@link FudgeMsgReader} may retain the encoded form of its fields.
+ * Modifying the message, or any sub-message within it, discards the retained encoding so
+ * that writers only reuse it while it still matches the fields.
+ * <p>
  * This class is mutable and not thread-safe.
  */
 public class FudgeMsg extends FudgeMsgBase implements MutableFudgeFieldContainer {
 
+  /**
+   * The encoded form of the fields, null if not retained or discarded by a modification.
+   */
+  private transient ByteBuffer _encodedFields;
+  /**
+   * The taxonomy the retained encoding was written with, null if none.
+   */
+  private transient FudgeTaxonomy _encodingTaxonomy;
+  /**
+   * The message whose retained encoding contains this message's, null if none.
+   */
+  private transient FudgeMsg _encodingParent;
+
   /**
    * Constructor taking a Fudge context.
    * 
@@ -60,6 +78,65 @@ public class FudgeMsg extends FudgeMsgBase implements MutableFudgeFieldContainer
     super(fields, fudgeContext);
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * Records the encoded form of the fields of this message as read.
+   * <p>
+   * The encoding is retained until this message or any sub-message with a retained encoding
+   * is modified. The buffer content must not be changed while the encoding is retained.
+   * 
+   * @param encodedFields  the encoded fields, excluding any envelope header or field header, not null
+   * @param taxonomy  the taxonomy the fields were encoded with, null if none
+   * @param parent  the message whose retained encoding contains this one, null if none
+   */
+  /* package */ void setEncodedFields(final ByteBuffer encodedFields, final FudgeTaxonomy taxonomy, final FudgeMsg parent) {
+    _encodedFields = encodedFields;
+    _encodingTaxonomy = taxonomy;
+    _encodingParent = parent;
+  }
+
+  /**
+   * Gets the retained encoding of the fields if it can be written verbatim using the given taxonomy.
+   * 
+   * @param taxonomy  the taxonomy the fields would be written with, null if none
+   * @return a buffer over the encoded fields, null if no matching encoding is retained
+   */
+  /* package */ ByteBuffer getRetainedEncoding(final FudgeTaxonomy taxonomy) {
+    final ByteBuffer encodedFields = _encodedFields;
+    if (encodedFields == null || taxonomy != _encodingTaxonomy) {
+      return null;
+    }
+    return encodedFields.duplicate();
+  }
+
+  /**
+   * Gets a read-only view of the encoded form of the fields as read, if this message has not
+   * been modified since.
+   * 
+   * @return the encoded fields, excluding any envelope header, null if not retained
+   */
+  public ByteBuffer getEncodedFields() {
+    final ByteBuffer encodedFields = _encodedFields;
+    return (encodedFields != null) ? encodedFields.asReadOnlyBuffer() : null;
+  }
+
+  /**
+   * Discards the index and any retained encoding of this message and of the messages containing it.
+   * <p>
+   * This must be called whenever the list returned by {@link #getFields()} is modified.
+   */
+  protected void fieldsModified() {
+    invalidateIndex();
+    FudgeMsg msg = this;
+    while (msg != null && msg._encodedFields != null) {
+      final FudgeMsg parent = msg._encodingParent;
+      msg._encodedFields = null;
+      msg._encodingTaxonomy = null;
+      msg._encodingParent = null;
+      msg = parent;
+    }
+  }
+
   //-------------------------------------------------------------------------
   /**
    * {@inheritDoc}
@@ -70,6 +147,7 @@ public class FudgeMsg extends FudgeMsgBase implements MutableFudgeFieldContainer
       throw new NullPointerException("FudgeField must not be null");
     }
     getFields().add(FudgeMsgField.of(field));
+    fieldsModified();
   }
 
   /**
@@ -148,6 +226,7 @@ public class FudgeMsg extends FudgeMsgBase implements MutableFudgeFieldContainer
     }
     FudgeMsgField field = FudgeMsgField.of(type, value, name, ordinalAsShort);
     getFields().add(field);
+    fieldsModified();
   }
 
   /**
@@ -180,6 +259,7 @@ public class FudgeMsg extends FudgeMsgBase implements MutableFudgeFieldContainer
     if (taxonomy == null) {
       return;
     }
+    fieldsModified();
     for (int i = 0; i < getFields().size(); i++) {
       FudgeField field = getFields().get(i);
       if ((field.getOrdinal() != null) && (field.getName() == null)) {
@@ -206,8 +286,23 @@ public class FudgeMsg extends FudgeMsgBase implements MutableFudgeFieldContainer
    */
   @Override
   public Iterator<FudgeField> iterator() {
-    // return the real iterator since this is a mutable message
-    return getFields().iterator();
+    // return the real iterator since this is a mutable message, discarding the index and encoding on removal
+    final Iterator<FudgeField> iterator = getFields().iterator();
+    return new Iterator<FudgeField>() {
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+      @Override
+      public FudgeField next() {
+        return iterator.next();
+      }
+      @Override
+      public void remove() {
+        iterator.remove();
+        fieldsModified();
+      }
+    };
   }
 
   /**
@@ -255,6 +350,7 @@ public class FudgeMsg extends FudgeMsgBase implements MutableFudgeFieldContainer
   @Override
   public void clear() {
     getFields().clear();
+    fieldsModified();
   }
 
   /**
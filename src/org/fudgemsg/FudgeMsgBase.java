@@ -32,7 +32,12 @@ import org.fudgemsg.taxon.FudgeTaxonomy;
  * <p>
  * This class is mutable and not thread-safe.
  */
-public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable<FudgeField> {
+public class FudgeMsgBase implements Serializable, PrimitiveFudgeFieldContainer, Iterable<FudgeField> {
+
+  /**
+   * The number of fields at which lookups by name or ordinal switch from a linear scan to an index.
+   */
+  public static final int INDEX_THRESHOLD = 16;
 
   /**
    * The Fudge context.
@@ -42,6 +47,11 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
    * The list of fields.
    */
   private final List<FudgeField> _fields = new ArrayList<FudgeField>();
+  /**
+   * The index of the fields by name and ordinal, null if not yet built.
+   * The index is immutable, so it may be built racily by several readers.
+   */
+  private transient FudgeFieldIndex _index;
 
   /**
    * Constructor taking a Fudge context.
@@ -95,6 +105,73 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
     return _fields;
   }
 
+  /**
+   * Discards any index built over the fields.
+   * <p>
+   * This must be called by subclasses whenever the list returned by {@link #getFields()}
+   * is modified.
+   */
+  protected void invalidateIndex() {
+    if (_index != null) {
+      _index = null;
+    }
+  }
+
+  /**
+   * Gets the index of the fields, building it if the message is large enough to benefit.
+   * 
+   * @return the index, null if the fields should be scanned linearly
+   */
+  private FudgeFieldIndex getIndex() {
+    FudgeFieldIndex index = _index;
+    if (index == null && _fields.size() >= INDEX_THRESHOLD) {
+      index = new FudgeFieldIndex(_fields);
+      _index = index;
+    }
+    return index;
+  }
+
+  /**
+   * Finds the position of the next field with the given name.
+   * 
+   * @param name  the name to match against, null matches null
+   * @param previous  the position of the previous match, -1 to find the first
+   * @return the position of the field, -1 if there are no further matches
+   */
+  private int nextFieldByName(final String name, final int previous) {
+    final FudgeFieldIndex index = getIndex();
+    if (index != null) {
+      return (previous < 0) ? index.getFirstByName(name) : index.getNextByName(previous);
+    }
+    for (int i = previous + 1; i < _fields.size(); i++) {
+      if (fieldNameEquals(name, _fields.get(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Finds the position of the next field with the given ordinal.
+   * 
+   * @param ordinal  the ordinal to match against
+   * @param previous  the position of the previous match, -1 to find the first
+   * @return the position of the field, -1 if there are no further matches
+   */
+  private int nextFieldByOrdinal(final short ordinal, final int previous) {
+    final FudgeFieldIndex index = getIndex();
+    if (index != null) {
+      return (previous < 0) ? index.getFirstByOrdinal(ordinal) : index.getNextByOrdinal(previous);
+    }
+    for (int i = previous + 1; i < _fields.size(); i++) {
+      final Short fieldOrdinal = _fields.get(i).getOrdinal();
+      if (fieldOrdinal != null && fieldOrdinal.shortValue() == ordinal) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Checks if the name matches the name of the given field.
@@ -144,15 +221,14 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
   @SuppressWarnings("unchecked")
   protected <T> T getFirstTypedValue(Class<T> clazz, String name, int typeId) {
     FudgeField secondBest = null;
-    for (FudgeField field : _fields) {
-      if (fieldNameEquals(name, field)) {
-        if (field.getType().getTypeId() == typeId) {
-          return (T) field.getValue();  // perfect match
-        } else {
-          if (secondBest == null) {
-            if (getFudgeContext().getTypeDictionary().canConvertField(clazz, field)) {
-              secondBest = field;
-            }
+    for (int i = nextFieldByName(name, -1); i >= 0; i = nextFieldByName(name, i)) {
+      final FudgeField field = _fields.get(i);
+      if (field.getType().getTypeId() == typeId) {
+        return (T) field.getValue();  // perfect match
+      } else {
+        if (secondBest == null) {
+          if (getFudgeContext().getTypeDictionary().canConvertField(clazz, field)) {
+            secondBest = field;
           }
         }
       }
@@ -180,16 +256,15 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
   @SuppressWarnings("unchecked")
   protected <T> T getFirstTypedValue(Class<T> clazz, int ordinal, int typeId) {
     FudgeField secondBest = null;
-    Short ordinalAsShort = (short) ordinal;
-    for (FudgeField field : _fields) {
-      if (fieldOrdinalEquals(ordinalAsShort, field)) {
-        if (field.getType().getTypeId() == typeId) {
-          return (T) field.getValue();  // perfect match
-        } else {
-          if (secondBest == null) {
-            if (getFudgeContext().getTypeDictionary().canConvertField(clazz, field)) {
-              secondBest = field;
-            }
+    final short ordinalAsShort = (short) ordinal;
+    for (int i = nextFieldByOrdinal(ordinalAsShort, -1); i >= 0; i = nextFieldByOrdinal(ordinalAsShort, i)) {
+      final FudgeField field = _fields.get(i);
+      if (field.getType().getTypeId() == typeId) {
+        return (T) field.getValue();  // perfect match
+      } else {
+        if (secondBest == null) {
+          if (getFudgeContext().getTypeDictionary().canConvertField(clazz, field)) {
+            secondBest = field;
           }
         }
       }
@@ -200,6 +275,67 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
     return getFudgeContext().getTypeDictionary().getFieldValue(clazz, secondBest);
   }
 
+  /**
+   * Gets the first field with the given field name that can be read as a primitive
+   * of the given type.
+   * <p>
+   * This first searches for an exact match on name and type.
+   * If the name is found but the type is different, the first field convertible
+   * by the type dictionary is returned, whether or not its value is held boxed.
+   * 
+   * @param clazz  the wrapper class of the primitive, not null
+   * @param name  the field name, null matches null
+   * @param typeId  the type identifier
+   * @return the field, null if no matching field found
+   */
+  protected FudgeField getFirstPrimitiveField(Class<?> clazz, String name, int typeId) {
+    FudgeField secondBest = null;
+    for (int i = nextFieldByName(name, -1); i >= 0; i = nextFieldByName(name, i)) {
+      final FudgeField field = _fields.get(i);
+      if (field.getType().getTypeId() == typeId) {
+        return field;  // perfect match
+      } else {
+        if (secondBest == null) {
+          if (getFudgeContext().getTypeDictionary().canConvertField(clazz, field)) {
+            secondBest = field;
+          }
+        }
+      }
+    }
+    return secondBest;
+  }
+
+  /**
+   * Gets the first field with the given field ordinal that can be read as a primitive
+   * of the given type.
+   * <p>
+   * This first searches for an exact match on ordinal and type.
+   * If the ordinal is found but the type is different, the first field convertible
+   * by the type dictionary is returned, whether or not its value is held boxed.
+   * 
+   * @param clazz  the wrapper class of the primitive, not null
+   * @param ordinal  the field ordinal
+   * @param typeId  the type identifier
+   * @return the field, null if no matching field found
+   */
+  protected FudgeField getFirstPrimitiveField(Class<?> clazz, int ordinal, int typeId) {
+    FudgeField secondBest = null;
+    final short ordinalAsShort = (short) ordinal;
+    for (int i = nextFieldByOrdinal(ordinalAsShort, -1); i >= 0; i = nextFieldByOrdinal(ordinalAsShort, i)) {
+      final FudgeField field = _fields.get(i);
+      if (field.getType().getTypeId() == typeId) {
+        return field;  // perfect match
+      } else {
+        if (secondBest == null) {
+          if (getFudgeContext().getTypeDictionary().canConvertField(clazz, field)) {
+            secondBest = field;
+          }
+        }
+      }
+    }
+    return secondBest;
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Resolves any field ordinals to field names from the given taxonomy.
@@ -210,6 +346,7 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
     if (taxonomy == null) {
       return;
     }
+    invalidateIndex();
     for (int i = 0; i < _fields.size(); i++) {
       FudgeField field = _fields.get(i);
       if (field.getOrdinal() != null && field.getName() == null) {
@@ -294,14 +431,7 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
    */
   @Override
   public boolean hasField(String name) {
-    if (name != null) {
-      for (FudgeField field : _fields) {
-        if (name.equals(field.getName())) {
-          return true;
-        }
-      }
-    }
-    return false;
+    return (name != null) && (nextFieldByName(name, -1) >= 0);
   }
 
   /**
@@ -310,10 +440,8 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
   @Override
   public List<FudgeField> getAllByName(String name) {
     List<FudgeField> fields = new ArrayList<FudgeField>();
-    for (FudgeField field : _fields) {
-      if (fieldNameEquals(name, field)) {
-        fields.add(field);
-      }
+    for (int i = nextFieldByName(name, -1); i >= 0; i = nextFieldByName(name, i)) {
+      fields.add(_fields.get(i));
     }
     return fields;
   }
@@ -323,12 +451,8 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
    */
   @Override
   public FudgeField getByName(String name) {
-    for (FudgeField field : _fields) {
-      if (fieldNameEquals(name, field)) {
-        return field;
-      }
-    }
-    return null;
+    final int i = nextFieldByName(name, -1);
+    return (i >= 0) ? _fields.get(i) : null;
   }
 
   /**
@@ -336,12 +460,10 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
    */
   @Override
   public boolean hasField(int ordinal) {
-    for (FudgeField field : _fields) {
-      if (field.getOrdinal() != null && ordinal == field.getOrdinal().intValue()) {
-        return true;
-      }
+    if (ordinal < Short.MIN_VALUE || ordinal > Short.MAX_VALUE) {
+      return false;
     }
-    return false;
+    return nextFieldByOrdinal((short) ordinal, -1) >= 0;
   }
 
   /**
@@ -350,11 +472,9 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
   @Override
   public List<FudgeField> getAllByOrdinal(int ordinal) {
     List<FudgeField> fields = new ArrayList<FudgeField>();
-    Short ordinalAsShort = (short) ordinal;
-    for (FudgeField field : _fields) {
-      if (fieldOrdinalEquals(ordinalAsShort, field)) {
-        fields.add(field);
-      }
+    final short ordinalAsShort = (short) ordinal;
+    for (int i = nextFieldByOrdinal(ordinalAsShort, -1); i >= 0; i = nextFieldByOrdinal(ordinalAsShort, i)) {
+      fields.add(_fields.get(i));
     }
     return fields;
   }
@@ -364,19 +484,13 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
    */
   @Override
   public FudgeField getByOrdinal(int ordinal) {
-    Short ordinalAsShort = (short) ordinal;
-    for (FudgeField field : _fields) {
-      if (fieldOrdinalEquals(ordinalAsShort, field)) {
-        return field;
-      }
-    }
-    return null;
+    final int i = nextFieldByOrdinal((short) ordinal, -1);
+    return (i >= 0) ? _fields.get(i) : null;
   }
 
   //-------------------------------------------------------------------------
-  // REVIEW kirk 2009-08-16 -- All of these getters are currently extremely unoptimized.
-  // There may be an option required if we have a lot of random access to the field content
-  // to speed things up by building an index.
+  // Lookups by name or ordinal scan the fields linearly until the message reaches
+  // INDEX_THRESHOLD fields, after which an index is built on first access.
 
   /**
    * {@inheritDoc}
@@ -460,6 +574,78 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
     return getFirstTypedValue(Integer.class, ordinal, FudgeTypeDictionary.INT_TYPE_ID);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getDoubleValue(String name, double defaultValue) {
+    final FudgeField field = getFirstPrimitiveField(Double.class, name, FudgeTypeDictionary.DOUBLE_TYPE_ID);
+    if (field == null) {
+      return defaultValue;
+    }
+    return getFudgeContext().getTypeDictionary().getFieldDoubleValue(field);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getDoubleValue(int ordinal, double defaultValue) {
+    final FudgeField field = getFirstPrimitiveField(Double.class, ordinal, FudgeTypeDictionary.DOUBLE_TYPE_ID);
+    if (field == null) {
+      return defaultValue;
+    }
+    return getFudgeContext().getTypeDictionary().getFieldDoubleValue(field);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getLongValue(String name, long defaultValue) {
+    final FudgeField field = getFirstPrimitiveField(Long.class, name, FudgeTypeDictionary.LONG_TYPE_ID);
+    if (field == null) {
+      return defaultValue;
+    }
+    return getFudgeContext().getTypeDictionary().getFieldLongValue(field);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getLongValue(int ordinal, long defaultValue) {
+    final FudgeField field = getFirstPrimitiveField(Long.class, ordinal, FudgeTypeDictionary.LONG_TYPE_ID);
+    if (field == null) {
+      return defaultValue;
+    }
+    return getFudgeContext().getTypeDictionary().getFieldLongValue(field);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getIntValue(String name, int defaultValue) {
+    final FudgeField field = getFirstPrimitiveField(Integer.class, name, FudgeTypeDictionary.INT_TYPE_ID);
+    if (field == null) {
+      return defaultValue;
+    }
+    return getFudgeContext().getTypeDictionary().getFieldIntValue(field);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getIntValue(int ordinal, int defaultValue) {
+    final FudgeField field = getFirstPrimitiveField(Integer.class, ordinal, FudgeTypeDictionary.INT_TYPE_ID);
+    if (field == null) {
+      return defaultValue;
+    }
+    return getFudgeContext().getTypeDictionary().getFieldIntValue(field);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -547,8 +733,9 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
   @Override
   public <T> T getValue(final Class<T> clazz, final String name) {
     final FudgeTypeDictionary dictionary = getFudgeContext().getTypeDictionary();
-    for (FudgeField field : _fields) {
-      if (fieldNameEquals(name, field) && dictionary.canConvertField(clazz, field)) {
+    for (int i = nextFieldByName(name, -1); i >= 0; i = nextFieldByName(name, i)) {
+      final FudgeField field = _fields.get(i);
+      if (dictionary.canConvertField(clazz, field)) {
         return dictionary.getFieldValue(clazz, field);
       }
     }
@@ -561,9 +748,10 @@ public class FudgeMsgBase implements Serializable, FudgeFieldContainer, Iterable
   @Override
   public <T> T getValue(final Class<T> clazz, final int ordinal) {
     final FudgeTypeDictionary dictionary = getFudgeContext().getTypeDictionary();
-    final Short ordinalAsShort = (short) ordinal;
-    for (FudgeField field : _fields) {
-      if (fieldOrdinalEquals(ordinalAsShort, field) && dictionary.canConvertField(clazz, field)) {
+    final short ordinalAsShort = (short) ordinal;
+    for (int i = nextFieldByOrdinal(ordinalAsShort, -1); i >= 0; i = nextFieldByOrdinal(ordinalAsShort, i)) {
+      final FudgeField field = _fields.get(i);
+      if (dictionary.canConvertField(clazz, field)) {
         return dictionary.getFieldValue(clazz, field);
       }
     }
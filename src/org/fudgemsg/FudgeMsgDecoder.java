@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import org.fudgemsg.taxon.SessionTaxonomy;
+
+/**
+ * A push-style decoder that accepts Fudge encoded data in arbitrary chunks and produces each message
+ * envelope once all of its bytes have arrived. Nothing blocks: data is either given to the decoder with
+ * {@link #feed} or read with a single call to {@link ReadableByteChannel#read} by {@link #readFrom}, so a
+ * decoder can be attached to each non-blocking channel registered with a selector and driven from the
+ * selector thread.
+ * <p>
+ * Envelopes are framed using the size held in the 8 byte envelope header. Partially received envelopes
+ * are held in an internal buffer that grows to fit the largest envelope seen, up to a configurable limit.
+ * <p>
+ * Field names learnt from envelopes written with a {@link SessionTaxonomy} are held by the decoder, so a
+ * decoder must see every envelope sent over its connection.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class FudgeMsgDecoder {
+  
+  /**
+   * The default upper limit on the size of a single envelope.
+   */
+  public static final int DEFAULT_MAX_ENVELOPE_SIZE = 64 * 1024 * 1024;
+  
+  private static final int ENVELOPE_HEADER_SIZE = 8;
+  private static final int MIN_READ_SIZE = 4096;
+  
+  private final FudgeContext _fudgeContext;
+  private final int _maxEnvelopeSize;
+  
+  /**
+   * The received data, with the bytes not yet decoded from {@code _start} to {@code _end}.
+   */
+  private byte[] _data;
+  private int _start;
+  private int _end;
+  
+  private SessionTaxonomy _sessionTaxonomy;
+  
+  /**
+   * Creates a new {@link FudgeMsgDecoder} associated with the given {@link FudgeContext}, accepting envelopes of up
+   * to {@link #DEFAULT_MAX_ENVELOPE_SIZE} bytes.
+   * 
+   * @param fudgeContext the {@code FudgeContext} to use for type and taxonomy resolution
+   */
+  public FudgeMsgDecoder (final FudgeContext fudgeContext) {
+    this (fudgeContext, DEFAULT_MAX_ENVELOPE_SIZE);
+  }
+  
+  /**
+   * Creates a new {@link FudgeMsgDecoder} associated with the given {@link FudgeContext}.
+   * 
+   * @param fudgeContext the {@code FudgeContext} to use for type and taxonomy resolution
+   * @param maxEnvelopeSize the largest envelope to accept, including its header, before or after decompression
+   */
+  public FudgeMsgDecoder (final FudgeContext fudgeContext, final int maxEnvelopeSize) {
+    if (fudgeContext == null) {
+      throw new NullPointerException ("Must provide a Fudge Context");
+    }
+    if (maxEnvelopeSize < ENVELOPE_HEADER_SIZE) {
+      throw new IllegalArgumentException ("Maximum envelope size must be at least " + ENVELOPE_HEADER_SIZE);
+    }
+    _fudgeContext = fudgeContext;
+    _maxEnvelopeSize = maxEnvelopeSize;
+    _data = new byte[MIN_READ_SIZE];
+  }
+  
+  /**
+   * Returns the {@link FudgeContext} used for type and taxonomy resolution.
+   * 
+   * @return the {@code FudgeContext}
+   */
+  public FudgeContext getFudgeContext () {
+    return _fudgeContext;
+  }
+  
+  /**
+   * Returns the largest envelope accepted, including its header.
+   * 
+   * @return the maximum envelope size
+   */
+  public int getMaxEnvelopeSize () {
+    return _maxEnvelopeSize;
+  }
+  
+  /**
+   * Returns the number of bytes received but not yet returned as part of an envelope.
+   * 
+   * @return the number of bytes buffered
+   */
+  public int getBufferedSize () {
+    return _end - _start;
+  }
+  
+  /**
+   * Appends all of the remaining data in a buffer, advancing its position to its limit.
+   * 
+   * @param data the data to append
+   */
+  public void feed (final ByteBuffer data) {
+    final int length = data.remaining ();
+    ensureCapacity (length);
+    data.get (_data, _end, length);
+    _end += length;
+  }
+  
+  /**
+   * Appends part of an array.
+   * 
+   * @param data the array holding the data
+   * @param offset the index of the first byte to append
+   * @param length the number of bytes to append
+   */
+  public void feed (final byte[] data, final int offset, final int length) {
+    ensureCapacity (length);
+    System.arraycopy (data, offset, _data, _end, length);
+    _end += length;
+  }
+  
+  /**
+   * Reads whatever data is available from a channel with a single read. If the channel is in non-blocking mode this
+   * never blocks. At least enough space is offered to complete the envelope currently being received.
+   * 
+   * @param channel the channel to read from
+   * @return the number of bytes read, possibly zero, or -1 if the channel has reached end-of-stream
+   * @throws FudgeRuntimeIOException if the channel raises an {@link IOException}
+   */
+  public int readFrom (final ReadableByteChannel channel) {
+    int required = getRequiredSize () - getBufferedSize ();
+    if (required < MIN_READ_SIZE) {
+      required = MIN_READ_SIZE;
+    }
+    ensureCapacity (required);
+    final int bytes;
+    try {
+      bytes = channel.read (ByteBuffer.wrap (_data, _end, _data.length - _end));
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException (e);
+    }
+    if (bytes > 0) {
+      _end += bytes;
+    }
+    return bytes;
+  }
+  
+  /**
+   * Returns true if a complete envelope has been received.
+   * 
+   * @return {@code true} if {@link #poll} will return an envelope
+   * @throws FudgeRuntimeIOException if the envelope header is malformed or the envelope is too large
+   */
+  public boolean hasEnvelope () {
+    final int size = getRequiredSize ();
+    return (size > 0) && (getBufferedSize () >= size);
+  }
+  
+  /**
+   * Decodes and returns the next complete envelope, if one has been received.
+   * 
+   * @return the envelope, or {@code null} if the next envelope has not been received in full
+   * @throws FudgeRuntimeIOException if the envelope is malformed or too large
+   */
+  public FudgeMsgEnvelope poll () {
+    if (!hasEnvelope ()) {
+      return null;
+    }
+    final int size = readEnvelopeSize ();
+    final FudgeByteBufferReader streamReader = new FudgeByteBufferReader (getFudgeContext (), _data, _start, size);
+    streamReader.setSessionTaxonomy (_sessionTaxonomy);
+    streamReader.setMaxDecompressedSize (Math.min (getFudgeContext ().getMaxDecompressedSize (), _maxEnvelopeSize - ENVELOPE_HEADER_SIZE));
+    final FudgeMsgEnvelope envelope = new FudgeMsgReader (streamReader).nextMessageEnvelope ();
+    _sessionTaxonomy = streamReader.getSessionTaxonomy ();
+    _start += size;
+    if (_start == _end) {
+      _start = 0;
+      _end = 0;
+    }
+    return envelope;
+  }
+  
+  /**
+   * Discards any data received but not yet returned as part of an envelope, for example after a malformed envelope.
+   */
+  public void reset () {
+    _start = 0;
+    _end = 0;
+  }
+  
+  /**
+   * Returns the total size of the envelope being received.
+   * 
+   * @return the envelope size including the header, or 0 if the header has not been received in full
+   * @throws FudgeRuntimeIOException if the envelope header is malformed or the envelope is too large
+   */
+  private int getRequiredSize () {
+    if (getBufferedSize () < ENVELOPE_HEADER_SIZE) {
+      return 0;
+    }
+    final int size = readEnvelopeSize ();
+    if (size < ENVELOPE_HEADER_SIZE) {
+      throw new FudgeRuntimeIOException (new IOException ("Invalid envelope size " + size));
+    }
+    if (size > _maxEnvelopeSize) {
+      throw new FudgeRuntimeIOException (new IOException ("Envelope of " + size + " bytes exceeds the maximum of " + _maxEnvelopeSize));
+    }
+    return size;
+  }
+  
+  /**
+   * Reads the size from the header of the envelope being received.
+   * 
+   * @return the size
+   */
+  private int readEnvelopeSize () {
+    final int i = _start + 4;
+    return ((_data[i] & 0xFF) << 24) | ((_data[i + 1] & 0xFF) << 16) | ((_data[i + 2] & 0xFF) << 8) | (_data[i + 3] & 0xFF);
+  }
+  
+  /**
+   * Makes room for at least the given number of bytes after the data buffered, moving the buffered data to the start
+   * of the array or growing it as necessary.
+   * 
+   * @param length the number of bytes to make room for
+   */
+  private void ensureCapacity (final int length) {
+    if (_data.length - _end >= length) {
+      return;
+    }
+    final int buffered = _end - _start;
+    if (_data.length - buffered >= length) {
+      System.arraycopy (_data, _start, _data, 0, buffered);
+    } else {
+      final byte[] data = new byte[Math.max (_data.length * 2, buffered + length)];
+      System.arraycopy (_data, _start, data, 0, buffered);
+      _data = data;
+    }
+    _start = 0;
+    _end = buffered;
+  }
+  
+}
@@ -29,6 +29,24 @@ import java.io.Serializable;
  */
 public class FudgeMsgEnvelope implements Serializable {
 
+  /**
+   * The processing directive flag set in an encoded envelope header when the body is compressed.
+   * The flag is added and removed by the writers and readers, so is never set on a decoded envelope.
+   */
+  public static final int COMPRESSED_DIRECTIVE = 0x80;
+  /**
+   * The processing directive flag set in an encoded envelope header when field names are encoded using a
+   * {@link org.fudgemsg.taxon.SessionTaxonomy}. As with {@link #COMPRESSED_DIRECTIVE}, the flag is never set on a
+   * decoded envelope.
+   */
+  public static final int SESSION_TAXONOMY_DIRECTIVE = 0x40;
+  /**
+   * The processing directive flag set in an encoded envelope header when the body is written in the compact wire
+   * profile, with ordinals, value sizes and long values written as variable length integers. As with
+   * {@link #COMPRESSED_DIRECTIVE}, the flag is never set on a decoded envelope.
+   */
+  public static final int COMPACT_DIRECTIVE = 0x20;
+
   /**
    * The message this envelope wraps.
    */
@@ -214,7 +214,7 @@ public class FudgeMsgField implements FudgeField, Serializable {
     }
 
     sb.append(_type);
-    sb.append("-").append(_value);
+    sb.append("-").append(getValue());
     sb.append("]");
     return sb.toString();
   }
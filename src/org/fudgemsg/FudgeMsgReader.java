@@ -34,11 +34,15 @@ public class FudgeMsgReader {
   private final FudgeStreamReader _streamReader;
   
   /**
-   * An envelope buffer for reading in the current message. {@link #hasNext} will read the envelope header, and create this object
-   * with a {@link MutableFudgeFieldContainer} attached to it. The full call to {@link nextMessage} or {@link #nextMessageEnvelope} will
-   * process the message fields.
+   * Whether {@link #hasNext} has read the envelope header of the current message. The following call to {@link #nextMessage} or
+   * {@link #nextMessageEnvelope} will create the message and process its fields.
    */
-  private FudgeMsgEnvelope _currentEnvelope = null;
+  private boolean _envelopePending;
+  
+  /**
+   * Whether to retain the encoded form of each message read, if the underlying source supports it.
+   */
+  private boolean _retainEncoding;
   
   /**
    * Creates a new {@link FudgeMsgReader} around an existing {@link FudgeStreamReader}.
@@ -52,6 +56,26 @@ public class FudgeMsgReader {
     _streamReader = streamReader;
   }
   
+  /**
+   * Creates a new {@link FudgeMsgReader} around an existing {@link FudgeStreamReader}, decoding only the fields
+   * selected by a projection. Fields that are not selected are skipped by the stream reader without being decoded,
+   * so are absent from the messages returned.
+   * 
+   * @param streamReader the source of Fudge stream elements to read, a {@link FudgeDataInputStreamReader} or {@link FudgeByteBufferReader}
+   * @param projection the fields to decode, or {@code null} for all fields
+   * @throws IllegalArgumentException if the stream reader does not support projections
+   */
+  public FudgeMsgReader (final FudgeStreamReader streamReader, final FudgeFieldProjection projection) {
+    this (streamReader);
+    if (streamReader instanceof FudgeDataInputStreamReader) {
+      ((FudgeDataInputStreamReader)streamReader).setProjection (projection);
+    } else if (streamReader instanceof FudgeByteBufferReader) {
+      ((FudgeByteBufferReader)streamReader).setProjection (projection);
+    } else if (projection != null) {
+      throw new IllegalArgumentException ("Field projections are not supported by " + streamReader);
+    }
+  }
+  
   /**
    * Closes this {@link FudgeMsgReader} and the underlying {@link FudgeStreamReader}.
    */
@@ -80,15 +104,38 @@ public class FudgeMsgReader {
     return _streamReader;
   }
   
+  /**
+   * Returns whether the encoded form of each message and sub-message read is retained.
+   * 
+   * @return {@code true} if encodings are retained
+   */
+  public boolean isRetainEncoding () {
+    return _retainEncoding;
+  }
+  
+  /**
+   * Sets whether to retain the encoded form of each message and sub-message read. This is only supported when the
+   * underlying source is a {@link FudgeByteBufferReader}. A {@link FudgeMsg} with a retained encoding is written by
+   * copying the original bytes for as long as it, and every sub-message within it, is not modified. This makes
+   * forwarding a message with a few additional fields little more expensive than copying it. The encoded data must
+   * not be changed while the messages read are in use. Encodings are not retained while a projection is in use.
+   * 
+   * @param retainEncoding {@code true} to retain encodings
+   */
+  public void setRetainEncoding (final boolean retainEncoding) {
+    _retainEncoding = retainEncoding;
+  }
+  
   /**
    * Returns true if there are more messages to read from the underlying source.
    * 
    * @return {@code true} if {@link #nextMessage()} or {@link #nextMessageEnvelope()} will return data
    */
   public boolean hasNext () {
-    if (_currentEnvelope != null) return true;
-    _currentEnvelope = readMessageEnvelope ();
-    return (_currentEnvelope != null);
+    if (!_envelopePending) {
+      _envelopePending = readEnvelopeHeader ();
+    }
+    return _envelopePending;
   }
   
   /**
@@ -108,37 +155,110 @@ public class FudgeMsgReader {
    * @return the {@link FudgeMsgEnvelope}
    */
   public FudgeMsgEnvelope nextMessageEnvelope () {
-    FudgeMsgEnvelope msgEnv;
-    if (_currentEnvelope == null) {
-      msgEnv = readMessageEnvelope ();
-      if (msgEnv == null) return null;
-    } else {
-      msgEnv = _currentEnvelope;
-      _currentEnvelope = null;
-    }
+    final FudgeMsgEnvelope msgEnv = readMessageEnvelope ();
+    if (msgEnv == null) return null;
+    final int start = getEncodingStart ();
     processFields ((MutableFudgeFieldContainer)msgEnv.getMessage ());
+    retainEncoding (msgEnv.getMessage (), start, null);
     return msgEnv;
   }
   
+  /**
+   * Reads the next message into a caller owned message, reusing its field slots and sub-messages. The message is
+   * released before decoding, so any fields or sub-messages previously obtained from it must no longer be used. Values
+   * of the standard numeric and boolean types are held without boxing. Once the message has grown to fit the messages
+   * being read, decoding into it allocates little more than the field names.
+   * 
+   * @param msg the message to decode into, not null
+   * @return {@code true} if a message was read, {@code false} if there are no more messages
+   */
+  public boolean nextMessage (final ReusableFudgeMsg msg) {
+    msg.release ();
+    if (!consumeEnvelopeHeader ()) {
+      return false;
+    }
+    final int start = getEncodingStart ();
+    processReusableFields (msg);
+    retainEncoding (msg, start, null);
+    return true;
+  }
+  
+  /**
+   * Returns the position at which the encoding of the message about to be processed starts.
+   * 
+   * @return the position, or -1 if the encoding is not to be retained
+   */
+  private int getEncodingStart () {
+    if (isRetainEncoding () && (getStreamReader () instanceof FudgeByteBufferReader)) {
+      final FudgeByteBufferReader reader = (FudgeByteBufferReader)getStreamReader ();
+      if ((reader.getProjection () == null) && reader.isEncodingPortable ()) {
+        // the encoding of a projected message would include the fields skipped
+        return reader.getPosition ();
+      }
+    }
+    return -1;
+  }
+  
+  /**
+   * Attaches the encoding of a message just processed to it.
+   * 
+   * @param msg the message processed
+   * @param start the position returned by {@link #getEncodingStart} before it was processed
+   * @param parent the containing message, or {@code null} for a top level message
+   */
+  private void retainEncoding (final FudgeFieldContainer msg, final int start, final FudgeFieldContainer parent) {
+    if ((start < 0) || !(msg instanceof FudgeMsg)) {
+      return;
+    }
+    final FudgeByteBufferReader reader = (FudgeByteBufferReader)getStreamReader ();
+    final FudgeMsg fudgeMsg = (FudgeMsg)msg;
+    fudgeMsg.setEncodedFields (reader.getEncodedRegion (start, reader.getPosition ()).slice (), reader.getTaxonomy (), (parent instanceof FudgeMsg) ? (FudgeMsg)parent : null);
+  }
+  
   /**
    * Reads the next message envelope from the underlying stream. No fields are read.
    * 
    * @return the {@link FudgeMsgEnvelope} read
    */
   protected FudgeMsgEnvelope readMessageEnvelope () {
-    if (getStreamReader ().hasNext () == false) {
+    if (!consumeEnvelopeHeader ()) {
       return null;
     }
+    MutableFudgeFieldContainer msg = getFudgeContext().newMessage();
+    FudgeMsgEnvelope envelope = new FudgeMsgEnvelope (msg, getStreamReader ().getSchemaVersion(), getStreamReader ().getProcessingDirectives ());
+    return envelope;
+  }
+  
+  /**
+   * Moves past the envelope header of the next message, unless already read by {@link #hasNext}.
+   * 
+   * @return {@code true} if there is a message to process, {@code false} if the source has no more messages
+   */
+  private boolean consumeEnvelopeHeader () {
+    if (_envelopePending) {
+      _envelopePending = false;
+      return true;
+    }
+    return readEnvelopeHeader ();
+  }
+  
+  /**
+   * Reads the next envelope header from the underlying stream.
+   * 
+   * @return {@code true} if an envelope header was read, {@code false} if the source has no more messages
+   */
+  private boolean readEnvelopeHeader () {
+    if (getStreamReader ().hasNext () == false) {
+      return false;
+    }
     FudgeStreamElement element = getStreamReader ().next();
     if(element == null) {
-      return null;
+      return false;
     }
     if(element != FudgeStreamElement.MESSAGE_ENVELOPE) {
       throw new IllegalArgumentException("First element in encoding stream wasn't a message element.");
     }
-    MutableFudgeFieldContainer msg = getFudgeContext().newMessage();
-    FudgeMsgEnvelope envelope = new FudgeMsgEnvelope (msg, getStreamReader ().getSchemaVersion(), getStreamReader ().getProcessingDirectives ());
-    return envelope;
+    return true;
   }
   
   /**
@@ -151,13 +271,21 @@ public class FudgeMsgReader {
     while(reader.hasNext()) {
       FudgeStreamElement element = reader.next();
       switch(element) {
-      case SIMPLE_FIELD:
-        msg.add(reader.getFieldName(), reader.getFieldOrdinal(), reader.getFieldType(), reader.getFieldValue());
+      case SIMPLE_FIELD: {
+        final FudgeFieldType<?> type = reader.getFieldType();
+        if (!PrimitiveFudgeMsgField.isPrimitiveType(type)) {
+          msg.add(reader.getFieldName(), reader.getFieldOrdinal(), type, reader.getFieldValue());
+        } else {
+          msg.add(readPrimitiveField(reader, type));
+        }
         break;
+      }
       case SUBMESSAGE_FIELD_START:
         MutableFudgeFieldContainer subMsg = getFudgeContext().newMessage ();
         msg.add(reader.getFieldName(), reader.getFieldOrdinal(), FudgeMsgFieldType.INSTANCE, subMsg);
+        final int start = getEncodingStart ();
         processFields(subMsg);
+        retainEncoding (subMsg, start, msg);
         break;
       case SUBMESSAGE_FIELD_END:
         return;
@@ -165,4 +293,84 @@ public class FudgeMsgReader {
     }
   }
   
+  /**
+   * Reads the current field of a primitive type without boxing its value.
+   * <p>
+   * Short, int and long values are narrowed to the smallest type that holds them, as when
+   * adding to a {@link FudgeMsg}.
+   * 
+   * @param reader  the stream reader positioned at the field, not null
+   * @param type  the primitive field type, not null
+   * @return the field, not null
+   */
+  private static PrimitiveFudgeMsgField readPrimitiveField(final FudgeStreamReader reader, final FudgeFieldType<?> type) {
+    final Integer ordinal = reader.getFieldOrdinal();
+    final Short ordinalAsShort = (ordinal != null) ? ordinal.shortValue() : null;
+    if ((type.getTypeId() == FudgeTypeDictionary.FLOAT_TYPE_ID) || (type.getTypeId() == FudgeTypeDictionary.DOUBLE_TYPE_ID)) {
+      return PrimitiveFudgeMsgField.ofDouble(type, getFieldValueAsDouble(reader), reader.getFieldName(), ordinalAsShort);
+    }
+    final long value = getFieldValueAsLong(reader);
+    return PrimitiveFudgeMsgField.ofLong(PrimitiveFudgeMsgField.narrowType(type, value), value, reader.getFieldName(), ordinalAsShort);
+  }
+  
+  /**
+   * Returns the current field value as a {@code double}, without boxing if the reader supports it.
+   * 
+   * @param reader  the stream reader positioned at the field, not null
+   * @return the field value
+   */
+  private static double getFieldValueAsDouble(final FudgeStreamReader reader) {
+    if (reader instanceof PrimitiveFudgeStreamReader) {
+      return ((PrimitiveFudgeStreamReader) reader).getFieldValueAsDouble();
+    }
+    return reader.getFudgeContext().getTypeDictionary().getFieldDoubleValue(FudgeMsgField.of(reader.getFieldType(), reader.getFieldValue()));
+  }
+  
+  /**
+   * Returns the current field value as a {@code long}, without boxing if the reader supports it.
+   * 
+   * @param reader  the stream reader positioned at the field, not null
+   * @return the field value
+   */
+  private static long getFieldValueAsLong(final FudgeStreamReader reader) {
+    if (reader instanceof PrimitiveFudgeStreamReader) {
+      return ((PrimitiveFudgeStreamReader) reader).getFieldValueAsLong();
+    }
+    return reader.getFudgeContext().getTypeDictionary().getFieldLongValue(FudgeMsgField.of(reader.getFieldType(), reader.getFieldValue()));
+  }
+  
+  /**
+   * Processes all of the fields from the current message (or sub-message) in the stream into recycled slots of the
+   * supplied message.
+   * 
+   * @param msg message to add fields read to
+   */
+  private void processReusableFields (final ReusableFudgeMsg msg) {
+    final FudgeStreamReader reader = getStreamReader ();
+    while (reader.hasNext ()) {
+      switch (reader.next ()) {
+      case SIMPLE_FIELD: {
+        final FudgeFieldType<?> type = reader.getFieldType ();
+        if (!PrimitiveFudgeMsgField.isPrimitiveType (type)) {
+          msg.addValue (reader.getFieldName (), reader.getFieldOrdinal (), type, reader.getFieldValue ());
+        } else if ((type.getTypeId () == FudgeTypeDictionary.FLOAT_TYPE_ID) || (type.getTypeId () == FudgeTypeDictionary.DOUBLE_TYPE_ID)) {
+          msg.addDouble (reader.getFieldName (), reader.getFieldOrdinal (), type, getFieldValueAsDouble (reader));
+        } else {
+          msg.addLong (reader.getFieldName (), reader.getFieldOrdinal (), type, getFieldValueAsLong (reader));
+        }
+        break;
+      }
+      case SUBMESSAGE_FIELD_START: {
+        final ReusableFudgeMsg subMsg = msg.addSubMessage (reader.getFieldName (), reader.getFieldOrdinal ());
+        final int start = getEncodingStart ();
+        processReusableFields (subMsg);
+        retainEncoding (subMsg, start, msg);
+        break;
+      }
+      case SUBMESSAGE_FIELD_END:
+        return;
+      }
+    }
+  }
+  
 }
\ No newline at end of file
@@ -17,6 +17,8 @@
 package org.fudgemsg;
 
 import java.io.Flushable;
+import java.nio.ByteBuffer;
+import java.util.Collection;
 
 /**
  * A writer for passing Fudge messages ({@link FudgeFieldContainer} instances) to an underlying {@link FudgeStreamWriter} instance. This implementation
@@ -46,6 +48,22 @@ public class FudgeMsgWriter implements Flushable {
    * The processing directive flags to add to the envelope header for any messages that are passed without envelopes.
    */
   private int _defaultMessageProcessingDirectives = 0;
+  
+  /**
+   * The size of the buffer batches of messages are encoded into before being written to a stream.
+   */
+  private static final int BATCH_BUFFER_SIZE = 64 * 1024;
+  
+  /**
+   * The buffer batches of messages are encoded into, allocated on first use. A buffer grown for a larger message is
+   * released at the end of the batch.
+   */
+  private ByteBuffer _batchBuffer;
+  
+  /**
+   * The writer encoding into the batch buffer, null until the first envelope is written after it was emptied.
+   */
+  private FudgeByteBufferWriter _batchWriter;
 
   /**
    * Creates a new {@link FudgeMsgWriter} around an existing {@link FudgeStreamWriter}.
@@ -209,7 +227,7 @@ public class FudgeMsgWriter implements Flushable {
     if (taxonomyId != writer.getCurrentTaxonomyId ()) {
       writer.setCurrentTaxonomyId (taxonomyId);
     }
-    int messageSize = FudgeSize.calculateMessageEnvelopeSize (writer.getCurrentTaxonomy (), envelope);
+    int messageSize = calculateMessageEnvelopeSize (writer, envelope.getMessage ());
     writer.writeEnvelopeHeader (envelope.getProcessingDirectives (), envelope.getVersion (), messageSize);
     writer.writeFields (envelope.getMessage());
     writer.envelopeComplete ();
@@ -225,4 +243,165 @@ public class FudgeMsgWriter implements Flushable {
     writeMessageEnvelope (envelope, getDefaultTaxonomyId ());
   }
   
+  /**
+   * Writes a batch of messages with the given taxonomy. Default schema version and processing directive flags are
+   * used. See {@link #writeMessageEnvelopes(Collection, int)}.
+   * 
+   * @param messages messages to write, in order
+   * @param taxonomyId identifier of the taxonomy to use. If the taxonomy is recognized by the {@link FudgeContext} it will be used to reduce field names to ordinals where possible.
+   */
+  public void writeMessages (final Collection<? extends FudgeFieldContainer> messages, final int taxonomyId) {
+    beginBatch (taxonomyId);
+    for (FudgeFieldContainer message : messages) {
+      writeBatchedEnvelope (message, getDefaultMessageVersion (), getDefaultMessageProcessingDirectives ());
+    }
+    endBatch ();
+  }
+  
+  /**
+   * Writes a batch of messages. Default taxonomy, schema version and processing directive flags are used. See
+   * {@link #writeMessageEnvelopes(Collection, int)}.
+   * 
+   * @param messages messages to write, in order
+   */
+  public void writeMessages (final Collection<? extends FudgeFieldContainer> messages) {
+    writeMessages (messages, getDefaultTaxonomyId ());
+  }
+  
+  /**
+   * Writes a batch of message envelopes with the given taxonomy. The taxonomy is resolved once for the whole batch.
+   * When writing to an uncompressed {@link FudgeDataOutputStreamWriter} the envelopes are encoded into a contiguous buffer which
+   * is written to the underlying stream as a single block, and the stream is flushed at most once at the end of the
+   * batch rather than after each envelope. The bytes written are the same as writing each envelope in turn.
+   * 
+   * @param envelopes message envelopes to write, in order
+   * @param taxonomyId identifier of the taxonomy to use. If the taxonomy is recognized by the {@link FudgeContext} it will be used to reduce field names to ordinals where possible.
+   */
+  public void writeMessageEnvelopes (final Collection<FudgeMsgEnvelope> envelopes, final int taxonomyId) {
+    beginBatch (taxonomyId);
+    for (FudgeMsgEnvelope envelope : envelopes) {
+      if (envelope != null) {
+        writeBatchedEnvelope (envelope.getMessage (), envelope.getVersion (), envelope.getProcessingDirectives ());
+      }
+    }
+    endBatch ();
+  }
+  
+  /**
+   * Writes a batch of message envelopes using the default taxonomy. See {@link #writeMessageEnvelopes(Collection, int)}.
+   * 
+   * @param envelopes message envelopes to write, in order
+   */
+  public void writeMessageEnvelopes (final Collection<FudgeMsgEnvelope> envelopes) {
+    writeMessageEnvelopes (envelopes, getDefaultTaxonomyId ());
+  }
+  
+  /**
+   * Indicates whether batches are encoded into a buffer before being written, which is the case for a
+   * {@link FudgeDataOutputStreamWriter} that does not compress envelopes, use a session taxonomy or write the compact
+   * profile. A compressing writer must see each envelope to compress it, one using a session taxonomy each field name,
+   * and one writing the compact profile each field.
+   * 
+   * @param writer the underlying writer
+   * @return {@code true} if batches are buffered, {@code false} if envelopes are written to the writer individually
+   */
+  /* package */ static boolean isBatchBuffered (final FudgeStreamWriter writer) {
+    if (!(writer instanceof FudgeDataOutputStreamWriter)) {
+      return false;
+    }
+    final FudgeDataOutputStreamWriter dataWriter = (FudgeDataOutputStreamWriter)writer;
+    return (dataWriter.getCompressionCodec () == null) && (dataWriter.getSessionTaxonomy () == null) && !dataWriter.isCompact ();
+  }
+  
+  /**
+   * Calculates the size of an envelope as it will be written to a stream writer, which depends on whether the writer
+   * uses the compact wire profile.
+   * 
+   * @param writer the underlying writer, with the taxonomy to use set
+   * @param message the message
+   * @return the envelope size in bytes
+   */
+  /* package */ static int calculateMessageEnvelopeSize (final FudgeStreamWriter writer, final FudgeFieldContainer message) {
+    if ((writer instanceof FudgeDataOutputStreamWriter) && ((FudgeDataOutputStreamWriter)writer).isCompact ()) {
+      return FudgeSize.calculateCompactMessageEnvelopeSize (writer.getCurrentTaxonomy (), message);
+    }
+    return FudgeSize.calculateMessageEnvelopeSize (writer.getCurrentTaxonomy (), message);
+  }
+  
+  /**
+   * Prepares to write a batch of envelopes, setting the taxonomy of the underlying writer.
+   * 
+   * @param taxonomyId identifier of the taxonomy to use
+   */
+  private void beginBatch (final int taxonomyId) {
+    final FudgeStreamWriter writer = getStreamWriter ();
+    if (taxonomyId != writer.getCurrentTaxonomyId ()) {
+      writer.setCurrentTaxonomyId (taxonomyId);
+    }
+    if (isBatchBuffered (writer)) {
+      if (_batchBuffer == null) {
+        _batchBuffer = ByteBuffer.allocate (BATCH_BUFFER_SIZE);
+      }
+      _batchBuffer.clear ();
+      _batchWriter = null;
+    }
+  }
+  
+  /**
+   * Writes an envelope as part of a batch, either into the batch buffer or directly to the underlying writer.
+   * 
+   * @param message message to write
+   * @param version schema version
+   * @param processingDirectives processing directive flags
+   */
+  private void writeBatchedEnvelope (final FudgeFieldContainer message, final int version, final int processingDirectives) {
+    final FudgeStreamWriter writer = getStreamWriter ();
+    final int messageSize = calculateMessageEnvelopeSize (writer, message);
+    if (!isBatchBuffered (writer)) {
+      writer.writeEnvelopeHeader (processingDirectives, version, messageSize);
+      writer.writeFields (message);
+      writer.envelopeComplete ();
+      return;
+    }
+    if (messageSize > _batchBuffer.remaining ()) {
+      writeBatchBuffer ();
+      if (messageSize > _batchBuffer.capacity ()) {
+        _batchBuffer = ByteBuffer.allocate (messageSize);
+      }
+    }
+    if (_batchWriter == null) {
+      _batchWriter = new FudgeByteBufferWriter (getFudgeContext (), _batchBuffer);
+      _batchWriter.setCurrentTaxonomyId (writer.getCurrentTaxonomyId ());
+    }
+    _batchWriter.writeEnvelopeHeader (processingDirectives, version, messageSize);
+    _batchWriter.writeFields (message);
+  }
+  
+  /**
+   * Writes any data in the batch buffer to the underlying {@link FudgeDataOutputStreamWriter}, leaving the buffer empty.
+   */
+  private void writeBatchBuffer () {
+    _batchBuffer.flip ();
+    if (_batchBuffer.hasRemaining ()) {
+      ((FudgeDataOutputStreamWriter)getStreamWriter ()).writeEncoded (_batchBuffer);
+    }
+    _batchBuffer.clear ();
+    _batchWriter = null;
+  }
+  
+  /**
+   * Completes a batch, writing any data still buffered and completing the envelopes with the underlying writer.
+   */
+  private void endBatch () {
+    final FudgeStreamWriter writer = getStreamWriter ();
+    if (isBatchBuffered (writer)) {
+      writeBatchBuffer ();
+      if (_batchBuffer.capacity () > BATCH_BUFFER_SIZE) {
+        // don't hold on to the space needed by an unusually large message
+        _batchBuffer = null;
+      }
+      writer.envelopeComplete ();
+    }
+  }
+  
 }
\ No newline at end of file
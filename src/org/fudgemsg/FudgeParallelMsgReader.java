@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes a buffer of concatenated message envelopes, such as a recovery file or snapshot, using a pool of threads.
+ * The envelope boundaries are first found with a {@link FudgeEnvelopeScanner}, which reads only the envelope headers.
+ * Runs of consecutive envelopes are then decoded as separate tasks on an {@link ExecutorService}, and the envelopes
+ * are returned in their original order by an {@link Iterator} as each task completes. Only a bounded number of tasks
+ * is submitted ahead of the consumer, so memory use does not grow with the size of the buffer if the consumer
+ * discards the messages it has processed.
+ * <p>
+ * The content of the buffer must not be changed while it is being decoded. A reader may be used for several buffers,
+ * but the iterators returned are not thread-safe.
+ */
+public class FudgeParallelMsgReader {
+  
+  /**
+   * The default number of envelopes decoded by each task.
+   */
+  public static final int DEFAULT_ENVELOPES_PER_TASK = 256;
+  
+  private final FudgeContext _fudgeContext;
+  private final ExecutorService _executor;
+  private int _envelopesPerTask = DEFAULT_ENVELOPES_PER_TASK;
+  private int _maxTasksInFlight = 2 * Runtime.getRuntime ().availableProcessors ();
+  
+  /**
+   * Creates a new {@link FudgeParallelMsgReader} decoding on the given executor.
+   * 
+   * @param fudgeContext the {@link FudgeContext} to use for type and taxonomy resolution
+   * @param executor the executor to run the decoding tasks on
+   */
+  public FudgeParallelMsgReader (final FudgeContext fudgeContext, final ExecutorService executor) {
+    if (fudgeContext == null) {
+      throw new NullPointerException ("Must provide a Fudge Context");
+    }
+    if (executor == null) {
+      throw new NullPointerException ("Must provide an ExecutorService");
+    }
+    _fudgeContext = fudgeContext;
+    _executor = executor;
+  }
+  
+  /**
+   * Returns the {@link FudgeContext} used for type and taxonomy resolution.
+   * 
+   * @return the {@code FudgeContext}
+   */
+  public FudgeContext getFudgeContext () {
+    return _fudgeContext;
+  }
+  
+  /**
+   * Returns the number of envelopes decoded by each task.
+   * 
+   * @return the number of envelopes
+   */
+  public int getEnvelopesPerTask () {
+    return _envelopesPerTask;
+  }
+  
+  /**
+   * Sets the number of envelopes decoded by each task. Larger values reduce the scheduling overhead, smaller values
+   * balance the work better between threads when envelope sizes vary.
+   * 
+   * @param envelopesPerTask the number of envelopes, at least 1
+   */
+  public void setEnvelopesPerTask (final int envelopesPerTask) {
+    if (envelopesPerTask < 1) {
+      throw new IllegalArgumentException ("Envelopes per task must be at least 1");
+    }
+    _envelopesPerTask = envelopesPerTask;
+  }
+  
+  /**
+   * Returns the maximum number of tasks submitted ahead of the consumer of an iterator.
+   * 
+   * @return the number of tasks
+   */
+  public int getMaxTasksInFlight () {
+    return _maxTasksInFlight;
+  }
+  
+  /**
+   * Sets the maximum number of tasks submitted ahead of the consumer of an iterator. The default is twice the number
+   * of available processors.
+   * 
+   * @param maxTasksInFlight the number of tasks, at least 1
+   */
+  public void setMaxTasksInFlight (final int maxTasksInFlight) {
+    if (maxTasksInFlight < 1) {
+      throw new IllegalArgumentException ("Tasks in flight must be at least 1");
+    }
+    _maxTasksInFlight = maxTasksInFlight;
+  }
+  
+  /**
+   * Decodes the envelopes between a buffer's position and limit, returning them in order. The envelope headers are
+   * scanned before this method returns; the messages are decoded as the iterator is consumed.
+   * 
+   * @param buffer the buffer holding the envelopes
+   * @return an iterator over the decoded envelopes
+   * @throws FudgeRuntimeIOException if the buffer does not end with a complete envelope or a header is malformed
+   */
+  public Iterator<FudgeMsgEnvelope> read (final ByteBuffer buffer) {
+    final List<ByteBuffer> regions = new ArrayList<ByteBuffer> ();
+    final FudgeEnvelopeScanner scanner = new FudgeEnvelopeScanner (buffer);
+    int regionStart = buffer.position ();
+    int envelopes = 0;
+    while (scanner.next ()) {
+      if (++envelopes == getEnvelopesPerTask ()) {
+        regions.add (region (buffer, regionStart, scanner.getPosition ()));
+        regionStart = scanner.getPosition ();
+        envelopes = 0;
+      }
+    }
+    if (scanner.getPosition () != buffer.limit ()) {
+      throw new FudgeRuntimeIOException (new EOFException ("Incomplete envelope at " + scanner.getPosition ()));
+    }
+    if (envelopes > 0) {
+      regions.add (region (buffer, regionStart, scanner.getPosition ()));
+    }
+    return new EnvelopeIterator (regions.iterator ());
+  }
+  
+  /**
+   * Decodes all of the envelopes between a buffer's position and limit.
+   * 
+   * @param buffer the buffer holding the envelopes
+   * @return the decoded envelopes, in order
+   * @throws FudgeRuntimeIOException if the buffer does not end with a complete envelope or a header is malformed
+   */
+  public List<FudgeMsgEnvelope> readAll (final ByteBuffer buffer) {
+    final List<FudgeMsgEnvelope> envelopes = new ArrayList<FudgeMsgEnvelope> ();
+    final Iterator<FudgeMsgEnvelope> iterator = read (buffer);
+    while (iterator.hasNext ()) {
+      envelopes.add (iterator.next ());
+    }
+    return envelopes;
+  }
+  
+  private static ByteBuffer region (final ByteBuffer buffer, final int start, final int end) {
+    final ByteBuffer region = buffer.duplicate ();
+    region.limit (end).position (start);
+    return region;
+  }
+  
+  /**
+   * Decodes the envelopes within a region of the buffer.
+   */
+  private class DecodeTask implements Callable<List<FudgeMsgEnvelope>> {
+    
+    private final ByteBuffer _region;
+    
+    private DecodeTask (final ByteBuffer region) {
+      _region = region;
+    }
+    
+    @Override
+    public List<FudgeMsgEnvelope> call () {
+      final List<FudgeMsgEnvelope> envelopes = new ArrayList<FudgeMsgEnvelope> (getEnvelopesPerTask ());
+      final FudgeMsgReader reader = new FudgeMsgReader (new FudgeByteBufferReader (getFudgeContext (), _region));
+      FudgeMsgEnvelope envelope;
+      while ((envelope = reader.nextMessageEnvelope ()) != null) {
+        envelopes.add (envelope);
+      }
+      return envelopes;
+    }
+    
+  }
+  
+  /**
+   * Returns the envelopes decoded by each task in turn, keeping a bounded number of tasks submitted ahead.
+   */
+  private class EnvelopeIterator implements Iterator<FudgeMsgEnvelope> {
+    
+    private final Iterator<ByteBuffer> _regions;
+    private final Queue<Future<List<FudgeMsgEnvelope>>> _tasks = new LinkedList<Future<List<FudgeMsgEnvelope>>> ();
+    private Iterator<FudgeMsgEnvelope> _current;
+    
+    private EnvelopeIterator (final Iterator<ByteBuffer> regions) {
+      _regions = regions;
+      submitTasks ();
+    }
+    
+    private void submitTasks () {
+      while ((_tasks.size () < getMaxTasksInFlight ()) && _regions.hasNext ()) {
+        _tasks.add (_executor.submit (new DecodeTask (_regions.next ())));
+      }
+    }
+    
+    @Override
+    public boolean hasNext () {
+      while ((_current == null) || !_current.hasNext ()) {
+        final Future<List<FudgeMsgEnvelope>> task = _tasks.poll ();
+        if (task == null) {
+          return false;
+        }
+        submitTasks ();
+        try {
+          _current = task.get ().iterator ();
+        } catch (InterruptedException e) {
+          Thread.currentThread ().interrupt ();
+          cancelTasks ();
+          throw new FudgeRuntimeException ("Interrupted while decoding", e);
+        } catch (ExecutionException e) {
+          cancelTasks ();
+          if (e.getCause () instanceof RuntimeException) {
+            throw (RuntimeException)e.getCause ();
+          }
+          throw new FudgeRuntimeException ("Unable to decode envelopes", e.getCause ());
+        }
+      }
+      return true;
+    }
+    
+    private void cancelTasks () {
+      Future<List<FudgeMsgEnvelope>> task;
+      while ((task = _tasks.poll ()) != null) {
+        task.cancel (true);
+      }
+      while (_regions.hasNext ()) {
+        _regions.next ();
+      }
+    }
+    
+    @Override
+    public FudgeMsgEnvelope next () {
+      if (!hasNext ()) {
+        throw new NoSuchElementException ();
+      }
+      return _current.next ();
+    }
+    
+    @Override
+    public void remove () {
+      throw new UnsupportedOperationException ();
+    }
+    
+  }
+  
+}
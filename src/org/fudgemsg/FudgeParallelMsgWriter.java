@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.fudgemsg.taxon.FudgeTaxonomy;
+
+/**
+ * A {@link FudgeMsgWriter} that encodes batches of messages using a pool of threads. The messages of a batch are
+ * divided into runs of consecutive envelopes, each of which is encoded as a separate task on an
+ * {@link ExecutorService} into a buffer of its own. The encoded buffers are then written to the underlying
+ * {@link FudgeDataOutputStreamWriter} in submission order, so the bytes written are the same as writing each envelope
+ * in turn. Only a bounded number of tasks is submitted ahead of the writing thread, so memory use does not grow with
+ * the size of the batch.
+ * <p>
+ * The messages of a batch must not be modified until the batch has been written. If the underlying writer is not an
+ * uncompressed {@link FudgeDataOutputStreamWriter} batches are written sequentially. Individual messages are always written
+ * directly by the calling thread.
+ */
+public class FudgeParallelMsgWriter extends FudgeMsgWriter {
+  
+  /**
+   * The default number of envelopes encoded by each task.
+   */
+  public static final int DEFAULT_ENVELOPES_PER_TASK = 256;
+  
+  private final ExecutorService _executor;
+  private int _envelopesPerTask = DEFAULT_ENVELOPES_PER_TASK;
+  private int _maxTasksInFlight = 2 * Runtime.getRuntime ().availableProcessors ();
+  
+  /**
+   * Creates a new {@link FudgeParallelMsgWriter} around an existing {@link FudgeStreamWriter}, encoding batches on the
+   * given executor.
+   * 
+   * @param streamWriter target to write Fudge stream elements to
+   * @param executor the executor to run the encoding tasks on
+   */
+  public FudgeParallelMsgWriter (final FudgeStreamWriter streamWriter, final ExecutorService executor) {
+    super (streamWriter);
+    if (executor == null) {
+      throw new NullPointerException ("Must provide an ExecutorService");
+    }
+    _executor = executor;
+  }
+  
+  /**
+   * Returns the number of envelopes encoded by each task.
+   * 
+   * @return the number of envelopes
+   */
+  public int getEnvelopesPerTask () {
+    return _envelopesPerTask;
+  }
+  
+  /**
+   * Sets the number of envelopes encoded by each task. Larger values reduce the scheduling overhead, smaller values
+   * balance the work better between threads when message sizes vary.
+   * 
+   * @param envelopesPerTask the number of envelopes, at least 1
+   */
+  public void setEnvelopesPerTask (final int envelopesPerTask) {
+    if (envelopesPerTask < 1) {
+      throw new IllegalArgumentException ("Envelopes per task must be at least 1");
+    }
+    _envelopesPerTask = envelopesPerTask;
+  }
+  
+  /**
+   * Returns the maximum number of tasks submitted ahead of the writing thread.
+   * 
+   * @return the number of tasks
+   */
+  public int getMaxTasksInFlight () {
+    return _maxTasksInFlight;
+  }
+  
+  /**
+   * Sets the maximum number of tasks submitted ahead of the writing thread. The default is twice the number of
+   * available processors.
+   * 
+   * @param maxTasksInFlight the number of tasks, at least 1
+   */
+  public void setMaxTasksInFlight (final int maxTasksInFlight) {
+    if (maxTasksInFlight < 1) {
+      throw new IllegalArgumentException ("Tasks in flight must be at least 1");
+    }
+    _maxTasksInFlight = maxTasksInFlight;
+  }
+  
+  /**
+   * Writes a batch of messages with the given taxonomy, encoding them in parallel. Default schema version and
+   * processing directive flags are used. See {@link #writeMessageEnvelopes(Collection, int)}.
+   * 
+   * @param messages messages to write, in order
+   * @param taxonomyId identifier of the taxonomy to use. If the taxonomy is recognized by the {@link FudgeContext} it will be used to reduce field names to ordinals where possible.
+   */
+  @Override
+  public void writeMessages (final Collection<? extends FudgeFieldContainer> messages, final int taxonomyId) {
+    if (!isBatchBuffered (getStreamWriter ())) {
+      super.writeMessages (messages, taxonomyId);
+      return;
+    }
+    final List<FudgeMsgEnvelope> envelopes = new ArrayList<FudgeMsgEnvelope> (messages.size ());
+    for (FudgeFieldContainer message : messages) {
+      envelopes.add (new FudgeMsgEnvelope (message, getDefaultMessageVersion (), getDefaultMessageProcessingDirectives ()));
+    }
+    writeParallel (envelopes, taxonomyId);
+  }
+  
+  /**
+   * Writes a batch of message envelopes with the given taxonomy, encoding them in parallel. The bytes written are the
+   * same as writing each envelope in turn, and the stream is flushed at most once at the end of the batch. If encoding
+   * fails, the envelopes preceding the failed task will already have been written.
+   * 
+   * @param envelopes message envelopes to write, in order
+   * @param taxonomyId identifier of the taxonomy to use. If the taxonomy is recognized by the {@link FudgeContext} it will be used to reduce field names to ordinals where possible.
+   */
+  @Override
+  public void writeMessageEnvelopes (final Collection<FudgeMsgEnvelope> envelopes, final int taxonomyId) {
+    if (!isBatchBuffered (getStreamWriter ())) {
+      super.writeMessageEnvelopes (envelopes, taxonomyId);
+      return;
+    }
+    writeParallel (envelopes, taxonomyId);
+  }
+  
+  /**
+   * Encodes runs of envelopes on the executor and writes the encoded buffers to the underlying stream in order.
+   * 
+   * @param envelopes message envelopes to write, in order
+   * @param taxonomyId identifier of the taxonomy to use
+   */
+  private void writeParallel (final Collection<FudgeMsgEnvelope> envelopes, final int taxonomyId) {
+    final FudgeDataOutputStreamWriter writer = (FudgeDataOutputStreamWriter)getStreamWriter ();
+    if (taxonomyId != writer.getCurrentTaxonomyId ()) {
+      writer.setCurrentTaxonomyId (taxonomyId);
+    }
+    final Iterator<FudgeMsgEnvelope> iterator = envelopes.iterator ();
+    final Queue<Future<ByteBuffer>> tasks = new LinkedList<Future<ByteBuffer>> ();
+    try {
+      do {
+        while ((tasks.size () < getMaxTasksInFlight ()) && iterator.hasNext ()) {
+          final List<FudgeMsgEnvelope> run = new ArrayList<FudgeMsgEnvelope> (getEnvelopesPerTask ());
+          while ((run.size () < getEnvelopesPerTask ()) && iterator.hasNext ()) {
+            final FudgeMsgEnvelope envelope = iterator.next ();
+            if (envelope != null) {
+              run.add (envelope);
+            }
+          }
+          if (!run.isEmpty ()) {
+            tasks.add (_executor.submit (new EncodeTask (run, writer.getCurrentTaxonomyId (), writer.getCurrentTaxonomy ())));
+          }
+        }
+        final Future<ByteBuffer> task = tasks.poll ();
+        if (task != null) {
+          writer.writeEncoded (task.get ());
+        }
+      } while (!tasks.isEmpty () || iterator.hasNext ());
+    } catch (InterruptedException e) {
+      Thread.currentThread ().interrupt ();
+      cancelTasks (tasks);
+      throw new FudgeRuntimeException ("Interrupted while encoding", e);
+    } catch (ExecutionException e) {
+      cancelTasks (tasks);
+      if (e.getCause () instanceof RuntimeException) {
+        throw (RuntimeException)e.getCause ();
+      }
+      throw new FudgeRuntimeException ("Unable to encode envelopes", e.getCause ());
+    } catch (RuntimeException e) {
+      cancelTasks (tasks);
+      throw e;
+    }
+    writer.envelopeComplete ();
+  }
+  
+  private static void cancelTasks (final Queue<Future<ByteBuffer>> tasks) {
+    Future<ByteBuffer> task;
+    while ((task = tasks.poll ()) != null) {
+      task.cancel (true);
+    }
+  }
+  
+  /**
+   * Encodes a run of envelopes into a buffer sized to hold them exactly.
+   */
+  private class EncodeTask implements Callable<ByteBuffer> {
+    
+    private final List<FudgeMsgEnvelope> _envelopes;
+    private final int _taxonomyId;
+    private final FudgeTaxonomy _taxonomy;
+    
+    private EncodeTask (final List<FudgeMsgEnvelope> envelopes, final int taxonomyId, final FudgeTaxonomy taxonomy) {
+      _envelopes = envelopes;
+      _taxonomyId = taxonomyId;
+      _taxonomy = taxonomy;
+    }
+    
+    @Override
+    public ByteBuffer call () {
+      final int[] sizes = new int[_envelopes.size ()];
+      int totalSize = 0;
+      for (int i = 0; i < sizes.length; i++) {
+        sizes[i] = FudgeSize.calculateMessageEnvelopeSize (_taxonomy, _envelopes.get (i));
+        totalSize += sizes[i];
+      }
+      final ByteBuffer buffer = ByteBuffer.allocate (totalSize);
+      final FudgeByteBufferWriter writer = new FudgeByteBufferWriter (getFudgeContext (), buffer);
+      writer.setCurrentTaxonomyId (_taxonomyId);
+      for (int i = 0; i < sizes.length; i++) {
+        final FudgeMsgEnvelope envelope = _envelopes.get (i);
+        writer.writeEnvelopeHeader (envelope.getProcessingDirectives (), envelope.getVersion (), sizes[i]);
+        writer.writeFields (envelope.getMessage ());
+      }
+      buffer.flip ();
+      return buffer;
+    }
+    
+  }
+  
+}
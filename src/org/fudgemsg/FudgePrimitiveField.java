@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+/**
+ * A field holding a boolean or numeric value that can be read without boxing.
+ * <p>
+ * The field type is one of the boolean, byte, short, int, long, float or double types
+ * from {@link org.fudgemsg.types.PrimitiveFieldTypes}. {@link #getValue()} returns the
+ * equivalent boxed value.
+ */
+public interface FudgePrimitiveField extends FudgeField {
+
+  /**
+   * Gets the value as a {@code long}.
+   * <p>
+   * A boolean value is 1 for true and 0 for false, and a floating point value is
+   * truncated as by a Java narrowing conversion.
+   * 
+   * @return the value
+   */
+  long getLongValue();
+
+  /**
+   * Gets the value as a {@code double}.
+   * <p>
+   * A boolean value is 1 for true and 0 for false.
+   * 
+   * @return the value
+   */
+  double getDoubleValue();
+
+}
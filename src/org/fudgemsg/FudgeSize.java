@@ -15,6 +15,9 @@
  */
 package org.fudgemsg;
 
+import java.nio.ByteBuffer;
+import java.util.Map;
+
 import org.fudgemsg.taxon.FudgeTaxonomy;
 
 /**
@@ -40,12 +43,29 @@ public class FudgeSize {
    * @return the number of bytes
    */
   public static <T> int calculateFieldSize(final FudgeTaxonomy taxonomy, final Short ordinal, final String name, final FudgeFieldType<T> type, final T value) {
+    if (type.isVariableSize()) {
+      return calculateFieldHeaderSize(taxonomy, ordinal, name) + calculateVariableValueSize(type.getVariableSize(value, taxonomy));
+    } else {
+      return calculateFieldHeaderSize(taxonomy, ordinal, name) + type.getFixedSize();
+    }
+  }
+
+  /**
+   * Calculates the size of a field header, excluding any variable width size prefix.
+   * 
+   * @param taxonomy  the taxonomy in use, null if no taxonomy
+   * @param ordinal  the field ordinal, null if no ordinal
+   * @param name  the field name, null if no name
+   * @return the number of bytes
+   */
+  private static int calculateFieldHeaderSize(final FudgeTaxonomy taxonomy, final Short ordinal, final String name) {
     int size = 0;
     // field prefix
     size += 2;
     boolean hasOrdinal = ordinal != null;
     boolean hasName = name != null;
-    if (name != null && taxonomy != null) {
+    if (name != null && ordinal == null && taxonomy != null) {
+      // as the writers, only a field without an ordinal has its name looked up
       if (taxonomy.getFieldOrdinal(name) != null) {
         hasOrdinal = true;
         hasName = false;
@@ -58,21 +78,25 @@ public class FudgeSize {
       // one for the size prefix
       size++;
       // then for the UTF Encoding
-      size += UTF8.getLengthBytes(name);
+      size += FieldNameCache.getLengthBytes(name);
     }
-    if (type.isVariableSize()) {
-      int valueSize = type.getVariableSize(value, taxonomy);
-      if (valueSize <= 255) {
-        size += valueSize + 1;
-      } else if (valueSize <= Short.MAX_VALUE) {
-        size += valueSize + 2;
-      } else {
-        size += valueSize + 4;
-      }
+    return size;
+  }
+
+  /**
+   * Calculates the size of a variable width value including its size prefix.
+   * 
+   * @param valueSize  the size of the value payload
+   * @return the number of bytes
+   */
+  private static int calculateVariableValueSize(final int valueSize) {
+    if (valueSize <= 255) {
+      return valueSize + 1;
+    } else if (valueSize <= Short.MAX_VALUE) {
+      return valueSize + 2;
     } else {
-      size += type.getFixedSize();
+      return valueSize + 4;
     }
-    return size;
   }
 
   /**
@@ -164,6 +188,28 @@ public class FudgeSize {
     return calculateFieldSize(null, null, null, type, value);
   }
 
+  /**
+   * Calculates the size of a field holding an array of a primitive type in the Fudge stream in bytes, from the
+   * length of the array rather than its value.
+   * <p>
+   * This is the size of a field written by {@link FudgeDataOutputStreamWriter#writeArrayField} in the standard profile.
+   * Use {@link #calculateCompactArrayFieldSize} for the compact profile.
+   *
+   * @param taxonomy  the taxonomy in use, null if no taxonomy
+   * @param ordinal  the field ordinal, null if no ordinal
+   * @param name  the field name, null if no name
+   * @param type  the Fudge field type, not null
+   * @param length  the number of elements in the array
+   * @return the number of bytes
+   * @throws IllegalArgumentException if the type is not a primitive array type
+   */
+  public static int calculateArrayFieldSize(final FudgeTaxonomy taxonomy, final Short ordinal, final String name, final FudgeFieldType<?> type, final int length) {
+    if (!FudgeArrayInputStream.isArrayType(type)) {
+      throw new IllegalArgumentException("Type " + type + " is not a primitive array type");
+    }
+    return calculateFieldHeaderSize(taxonomy, ordinal, name) + calculateVariableValueSize(length * FudgeArrayInputStream.getElementSize(type.getJavaType()));
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Calculates the size of a message as the sum of the fields.
@@ -173,6 +219,10 @@ public class FudgeSize {
    * @return the number of bytes
    */
   public static int calculateMessageSize(final FudgeTaxonomy taxonomy, final FudgeFieldContainer fields) {
+    final ByteBuffer encoded = getRetainedEncoding(taxonomy, fields);
+    if (encoded != null) {
+      return encoded.remaining();
+    }
     int bytes = 0;
     for (FudgeField field : fields) {
       bytes += calculateFieldSize(taxonomy, field);
@@ -180,6 +230,75 @@ public class FudgeSize {
     return bytes;
   }
 
+  /**
+   * Calculates the size of a message as the sum of the fields, recording the size of each
+   * sub-message encountered.
+   * <p>
+   * Each sub-message is sized once and the result stored against the container instance.
+   * A writer can then look up the size of a sub-message when it is written rather than
+   * recalculating it at each level of nesting, keeping the cost of encoding linear in the
+   * size of the message. Sizes already present in the map are reused.
+   * 
+   * @param taxonomy  the taxonomy in use, null if no taxonomy
+   * @param fields  the fields to calculate a size for, not null
+   * @param subMessageSizes  the map to record sub-message sizes in, keyed by identity, not null
+   * @return the number of bytes
+   */
+  public static int calculateMessageSize(final FudgeTaxonomy taxonomy, final FudgeFieldContainer fields, final Map<FudgeFieldContainer, Integer> subMessageSizes) {
+    final ByteBuffer encoded = getRetainedEncoding(taxonomy, fields);
+    if (encoded != null) {
+      return encoded.remaining();
+    }
+    int bytes = 0;
+    for (FudgeField field : fields) {
+      if (field.getValue() instanceof FudgeFieldContainer) {
+        final int valueSize = calculateSubMessageSize(taxonomy, (FudgeFieldContainer) field.getValue(), subMessageSizes);
+        bytes += calculateFieldHeaderSize(taxonomy, field.getOrdinal(), field.getName()) + calculateVariableValueSize(valueSize);
+      } else {
+        bytes += calculateFieldSize(taxonomy, field);
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Gets the size of a sub-message, calculating and recording it and the sizes of any nested
+   * sub-messages if not already known.
+   * 
+   * @param taxonomy  the taxonomy in use, null if no taxonomy
+   * @param subMessage  the sub-message to calculate a size for, not null
+   * @param subMessageSizes  the map to record sub-message sizes in, keyed by identity, not null
+   * @return the number of bytes in the sub-message payload
+   */
+  public static int calculateSubMessageSize(final FudgeTaxonomy taxonomy, final FudgeFieldContainer subMessage, final Map<FudgeFieldContainer, Integer> subMessageSizes) {
+    Integer size = subMessageSizes.get(subMessage);
+    if (size == null) {
+      size = calculateMessageSize(taxonomy, subMessage, subMessageSizes);
+      subMessageSizes.put(subMessage, size);
+    }
+    return size;
+  }
+
+  /**
+   * Gets the encoded form retained by a message if it can be written verbatim using the given taxonomy.
+   * <p>
+   * Messages read with their encoding retained, and lazily decoded messages, can be written
+   * by copying the original bytes if unmodified. The size of such a message is the size of
+   * the retained encoding.
+   * 
+   * @param taxonomy  the taxonomy in use, null if no taxonomy
+   * @param fields  the message, not null
+   * @return a buffer positioned over the encoded fields, null if no encoding is available
+   */
+  /* package */ static ByteBuffer getRetainedEncoding(final FudgeTaxonomy taxonomy, final FudgeFieldContainer fields) {
+    if (fields instanceof FudgeMsg) {
+      return ((FudgeMsg) fields).getRetainedEncoding(taxonomy);
+    } else if (fields instanceof LazyFudgeMsg) {
+      return ((LazyFudgeMsg) fields).getRetainedEncoding(taxonomy);
+    }
+    return null;
+  }
+
   /**
    * Calculates the size of a message as the sum of the fields when no taxonomy is used.
    * 
@@ -233,4 +352,152 @@ public class FudgeSize {
     return 8 + calculateMessageSize(null, envelope.getMessage());
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * Calculates the size of a message in the compact wire profile, as written with the
+   * {@link FudgeMsgEnvelope#COMPACT_DIRECTIVE} flag set.
+   * <p>
+   * In the compact profile ordinals are zig-zag encoded and written as variable length
+   * integers, as are the sizes of variable width values. Long values are zig-zag encoded
+   * and written as variable length integers.
+   * 
+   * @param taxonomy  the taxonomy in use, null if no taxonomy
+   * @param fields  the fields to calculate a size for, not null
+   * @return the number of bytes
+   */
+  public static int calculateCompactMessageSize(final FudgeTaxonomy taxonomy, final FudgeFieldContainer fields) {
+    int bytes = 0;
+    for (FudgeField field : fields) {
+      bytes += calculateCompactFieldSize(taxonomy, field, null);
+    }
+    return bytes;
+  }
+
+  /**
+   * Calculates the size of a message in the compact wire profile, recording the size of each
+   * sub-message encountered.
+   * <p>
+   * As with {@link #calculateMessageSize(FudgeTaxonomy, FudgeFieldContainer, Map)}, each
+   * sub-message is sized once so that a writer need not recalculate it at each level of nesting.
+   * 
+   * @param taxonomy  the taxonomy in use, null if no taxonomy
+   * @param fields  the fields to calculate a size for, not null
+   * @param subMessageSizes  the map to record sub-message sizes in, keyed by identity, not null
+   * @return the number of bytes
+   */
+  public static int calculateCompactMessageSize(final FudgeTaxonomy taxonomy, final FudgeFieldContainer fields, final Map<FudgeFieldContainer, Integer> subMessageSizes) {
+    int bytes = 0;
+    for (FudgeField field : fields) {
+      bytes += calculateCompactFieldSize(taxonomy, field, subMessageSizes);
+    }
+    return bytes;
+  }
+
+  /**
+   * Gets the size of a sub-message in the compact wire profile, calculating and recording it
+   * and the sizes of any nested sub-messages if not already known.
+   * 
+   * @param taxonomy  the taxonomy in use, null if no taxonomy
+   * @param subMessage  the sub-message to calculate a size for, not null
+   * @param subMessageSizes  the map to record sub-message sizes in, keyed by identity, not null
+   * @return the number of bytes in the sub-message payload
+   */
+  public static int calculateCompactSubMessageSize(final FudgeTaxonomy taxonomy, final FudgeFieldContainer subMessage, final Map<FudgeFieldContainer, Integer> subMessageSizes) {
+    Integer size = subMessageSizes.get(subMessage);
+    if (size == null) {
+      size = calculateCompactMessageSize(taxonomy, subMessage, subMessageSizes);
+      subMessageSizes.put(subMessage, size);
+    }
+    return size;
+  }
+
+  /**
+   * Calculates the size of a message in the compact wire profile including the envelope header,
+   * which is the same as in the standard profile.
+   * 
+   * @param taxonomy  the taxonomy in use, null if no taxonomy
+   * @param fields  the fields to calculate a size for, not null
+   * @return the number of bytes
+   */
+  public static int calculateCompactMessageEnvelopeSize(final FudgeTaxonomy taxonomy, final FudgeFieldContainer fields) {
+    return 8 + calculateCompactMessageSize(taxonomy, fields);
+  }
+
+  /**
+   * Calculates the size of a field holding an array of a primitive type in the compact wire profile, from the
+   * length of the array rather than its value.
+   * <p>
+   * This is the size of a field written by {@link FudgeDataOutputStreamWriter#writeArrayField} in the compact profile.
+   *
+   * @param taxonomy  the taxonomy in use, null if no taxonomy
+   * @param ordinal  the field ordinal, null if no ordinal
+   * @param name  the field name, null if no name
+   * @param type  the Fudge field type, not null
+   * @param length  the number of elements in the array
+   * @return the number of bytes
+   * @throws IllegalArgumentException if the type is not a primitive array type
+   */
+  public static int calculateCompactArrayFieldSize(final FudgeTaxonomy taxonomy, final Short ordinal, final String name, final FudgeFieldType<?> type, final int length) {
+    if (!FudgeArrayInputStream.isArrayType(type)) {
+      throw new IllegalArgumentException("Type " + type + " is not a primitive array type");
+    }
+    final int valueSize = length * FudgeArrayInputStream.getElementSize(type.getJavaType());
+    return calculateCompactFieldHeaderSize(taxonomy, ordinal, name) + FudgeVarIntCodec.getSize(valueSize) + valueSize;
+  }
+
+  /**
+   * Calculates the size of a field prefix, type, ordinal and name in the compact wire profile.
+   * 
+   * @param taxonomy  the taxonomy in use, null if no taxonomy
+   * @param ordinal  the field ordinal, null if no ordinal
+   * @param name  the field name, null if no name
+   * @return the number of bytes
+   */
+  private static int calculateCompactFieldHeaderSize(final FudgeTaxonomy taxonomy, Short ordinal, String name) {
+    if (name != null && ordinal == null && taxonomy != null) {
+      final Short taxonomyOrdinal = taxonomy.getFieldOrdinal(name);
+      if (taxonomyOrdinal != null) {
+        ordinal = taxonomyOrdinal;
+        name = null;
+      }
+    }
+    // field prefix and type
+    int size = 2;
+    if (ordinal != null) {
+      size += FudgeVarIntCodec.getSize(FudgeVarIntCodec.zigZagEncode((int) ordinal));
+    }
+    if (name != null) {
+      size += 1 + FieldNameCache.getLengthBytes(name);
+    }
+    return size;
+  }
+
+  /**
+   * Calculates the size of a field in the compact wire profile.
+   * 
+   * @param taxonomy  the taxonomy in use, null if no taxonomy
+   * @param field  the field to calculate a size for, not null
+   * @param subMessageSizes  the map to record sub-message sizes in, null to not record them
+   * @return the number of bytes
+   */
+  @SuppressWarnings("unchecked")
+  private static int calculateCompactFieldSize(final FudgeTaxonomy taxonomy, final FudgeField field, final Map<FudgeFieldContainer, Integer> subMessageSizes) {
+    int size = calculateCompactFieldHeaderSize(taxonomy, field.getOrdinal(), field.getName());
+    final FudgeFieldType type = field.getType();
+    final Object value = field.getValue();
+    if (value instanceof FudgeFieldContainer) {
+      final FudgeFieldContainer subMessage = (FudgeFieldContainer) value;
+      final int valueSize = (subMessageSizes != null) ? calculateCompactSubMessageSize(taxonomy, subMessage, subMessageSizes) : calculateCompactMessageSize(taxonomy, subMessage);
+      size += FudgeVarIntCodec.getSize(valueSize) + valueSize;
+    } else if (type.getTypeId() == FudgeTypeDictionary.LONG_TYPE_ID) {
+      size += FudgeVarIntCodec.getSize(FudgeVarIntCodec.zigZagEncode(((Number) value).longValue()));
+    } else if (type.isVariableSize()) {
+      final int valueSize = type.getVariableSize(value, taxonomy);
+      size += FudgeVarIntCodec.getSize(valueSize) + valueSize;
+    } else {
+      size += type.getFixedSize();
+    }
+    return size;
+  }
+
 }
@@ -198,6 +198,37 @@ public class FudgeTypeDictionary {
     }
   }
 
+  /**
+   * Sets the type used to decode fields with the type identifier of a variable width type. Registering a
+   * {@link SecondaryFieldTypeBase secondary type} here makes readers decode such fields directly into the
+   * secondary representation, instead of the standard Java type, without an intermediate value. Passing the
+   * standard type for the identifier restores the default.
+   * <p>
+   * The type must already be known to the dictionary through {@link #addType}. Decoders resolving
+   * the identifier through {@link #getByTypeId} will return this type.
+   * 
+   * @param type  the type to decode with, not null
+   * @throws IllegalArgumentException if the type is not variable width, is the sub-message type, or no type is
+   *  registered for its Java type
+   */
+  public void setDecodingType(final FudgeFieldType<?> type) {
+    if (type == null) {
+      throw new NullPointerException("Must not provide a null FudgeFieldType to decode with.");
+    }
+    if (!type.isVariableSize() || (type.getTypeId() == FUDGE_MSG_TYPE_ID)) {
+      throw new IllegalArgumentException("Cannot decode type " + type.getTypeId() + " with " + type);
+    }
+    if (getByJavaType(type.getJavaType()) != type) {
+      throw new IllegalArgumentException("Type " + type + " has not been added to the dictionary");
+    }
+    synchronized (this) {
+      int newLength = Math.max(type.getTypeId() + 1, _typesById.length);
+      FudgeFieldType<?>[] newArray = Arrays.copyOf(_typesById, newLength);
+      newArray[type.getTypeId()] = type;
+      _typesById = newArray;
+    }
+  }
+
   /**
    * Resolves a Java class to a {@link FudgeFieldType} registered with this dictionary.
    * 
@@ -399,6 +430,104 @@ public class FudgeTypeDictionary {
     }
   }
 
+  /**
+   * Type conversion to a {@code double}, avoiding boxing where possible.
+   * <p>
+   * The value of a {@link FudgePrimitiveField} or a {@code Double} is returned directly,
+   * anything else is converted as by {@link #getFieldValue} and unboxed.
+   *
+   * @param field  the field containing the value to convert, not null
+   * @return the converted value
+   * @throws IllegalArgumentException if the value cannot be converted
+   */
+  public double getFieldDoubleValue(final FudgeField field) {
+    if (field instanceof FudgePrimitiveField) {
+      return ((FudgePrimitiveField) field).getDoubleValue();
+    }
+    final Object value = field.getValue();
+    if (value instanceof Double) {
+      return (Double) value;
+    }
+    final Double converted = getFieldValue(Double.class, field);
+    if (converted == null) {
+      throw new IllegalArgumentException("cannot convert " + field + " to a double");
+    }
+    return converted;
+  }
+
+  /**
+   * Type conversion to a {@code long}, avoiding boxing where possible.
+   * <p>
+   * The value of a {@link FudgePrimitiveField} of an integral or boolean type, or a {@code Long},
+   * is returned directly, anything else is converted as by {@link #getFieldValue} and unboxed.
+   *
+   * @param field  the field containing the value to convert, not null
+   * @return the converted value
+   * @throws IllegalArgumentException if the value cannot be converted
+   */
+  public long getFieldLongValue(final FudgeField field) {
+    if (field instanceof FudgePrimitiveField && isIntegral(field.getType())) {
+      return ((FudgePrimitiveField) field).getLongValue();
+    }
+    final Object value = field.getValue();
+    if (value instanceof Long) {
+      return (Long) value;
+    }
+    final Long converted = getFieldValue(Long.class, field);
+    if (converted == null) {
+      throw new IllegalArgumentException("cannot convert " + field + " to a long");
+    }
+    return converted;
+  }
+
+  /**
+   * Type conversion to an {@code int}, avoiding boxing where possible.
+   * <p>
+   * The value of a {@link FudgePrimitiveField} of an integral or boolean type within range,
+   * or an {@code Integer}, is returned directly, anything else is converted as by
+   * {@link #getFieldValue} and unboxed.
+   *
+   * @param field  the field containing the value to convert, not null
+   * @return the converted value
+   * @throws IllegalArgumentException if the value cannot be converted
+   */
+  public int getFieldIntValue(final FudgeField field) {
+    if (field instanceof FudgePrimitiveField && isIntegral(field.getType())) {
+      final long value = ((FudgePrimitiveField) field).getLongValue();
+      if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+        return (int) value;
+      }
+    }
+    final Object value = field.getValue();
+    if (value instanceof Integer) {
+      return (Integer) value;
+    }
+    final Integer converted = getFieldValue(Integer.class, field);
+    if (converted == null) {
+      throw new IllegalArgumentException("cannot convert " + field + " to an int");
+    }
+    return converted;
+  }
+
+  /**
+   * Checks whether a type holds an integral or boolean value.
+   *
+   * @param type  the type to check, not null
+   * @return true if the type is boolean, byte, short, int or long
+   */
+  private static boolean isIntegral(final FudgeFieldType<?> type) {
+    switch (type.getTypeId()) {
+      case BOOLEAN_TYPE_ID:
+      case BYTE_TYPE_ID:
+      case SHORT_TYPE_ID:
+      case INT_TYPE_ID:
+      case LONG_TYPE_ID:
+        return true;
+      default:
+        return false;
+    }
+  }
+
   /**
    * Scans all files available to common classpath loading system heuristics to determine
    * which ones have the {@link FudgeSecondaryType} annotation, and registers those as appropriate
@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Utility to manage the variable length integers used by the compact wire profile.
+ * <p>
+ * A value is written seven bits at a time, least significant group first, with the top bit
+ * of each byte set if more follow. Signed values are first zig-zag encoded so that values
+ * of small magnitude, positive or negative, take few bytes.
+ * <p>
+ * This class is a static utility with no shared state.
+ */
+public final class FudgeVarIntCodec {
+
+  /**
+   * Restricted constructor.
+   */
+  private FudgeVarIntCodec() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Zig-zag encodes a signed value, mapping 0, -1, 1, -2 ... to 0, 1, 2, 3 ...
+   * 
+   * @param value  the signed value
+   * @return the encoded value, to be treated as unsigned
+   */
+  public static int zigZagEncode(final int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  /**
+   * Decodes a zig-zag encoded value.
+   * 
+   * @param value  the encoded value
+   * @return the signed value
+   */
+  public static int zigZagDecode(final int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Zig-zag encodes a signed value, mapping 0, -1, 1, -2 ... to 0, 1, 2, 3 ...
+   * 
+   * @param value  the signed value
+   * @return the encoded value, to be treated as unsigned
+   */
+  public static long zigZagEncode(final long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  /**
+   * Decodes a zig-zag encoded value.
+   * 
+   * @param value  the encoded value
+   * @return the signed value
+   */
+  public static long zigZagDecode(final long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Calculates the number of bytes a value takes when written.
+   * 
+   * @param value  the value, treated as unsigned
+   * @return the number of bytes, from 1 to 5
+   */
+  public static int getSize(final int value) {
+    if ((value & 0xFFFFFF80) == 0) {
+      return 1;
+    } else if ((value & 0xFFFFC000) == 0) {
+      return 2;
+    } else if ((value & 0xFFE00000) == 0) {
+      return 3;
+    } else if ((value & 0xF0000000) == 0) {
+      return 4;
+    }
+    return 5;
+  }
+
+  /**
+   * Calculates the number of bytes a value takes when written.
+   * 
+   * @param value  the value, treated as unsigned
+   * @return the number of bytes, from 1 to 10
+   */
+  public static int getSize(long value) {
+    int size = 1;
+    while ((value & ~0x7FL) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Writes a value.
+   * 
+   * @param output  the output to write to, not null
+   * @param value  the value, treated as unsigned
+   * @throws IOException if the output raises one
+   */
+  public static void write(final DataOutput output, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      output.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    output.writeByte(value);
+  }
+
+  /**
+   * Writes a value.
+   * 
+   * @param output  the output to write to, not null
+   * @param value  the value, treated as unsigned
+   * @throws IOException if the output raises one
+   */
+  public static void write(final DataOutput output, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      output.writeByte(((int) value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    output.writeByte((int) value);
+  }
+
+  /**
+   * Decodes a zig-zag encoded field ordinal, as written in the compact wire profile.
+   * 
+   * @param value  the encoded value
+   * @return the ordinal
+   * @throws IOException if the value is outside the range of a short
+   */
+  public static short decodeOrdinal(final int value) throws IOException {
+    final int ordinal = zigZagDecode(value);
+    if ((ordinal < Short.MIN_VALUE) || (ordinal > Short.MAX_VALUE)) {
+      throw new IOException("Field ordinal " + ordinal + " is outside the range of a short");
+    }
+    return (short) ordinal;
+  }
+
+  /**
+   * Reads a value of up to 32 bits.
+   * 
+   * @param input  the input to read from, not null
+   * @return the value, to be treated as unsigned
+   * @throws IOException if the input raises one or the value is malformed
+   */
+  public static int readInt(final DataInput input) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      final int b = input.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length integer");
+  }
+
+  /**
+   * Reads a value of up to 64 bits.
+   * 
+   * @param input  the input to read from, not null
+   * @return the value, to be treated as unsigned
+   * @throws IOException if the input raises one or the value is malformed
+   */
+  public static long readLong(final DataInput input) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 70; shift += 7) {
+      final int b = input.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length integer");
+  }
+
+}
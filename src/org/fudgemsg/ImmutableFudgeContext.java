@@ -15,6 +15,7 @@
  */
 package org.fudgemsg;
 
+import org.fudgemsg.compression.FudgeCompressionCodec;
 import org.fudgemsg.mapping.FudgeObjectDictionary;
 import org.fudgemsg.mapping.ImmutableFudgeObjectDictionary;
 import org.fudgemsg.taxon.TaxonomyResolver;
@@ -38,6 +39,13 @@ public class ImmutableFudgeContext extends FudgeContext {
     super.setTaxonomyResolver (context.getTaxonomyResolver ());
     super.setTypeDictionary (new ImmutableFudgeTypeDictionary (context.getTypeDictionary ()));
     super.setObjectDictionary (new ImmutableFudgeObjectDictionary (context.getObjectDictionary ()));
+    for (int codecId = 0; codecId <= 255; codecId++) {
+      final FudgeCompressionCodec codec = context.getCompressionCodec (codecId);
+      if (codec != null) {
+        super.registerCompressionCodec (codec);
+      }
+    }
+    super.setMaxDecompressedSize (context.getMaxDecompressedSize ());
   }
   
   /**
@@ -56,6 +64,22 @@ public class ImmutableFudgeContext extends FudgeContext {
     throw new UnsupportedOperationException ("setTypeDictionary called on an immutable Fudge context");
   }
   
+  /**
+   * Always throws an exception - this is an immutable context.
+   */
+  @Override
+  public void registerCompressionCodec (FudgeCompressionCodec codec) {
+    throw new UnsupportedOperationException ("registerCompressionCodec called on an immutable Fudge context");
+  }
+  
+  /**
+   * Always throws an exception - this is an immutable context.
+   */
+  @Override
+  public void setMaxDecompressedSize (int maxDecompressedSize) {
+    throw new UnsupportedOperationException ("setMaxDecompressedSize called on an immutable Fudge context");
+  }
+  
   /**
    * Always throws an exception - this is an immutable context.
    */
@@ -0,0 +1,1000 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.fudgemsg.taxon.FudgeTaxonomy;
+
+/**
+ * A {@code FudgeFieldContainer} backed by the Fudge encoded form of a message.
+ * <p>
+ * No work is done on construction. Field headers are parsed only as far as needed to
+ * satisfy each request, field values are decoded the first time they are requested,
+ * and sub-messages are returned as further instances of this class over the slice of
+ * the encoding holding the sub-message. This suits consumers, such as routing components,
+ * that only inspect a few fields of each message.
+ * <p>
+ * The encoded data must not be modified while the message is in use.
+ * <p>
+ * This class is not thread-safe as parsing and decoding update internal state.
+ */
+public class LazyFudgeMsg implements PrimitiveFudgeFieldContainer {
+
+  /**
+   * The Fudge context.
+   */
+  private final FudgeContext _fudgeContext;
+  /**
+   * The taxonomy used to resolve names for fields encoded with only an ordinal, null if none.
+   */
+  private final FudgeTaxonomy _taxonomy;
+  /**
+   * The cursor over the encoded data, shared with any sub-messages.
+   */
+  private final ByteBufferDataInput _input;
+  /**
+   * The absolute index of the first field in the buffer.
+   */
+  private final int _start;
+  /**
+   * The absolute index of the end of the last field in the buffer.
+   */
+  private final int _end;
+  /**
+   * The fields whose headers have been parsed so far.
+   */
+  private final List<FudgeField> _fields = new ArrayList<FudgeField>();
+  /**
+   * The absolute index of the next field header to parse.
+   */
+  private int _parsePosition;
+  /**
+   * The index of the fields, built once all headers are parsed, null if not built.
+   */
+  private FudgeFieldIndex _index;
+
+  /**
+   * Creates a message over encoded fields, not including an envelope header.
+   * <p>
+   * The fields are read from the buffer's position to its limit. The buffer's position
+   * is not changed.
+   * 
+   * @param fudgeContext  the context to use for type resolution, not null
+   * @param taxonomy  the taxonomy to resolve field names from, null if none
+   * @param buffer  the buffer containing the encoded fields, not null
+   */
+  public LazyFudgeMsg(final FudgeContext fudgeContext, final FudgeTaxonomy taxonomy, final ByteBuffer buffer) {
+    if (fudgeContext == null) {
+      throw new NullPointerException("Context must be provided.");
+    }
+    _fudgeContext = fudgeContext;
+    _taxonomy = taxonomy;
+    _input = new ByteBufferDataInput(buffer);
+    _start = _input.getPosition();
+    _end = _input.getLimit();
+    _parsePosition = _start;
+  }
+
+  /**
+   * Creates a sub-message over part of the parent's encoding.
+   * 
+   * @param parent  the containing message, not null
+   * @param start  the absolute index of the first field
+   * @param end  the absolute index of the end of the last field
+   */
+  private LazyFudgeMsg(final LazyFudgeMsg parent, final int start, final int end) {
+    _fudgeContext = parent._fudgeContext;
+    _taxonomy = parent._taxonomy;
+    _input = parent._input;
+    _start = start;
+    _end = end;
+    _parsePosition = start;
+  }
+
+  /**
+   * Decodes a message envelope lazily.
+   * <p>
+   * The envelope header is read immediately, the message fields are not. A compressed envelope
+   * is decompressed immediately, and the fields are then decoded lazily from the decompressed copy.
+   * An envelope using a session taxonomy cannot be decoded on its own, as the names it refers to
+   * were sent in earlier envelopes; such a stream must be read with a stream reader. Nor can an
+   * envelope in the compact profile be decoded lazily.
+   * 
+   * @param fudgeContext  the context to use for type and taxonomy resolution, not null
+   * @param buffer  the buffer containing the encoded envelope from its position, not null
+   * @return the envelope containing a {@code LazyFudgeMsg}, not null
+   * @throws FudgeRuntimeIOException if the buffer does not contain a complete envelope
+   * @throws IllegalArgumentException if the envelope uses a session taxonomy or the compact profile
+   */
+  public static FudgeMsgEnvelope decodeEnvelope(final FudgeContext fudgeContext, final ByteBuffer buffer) {
+    final ByteBufferDataInput input = new ByteBufferDataInput(buffer);
+    try {
+      final int start = input.getPosition();
+      final int processingDirectives = input.readUnsignedByte();
+      final int version = input.readUnsignedByte();
+      final short taxonomyId = input.readShort();
+      final int size = input.readInt();
+      if ((size < 8) || (size > input.getLimit() - start)) {
+        throw new EOFException("Envelope of " + size + " bytes exceeds the " + (input.getLimit() - start) + " bytes available");
+      }
+      if ((processingDirectives & FudgeMsgEnvelope.SESSION_TAXONOMY_DIRECTIVE) != 0) {
+        throw new IllegalArgumentException("Envelope using a session taxonomy cannot be decoded lazily");
+      }
+      if ((processingDirectives & FudgeMsgEnvelope.COMPACT_DIRECTIVE) != 0) {
+        throw new IllegalArgumentException("Envelope in the compact profile cannot be decoded lazily");
+      }
+      FudgeTaxonomy taxonomy = null;
+      if (fudgeContext.getTaxonomyResolver() != null) {
+        taxonomy = fudgeContext.getTaxonomyResolver().resolveTaxonomy(taxonomyId);
+      }
+      if ((processingDirectives & FudgeMsgEnvelope.COMPRESSED_DIRECTIVE) != 0) {
+        final ByteBuffer fields = ByteBuffer.wrap(EnvelopeCompression.decompress(fudgeContext, input, size, fudgeContext.getMaxDecompressedSize()));
+        return new FudgeMsgEnvelope(new LazyFudgeMsg(fudgeContext, taxonomy, fields), version, processingDirectives & ~FudgeMsgEnvelope.COMPRESSED_DIRECTIVE);
+      }
+      final ByteBuffer fields = input.getBuffer().duplicate();
+      fields.limit(start + size);
+      fields.position(start + 8);
+      return new FudgeMsgEnvelope(new LazyFudgeMsg(fudgeContext, taxonomy, fields), version, processingDirectives);
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException(e);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the Fudge context.
+   * 
+   * @return the context, not null
+   */
+  public FudgeContext getFudgeContext() {
+    return _fudgeContext;
+  }
+
+  /**
+   * Gets the taxonomy used to resolve field names.
+   * 
+   * @return the taxonomy, null if none
+   */
+  public FudgeTaxonomy getTaxonomy() {
+    return _taxonomy;
+  }
+
+  /**
+   * Gets a read-only view of the encoded fields of this message, excluding any envelope header.
+   * 
+   * @return the encoded fields, not null
+   */
+  public ByteBuffer getEncodedFields() {
+    return getRetainedEncoding(_taxonomy).slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * Gets the encoded fields if they can be written verbatim using the given taxonomy.
+   *
+   * @param taxonomy  the taxonomy the fields would be written with, null if none
+   * @return a buffer over the encoded fields, null if the taxonomy does not match
+   */
+  /* package */ ByteBuffer getRetainedEncoding(final FudgeTaxonomy taxonomy) {
+    if (taxonomy != _taxonomy) {
+      return null;
+    }
+    final ByteBuffer buffer = _input.getBuffer().duplicate();
+    buffer.limit(_end);
+    buffer.position(_start);
+    return buffer;
+  }
+
+  /**
+   * Gets the number of bytes in the encoded fields.
+   * 
+   * @return the encoded size, excluding any envelope header
+   */
+  public int getEncodedSize() {
+    return _end - _start;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Parses the header of the next unparsed field.
+   * 
+   * @return true if a field was parsed, false if all fields have been parsed
+   */
+  private boolean parseNextField() {
+    if (_parsePosition >= _end) {
+      return false;
+    }
+    final ByteBufferDataInput input = _input;
+    try {
+      input.setPosition(_parsePosition);
+      final byte fieldPrefix = input.readByte();
+      final int typeId = input.readUnsignedByte();
+      final boolean fixedWidth = FudgeFieldPrefixCodec.isFixedWidth(fieldPrefix);
+      Short ordinal = null;
+      if (FudgeFieldPrefixCodec.hasOrdinal(fieldPrefix)) {
+        ordinal = input.readShort();
+      }
+      String name = null;
+      if (FudgeFieldPrefixCodec.hasName(fieldPrefix)) {
+        final int nameSize = input.readUnsignedByte();
+        name = UTF8.decode(input.getBuffer(), input.consume(nameSize), nameSize);
+      } else if (ordinal != null && _taxonomy != null) {
+        name = _taxonomy.getFieldName(ordinal);
+      }
+      FudgeFieldType<?> type = _fudgeContext.getTypeDictionary().getByTypeId(typeId);
+      if (type == null) {
+        if (fixedWidth) {
+          throw new IOException("Unknown fixed width type " + typeId + " for field " + ordinal + ":" + name + " cannot be handled.");
+        }
+        type = _fudgeContext.getTypeDictionary().getUnknownType(typeId);
+      }
+      final int size;
+      if (fixedWidth) {
+        size = type.getFixedSize();
+      } else {
+        switch (FudgeFieldPrefixCodec.getFieldWidthByteCount(fieldPrefix)) {
+          case 0:
+            size = 0;
+            break;
+          case 1:
+            size = input.readUnsignedByte();
+            break;
+          case 2:
+            size = input.readShort();
+            break;
+          default:
+            size = input.readInt();
+            break;
+        }
+      }
+      final int offset = input.getPosition();
+      if (size < 0 || size > _end - offset) {
+        throw new EOFException("Field of " + size + " bytes exceeds the message");
+      }
+      if (PrimitiveFudgeMsgField.isPrimitiveType(type)) {
+        _fields.add(new LazyPrimitiveField(type, name, ordinal, offset, size));
+      } else {
+        _fields.add(new LazyField(type, name, ordinal, offset, size));
+      }
+      _parsePosition = offset + size;
+      return true;
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException(e);
+    }
+  }
+
+  /**
+   * Parses the headers of all remaining fields.
+   */
+  private void parseAllFields() {
+    while (parseNextField()) {
+      // continue
+    }
+  }
+
+  /**
+   * Gets the index of the fields if all headers have been parsed and the message is
+   * large enough to benefit.
+   * 
+   * @return the index, null if the fields should be scanned linearly
+   */
+  private FudgeFieldIndex getIndex() {
+    if (_index == null && _parsePosition >= _end && _fields.size() >= FudgeMsgBase.INDEX_THRESHOLD) {
+      _index = new FudgeFieldIndex(_fields);
+    }
+    return _index;
+  }
+
+  /**
+   * Finds the position of the next field with the given name, parsing headers as required.
+   * 
+   * @param name  the name to match against, null matches null
+   * @param previous  the position of the previous match, -1 to find the first
+   * @return the position of the field, -1 if there are no further matches
+   */
+  private int nextFieldByName(final String name, final int previous) {
+    final FudgeFieldIndex index = getIndex();
+    if (index != null) {
+      return (previous < 0) ? index.getFirstByName(name) : index.getNextByName(previous);
+    }
+    for (int i = previous + 1; i < _fields.size() || parseNextField(); i++) {
+      final String fieldName = _fields.get(i).getName();
+      if (name == null ? fieldName == null : name.equals(fieldName)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Finds the position of the next field with the given ordinal, parsing headers as required.
+   * 
+   * @param ordinal  the ordinal to match against
+   * @param previous  the position of the previous match, -1 to find the first
+   * @return the position of the field, -1 if there are no further matches
+   */
+  private int nextFieldByOrdinal(final short ordinal, final int previous) {
+    final FudgeFieldIndex index = getIndex();
+    if (index != null) {
+      return (previous < 0) ? index.getFirstByOrdinal(ordinal) : index.getNextByOrdinal(previous);
+    }
+    for (int i = previous + 1; i < _fields.size() || parseNextField(); i++) {
+      final Short fieldOrdinal = _fields.get(i).getOrdinal();
+      if (fieldOrdinal != null && fieldOrdinal.shortValue() == ordinal) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the first field value with the given field name and type identifier using
+   * type converters if necessary.
+   * 
+   * @param <T>  the class to convert to
+   * @param clazz  the type to convert to, not null
+   * @param name  the field name, null matches null
+   * @param typeId  the type identifier
+   * @return the field value, null if no matching field found
+   */
+  @SuppressWarnings("unchecked")
+  private <T> T getFirstTypedValue(final Class<T> clazz, final String name, final int typeId) {
+    FudgeField secondBest = null;
+    for (int i = nextFieldByName(name, -1); i >= 0; i = nextFieldByName(name, i)) {
+      final FudgeField field = _fields.get(i);
+      if (field.getType().getTypeId() == typeId) {
+        return (T) field.getValue();  // perfect match
+      } else if (secondBest == null && getFudgeContext().getTypeDictionary().canConvertField(clazz, field)) {
+        secondBest = field;
+      }
+    }
+    if (secondBest == null) {
+      return null;
+    }
+    return getFudgeContext().getTypeDictionary().getFieldValue(clazz, secondBest);
+  }
+
+  /**
+   * Gets the first field value with the given field ordinal and type identifier using
+   * type converters if necessary.
+   * 
+   * @param <T>  the class to convert to
+   * @param clazz  the type to convert to, not null
+   * @param ordinal  the field ordinal
+   * @param typeId  the type identifier
+   * @return the field value, null if no matching field found
+   */
+  @SuppressWarnings("unchecked")
+  private <T> T getFirstTypedValue(final Class<T> clazz, final int ordinal, final int typeId) {
+    FudgeField secondBest = null;
+    final short ordinalAsShort = (short) ordinal;
+    for (int i = nextFieldByOrdinal(ordinalAsShort, -1); i >= 0; i = nextFieldByOrdinal(ordinalAsShort, i)) {
+      final FudgeField field = _fields.get(i);
+      if (field.getType().getTypeId() == typeId) {
+        return (T) field.getValue();  // perfect match
+      } else if (secondBest == null && getFudgeContext().getTypeDictionary().canConvertField(clazz, field)) {
+        secondBest = field;
+      }
+    }
+    if (secondBest == null) {
+      return null;
+    }
+    return getFudgeContext().getTypeDictionary().getFieldValue(clazz, secondBest);
+  }
+
+  /**
+   * Gets the first field with the given field name that can be read as a primitive
+   * of the given type.
+   * 
+   * @param clazz  the wrapper class of the primitive, not null
+   * @param name  the field name, null matches null
+   * @param typeId  the type identifier
+   * @return the field, null if no matching field found
+   */
+  private FudgeField getFirstPrimitiveField(final Class<?> clazz, final String name, final int typeId) {
+    FudgeField secondBest = null;
+    for (int i = nextFieldByName(name, -1); i >= 0; i = nextFieldByName(name, i)) {
+      final FudgeField field = _fields.get(i);
+      if (field.getType().getTypeId() == typeId) {
+        return field;  // perfect match
+      } else if (secondBest == null && getFudgeContext().getTypeDictionary().canConvertField(clazz, field)) {
+        secondBest = field;
+      }
+    }
+    return secondBest;
+  }
+
+  /**
+   * Gets the first field with the given field ordinal that can be read as a primitive
+   * of the given type.
+   * 
+   * @param clazz  the wrapper class of the primitive, not null
+   * @param ordinal  the field ordinal
+   * @param typeId  the type identifier
+   * @return the field, null if no matching field found
+   */
+  private FudgeField getFirstPrimitiveField(final Class<?> clazz, final int ordinal, final int typeId) {
+    FudgeField secondBest = null;
+    final short ordinalAsShort = (short) ordinal;
+    for (int i = nextFieldByOrdinal(ordinalAsShort, -1); i >= 0; i = nextFieldByOrdinal(ordinalAsShort, i)) {
+      final FudgeField field = _fields.get(i);
+      if (field.getType().getTypeId() == typeId) {
+        return field;  // perfect match
+      } else if (secondBest == null && getFudgeContext().getTypeDictionary().canConvertField(clazz, field)) {
+        secondBest = field;
+      }
+    }
+    return secondBest;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public short getNumFields() {
+    parseAllFields();
+    return (short) _fields.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isEmpty() {
+    return _start >= _end;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Iterator<FudgeField> iterator() {
+    return getAllFields().iterator();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<FudgeField> getAllFields() {
+    parseAllFields();
+    return Collections.unmodifiableList(_fields);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Set<String> getAllFieldNames() {
+    Set<String> result = new TreeSet<String>();
+    for (FudgeField field : getAllFields()) {
+      if (field.getName() != null) {
+        result.add(field.getName());
+      }
+    }
+    return result;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public FudgeField getByIndex(int index) {
+    while (index >= _fields.size() && parseNextField()) {
+      // continue
+    }
+    return _fields.get(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean hasField(String name) {
+    return (name != null) && (nextFieldByName(name, -1) >= 0);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<FudgeField> getAllByName(String name) {
+    List<FudgeField> fields = new ArrayList<FudgeField>();
+    for (int i = nextFieldByName(name, -1); i >= 0; i = nextFieldByName(name, i)) {
+      fields.add(_fields.get(i));
+    }
+    return fields;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public FudgeField getByName(String name) {
+    final int i = nextFieldByName(name, -1);
+    return (i >= 0) ? _fields.get(i) : null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean hasField(int ordinal) {
+    if (ordinal < Short.MIN_VALUE || ordinal > Short.MAX_VALUE) {
+      return false;
+    }
+    return nextFieldByOrdinal((short) ordinal, -1) >= 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<FudgeField> getAllByOrdinal(int ordinal) {
+    List<FudgeField> fields = new ArrayList<FudgeField>();
+    final short ordinalAsShort = (short) ordinal;
+    for (int i = nextFieldByOrdinal(ordinalAsShort, -1); i >= 0; i = nextFieldByOrdinal(ordinalAsShort, i)) {
+      fields.add(_fields.get(i));
+    }
+    return fields;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public FudgeField getByOrdinal(int ordinal) {
+    final int i = nextFieldByOrdinal((short) ordinal, -1);
+    return (i >= 0) ? _fields.get(i) : null;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T> T getFieldValue(final Class<T> clazz, final FudgeField field) {
+    return getFudgeContext().getFieldValue(clazz, field);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T> T getValue(final Class<T> clazz, final String name) {
+    final FudgeTypeDictionary dictionary = getFudgeContext().getTypeDictionary();
+    for (int i = nextFieldByName(name, -1); i >= 0; i = nextFieldByName(name, i)) {
+      final FudgeField field = _fields.get(i);
+      if (dictionary.canConvertField(clazz, field)) {
+        return dictionary.getFieldValue(clazz, field);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T> T getValue(final Class<T> clazz, final int ordinal) {
+    final FudgeTypeDictionary dictionary = getFudgeContext().getTypeDictionary();
+    final short ordinalAsShort = (short) ordinal;
+    for (int i = nextFieldByOrdinal(ordinalAsShort, -1); i >= 0; i = nextFieldByOrdinal(ordinalAsShort, i)) {
+      final FudgeField field = _fields.get(i);
+      if (dictionary.canConvertField(clazz, field)) {
+        return dictionary.getFieldValue(clazz, field);
+      }
+    }
+    return null;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object getValue(String name) {
+    FudgeField field = getByName(name);
+    return (field != null) ? field.getValue() : null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object getValue(int ordinal) {
+    FudgeField field = getByOrdinal(ordinal);
+    return (field != null) ? field.getValue() : null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Double getDouble(String name) {
+    return getFirstTypedValue(Double.class, name, FudgeTypeDictionary.DOUBLE_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Double getDouble(int ordinal) {
+    return getFirstTypedValue(Double.class, ordinal, FudgeTypeDictionary.DOUBLE_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Float getFloat(String name) {
+    return getFirstTypedValue(Float.class, name, FudgeTypeDictionary.FLOAT_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Float getFloat(int ordinal) {
+    return getFirstTypedValue(Float.class, ordinal, FudgeTypeDictionary.FLOAT_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Long getLong(String name) {
+    return getFirstTypedValue(Long.class, name, FudgeTypeDictionary.LONG_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Long getLong(int ordinal) {
+    return getFirstTypedValue(Long.class, ordinal, FudgeTypeDictionary.LONG_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Integer getInt(String name) {
+    return getFirstTypedValue(Integer.class, name, FudgeTypeDictionary.INT_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Integer getInt(int ordinal) {
+    return getFirstTypedValue(Integer.class, ordinal, FudgeTypeDictionary.INT_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getDoubleValue(String name, double defaultValue) {
+    final FudgeField field = getFirstPrimitiveField(Double.class, name, FudgeTypeDictionary.DOUBLE_TYPE_ID);
+    if (field == null) {
+      return defaultValue;
+    }
+    return getFudgeContext().getTypeDictionary().getFieldDoubleValue(field);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getDoubleValue(int ordinal, double defaultValue) {
+    final FudgeField field = getFirstPrimitiveField(Double.class, ordinal, FudgeTypeDictionary.DOUBLE_TYPE_ID);
+    if (field == null) {
+      return defaultValue;
+    }
+    return getFudgeContext().getTypeDictionary().getFieldDoubleValue(field);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getLongValue(String name, long defaultValue) {
+    final FudgeField field = getFirstPrimitiveField(Long.class, name, FudgeTypeDictionary.LONG_TYPE_ID);
+    if (field == null) {
+      return defaultValue;
+    }
+    return getFudgeContext().getTypeDictionary().getFieldLongValue(field);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getLongValue(int ordinal, long defaultValue) {
+    final FudgeField field = getFirstPrimitiveField(Long.class, ordinal, FudgeTypeDictionary.LONG_TYPE_ID);
+    if (field == null) {
+      return defaultValue;
+    }
+    return getFudgeContext().getTypeDictionary().getFieldLongValue(field);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getIntValue(String name, int defaultValue) {
+    final FudgeField field = getFirstPrimitiveField(Integer.class, name, FudgeTypeDictionary.INT_TYPE_ID);
+    if (field == null) {
+      return defaultValue;
+    }
+    return getFudgeContext().getTypeDictionary().getFieldIntValue(field);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getIntValue(int ordinal, int defaultValue) {
+    final FudgeField field = getFirstPrimitiveField(Integer.class, ordinal, FudgeTypeDictionary.INT_TYPE_ID);
+    if (field == null) {
+      return defaultValue;
+    }
+    return getFudgeContext().getTypeDictionary().getFieldIntValue(field);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Short getShort(String name) {
+    return getFirstTypedValue(Short.class, name, FudgeTypeDictionary.SHORT_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Short getShort(int ordinal) {
+    return getFirstTypedValue(Short.class, ordinal, FudgeTypeDictionary.SHORT_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Byte getByte(String name) {
+    return getFirstTypedValue(Byte.class, name, FudgeTypeDictionary.BYTE_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Byte getByte(int ordinal) {
+    return getFirstTypedValue(Byte.class, ordinal, FudgeTypeDictionary.BYTE_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getString(String name) {
+    return getFirstTypedValue(String.class, name, FudgeTypeDictionary.STRING_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getString(int ordinal) {
+    return getFirstTypedValue(String.class, ordinal, FudgeTypeDictionary.STRING_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Boolean getBoolean(String name) {
+    return getFirstTypedValue(Boolean.class, name, FudgeTypeDictionary.BOOLEAN_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Boolean getBoolean(int ordinal) {
+    return getFirstTypedValue(Boolean.class, ordinal, FudgeTypeDictionary.BOOLEAN_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public FudgeFieldContainer getMessage(int ordinal) {
+    return getFirstTypedValue(FudgeFieldContainer.class, ordinal, FudgeTypeDictionary.FUDGE_MSG_TYPE_ID);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public FudgeFieldContainer getMessage(String name) {
+    return getFirstTypedValue(FudgeFieldContainer.class, name, FudgeTypeDictionary.FUDGE_MSG_TYPE_ID);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("LazyFudgeMsg[");
+    for (FudgeField field : getAllFields()) {
+      if (field.getOrdinal() != null) {
+        sb.append(field.getOrdinal());
+        sb.append(": ");
+      }
+      if (field.getName() != null) {
+        sb.append(field.getName());
+      }
+      sb.append(" => ");
+      sb.append(field.getValue());
+      sb.append(", ");
+    }
+    if (sb.length() > 13) {
+      sb.delete(sb.length() - 2, sb.length());
+    }
+    sb.append("]");
+    return sb.toString();
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * A field whose header has been parsed but whose value is decoded on first access.
+   */
+  private class LazyField implements FudgeField {
+
+    /**
+     * The field type.
+     */
+    private final FudgeFieldType<?> _type;
+    /**
+     * The field name, null if none.
+     */
+    private final String _name;
+    /**
+     * The field ordinal, null if none.
+     */
+    private final Short _ordinal;
+    /**
+     * The absolute index of the field value in the buffer.
+     */
+    protected final int _offset;
+    /**
+     * The number of bytes in the field value.
+     */
+    private final int _size;
+    /**
+     * The decoded value, null if not yet decoded.
+     */
+    private Object _value;
+
+    protected LazyField(final FudgeFieldType<?> type, final String name, final Short ordinal, final int offset, final int size) {
+      _type = type;
+      _name = name;
+      _ordinal = ordinal;
+      _offset = offset;
+      _size = size;
+    }
+
+    @Override
+    public FudgeFieldType<?> getType() {
+      return _type;
+    }
+
+    @Override
+    public String getName() {
+      return _name;
+    }
+
+    @Override
+    public Short getOrdinal() {
+      return _ordinal;
+    }
+
+    @Override
+    public Object getValue() {
+      Object value = _value;
+      if (value == null) {
+        if (_type.getTypeId() == FudgeTypeDictionary.FUDGE_MSG_TYPE_ID) {
+          value = new LazyFudgeMsg(LazyFudgeMsg.this, _offset, _offset + _size);
+        } else {
+          try {
+            _input.setPosition(_offset);
+            value = FudgeByteBufferReader.readFieldValue(_input, _type, _size);
+          } catch (IOException e) {
+            throw new FudgeRuntimeIOException(e);
+          }
+        }
+        _value = value;
+      }
+      return value;
+    }
+
+    @Override
+    public String toString() {
+      return "LazyField[" + _name + ":" + _ordinal + "-" + _type + "]";
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * A field of one of the standard primitive types, readable without boxing.
+   */
+  private final class LazyPrimitiveField extends LazyField implements FudgePrimitiveField {
+
+    private LazyPrimitiveField(final FudgeFieldType<?> type, final String name, final Short ordinal, final int offset, final int size) {
+      super(type, name, ordinal, offset, size);
+    }
+
+    @Override
+    public long getLongValue() {
+      final ByteBuffer buffer = _input.getBuffer();
+      switch (getType().getTypeId()) {
+        case FudgeTypeDictionary.BOOLEAN_TYPE_ID:
+          return (buffer.get(_offset) != 0) ? 1 : 0;
+        case FudgeTypeDictionary.BYTE_TYPE_ID:
+          return buffer.get(_offset);
+        case FudgeTypeDictionary.SHORT_TYPE_ID:
+          return buffer.getShort(_offset);
+        case FudgeTypeDictionary.INT_TYPE_ID:
+          return buffer.getInt(_offset);
+        case FudgeTypeDictionary.LONG_TYPE_ID:
+          return buffer.getLong(_offset);
+        case FudgeTypeDictionary.FLOAT_TYPE_ID:
+          return (long) buffer.getFloat(_offset);
+        default:
+          return (long) buffer.getDouble(_offset);
+      }
+    }
+
+    @Override
+    public double getDoubleValue() {
+      final ByteBuffer buffer = _input.getBuffer();
+      switch (getType().getTypeId()) {
+        case FudgeTypeDictionary.FLOAT_TYPE_ID:
+          return buffer.getFloat(_offset);
+        case FudgeTypeDictionary.DOUBLE_TYPE_ID:
+          return buffer.getDouble(_offset);
+        default:
+          return getLongValue();
+      }
+    }
+  }
+
+}
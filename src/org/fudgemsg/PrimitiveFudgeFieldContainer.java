@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+/**
+ * A container of Fudge fields that can read numeric values without boxing.
+ * <p>
+ * This extends {@link FudgeFieldContainer} with accessors returning Java primitives.
+ * Where a field holds its value in primitive form, such as a {@link FudgePrimitiveField},
+ * the value is returned without allocating a wrapper.
+ * <p>
+ * The standard message implementations, {@link FudgeMsgBase} and {@link LazyFudgeMsg},
+ * implement this interface.
+ */
+public interface PrimitiveFudgeFieldContainer extends FudgeFieldContainer {
+
+  /**
+   * Gets the value of the first field with the given name as a {@code double} without boxing.
+   * <p>
+   * A container is ordered and may contain multiple fields with the same name.
+   * This method returns the value of the first that matches with a type that can
+   * be converted to a double, or the default if there is no such field.
+   * 
+   * @param name  the field name, null matches fields without a name
+   * @param defaultValue  the value to return if no matching field is found
+   * @return the value of the first matching field, the default if not found
+   */
+  double getDoubleValue(String name, double defaultValue);
+
+  /**
+   * Gets the value of the first field with the given ordinal as a {@code double} without boxing.
+   * <p>
+   * A container is ordered and may contain multiple fields with the same ordinal.
+   * This method returns the value of the first that matches with a type that can
+   * be converted to a double, or the default if there is no such field.
+   * 
+   * @param ordinal  the field ordinal
+   * @param defaultValue  the value to return if no matching field is found
+   * @return the value of the first matching field, the default if not found
+   */
+  double getDoubleValue(int ordinal, double defaultValue);
+
+  /**
+   * Gets the value of the first field with the given name as a {@code long} without boxing.
+   * <p>
+   * A container is ordered and may contain multiple fields with the same name.
+   * This method returns the value of the first that matches with a type that can
+   * be converted to a long, or the default if there is no such field.
+   * 
+   * @param name  the field name, null matches fields without a name
+   * @param defaultValue  the value to return if no matching field is found
+   * @return the value of the first matching field, the default if not found
+   */
+  long getLongValue(String name, long defaultValue);
+
+  /**
+   * Gets the value of the first field with the given ordinal as a {@code long} without boxing.
+   * <p>
+   * A container is ordered and may contain multiple fields with the same ordinal.
+   * This method returns the value of the first that matches with a type that can
+   * be converted to a long, or the default if there is no such field.
+   * 
+   * @param ordinal  the field ordinal
+   * @param defaultValue  the value to return if no matching field is found
+   * @return the value of the first matching field, the default if not found
+   */
+  long getLongValue(int ordinal, long defaultValue);
+
+  /**
+   * Gets the value of the first field with the given name as an {@code int} without boxing.
+   * <p>
+   * A container is ordered and may contain multiple fields with the same name.
+   * This method returns the value of the first that matches with a type that can
+   * be converted to an integer, or the default if there is no such field.
+   * 
+   * @param name  the field name, null matches fields without a name
+   * @param defaultValue  the value to return if no matching field is found
+   * @return the value of the first matching field, the default if not found
+   */
+  int getIntValue(String name, int defaultValue);
+
+  /**
+   * Gets the value of the first field with the given ordinal as an {@code int} without boxing.
+   * <p>
+   * A container is ordered and may contain multiple fields with the same ordinal.
+   * This method returns the value of the first that matches with a type that can
+   * be converted to an integer, or the default if there is no such field.
+   * 
+   * @param ordinal  the field ordinal
+   * @param defaultValue  the value to return if no matching field is found
+   * @return the value of the first matching field, the default if not found
+   */
+  int getIntValue(int ordinal, int defaultValue);
+
+}
@@ -0,0 +1,266 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+import org.fudgemsg.types.PrimitiveFieldTypes;
+
+/**
+ * An immutable field holding a boolean or numeric value without boxing.
+ * <p>
+ * The value is held in primitive form and only boxed if {@link #getValue()} is called.
+ * This avoids allocating a wrapper per field for messages made up largely of numbers,
+ * such as market data ticks, when the values are read through the primitive accessors
+ * such as {@link PrimitiveFudgeFieldContainer#getDoubleValue(String, double)}.
+ * <p>
+ * This class is immutable and thread-safe.
+ */
+public class PrimitiveFudgeMsgField extends FudgeMsgField implements FudgePrimitiveField {
+
+  /**
+   * The value, as raw bits for a floating point type.
+   */
+  private final long _bits;
+  /**
+   * The boxed value, null until requested.
+   */
+  private transient Object _boxed;
+
+  /**
+   * Obtains a field holding an integral or boolean value.
+   * 
+   * @param type  the boolean, byte, short, int or long field type, not null
+   * @param value  the value, 1 or 0 for a boolean
+   * @param name  the optional field name, null if no name
+   * @param ordinal  the optional field ordinal, null if no ordinal
+   * @return the created immutable field, not null
+   * @throws IllegalArgumentException if the type is not integral or boolean, or the value is out of range for it
+   */
+  public static PrimitiveFudgeMsgField ofLong(final FudgeFieldType<?> type, final long value, final String name, final Short ordinal) {
+    final long min;
+    final long max;
+    if (type == PrimitiveFieldTypes.BOOLEAN_TYPE) {
+      min = 0;
+      max = 1;
+    } else if (type == PrimitiveFieldTypes.BYTE_TYPE) {
+      min = Byte.MIN_VALUE;
+      max = Byte.MAX_VALUE;
+    } else if (type == PrimitiveFieldTypes.SHORT_TYPE) {
+      min = Short.MIN_VALUE;
+      max = Short.MAX_VALUE;
+    } else if (type == PrimitiveFieldTypes.INT_TYPE) {
+      min = Integer.MIN_VALUE;
+      max = Integer.MAX_VALUE;
+    } else if (type == PrimitiveFieldTypes.LONG_TYPE) {
+      min = Long.MIN_VALUE;
+      max = Long.MAX_VALUE;
+    } else {
+      throw new IllegalArgumentException("Type " + type + " is not an integral or boolean type");
+    }
+    if (value < min || value > max) {
+      throw new IllegalArgumentException("Value " + value + " out of range for type " + type);
+    }
+    return new PrimitiveFudgeMsgField(type, value, name, ordinal);
+  }
+
+  /**
+   * Obtains a field holding a floating point value.
+   * 
+   * @param type  the float or double field type, not null
+   * @param value  the value
+   * @param name  the optional field name, null if no name
+   * @param ordinal  the optional field ordinal, null if no ordinal
+   * @return the created immutable field, not null
+   * @throws IllegalArgumentException if the type is not a floating point type
+   */
+  public static PrimitiveFudgeMsgField ofDouble(final FudgeFieldType<?> type, final double value, final String name, final Short ordinal) {
+    if (type == PrimitiveFieldTypes.DOUBLE_TYPE) {
+      return new PrimitiveFudgeMsgField(type, Double.doubleToRawLongBits(value), name, ordinal);
+    } else if (type == PrimitiveFieldTypes.FLOAT_TYPE) {
+      return new PrimitiveFudgeMsgField(type, Float.floatToRawIntBits((float) value), name, ordinal);
+    }
+    throw new IllegalArgumentException("Type " + type + " is not a floating point type");
+  }
+
+  /**
+   * Constructs a field from the type, raw value, name and ordinal.
+   * 
+   * @param type  the Fudge field type, not null
+   * @param bits  the value, as raw bits for a floating point type
+   * @param name  the optional field name, null if no name
+   * @param ordinal  the optional field ordinal, null if no ordinal
+   */
+  private PrimitiveFudgeMsgField(final FudgeFieldType<?> type, final long bits, final String name, final Short ordinal) {
+    super(type, null, name, ordinal);
+    _bits = bits;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Checks whether a type is one of the standard types held by this class.
+   * 
+   * @param type  the type to check, not null
+   * @return true if the type is the boolean, byte, short, int, long, float or double type
+   */
+  /* package */ static boolean isPrimitiveType(final FudgeFieldType<?> type) {
+    return type == PrimitiveFieldTypes.BOOLEAN_TYPE || type == PrimitiveFieldTypes.BYTE_TYPE
+        || type == PrimitiveFieldTypes.SHORT_TYPE || type == PrimitiveFieldTypes.INT_TYPE
+        || type == PrimitiveFieldTypes.LONG_TYPE || type == PrimitiveFieldTypes.FLOAT_TYPE
+        || type == PrimitiveFieldTypes.DOUBLE_TYPE;
+  }
+
+  /**
+   * Narrows a short, int or long type to the smallest type that holds a value, as when
+   * adding to a {@link FudgeMsg}.
+   * 
+   * @param type  the primitive type, not null
+   * @param value  the integral value
+   * @return the narrowed type, the original type if not short, int or long, not null
+   */
+  /* package */ static FudgeFieldType<?> narrowType(final FudgeFieldType<?> type, final long value) {
+    switch (type.getTypeId()) {
+      case FudgeTypeDictionary.SHORT_TYPE_ID:
+      case FudgeTypeDictionary.INT_TYPE_ID:
+      case FudgeTypeDictionary.LONG_TYPE_ID:
+        if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+          return PrimitiveFieldTypes.BYTE_TYPE;
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+          return PrimitiveFieldTypes.SHORT_TYPE;
+        } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+          return PrimitiveFieldTypes.INT_TYPE;
+        }
+        break;
+    }
+    return type;
+  }
+
+  /**
+   * Reads a value of one of the primitive types, as raw bits for a floating point type.
+   * 
+   * @param input  the input positioned at the start of the value, not null
+   * @param type  the primitive type, not null
+   * @return the value
+   * @throws IOException if the input raises one
+   */
+  /* package */ static long readBits(final DataInput input, final FudgeFieldType<?> type) throws IOException {
+    switch (type.getTypeId()) {
+      case FudgeTypeDictionary.BOOLEAN_TYPE_ID:
+        return input.readBoolean() ? 1 : 0;
+      case FudgeTypeDictionary.BYTE_TYPE_ID:
+        return input.readByte();
+      case FudgeTypeDictionary.SHORT_TYPE_ID:
+        return input.readShort();
+      case FudgeTypeDictionary.INT_TYPE_ID:
+      case FudgeTypeDictionary.FLOAT_TYPE_ID:
+        return input.readInt();
+      default:
+        return input.readLong();
+    }
+  }
+
+  /**
+   * Boxes a value of one of the primitive types.
+   * 
+   * @param type  the primitive type, not null
+   * @param bits  the value, as raw bits for a floating point type
+   * @return the boxed value, not null
+   */
+  /* package */ static Object box(final FudgeFieldType<?> type, final long bits) {
+    switch (type.getTypeId()) {
+      case FudgeTypeDictionary.BOOLEAN_TYPE_ID:
+        return Boolean.valueOf(bits != 0);
+      case FudgeTypeDictionary.BYTE_TYPE_ID:
+        return Byte.valueOf((byte) bits);
+      case FudgeTypeDictionary.SHORT_TYPE_ID:
+        return Short.valueOf((short) bits);
+      case FudgeTypeDictionary.INT_TYPE_ID:
+        return Integer.valueOf((int) bits);
+      case FudgeTypeDictionary.LONG_TYPE_ID:
+        return Long.valueOf(bits);
+      case FudgeTypeDictionary.FLOAT_TYPE_ID:
+        return Float.valueOf(Float.intBitsToFloat((int) bits));
+      default:
+        return Double.valueOf(Double.longBitsToDouble(bits));
+    }
+  }
+
+  /**
+   * Converts a value of one of the primitive types to a {@code long}.
+   * 
+   * @param type  the primitive type, not null
+   * @param bits  the value, as raw bits for a floating point type
+   * @return the value, truncated if floating point
+   */
+  /* package */ static long toLong(final FudgeFieldType<?> type, final long bits) {
+    switch (type.getTypeId()) {
+      case FudgeTypeDictionary.FLOAT_TYPE_ID:
+        return (long) Float.intBitsToFloat((int) bits);
+      case FudgeTypeDictionary.DOUBLE_TYPE_ID:
+        return (long) Double.longBitsToDouble(bits);
+      default:
+        return bits;
+    }
+  }
+
+  /**
+   * Converts a value of one of the primitive types to a {@code double}.
+   * 
+   * @param type  the primitive type, not null
+   * @param bits  the value, as raw bits for a floating point type
+   * @return the value
+   */
+  /* package */ static double toDouble(final FudgeFieldType<?> type, final long bits) {
+    switch (type.getTypeId()) {
+      case FudgeTypeDictionary.FLOAT_TYPE_ID:
+        return Float.intBitsToFloat((int) bits);
+      case FudgeTypeDictionary.DOUBLE_TYPE_ID:
+        return Double.longBitsToDouble(bits);
+      default:
+        return bits;
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the value, boxing it on the first call.
+   * 
+   * @return the boxed value, not null
+   */
+  @Override
+  public Object getValue() {
+    Object boxed = _boxed;
+    if (boxed == null) {
+      boxed = box(getType(), _bits);
+      _boxed = boxed;
+    }
+    return boxed;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getLongValue() {
+    return toLong(getType(), _bits);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public double getDoubleValue() {
+    return toDouble(getType(), _bits);
+  }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fudgemsg;
+
+/**
+ * A {@link FudgeStreamReader} that can return field values without boxing them, and stream primitive arrays
+ * without holding them in full.
+ * <p>
+ * The binary readers, {@link FudgeDataInputStreamReader} and {@link FudgeByteBufferReader}, implement this
+ * interface. Callers holding any other {@code FudgeStreamReader} should convert the result of
+ * {@link #getFieldValue()} instead.
+ * <p>
+ * Once an array value has been streamed from a source that cannot be re-read, {@link #getFieldValue()} throws
+ * {@link IllegalStateException}.
+ */
+public interface PrimitiveFudgeStreamReader extends FudgeStreamReader {
+
+  /**
+   * If the current stream element is a simple field, returns the field value as a {@code double}. A value of one of the
+   * standard numeric or boolean types is returned without boxing; any other value is converted as by
+   * {@link FudgeTypeDictionary#getFieldDoubleValue}.
+   *
+   * @return current field value
+   * @throws IllegalStateException if the current element is not a simple field
+   * @throws IllegalArgumentException if the value cannot be converted
+   */
+  public double getFieldValueAsDouble ();
+
+  /**
+   * If the current stream element is a simple field, returns the field value as a {@code long}. A value of one of the
+   * standard numeric or boolean types is returned without boxing, truncating a floating point value; any other value is
+   * converted as by {@link FudgeTypeDictionary#getFieldLongValue}.
+   *
+   * @return current field value
+   * @throws IllegalStateException if the current element is not a simple field
+   * @throws IllegalArgumentException if the value cannot be converted
+   */
+  public long getFieldValueAsLong ();
+
+  /**
+   * If the current stream element is a simple field, returns the field value as an {@code int}. An integral or boolean
+   * value within range is returned without boxing; any other value is converted as by
+   * {@link FudgeTypeDictionary#getFieldIntValue}.
+   *
+   * @return current field value
+   * @throws IllegalStateException if the current element is not a simple field
+   * @throws IllegalArgumentException if the value cannot be converted
+   */
+  public int getFieldValueAsInt ();
+
+  /**
+   * If the current stream element is a simple field holding an array of a primitive type, returns a stream over the
+   * encoded array so that it can be processed in chunks. If the value has not already been decoded by
+   * {@link #getFieldValue()}, the stream reads directly from the source and the value is never held in full; if the
+   * source cannot be re-read the value is then no longer available from {@code getFieldValue}. Any part of the array
+   * not read from the stream is skipped when the reader moves to the next element.
+   *
+   * @return the stream over the array elements
+   * @throws IllegalStateException if the current element is not a simple field holding a primitive array, or the
+   *         value has already been streamed from a source that cannot be re-read
+   */
+  public FudgeArrayInputStream getFieldValueStream ();
+
+}
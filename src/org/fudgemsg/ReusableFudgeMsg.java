@@ -0,0 +1,311 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fudgemsg.types.FudgeMsgFieldType;
+
+/**
+ * A mutable Fudge message that recycles its fields and sub-messages so it can be decoded
+ * into repeatedly without allocation.
+ * <p>
+ * A message of this type is owned by the caller and passed to
+ * {@link FudgeMsgReader#nextMessage(ReusableFudgeMsg)}, which releases it and then decodes the
+ * next message into it. Fields are held in slots that are returned to the message when it is
+ * {@link #release() released} and reused by the next decode, and sub-messages are themselves
+ * reusable messages held in the same way. Values of the standard numeric and boolean types
+ * are held unboxed, and are read without allocation through the primitive accessors such as
+ * {@link #getDoubleValue(String, double)}.
+ * <p>
+ * Once released, the fields and sub-messages previously obtained from the message must no
+ * longer be used as they will be overwritten by the next decode. Fields may still be added
+ * and removed using the standard methods between decodes.
+ * <p>
+ * This class is mutable and not thread-safe.
+ */
+public class ReusableFudgeMsg extends FudgeMsg {
+
+  /**
+   * The field slots holding values other than primitives, reused after a release.
+   */
+  private final List<ValueField> _valueFields = new ArrayList<ValueField>();
+  /**
+   * The number of value slots in use.
+   */
+  private int _valueFieldsUsed;
+  /**
+   * The field slots holding primitive values, reused after a release.
+   */
+  private final List<PrimitiveField> _primitiveFields = new ArrayList<PrimitiveField>();
+  /**
+   * The number of primitive slots in use.
+   */
+  private int _primitiveFieldsUsed;
+  /**
+   * The sub-messages, reused after a release.
+   */
+  private final List<ReusableFudgeMsg> _subMessages = new ArrayList<ReusableFudgeMsg>();
+  /**
+   * The number of sub-messages in use.
+   */
+  private int _subMessagesUsed;
+
+  /**
+   * Creates an empty reusable message.
+   * 
+   * @param fudgeContext  the context to use for type resolution and other services, not null
+   */
+  public ReusableFudgeMsg(final FudgeContext fudgeContext) {
+    super(fudgeContext);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Removes all fields, returning the field slots and sub-messages for reuse.
+   * <p>
+   * Any field or sub-message obtained from this message before the release must not be used
+   * afterwards.
+   */
+  public void release() {
+    for (int i = 0; i < _valueFieldsUsed; i++) {
+      _valueFields.get(i).clear();
+    }
+    _valueFieldsUsed = 0;
+    _primitiveFieldsUsed = 0;
+    for (int i = 0; i < _subMessagesUsed; i++) {
+      _subMessages.get(i).release();
+    }
+    _subMessagesUsed = 0;
+    getFields().clear();
+    fieldsModified();
+  }
+
+  /**
+   * Adds a field holding a value other than a primitive using a recycled slot.
+   * 
+   * @param name  the field name, null if none
+   * @param ordinal  the field ordinal, null if none
+   * @param type  the field type, not null
+   * @param value  the value
+   */
+  /* package */ void addValue(final String name, final Integer ordinal, final FudgeFieldType<?> type, final Object value) {
+    final ValueField field;
+    if (_valueFieldsUsed < _valueFields.size()) {
+      field = _valueFields.get(_valueFieldsUsed);
+    } else {
+      field = new ValueField();
+      _valueFields.add(field);
+    }
+    _valueFieldsUsed++;
+    field.set(name, ordinal, type);
+    field._value = value;
+    getFields().add(field);
+    fieldsModified();
+  }
+
+  /**
+   * Adds a field holding an integral or boolean value using a recycled slot.
+   * <p>
+   * Short, int and long values are narrowed to the smallest type that holds them, as when
+   * adding to a {@link FudgeMsg}.
+   * 
+   * @param name  the field name, null if none
+   * @param ordinal  the field ordinal, null if none
+   * @param type  the boolean, byte, short, int or long field type, not null
+   * @param value  the value, 1 or 0 for a boolean
+   */
+  /* package */ void addLong(final String name, final Integer ordinal, final FudgeFieldType<?> type, final long value) {
+    addPrimitive(name, ordinal, PrimitiveFudgeMsgField.narrowType(type, value), value);
+  }
+
+  /**
+   * Adds a field holding a floating point value using a recycled slot.
+   * 
+   * @param name  the field name, null if none
+   * @param ordinal  the field ordinal, null if none
+   * @param type  the float or double field type, not null
+   * @param value  the value
+   */
+  /* package */ void addDouble(final String name, final Integer ordinal, final FudgeFieldType<?> type, final double value) {
+    if (type.getTypeId() == FudgeTypeDictionary.FLOAT_TYPE_ID) {
+      addPrimitive(name, ordinal, type, Float.floatToRawIntBits((float) value));
+    } else {
+      addPrimitive(name, ordinal, type, Double.doubleToRawLongBits(value));
+    }
+  }
+
+  /**
+   * Adds a field holding a primitive value using a recycled slot.
+   * 
+   * @param name  the field name, null if none
+   * @param ordinal  the field ordinal, null if none
+   * @param type  the primitive field type, not null
+   * @param bits  the value, as raw bits for a floating point type
+   */
+  private void addPrimitive(final String name, final Integer ordinal, final FudgeFieldType<?> type, final long bits) {
+    final PrimitiveField field;
+    if (_primitiveFieldsUsed < _primitiveFields.size()) {
+      field = _primitiveFields.get(_primitiveFieldsUsed);
+    } else {
+      field = new PrimitiveField();
+      _primitiveFields.add(field);
+    }
+    _primitiveFieldsUsed++;
+    field.set(name, ordinal, type);
+    field._bits = bits;
+    field._boxed = null;
+    getFields().add(field);
+    fieldsModified();
+  }
+
+  /**
+   * Adds a sub-message field using a recycled sub-message.
+   * 
+   * @param name  the field name, null if none
+   * @param ordinal  the field ordinal, null if none
+   * @return the empty sub-message, not null
+   */
+  /* package */ ReusableFudgeMsg addSubMessage(final String name, final Integer ordinal) {
+    final ReusableFudgeMsg subMessage;
+    if (_subMessagesUsed < _subMessages.size()) {
+      subMessage = _subMessages.get(_subMessagesUsed);
+    } else {
+      subMessage = new ReusableFudgeMsg(getFudgeContext());
+      _subMessages.add(subMessage);
+    }
+    _subMessagesUsed++;
+    addValue(name, ordinal, FudgeMsgFieldType.INSTANCE, subMessage);
+    return subMessage;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * A recyclable field slot.
+   */
+  private abstract static class SlotField implements FudgeField, Serializable {
+
+    private FudgeFieldType<?> _type;
+    private String _name;
+    private short _ordinal;
+    private boolean _hasOrdinal;
+
+    protected void set(final String name, final Integer ordinal, final FudgeFieldType<?> type) {
+      _type = type;
+      _name = name;
+      if (ordinal != null) {
+        _ordinal = ordinal.shortValue();
+        _hasOrdinal = true;
+      } else {
+        _hasOrdinal = false;
+      }
+    }
+
+    @Override
+    public FudgeFieldType<?> getType() {
+      return _type;
+    }
+
+    @Override
+    public String getName() {
+      return _name;
+    }
+
+    @Override
+    public Short getOrdinal() {
+      return _hasOrdinal ? Short.valueOf(_ordinal) : null;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (obj instanceof FudgeField) {
+        final FudgeField other = (FudgeField) obj;
+        return getType().equals(other.getType()) &&
+            equal(getOrdinal(), other.getOrdinal()) &&
+            equal(getName(), other.getName()) &&
+            equal(getValue(), other.getValue());
+      }
+      return false;
+    }
+
+    private static boolean equal(final Object a, final Object b) {
+      return a == b || (a != null && a.equals(b));
+    }
+
+    @Override
+    public int hashCode() {
+      final Object value = getValue();
+      return (_name != null ? _name.hashCode() : 0) ^ (value != null ? value.hashCode() : 0);
+    }
+
+    @Override
+    public String toString() {
+      return "Field[" + _name + ":" + getOrdinal() + "-" + _type + "]";
+    }
+  }
+
+  /**
+   * A recyclable field slot holding a value other than a primitive.
+   */
+  private static final class ValueField extends SlotField {
+
+    private Object _value;
+
+    private void clear() {
+      _value = null;
+    }
+
+    @Override
+    public Object getValue() {
+      return _value;
+    }
+  }
+
+  /**
+   * A recyclable field slot holding a primitive value.
+   */
+  private static final class PrimitiveField extends SlotField implements FudgePrimitiveField {
+
+    private long _bits;
+    private transient Object _boxed;
+
+    @Override
+    public Object getValue() {
+      Object boxed = _boxed;
+      if (boxed == null) {
+        boxed = PrimitiveFudgeMsgField.box(getType(), _bits);
+        _boxed = boxed;
+      }
+      return boxed;
+    }
+
+    @Override
+    public long getLongValue() {
+      return PrimitiveFudgeMsgField.toLong(getType(), _bits);
+    }
+
+    @Override
+    public double getDoubleValue() {
+      return PrimitiveFudgeMsgField.toDouble(getType(), _bits);
+    }
+  }
+
+}
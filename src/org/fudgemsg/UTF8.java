@@ -19,6 +19,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
 
 /**
  * Utility to manage UTF-8 encoding.
@@ -115,6 +116,39 @@ public class UTF8 {
     return count;
   }
 
+  /**
+   * Encodes a string into a supplied buffer at its current position.
+   * The buffer must have at least {@link #getLengthBytes(String)} bytes remaining for this to succeed.
+   * 
+   * @param str  the string to encode, not null
+   * @param buffer  the buffer to encode into, not null
+   * @return number of bytes written to the buffer
+   * @throws java.nio.BufferOverflowException if the target buffer is not big enough
+   */
+  public static int encode(final String str, final ByteBuffer buffer) {
+    final int len = str.length();
+    final int start = buffer.position();
+    for (int i = 0; i < len; i++) {
+      final int c = str.charAt(i);
+      if (c >= 0x10000) {
+        buffer.put((byte) (0xF0 | ((c >> 18) & 0x07)));
+        buffer.put((byte) (0x80 | ((c >> 12) & 0x3F)));
+        buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+        buffer.put((byte) (0x80 | (c & 0x3F)));
+      } else if (c >= 0x800) {
+        buffer.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+        buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+        buffer.put((byte) (0x80 | (c & 0x3F)));
+      } else if (c >= 0x80) {
+        buffer.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+        buffer.put((byte) (0x80 | (c & 0x3F)));
+      } else {
+        buffer.put((byte) c);
+      }
+    }
+    return buffer.position() - start;
+  }
+
   /**
    * Encodes a string into an array.
    * 
@@ -199,6 +233,37 @@ public class UTF8 {
     return new String(buffer, 0, count);
   }
 
+  /**
+   * Decodes a string from part of a byte buffer without altering the buffer position.
+   * <p>
+   * Array backed buffers are decoded in place. Other buffers are decoded in place
+   * if the data is ASCII, otherwise the data is copied before decoding.
+   * 
+   * @param buffer  the buffer containing the UTF-8 string encoding, not null
+   * @param start  the absolute index in the buffer of the string encoding
+   * @param length  the number of bytes of UTF-8 data
+   * @return the decoded string, not null
+   * @throws UTFDataFormatException if the buffer fragment does not contain valid UTF-8 
+   */
+  public static String decode(final ByteBuffer buffer, final int start, final int length) throws UTFDataFormatException {
+    if (buffer.hasArray()) {
+      return decode(buffer.array(), buffer.arrayOffset() + start, length);
+    }
+    final char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      final byte b = buffer.get(start + i);
+      if (b < 0) {
+        final byte[] bytes = new byte[length];
+        for (int j = 0; j < length; j++) {
+          bytes[j] = buffer.get(start + j);
+        }
+        return decode(bytes);
+      }
+      chars[i] = (char) b;
+    }
+    return new String(chars);
+  }
+
   /**
    * Decodes a string from a {@link DataInput} source.
    * Note that the methods within {@link DataInput} are designed for <em>modified</em> UTF-8
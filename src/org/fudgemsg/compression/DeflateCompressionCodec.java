@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.compression;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.fudgemsg.FudgeRuntimeIOException;
+
+/**
+ * A codec using the DEFLATE algorithm of the JDK's {@link Deflater} and {@link Inflater}.
+ * <p>
+ * This gives good compression of the repetitive field names and values of large messages at a moderate CPU cost.
+ * The raw DEFLATE format is used, without the zlib header or checksum.
+ * <p>
+ * This class is immutable and thread-safe.
+ */
+public class DeflateCompressionCodec implements FudgeCompressionCodec {
+
+  /**
+   * The codec identifier.
+   */
+  public static final int CODEC_ID = 1;
+
+  /**
+   * The compression level.
+   */
+  private final int _level;
+
+  /**
+   * Creates a codec using the default compression level.
+   */
+  public DeflateCompressionCodec() {
+    this(Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Creates a codec using a given compression level.
+   * 
+   * @param level  the compression level, from 0 to 9, or -1 for the default
+   */
+  public DeflateCompressionCodec(final int level) {
+    if ((level < Deflater.DEFAULT_COMPRESSION) || (level > Deflater.BEST_COMPRESSION)) {
+      throw new IllegalArgumentException("Invalid compression level " + level);
+    }
+    _level = level;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the compression level.
+   * 
+   * @return the level, from 0 to 9, or -1 for the default
+   */
+  public int getLevel() {
+    return _level;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getCodecId() {
+    return CODEC_ID;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public byte[] compress(final byte[] data, final int offset, final int length) {
+    final Deflater deflater = new Deflater(_level, true);
+    try {
+      deflater.setInput(data, offset, length);
+      deflater.finish();
+      byte[] output = new byte[Math.max(length / 2, 64)];
+      int size = 0;
+      while (!deflater.finished()) {
+        if (size == output.length) {
+          final byte[] grown = new byte[output.length * 2];
+          System.arraycopy(output, 0, grown, 0, size);
+          output = grown;
+        }
+        size += deflater.deflate(output, size, output.length - size);
+      }
+      final byte[] result = new byte[size];
+      System.arraycopy(output, 0, result, 0, size);
+      return result;
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void decompress(final byte[] data, final int offset, final int length, final byte[] target, final int targetOffset, final int targetLength) {
+    // the raw format needs an extra byte of input to detect the end of the stream
+    final Inflater inflater = new Inflater(true);
+    try {
+      final byte[] input = new byte[length + 1];
+      System.arraycopy(data, offset, input, 0, length);
+      inflater.setInput(input);
+      int size = 0;
+      while (!inflater.finished()) {
+        final int inflated = inflater.inflate(target, targetOffset + size, targetLength - size);
+        if ((inflated == 0) && (inflater.needsInput() || inflater.needsDictionary() || (size == targetLength))) {
+          break;
+        }
+        size += inflated;
+      }
+      if ((size != targetLength) || !inflater.finished()) {
+        throw new IOException("Deflated data does not decompress to " + targetLength + " bytes");
+      }
+    } catch (DataFormatException e) {
+      throw new FudgeRuntimeIOException(new IOException("Corrupt deflated data: " + e.getMessage()));
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException(e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "DeflateCompressionCodec{level=" + _level + "}";
+  }
+
+}
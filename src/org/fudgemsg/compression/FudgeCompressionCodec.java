@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.compression;
+
+/**
+ * A codec for compressing the body of a message envelope.
+ * <p>
+ * Each codec has an identifier, written to the stream with the compressed data, that is used to find the codec
+ * when decompressing. The identifiers 0 to 127 are reserved for codecs provided with Fudge.
+ * <p>
+ * Implementations must be thread-safe.
+ */
+public interface FudgeCompressionCodec {
+
+  /**
+   * Gets the identifier written with data compressed by this codec.
+   * 
+   * @return the identifier, from 0 to 255
+   */
+  int getCodecId();
+
+  /**
+   * Compresses a region of an array.
+   * 
+   * @param data  the data to compress, not null
+   * @param offset  the index of the first byte to compress
+   * @param length  the number of bytes to compress
+   * @return the compressed data, not null
+   */
+  byte[] compress(byte[] data, int offset, int length);
+
+  /**
+   * Decompresses data into a region of an array.
+   * 
+   * @param data  the compressed data, not null
+   * @param offset  the index of the first byte of compressed data
+   * @param length  the number of bytes of compressed data
+   * @param target  the array to decompress into, not null
+   * @param targetOffset  the index of the first byte to write
+   * @param targetLength  the number of bytes the data decompresses to
+   * @throws org.fudgemsg.FudgeRuntimeIOException if the data is corrupt or does not decompress to exactly {@code targetLength} bytes
+   */
+  void decompress(byte[] data, int offset, int length, byte[] target, int targetOffset, int targetLength);
+
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.compression;
+
+import java.io.IOException;
+
+import org.fudgemsg.FudgeRuntimeIOException;
+
+/**
+ * A fast codec producing data in the LZ4 block format, implemented in pure Java.
+ * <p>
+ * The compressor uses a single hash table of recent four byte sequences and takes the first match found, trading
+ * compression ratio for speed. It typically compresses several times faster than {@link DeflateCompressionCodec},
+ * with a lower ratio, so suits links where CPU rather than bandwidth is the constraint.
+ * <p>
+ * This class is immutable and thread-safe.
+ */
+public class LZ4CompressionCodec implements FudgeCompressionCodec {
+
+  /**
+   * The codec identifier.
+   */
+  public static final int CODEC_ID = 2;
+
+  private static final int MIN_MATCH = 4;
+  private static final int LAST_LITERALS = 5;
+  private static final int MATCH_FIND_LIMIT = 12;
+  private static final int MAX_OFFSET = 0xFFFF;
+  private static final int HASH_BITS = 12;
+
+  //-------------------------------------------------------------------------
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getCodecId() {
+    return CODEC_ID;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public byte[] compress(final byte[] data, final int offset, final int length) {
+    final byte[] output = new byte[length + length / 255 + 16];
+    final int end = offset + length;
+    int out = 0;
+    int anchor = offset;
+    if (length > MATCH_FIND_LIMIT) {
+      final int matchFindLimit = end - MATCH_FIND_LIMIT;
+      final int matchLimit = end - LAST_LITERALS;
+      final int[] table = new int[1 << HASH_BITS];
+      int pos = offset;
+      while (pos < matchFindLimit) {
+        final int sequence = readInt(data, pos);
+        final int hash = hash(sequence);
+        int ref = table[hash] - 1;
+        table[hash] = pos + 1;
+        if ((ref < offset) || (pos - ref > MAX_OFFSET) || (readInt(data, ref) != sequence)) {
+          pos++;
+          continue;
+        }
+        // extend the match backwards over any literals
+        while ((pos > anchor) && (ref > offset) && (data[pos - 1] == data[ref - 1])) {
+          pos--;
+          ref--;
+        }
+        int matchLength = MIN_MATCH;
+        while ((pos + matchLength < matchLimit) && (data[pos + matchLength] == data[ref + matchLength])) {
+          matchLength++;
+        }
+        out = writeSequence(data, anchor, pos - anchor, pos - ref, matchLength, output, out);
+        pos += matchLength;
+        anchor = pos;
+      }
+    }
+    out = writeLiterals(data, anchor, end - anchor, 0, output, out);
+    final byte[] result = new byte[out];
+    System.arraycopy(output, 0, result, 0, out);
+    return result;
+  }
+
+  private static int readInt(final byte[] data, final int index) {
+    return (data[index] & 0xFF) | ((data[index + 1] & 0xFF) << 8) | ((data[index + 2] & 0xFF) << 16) | (data[index + 3] << 24);
+  }
+
+  private static int hash(final int sequence) {
+    return (sequence * -1640531535) >>> (32 - HASH_BITS);
+  }
+
+  /**
+   * Writes a sequence of literals followed by a match.
+   */
+  private static int writeSequence(final byte[] data, final int literals, final int literalLength, final int matchOffset, final int matchLength, final byte[] output, int out) {
+    out = writeLiterals(data, literals, literalLength, matchLength - MIN_MATCH, output, out);
+    output[out++] = (byte) matchOffset;
+    output[out++] = (byte) (matchOffset >>> 8);
+    if (matchLength - MIN_MATCH >= 15) {
+      out = writeLength(matchLength - MIN_MATCH - 15, output, out);
+    }
+    return out;
+  }
+
+  /**
+   * Writes the token and literals of a sequence; the match length is only written to the token.
+   */
+  private static int writeLiterals(final byte[] data, final int literals, final int literalLength, final int matchLengthCode, final byte[] output, int out) {
+    final int token = (Math.min(literalLength, 15) << 4) | Math.min(matchLengthCode, 15);
+    output[out++] = (byte) token;
+    if (literalLength >= 15) {
+      out = writeLength(literalLength - 15, output, out);
+    }
+    System.arraycopy(data, literals, output, out, literalLength);
+    return out + literalLength;
+  }
+
+  private static int writeLength(int length, final byte[] output, int out) {
+    while (length >= 255) {
+      output[out++] = (byte) 255;
+      length -= 255;
+    }
+    output[out++] = (byte) length;
+    return out;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void decompress(final byte[] data, final int offset, final int length, final byte[] target, final int targetOffset, final int targetLength) {
+    final int end = offset + length;
+    final int targetEnd = targetOffset + targetLength;
+    int in = offset;
+    int out = targetOffset;
+    try {
+      while (true) {
+        if (in >= end) {
+          throw new IOException("Truncated LZ4 data");
+        }
+        final int token = data[in++] & 0xFF;
+        int literalLength = token >>> 4;
+        if (literalLength == 15) {
+          int b;
+          do {
+            if (in >= end) {
+              throw new IOException("Truncated LZ4 data");
+            }
+            b = data[in++] & 0xFF;
+            literalLength += b;
+          } while (b == 255);
+        }
+        if ((literalLength > end - in) || (literalLength > targetEnd - out)) {
+          throw new IOException("LZ4 literals overrun the data");
+        }
+        System.arraycopy(data, in, target, out, literalLength);
+        in += literalLength;
+        out += literalLength;
+        if (in == end) {
+          break;
+        }
+        if (end - in < 2) {
+          throw new IOException("Truncated LZ4 data");
+        }
+        final int matchOffset = (data[in] & 0xFF) | ((data[in + 1] & 0xFF) << 8);
+        in += 2;
+        if ((matchOffset == 0) || (matchOffset > out - targetOffset)) {
+          throw new IOException("Invalid LZ4 match offset " + matchOffset);
+        }
+        int matchLength = token & 0x0F;
+        if (matchLength == 15) {
+          int b;
+          do {
+            if (in >= end) {
+              throw new IOException("Truncated LZ4 data");
+            }
+            b = data[in++] & 0xFF;
+            matchLength += b;
+          } while (b == 255);
+        }
+        matchLength += MIN_MATCH;
+        if (matchLength > targetEnd - out) {
+          throw new IOException("LZ4 match overruns the target");
+        }
+        int ref = out - matchOffset;
+        if (matchOffset >= matchLength) {
+          System.arraycopy(target, ref, target, out, matchLength);
+          out += matchLength;
+        } else {
+          // overlapping copy repeats the most recent bytes
+          for (int i = 0; i < matchLength; i++) {
+            target[out++] = target[ref++];
+          }
+        }
+      }
+      if (out != targetEnd) {
+        throw new IOException("LZ4 data does not decompress to " + targetLength + " bytes");
+      }
+    } catch (IOException e) {
+      throw new FudgeRuntimeIOException(e);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "LZ4CompressionCodec";
+  }
+
+}
@@ -0,0 +1,15 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+
+/**
+ * Codecs for compressing the bodies of message envelopes.
+ * <p>
+ * An envelope whose body is compressed has the {@link org.fudgemsg.FudgeMsgEnvelope#COMPRESSED_DIRECTIVE}
+ * processing directive set, and the envelope header is followed by a one byte codec identifier, the four byte
+ * size of the uncompressed body and the compressed data. Codecs are registered with a
+ * {@link org.fudgemsg.FudgeContext} so that the readers can decompress envelopes transparently.
+ */
+package org.fudgemsg.compression;
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.taxon;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A taxonomy built up over the life of a connection from the field names sent over it.
+ * <p>
+ * When a writer and reader each hold a session taxonomy for the same stream, the first
+ * field written with a given name and no ordinal carries the name in full. Both ends then
+ * add the name to their session taxonomy, assigning it the next free ordinal, and later
+ * fields with that name are written with the ordinal alone. As both ends make the same
+ * assignments in the same order, no dictionary needs to be sent or negotiated.
+ * <p>
+ * Session ordinals are taken from the negative range, so that they never clash with the
+ * ordinals of a static taxonomy or those set explicitly on fields. The first name added is
+ * given ordinal -1, the next -2, and so on until {@link #MAX_SIZE} names are held, after
+ * which further names are always sent in full.
+ * <p>
+ * A session taxonomy describes a single stream and is not thread-safe.
+ */
+public class SessionTaxonomy implements FudgeTaxonomy {
+
+  /**
+   * The maximum number of names held, being the number of negative ordinals.
+   */
+  public static final int MAX_SIZE = 32768;
+
+  /**
+   * The names, indexed by the position they were added at.
+   */
+  private final List<String> _names = new ArrayList<String>();
+  /**
+   * The map keyed by name.
+   */
+  private final Map<String, Short> _nameToOrdinalMap = new HashMap<String, Short>();
+
+  /**
+   * Creates a new empty session taxonomy.
+   */
+  public SessionTaxonomy() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Checks if an ordinal is within the range used for session ordinals.
+   * 
+   * @param ordinal  the ordinal to check
+   * @return true if the ordinal is reserved for session ordinals
+   */
+  public static boolean isSessionOrdinal(final int ordinal) {
+    return ordinal < 0;
+  }
+
+  /**
+   * Gets the number of names held.
+   * 
+   * @return the number of names
+   */
+  public int size() {
+    return _names.size();
+  }
+
+  /**
+   * Checks if the taxonomy is full, so that no further names will be added.
+   * 
+   * @return true if full
+   */
+  public boolean isFull() {
+    return _names.size() >= MAX_SIZE;
+  }
+
+  /**
+   * Adds a name to the taxonomy if not already held and there is room for it.
+   * 
+   * @param fieldName  the field name, not null
+   * @return the ordinal of the name, null if not held and the taxonomy is full
+   */
+  public Short addFieldName(final String fieldName) {
+    if (fieldName == null) {
+      throw new NullPointerException("Field name must not be null");
+    }
+    Short ordinal = _nameToOrdinalMap.get(fieldName);
+    if (ordinal == null && !isFull()) {
+      ordinal = (short) (-1 - _names.size());
+      _names.add(fieldName);
+      _nameToOrdinalMap.put(fieldName, ordinal);
+    }
+    return ordinal;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String getFieldName(final short ordinal) {
+    final int index = -1 - ordinal;
+    if (index < 0 || index >= _names.size()) {
+      return null;
+    }
+    return _names.get(index);
+  }
+
+  @Override
+  public Short getFieldOrdinal(final String fieldName) {
+    return _nameToOrdinalMap.get(fieldName);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Returns a string describing the taxonomy.
+   * 
+   * @return the description, not null
+   */
+  @Override
+  public String toString() {
+    return "SessionTaxonomy[" + _names.size() + " names]";
+  }
+
+}
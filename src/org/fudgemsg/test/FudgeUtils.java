@@ -15,19 +15,26 @@
  */
 package org.fudgemsg.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
+import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeField;
 import org.fudgemsg.FudgeFieldContainer;
 import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeMsgEnvelope;
+import org.fudgemsg.FudgeMsgReader;
+import org.fudgemsg.FudgeMsgWriter;
+import org.fudgemsg.MutableFudgeFieldContainer;
 import org.fudgemsg.UnknownFudgeFieldValue;
 
 /**
@@ -205,4 +212,84 @@ public class FudgeUtils {
     }
   }
 
+  /**
+   * Asserts that two sequences of envelopes match, comparing the version, processing
+   * directives and encoded form of each message.
+   * 
+   * @param context the context used to encode the messages
+   * @param expected the expected envelopes
+   * @param actual the actual envelopes
+   */
+  public static void assertEnvelopesEqual(FudgeContext context, List<FudgeMsgEnvelope> expected, List<FudgeMsgEnvelope> actual) {
+    assertEquals(expected.size(), actual.size());
+    for(int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getVersion(), actual.get(i).getVersion());
+      assertEquals(expected.get(i).getProcessingDirectives(), actual.get(i).getProcessingDirectives());
+      assertArrayEquals(context.toByteArray(expected.get(i).getMessage()), context.toByteArray(actual.get(i).getMessage()));
+    }
+  }
+
+  /**
+   * Reads all remaining envelopes from a reader.
+   * 
+   * @param reader the reader to drain
+   * @return the envelopes read, not null
+   */
+  public static List<FudgeMsgEnvelope> readAll(FudgeMsgReader reader) {
+    final List<FudgeMsgEnvelope> envelopes = new ArrayList<FudgeMsgEnvelope>();
+    while(reader.hasNext()) {
+      envelopes.add(reader.nextMessageEnvelope());
+    }
+    return envelopes;
+  }
+
+  /**
+   * Creates a message carrying a sequence number and some text. Tests add the fields
+   * that exercise their own feature to the message returned.
+   * 
+   * @param context the context to create the message with
+   * @param seq the sequence number
+   * @return the message, not null
+   */
+  public static MutableFudgeFieldContainer createMessage(FudgeContext context, int seq) {
+    final MutableFudgeFieldContainer msg = context.newMessage();
+    msg.add("seq", seq);
+    msg.add("text", "message " + seq);
+    return msg;
+  }
+
+  /**
+   * Encodes a sequence of messages as consecutive envelopes.
+   * 
+   * @param context the context to encode the messages with
+   * @param messages the messages to encode
+   * @return the encoded envelopes, not null
+   */
+  public static byte[] encode(FudgeContext context, List<? extends FudgeFieldContainer> messages) {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeMsgWriter writer = context.createMessageWriter(baos);
+    for(FudgeFieldContainer message : messages) {
+      writer.writeMessage(message);
+    }
+    writer.flush();
+    return baos.toByteArray();
+  }
+
+  /**
+   * Encodes a sequence of envelopes, preserving the version and processing directives of each.
+   * 
+   * @param context the context to encode the envelopes with
+   * @param envelopes the envelopes to encode
+   * @return the encoded envelopes, not null
+   */
+  public static byte[] encodeEnvelopes(FudgeContext context, List<FudgeMsgEnvelope> envelopes) {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeMsgWriter writer = context.createMessageWriter(baos);
+    for(FudgeMsgEnvelope envelope : envelopes) {
+      writer.writeMessageEnvelope(envelope);
+    }
+    writer.flush();
+    return baos.toByteArray();
+  }
+
 }
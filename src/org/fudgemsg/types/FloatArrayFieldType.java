@@ -19,6 +19,8 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
+import org.fudgemsg.ByteBufferDataInput;
+import org.fudgemsg.ByteBufferDataOutput;
 import org.fudgemsg.FudgeFieldType;
 import org.fudgemsg.FudgeTypeDictionary;
 import org.fudgemsg.taxon.FudgeTaxonomy;
@@ -55,6 +57,10 @@ public class FloatArrayFieldType extends FudgeFieldType<float[]> {
   public float[] readValue(DataInput input, int dataSize) throws IOException {
     int nFloats = dataSize / 4;
     float[] result = new float[nFloats];
+    if (input instanceof ByteBufferDataInput) {
+      ((ByteBufferDataInput)input).slice(nFloats * 4).asFloatBuffer().get(result);
+      return result;
+    }
     for(int i = 0; i < nFloats; i++) {
       result[i] = input.readFloat();
     }
@@ -66,6 +72,10 @@ public class FloatArrayFieldType extends FudgeFieldType<float[]> {
    */
   @Override
   public void writeValue(DataOutput output, float[] value) throws IOException {
+    if (output instanceof ByteBufferDataOutput) {
+      ((ByteBufferDataOutput)output).slice(value.length * 4).asFloatBuffer().put(value);
+      return;
+    }
     for(float f : value) {
       output.writeFloat(f);
     }
@@ -19,6 +19,8 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
+import org.fudgemsg.ByteBufferDataInput;
+import org.fudgemsg.ByteBufferDataOutput;
 import org.fudgemsg.FudgeFieldType;
 import org.fudgemsg.FudgeTypeDictionary;
 import org.fudgemsg.taxon.FudgeTaxonomy;
@@ -55,6 +57,10 @@ public class LongArrayFieldType extends FudgeFieldType<long[]> {
   public long[] readValue(DataInput input, int dataSize) throws IOException {
     int nLongs = dataSize / 8;
     long[] result = new long[nLongs];
+    if (input instanceof ByteBufferDataInput) {
+      ((ByteBufferDataInput)input).slice(nLongs * 8).asLongBuffer().get(result);
+      return result;
+    }
     for(int i = 0; i < nLongs; i++) {
       result[i] = input.readLong();
     }
@@ -66,6 +72,10 @@ public class LongArrayFieldType extends FudgeFieldType<long[]> {
    */
   @Override
   public void writeValue(DataOutput output, long[] value) throws IOException {
+    if (output instanceof ByteBufferDataOutput) {
+      ((ByteBufferDataOutput)output).slice(value.length * 8).asLongBuffer().put(value);
+      return;
+    }
     for(long l : value) {
       output.writeLong(l);
     }
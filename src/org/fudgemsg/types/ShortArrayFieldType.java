@@ -19,6 +19,8 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
+import org.fudgemsg.ByteBufferDataInput;
+import org.fudgemsg.ByteBufferDataOutput;
 import org.fudgemsg.FudgeFieldType;
 import org.fudgemsg.FudgeTypeDictionary;
 import org.fudgemsg.taxon.FudgeTaxonomy;
@@ -55,6 +57,10 @@ public class ShortArrayFieldType extends FudgeFieldType<short[]> {
   public short[] readValue(DataInput input, int dataSize) throws IOException {
     int nShorts = dataSize / 2;
     short[] result = new short[nShorts];
+    if (input instanceof ByteBufferDataInput) {
+      ((ByteBufferDataInput)input).slice(nShorts * 2).asShortBuffer().get(result);
+      return result;
+    }
     for(int i = 0; i < nShorts; i++) {
       result[i] = input.readShort();
     }
@@ -66,6 +72,10 @@ public class ShortArrayFieldType extends FudgeFieldType<short[]> {
    */
   @Override
   public void writeValue(DataOutput output, short[] value) throws IOException {
+    if (output instanceof ByteBufferDataOutput) {
+      ((ByteBufferDataOutput)output).slice(value.length * 2).asShortBuffer().put(value);
+      return;
+    }
     for(short f : value) {
       output.writeShort(f);
     }
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.types.secondary;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import org.fudgemsg.ByteBufferDataInput;
+import org.fudgemsg.FudgeFieldType;
+import org.fudgemsg.taxon.FudgeTaxonomy;
+import org.fudgemsg.types.SecondaryFieldType;
+
+/**
+ * Base for the secondary types holding a primitive array in a {@code java.nio} buffer allocated outside of the
+ * Java heap. The value is the remaining content of the buffer.
+ * <p>
+ * When such a type is set as the decoding type with
+ * {@link org.fudgemsg.FudgeTypeDictionary#setDecodingType}, a value read from a buffer that is itself outside of
+ * the heap, such as a mapped file, is a view of that buffer and is only valid while it is. Any other value is
+ * copied into a newly allocated direct buffer.
+ * 
+ * @param <SecondaryType> the buffer type
+ * @param <PrimitiveType> the primitive array type
+ */
+/* package */ abstract class JavaNioBufferFieldType<SecondaryType extends Buffer,PrimitiveType> extends SecondaryFieldType<SecondaryType,PrimitiveType> {
+  
+  private final int _elementSize;
+  
+  /**
+   * Creates a new secondary type on top of a primitive array type.
+   * 
+   * @param type the primitive array type
+   * @param javaType the buffer type
+   * @param elementSize the number of bytes used to encode each element
+   */
+  protected JavaNioBufferFieldType (final FudgeFieldType<PrimitiveType> type, final Class<SecondaryType> javaType, final int elementSize) {
+    super (type, javaType);
+    _elementSize = elementSize;
+  }
+  
+  /**
+   * Returns the number of bytes used to encode each element.
+   * 
+   * @return the element size
+   */
+  protected int getElementSize () {
+    return _elementSize;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getVariableSize (final SecondaryType value, final FudgeTaxonomy taxonomy) {
+    return value.remaining () * _elementSize;
+  }
+  
+  /**
+   * Reads the whole elements of a field payload into a buffer outside of the Java heap. A payload that is already
+   * outside of the heap is not copied.
+   * 
+   * @param input the source, positioned at the start of the payload
+   * @param dataSize the number of bytes in the payload
+   * @return the big-endian buffer, positioned at the first element and limited to the last
+   * @throws IOException if the source raises one
+   */
+  protected ByteBuffer readPayload (final DataInput input, final int dataSize) throws IOException {
+    final int size = (dataSize / _elementSize) * _elementSize;
+    if (input instanceof ByteBufferDataInput) {
+      final ByteBuffer payload = ((ByteBufferDataInput)input).slice (size);
+      if (payload.isDirect ()) {
+        return payload;
+      }
+      final ByteBuffer copy = ByteBuffer.allocateDirect (size);
+      copy.put (payload);
+      copy.flip ();
+      return copy;
+    }
+    final ByteBuffer buffer = ByteBuffer.allocateDirect (size);
+    final byte[] chunk = new byte[Math.min (size, 8192)];
+    while (buffer.hasRemaining ()) {
+      final int length = Math.min (buffer.remaining (), chunk.length);
+      input.readFully (chunk, 0, length);
+      buffer.put (chunk, 0, length);
+    }
+    buffer.flip ();
+    return buffer;
+  }
+  
+}
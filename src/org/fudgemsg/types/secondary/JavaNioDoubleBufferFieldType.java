@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.types.secondary;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+
+import org.fudgemsg.ByteBufferDataOutput;
+import org.fudgemsg.types.DoubleArrayFieldType;
+
+/**
+ * Secondary type for DoubleBuffer conversion to/from double[], holding a 64-bit floating point array outside of the Java heap.
+ */
+public class JavaNioDoubleBufferFieldType extends JavaNioBufferFieldType<DoubleBuffer,double[]> {
+  
+  /**
+   * Singleton instance of the type.
+   */
+  public static final JavaNioDoubleBufferFieldType INSTANCE = new JavaNioDoubleBufferFieldType ();
+  
+  private JavaNioDoubleBufferFieldType () {
+    super (DoubleArrayFieldType.INSTANCE, DoubleBuffer.class, 8);
+  }
+  
+  /**
+   * 
+   */
+  @Override
+  public double[] secondaryToPrimary (final DoubleBuffer object) {
+    final double[] data = new double[object.remaining ()];
+    object.duplicate ().get (data);
+    return data;
+  }
+  
+  /**
+   * 
+   */
+  @Override
+  public DoubleBuffer primaryToSecondary (final double[] data) {
+    final DoubleBuffer buffer = ByteBuffer.allocateDirect (data.length * 8).asDoubleBuffer ();
+    buffer.put (data);
+    buffer.flip ();
+    return buffer;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeValue (final DataOutput output, final DoubleBuffer value) throws IOException {
+    final DoubleBuffer source = value.duplicate ();
+    if (output instanceof ByteBufferDataOutput) {
+      ((ByteBufferDataOutput)output).slice (source.remaining () * 8).asDoubleBuffer ().put (source);
+    } else {
+      while (source.hasRemaining ()) {
+        output.writeDouble (source.get ());
+      }
+    }
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public DoubleBuffer readValue (final DataInput input, final int dataSize) throws IOException {
+    return readPayload (input, dataSize).asDoubleBuffer ();
+  }
+  
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.types.secondary;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+import org.fudgemsg.ByteBufferDataOutput;
+import org.fudgemsg.types.LongArrayFieldType;
+
+/**
+ * Secondary type for LongBuffer conversion to/from long[], holding a 64-bit integer array outside of the Java heap.
+ */
+public class JavaNioLongBufferFieldType extends JavaNioBufferFieldType<LongBuffer,long[]> {
+  
+  /**
+   * Singleton instance of the type.
+   */
+  public static final JavaNioLongBufferFieldType INSTANCE = new JavaNioLongBufferFieldType ();
+  
+  private JavaNioLongBufferFieldType () {
+    super (LongArrayFieldType.INSTANCE, LongBuffer.class, 8);
+  }
+  
+  /**
+   * 
+   */
+  @Override
+  public long[] secondaryToPrimary (final LongBuffer object) {
+    final long[] data = new long[object.remaining ()];
+    object.duplicate ().get (data);
+    return data;
+  }
+  
+  /**
+   * 
+   */
+  @Override
+  public LongBuffer primaryToSecondary (final long[] data) {
+    final LongBuffer buffer = ByteBuffer.allocateDirect (data.length * 8).asLongBuffer ();
+    buffer.put (data);
+    buffer.flip ();
+    return buffer;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void writeValue (final DataOutput output, final LongBuffer value) throws IOException {
+    final LongBuffer source = value.duplicate ();
+    if (output instanceof ByteBufferDataOutput) {
+      ((ByteBufferDataOutput)output).slice (source.remaining () * 8).asLongBuffer ().put (source);
+    } else {
+      while (source.hasRemaining ()) {
+        output.writeLong (source.get ());
+      }
+    }
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LongBuffer readValue (final DataInput input, final int dataSize) throws IOException {
+    return readPayload (input, dataSize).asLongBuffer ();
+  }
+  
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import org.fudgemsg.compression.DeflateCompressionCodec;
+import org.fudgemsg.taxon.SessionTaxonomy;
+import org.fudgemsg.test.FudgeUtils;
+import org.fudgemsg.types.PrimitiveFieldTypes;
+import org.junit.Test;
+
+/**
+ * Tests the compact wire profile, in which ordinals, value sizes and long values are written as
+ * variable length integers, against the standard messages and an explicit byte layout.
+ */
+public class FudgeCompactProfileTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private static byte[] encode(final FudgeFieldContainer msg, final boolean compact) {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeDataOutputStreamWriter streamWriter = new FudgeDataOutputStreamWriter(s_fudgeContext, baos);
+    streamWriter.setCompact(compact);
+    new FudgeMsgWriter(streamWriter).writeMessage(msg);
+    return baos.toByteArray();
+  }
+
+  private static void cycleMessage(final FudgeFieldContainer msg) {
+    final byte[] compact = encode(msg, true);
+    assertEquals(compact.length, FudgeSize.calculateCompactMessageEnvelopeSize(null, msg));
+    final FudgeMsgReader streamReader = s_fudgeContext.createMessageReader(new ByteArrayInputStream(compact));
+    final FudgeMsgEnvelope envelope = streamReader.nextMessageEnvelope();
+    assertEquals(0, envelope.getProcessingDirectives());
+    FudgeUtils.assertAllFieldsMatch(msg, envelope.getMessage());
+    assertFalse(streamReader.hasNext());
+    final FudgeMsgReader bufferReader = s_fudgeContext.createMessageReader(ByteBuffer.wrap(compact));
+    bufferReader.setRetainEncoding(true);
+    final FudgeFieldContainer decoded = bufferReader.nextMessage();
+    FudgeUtils.assertAllFieldsMatch(msg, decoded);
+    // the decoded message must be written in the standard profile, not by copying the compact encoding
+    assertArrayEquals(encode(msg, false), encode(decoded, false));
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void allNames() {
+    cycleMessage(StandardFudgeMessages.createMessageAllNames(s_fudgeContext));
+  }
+
+  @Test
+  public void allOrdinals() {
+    cycleMessage(StandardFudgeMessages.createMessageAllOrdinals(s_fudgeContext));
+  }
+
+  @Test
+  public void variableWidthColumnSizes() {
+    cycleMessage(StandardFudgeMessages.createMessageAllByteArrayLengths(s_fudgeContext));
+  }
+
+  @Test
+  public void subMsg() {
+    cycleMessage(StandardFudgeMessages.createMessageWithSubMsgs(s_fudgeContext));
+  }
+
+  @Test
+  public void deeplyNestedSubMsgs() {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    MutableFudgeFieldContainer current = msg;
+    for (int i = 0; i < 100; i++) {
+      current.add("depth", i);
+      current.add("padding", new byte[i * 4]);
+      final MutableFudgeFieldContainer subMsg = s_fudgeContext.newMessage();
+      current.add("sub", subMsg);
+      current.add("after", "after " + i);
+      current = subMsg;
+    }
+    cycleMessage(msg);
+  }
+
+  @Test
+  public void fixedWidthByteArrays() {
+    cycleMessage(FudgeInteropTest.createFixedWidthByteArrayMsg(s_fudgeContext));
+  }
+
+  @Test
+  public void dateTimes() {
+    cycleMessage(FudgeInteropTest.createDateTimes(s_fudgeContext));
+  }
+
+  @Test
+  public void longValues() {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    final long[] values = {0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE };
+    for (int i = 0; i < values.length; i++) {
+      msg.add(null, i - 5, PrimitiveFieldTypes.LONG_TYPE, values[i]);
+    }
+    msg.add(null, (int) Short.MAX_VALUE, PrimitiveFieldTypes.LONG_TYPE, 1L);
+    msg.add(null, (int) Short.MIN_VALUE, PrimitiveFieldTypes.LONG_TYPE, 2L);
+    cycleMessage(msg);
+  }
+
+  @Test
+  public void byteLayout() {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add(null, 1, (byte) 5);
+    msg.add(null, 300, PrimitiveFieldTypes.LONG_TYPE, 1L << 40);
+    msg.add("s", "ab");
+    final byte[] expected = {
+        // envelope header: directives, version, taxonomy, size
+        FudgeMsgEnvelope.COMPACT_DIRECTIVE, 0, 0, 0, 0, 0, 0, 29,
+        // fixed width with ordinal, byte, ordinal 1 zig-zag encoded, value
+        (byte) 0x90, FudgeTypeDictionary.BYTE_TYPE_ID, 0x02, 0x05,
+        // fixed width with ordinal, long, ordinal 300 zig-zag encoded as 600, value 2^40 zig-zag encoded as 2^41
+        (byte) 0x90, FudgeTypeDictionary.LONG_TYPE_ID, (byte) 0xD8, 0x04, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x40,
+        // variable width with name, string, name, size, value
+        0x28, FudgeTypeDictionary.STRING_TYPE_ID, 0x01, 's', 0x02, 'a', 'b' };
+    assertArrayEquals(expected, encode(msg, true));
+  }
+
+  @Test
+  public void timestampFieldsSmaller() {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    for (int i = 0; i < 50; i++) {
+      msg.add(null, i, 1262304000000L + i);
+    }
+    final int standard = encode(msg, false).length - 8;
+    final int compact = encode(msg, true).length - 8;
+    assertTrue(compact < standard * 4 / 5);
+  }
+
+  @Test
+  public void withSessionTaxonomyAndCompression() {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeDataOutputStreamWriter streamWriter = new FudgeDataOutputStreamWriter(s_fudgeContext, baos);
+    streamWriter.setCompact(true);
+    streamWriter.setSessionTaxonomy(new SessionTaxonomy());
+    streamWriter.setCompressionCodec(new DeflateCompressionCodec());
+    streamWriter.setCompressionThreshold(0);
+    final FudgeMsgWriter writer = new FudgeMsgWriter(streamWriter);
+    for (int i = 0; i < 3; i++) {
+      writer.writeMessage(StandardFudgeMessages.createMessageWithSubMsgs(s_fudgeContext));
+      writer.writeMessage(StandardFudgeMessages.createMessageAllNames(s_fudgeContext));
+    }
+    final FudgeMsgReader reader = s_fudgeContext.createMessageReader(new ByteArrayInputStream(baos.toByteArray()));
+    for (int i = 0; i < 3; i++) {
+      FudgeUtils.assertAllFieldsMatch(StandardFudgeMessages.createMessageWithSubMsgs(s_fudgeContext), reader.nextMessage());
+      FudgeUtils.assertAllFieldsMatch(StandardFudgeMessages.createMessageAllNames(s_fudgeContext), reader.nextMessage());
+    }
+    assertFalse(reader.hasNext());
+  }
+
+}
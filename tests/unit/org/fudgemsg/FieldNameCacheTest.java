@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link FieldNameCache}.
+ */
+public class FieldNameCacheTest {
+
+  @Test
+  public void repeatedName() {
+    byte[] encoded = FieldNameCache.encode("bid");
+    assertArrayEquals(UTF8.encode("bid"), encoded);
+    assertSame(encoded, FieldNameCache.encode("bid"));
+    assertSame(encoded, FieldNameCache.encode(new String("bid")));
+    assertEquals(3, FieldNameCache.getLengthBytes("bid"));
+  }
+
+  @Test
+  public void nonAsciiName() {
+    String name = "pr\u00e9c\u20acdent";
+    assertArrayEquals(UTF8.encode(name), FieldNameCache.encode(name));
+    assertEquals(UTF8.getLengthBytes(name), FieldNameCache.getLengthBytes(name));
+  }
+
+  @Test
+  public void longNameNotCached() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 300; i++) {
+      sb.append('x');
+    }
+    String name = sb.toString();
+    byte[] encoded = FieldNameCache.encode(name);
+    assertEquals(300, encoded.length);
+    assertNotSame(encoded, FieldNameCache.encode(name));
+  }
+
+  @Test
+  public void concurrentUse() throws InterruptedException {
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 4; t++) {
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            // more names than entries, so that entries are replaced while being read
+            for (int i = 0; i < FieldNameCache.TABLE_SIZE * 8; i++) {
+              String name = "field" + (i % (FieldNameCache.TABLE_SIZE * 2));
+              assertArrayEquals(UTF8.encode(name), FieldNameCache.encode(name));
+            }
+          } catch (Throwable e) {
+            failure.set(e);
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+  }
+
+  @Test
+  public void writtenNamesUnchanged() {
+    FudgeContext context = new FudgeContext();
+    MutableFudgeFieldContainer msg = context.newMessage();
+    msg.add("bid", 1.5);
+    msg.add("\u20ac", "x");
+    msg.add("bid", 2.5);
+    FudgeFieldContainer decoded = context.deserialize(context.toByteArray(msg)).getMessage();
+    assertEquals(msg, decoded);
+    assertEquals(FudgeSize.calculateMessageEnvelopeSize(msg), context.toByteArray(msg).length);
+  }
+
+}
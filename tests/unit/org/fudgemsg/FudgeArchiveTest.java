@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link FudgeArchive} and {@link FudgeArchiveWriter}.
+ */
+public class FudgeArchiveTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private File _file;
+
+  @Before
+  public void createFile() throws IOException {
+    _file = File.createTempFile("fudge", ".archive");
+  }
+
+  @After
+  public void deleteFile() {
+    _file.delete();
+  }
+
+  private static FudgeFieldContainer createMessage(final int i) {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("seq", i);
+    msg.add("text", "message " + i);
+    msg.add("value", i * 0.5);
+    return msg;
+  }
+
+  private void writeArchive(final int from, final int to, final boolean append) {
+    final FudgeArchiveWriter writer = new FudgeArchiveWriter(s_fudgeContext, _file, append);
+    try {
+      for (int i = from; i < to; i++) {
+        assertEquals(i, writer.writeMessage(createMessage(i)));
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void randomAccess() {
+    writeArchive(0, 500, false);
+    final FudgeArchive archive = FudgeArchive.open(s_fudgeContext, _file);
+    try {
+      assertEquals(500, archive.size());
+      for (int i : new int[] {499, 0, 250, 17, 498 }) {
+        final FudgeFieldContainer msg = archive.getMessage(i);
+        assertEquals(Integer.valueOf(i), msg.getInt("seq"));
+        assertEquals("message " + i, msg.getString("text"));
+        assertEquals(i * 0.5, msg.getDouble("value"), 0.0);
+      }
+      final ByteBuffer encoded = archive.getEncodedEnvelope(3);
+      assertEquals(archive.getOffset(3), encoded.position());
+      assertEquals(archive.getOffset(4), encoded.limit());
+    } finally {
+      archive.close();
+    }
+  }
+
+  @Test
+  public void dataRegionIsFudgeStream() {
+    writeArchive(0, 100, false);
+    final FudgeArchive archive = FudgeArchive.open(s_fudgeContext, _file);
+    final FudgeMsgReader reader = s_fudgeContext.createMessageReader(archive.getDataRegion());
+    int i = 0;
+    while (reader.hasNext()) {
+      assertEquals(Integer.valueOf(i++), reader.nextMessage().getInt("seq"));
+    }
+    assertEquals(100, i);
+    archive.close();
+  }
+
+  @Test
+  public void append() {
+    writeArchive(0, 10, false);
+    writeArchive(10, 2000, true);
+    final FudgeArchive archive = FudgeArchive.open(s_fudgeContext, _file);
+    assertEquals(2000, archive.size());
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final List<FudgeMsgEnvelope> envelopes = new FudgeParallelMsgReader(s_fudgeContext, executor).readAll(archive.getDataRegion());
+    executor.shutdown();
+    assertEquals(2000, envelopes.size());
+    for (int i = 0; i < 2000; i++) {
+      assertEquals(Integer.valueOf(i), archive.getMessage(i).getInt("seq"));
+    }
+    archive.close();
+  }
+
+  private void assertArchive(final int count) {
+    final FudgeArchive archive = FudgeArchive.open(s_fudgeContext, _file);
+    assertEquals(count, archive.size());
+    for (int i = 0; i < count; i++) {
+      assertEquals(Integer.valueOf(i), archive.getMessage(i).getInt("seq"));
+    }
+    archive.close();
+  }
+
+  @Test
+  public void appendRecoversUnclosedWriter() {
+    writeArchive(0, 10, false);
+    final FudgeArchiveWriter crashed = new FudgeArchiveWriter(s_fudgeContext, _file, true);
+    for (int i = 10; i < 20; i++) {
+      crashed.writeMessage(createMessage(i));
+    }
+    crashed.flush();
+    writeArchive(20, 30, true);
+    assertArchive(30);
+  }
+
+  @Test
+  public void appendRecoversPartialIndex() throws IOException {
+    writeArchive(0, 10, false);
+    final RandomAccessFile raf = new RandomAccessFile(_file, "rw");
+    raf.setLength(raf.length() - 6);
+    raf.close();
+    writeArchive(10, 15, true);
+    assertArchive(15);
+  }
+
+  @Test
+  public void appendRecoversPartialEnvelope() throws IOException {
+    final FileOutputStream out = new FileOutputStream(_file);
+    for (int i = 0; i < 3; i++) {
+      out.write(s_fudgeContext.toByteArray(createMessage(i)));
+    }
+    final byte[] partial = s_fudgeContext.toByteArray(createMessage(3));
+    out.write(partial, 0, partial.length / 2);
+    out.close();
+    writeArchive(3, 5, true);
+    assertArchive(5);
+  }
+
+  @Test(expected = FudgeRuntimeIOException.class)
+  public void appendToNonArchive() throws IOException {
+    final FileOutputStream out = new FileOutputStream(_file);
+    out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+    out.close();
+    new FudgeArchiveWriter(s_fudgeContext, _file, true);
+  }
+
+  @Test
+  public void emptyArchive() {
+    writeArchive(0, 0, false);
+    final FudgeArchive archive = FudgeArchive.open(s_fudgeContext, _file);
+    assertEquals(0, archive.size());
+    assertFalse(archive.getDataRegion().hasRemaining());
+    archive.close();
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void indexOutOfRange() {
+    writeArchive(0, 5, false);
+    FudgeArchive.open(s_fudgeContext, _file).getEnvelope(5);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void closedArchive() {
+    writeArchive(0, 5, false);
+    final FudgeArchive archive = FudgeArchive.open(s_fudgeContext, _file);
+    final FudgeFieldContainer msg = archive.getMessage(1);
+    archive.close();
+    assertTrue(msg.getInt("seq") == 1);
+    archive.getMessage(1);
+  }
+
+  @Test(expected = FudgeRuntimeIOException.class)
+  public void notAnArchive() throws IOException {
+    final FileOutputStream out = new FileOutputStream(_file);
+    out.write(s_fudgeContext.toByteArray(createMessage(1)));
+    out.close();
+    FudgeArchive.open(s_fudgeContext, _file);
+  }
+
+}
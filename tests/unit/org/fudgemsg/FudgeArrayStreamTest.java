@@ -0,0 +1,320 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.fudgemsg.FudgeStreamReader.FudgeStreamElement;
+import org.fudgemsg.types.DoubleArrayFieldType;
+import org.fudgemsg.types.IntArrayFieldType;
+import org.fudgemsg.types.PrimitiveFieldTypes;
+import org.junit.Test;
+
+/**
+ * Tests streaming the elements of large array fields with {@link FudgeArrayInputStream} and
+ * {@link FudgeArrayOutputStream}.
+ */
+public class FudgeArrayStreamTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+  private static final int LENGTH = 100000;
+
+  private static double element(int i) {
+    return i * 0.25 - 7.0;
+  }
+
+  private static FudgeFieldContainer createMessage() {
+    MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    double[] values = new double[LENGTH];
+    for (int i = 0; i < LENGTH; i++) {
+      values[i] = element(i);
+    }
+    msg.add("before", (byte) 1);
+    msg.add("values", values);
+    msg.add("after", (byte) 2);
+    return msg;
+  }
+
+  private static FudgeFieldContainer createMessageWithout(String name) {
+    MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    for (FudgeField field : createMessage()) {
+      if (!name.equals(field.getName())) {
+        msg.add(field);
+      }
+    }
+    return msg;
+  }
+
+  /**
+   * Writes the message of {@link #createMessage()}, streaming the double array in chunks of 999 elements.
+   */
+  private static byte[] writeStreamed(boolean compact) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    FudgeDataOutputStreamWriter writer = new FudgeDataOutputStreamWriter(s_fudgeContext, baos);
+    writer.setCompact(compact);
+    int size;
+    if (compact) {
+      size = 8 + FudgeSize.calculateCompactMessageSize(null, createMessageWithout("values"))
+          + FudgeSize.calculateCompactArrayFieldSize(null, null, "values", DoubleArrayFieldType.INSTANCE, LENGTH);
+    } else {
+      size = 8 + FudgeSize.calculateFieldSize("before", PrimitiveFieldTypes.BYTE_TYPE, (byte) 1)
+          + FudgeSize.calculateArrayFieldSize(null, null, "values", DoubleArrayFieldType.INSTANCE, LENGTH)
+          + FudgeSize.calculateFieldSize("after", PrimitiveFieldTypes.BYTE_TYPE, (byte) 2);
+    }
+    writer.writeEnvelopeHeader(0, 0, size);
+    writer.writeField(null, "before", PrimitiveFieldTypes.BYTE_TYPE, (byte) 1);
+    FudgeArrayOutputStream values = writer.writeArrayField(null, "values", DoubleArrayFieldType.INSTANCE, LENGTH);
+    double[] chunk = new double[999];
+    int written = 0;
+    while (written < LENGTH) {
+      int n = Math.min(chunk.length, LENGTH - written);
+      for (int i = 0; i < n; i++) {
+        chunk[i] = element(written + i);
+      }
+      values.writeDoubles(chunk, 0, n);
+      written += n;
+    }
+    assertTrue(values.isComplete());
+    values.close();
+    writer.writeField(null, "after", PrimitiveFieldTypes.BYTE_TYPE, (byte) 2);
+    writer.envelopeComplete();
+    byte[] data = baos.toByteArray();
+    assertEquals(size, data.length);
+    return data;
+  }
+
+  private static PrimitiveFudgeStreamReader[] createReaders(byte[] data) {
+    return new PrimitiveFudgeStreamReader[] {
+        new FudgeDataInputStreamReader(s_fudgeContext, new ByteArrayInputStream(data)),
+        new FudgeByteBufferReader(s_fudgeContext, data) };
+  }
+
+  private static void nextField(FudgeStreamReader reader, String name) {
+    assertEquals(FudgeStreamElement.SIMPLE_FIELD, reader.next());
+    assertEquals(name, reader.getFieldName());
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void streamedWriteMatchesMessage() throws IOException {
+    assertArrayEquals(s_fudgeContext.toByteArray(createMessage()), writeStreamed(false));
+  }
+
+  @Test
+  public void streamedRead() throws IOException {
+    for (boolean compact : new boolean[] {false, true}) {
+      for (PrimitiveFudgeStreamReader reader : createReaders(writeStreamed(compact))) {
+        assertEquals(FudgeStreamElement.MESSAGE_ENVELOPE, reader.next());
+        nextField(reader, "before");
+        nextField(reader, "values");
+        FudgeArrayInputStream stream = reader.getFieldValueStream();
+        assertEquals(DoubleArrayFieldType.INSTANCE, stream.getFieldType());
+        assertEquals(LENGTH, stream.getLength());
+        double[] chunk = new double[1000];
+        int read = 0;
+        int n;
+        while ((n = stream.readDoubles(chunk, 0, chunk.length)) >= 0) {
+          for (int i = 0; i < n; i++) {
+            assertEquals(element(read + i), chunk[i], 0.0);
+          }
+          read += n;
+        }
+        assertEquals(LENGTH, read);
+        assertEquals(0, stream.getRemaining());
+        nextField(reader, "after");
+        assertEquals(2, reader.getFieldValueAsInt());
+        assertFalse(reader.hasNext());
+      }
+    }
+  }
+
+  @Test
+  public void unreadElementsSkipped() throws IOException {
+    byte[] data = writeStreamed(false);
+    for (PrimitiveFudgeStreamReader reader : createReaders(data)) {
+      reader.next();
+      nextField(reader, "before");
+      nextField(reader, "values");
+      FudgeArrayInputStream stream = reader.getFieldValueStream();
+      double[] chunk = new double[10];
+      assertEquals(10, stream.readDoubles(chunk, 0, 10));
+      assertEquals(element(9), chunk[9], 0.0);
+      assertEquals(LENGTH - 10, stream.getRemaining());
+      nextField(reader, "after");
+      assertEquals(2, reader.getFieldValueAsInt());
+    }
+    for (PrimitiveFudgeStreamReader reader : createReaders(data)) {
+      reader.next();
+      nextField(reader, "before");
+      nextField(reader, "values");
+      nextField(reader, "after");
+      assertEquals(2, reader.getFieldValueAsInt());
+      assertFalse(reader.hasNext());
+    }
+  }
+
+  @Test
+  public void hasNextLeavesValue() throws IOException {
+    byte[] data = writeStreamed(false);
+    FudgeDataInputStreamReader projected = new FudgeDataInputStreamReader(s_fudgeContext, new ByteArrayInputStream(data));
+    projected.setProjection(new FudgeFieldProjection().addName("values"));
+    for (PrimitiveFudgeStreamReader reader : new PrimitiveFudgeStreamReader[] {createReaders(data)[0], createReaders(data)[1], projected}) {
+      reader.next();
+      if (reader != projected) {
+        nextField(reader, "before");
+        nextField(reader, "values");
+        assertTrue(reader.hasNext());
+      } else {
+        nextField(reader, "values");
+        assertFalse(reader.hasNext());
+      }
+      double[] values = (double[]) reader.getFieldValue();
+      assertEquals(LENGTH, values.length);
+      assertEquals(element(LENGTH - 1), values[LENGTH - 1], 0.0);
+    }
+  }
+
+  @Test
+  public void hasNextAtEndOfEnvelope() throws IOException {
+    MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("values", new double[] {1.5, 2.5});
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    baos.write(s_fudgeContext.toByteArray(msg));
+    baos.write(s_fudgeContext.toByteArray(msg));
+    for (PrimitiveFudgeStreamReader reader : createReaders(baos.toByteArray())) {
+      for (int i = 0; i < 2; i++) {
+        assertTrue(reader.hasNext());
+        assertEquals(FudgeStreamElement.MESSAGE_ENVELOPE, reader.next());
+        nextField(reader, "values");
+        assertFalse(reader.hasNext());
+        assertArrayEquals(new double[] {1.5, 2.5}, (double[]) reader.getFieldValue(), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void valueStillDecodedOnRequest() throws IOException {
+    FudgeMsgEnvelope envelope = s_fudgeContext.deserialize(new ByteArrayInputStream(writeStreamed(false)));
+    double[] values = (double[]) envelope.getMessage().getValue("values");
+    assertEquals(LENGTH, values.length);
+    assertEquals(element(LENGTH - 1), values[LENGTH - 1], 0.0);
+    assertEquals(2, envelope.getMessage().getInt("after").intValue());
+  }
+
+  @Test
+  public void streamAfterDecode() throws IOException {
+    for (PrimitiveFudgeStreamReader reader : createReaders(writeStreamed(false))) {
+      reader.next();
+      nextField(reader, "before");
+      nextField(reader, "values");
+      assertEquals(LENGTH, ((double[]) reader.getFieldValue()).length);
+      FudgeArrayInputStream stream = reader.getFieldValueStream();
+      double[] chunk = new double[3];
+      assertEquals(3, stream.readDoubles(chunk, 0, 3));
+      assertEquals(element(2), chunk[2], 0.0);
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void decodeAfterStream() throws IOException {
+    PrimitiveFudgeStreamReader reader = new FudgeDataInputStreamReader(s_fudgeContext, new ByteArrayInputStream(writeStreamed(false)));
+    reader.next();
+    nextField(reader, "before");
+    nextField(reader, "values");
+    reader.getFieldValueStream();
+    reader.getFieldValue();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void streamNonArrayField() throws IOException {
+    PrimitiveFudgeStreamReader reader = new FudgeByteBufferReader(s_fudgeContext, writeStreamed(false));
+    reader.next();
+    nextField(reader, "before");
+    reader.getFieldValueStream();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void streamWrongElementType() throws IOException {
+    PrimitiveFudgeStreamReader reader = new FudgeByteBufferReader(s_fudgeContext, writeStreamed(false));
+    reader.next();
+    nextField(reader, "before");
+    nextField(reader, "values");
+    reader.getFieldValueStream().readInts(new int[1], 0, 1);
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void incompleteArrayField() throws IOException {
+    FudgeDataOutputStreamWriter writer = new FudgeDataOutputStreamWriter(s_fudgeContext, new ByteArrayOutputStream());
+    writer.writeEnvelopeHeader(0, 0, 8 + FudgeSize.calculateArrayFieldSize(null, (short) 1, null, IntArrayFieldType.INSTANCE, 4));
+    FudgeArrayOutputStream values = writer.writeArrayField((short) 1, null, IntArrayFieldType.INSTANCE, 4);
+    values.writeInts(new int[] {1, 2, 3}, 0, 3);
+    assertEquals(1, values.getRemaining());
+    try {
+      writer.envelopeComplete();
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    try {
+      values.writeInts(new int[] {4, 5}, 0, 2);
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    values.writeInts(new int[] {4}, 0, 1);
+    writer.envelopeComplete();
+  }
+
+  @Test
+  public void compactArrayFieldSize() throws IOException {
+    final Short[] ordinals = new Short[] {(short) 1, null, (short) -200, (short) 300};
+    final String[] names = new String[] {null, "values", "v", null};
+    for (int i = 0; i < ordinals.length; i++) {
+      for (int length : new int[] {0, 3, 40}) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        FudgeDataOutputStreamWriter writer = new FudgeDataOutputStreamWriter(s_fudgeContext, baos);
+        writer.setCompact(true);
+        int size = 8 + FudgeSize.calculateCompactArrayFieldSize(null, ordinals[i], names[i], IntArrayFieldType.INSTANCE, length);
+        writer.writeEnvelopeHeader(0, 0, size);
+        FudgeArrayOutputStream values = writer.writeArrayField(ordinals[i], names[i], IntArrayFieldType.INSTANCE, length);
+        values.writeInts(new int[length], 0, length);
+        writer.envelopeComplete();
+        assertEquals(size, baos.size());
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void compactNonArrayType() {
+    FudgeSize.calculateCompactArrayFieldSize(null, null, "x", PrimitiveFieldTypes.INT_TYPE, 4);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nonArrayType() {
+    FudgeDataOutputStreamWriter writer = new FudgeDataOutputStreamWriter(s_fudgeContext, new ByteArrayOutputStream());
+    writer.writeArrayField(null, "x", PrimitiveFieldTypes.INT_TYPE, 4);
+  }
+
+}
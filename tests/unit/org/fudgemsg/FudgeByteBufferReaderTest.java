@@ -0,0 +1,318 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+import org.fudgemsg.FudgeStreamReader.FudgeStreamElement;
+import org.fudgemsg.test.FudgeUtils;
+import org.junit.Test;
+
+/**
+ * Tests the {@link FudgeByteBufferReader} against messages encoded by the standard writer.
+ */
+public class FudgeByteBufferReaderTest {
+  
+  private static final FudgeContext s_fudgeContext = new FudgeContext ();
+  
+  private static FudgeFieldContainer createStringMessage () {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage ();
+    msg.add ("ascii", "Hello World");
+    msg.add ("unicode", "Gr\u00fc\u00dfe \u20ac \u4e16\u754c");
+    msg.add ("\u00e9", 42);
+    msg.add (null, 7, "");
+    return msg;
+  }
+  
+  private static ByteBuffer toDirectBuffer (final byte[] data) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect (data.length);
+    buffer.put (data);
+    buffer.flip ();
+    return buffer;
+  }
+  
+  private static void assertCycle (final FudgeFieldContainer input) {
+    final byte[] data = s_fudgeContext.toByteArray (input);
+    FudgeUtils.assertAllFieldsMatch (input, s_fudgeContext.deserialize (ByteBuffer.wrap (data)).getMessage ());
+    FudgeUtils.assertAllFieldsMatch (input, s_fudgeContext.deserialize (toDirectBuffer (data)).getMessage ());
+    final byte[] padded = new byte[data.length + 10];
+    System.arraycopy (data, 0, padded, 5, data.length);
+    FudgeUtils.assertAllFieldsMatch (input, new FudgeMsgReader (new FudgeByteBufferReader (s_fudgeContext, padded, 5, data.length)).nextMessage ());
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void allNames () {
+    assertCycle (StandardFudgeMessages.createMessageAllNames (s_fudgeContext));
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void allOrdinals () {
+    assertCycle (StandardFudgeMessages.createMessageAllOrdinals (s_fudgeContext));
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void byteArrays () {
+    assertCycle (StandardFudgeMessages.createMessageAllByteArrayLengths (s_fudgeContext));
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void subMessages () {
+    assertCycle (StandardFudgeMessages.createMessageWithSubMsgs (s_fudgeContext));
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void strings () {
+    assertCycle (createStringMessage ());
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void unknownType () {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage ();
+    msg.add ("unknown", new UnknownFudgeFieldValue (new byte[10], s_fudgeContext.getTypeDictionary ().getUnknownType (200)));
+    msg.add ("after", 1.5);
+    assertCycle (msg);
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void multipleMessages () {
+    final byte[] first = s_fudgeContext.toByteArray (createStringMessage ());
+    final byte[] second = s_fudgeContext.toByteArray (StandardFudgeMessages.createMessageWithSubMsgs (s_fudgeContext));
+    final byte[] data = new byte[first.length + second.length];
+    System.arraycopy (first, 0, data, 0, first.length);
+    System.arraycopy (second, 0, data, first.length, second.length);
+    final FudgeByteBufferReader streamReader = new FudgeByteBufferReader (s_fudgeContext, data);
+    final FudgeMsgReader reader = new FudgeMsgReader (streamReader);
+    assertTrue (reader.hasNext ());
+    FudgeUtils.assertAllFieldsMatch (createStringMessage (), reader.nextMessage ());
+    assertEquals (first.length, streamReader.getPosition ());
+    assertTrue (reader.hasNext ());
+    FudgeUtils.assertAllFieldsMatch (StandardFudgeMessages.createMessageWithSubMsgs (s_fudgeContext), reader.nextMessage ());
+    assertEquals (data.length, streamReader.getPosition ());
+    assertFalse (reader.hasNext ());
+    assertNull (reader.nextMessage ());
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void bufferPositionUnchanged () {
+    final ByteBuffer buffer = ByteBuffer.wrap (s_fudgeContext.toByteArray (createStringMessage ()));
+    final FudgeStreamReader reader = s_fudgeContext.createReader (buffer);
+    assertEquals (FudgeStreamElement.MESSAGE_ENVELOPE, reader.next ());
+    while (reader.hasNext ()) {
+      reader.next ();
+    }
+    assertEquals (0, buffer.position ());
+  }
+  
+  /**
+   * 
+   */
+  @Test(expected=FudgeRuntimeIOException.class)
+  public void truncated () {
+    final byte[] data = s_fudgeContext.toByteArray (createStringMessage ());
+    final byte[] truncated = new byte[data.length - 3];
+    System.arraycopy (data, 0, truncated, 0, truncated.length);
+    s_fudgeContext.deserialize (ByteBuffer.wrap (truncated));
+  }
+  
+  private static byte[] createWideIntegerMessage () {
+    // a sub-message holding an integer in 4 bytes, where the standard writer would narrow it to 1 byte
+    final ByteBuffer inner = ByteBuffer.allocate (8);
+    inner.put ((byte)FudgeFieldPrefixCodec.composeFieldPrefix (true, 0, false, true));
+    inner.put ((byte)FudgeTypeDictionary.INT_TYPE_ID);
+    inner.put ((byte)1).put ((byte)'a');
+    inner.putInt (5);
+    final ByteBuffer buffer = ByteBuffer.allocate (8 + 7 + inner.capacity ());
+    buffer.put ((byte)0).put ((byte)0).putShort ((short)0).putInt (buffer.capacity ());
+    buffer.put ((byte)FudgeFieldPrefixCodec.composeFieldPrefix (false, inner.capacity (), false, true));
+    buffer.put ((byte)FudgeTypeDictionary.FUDGE_MSG_TYPE_ID);
+    buffer.put ((byte)3).put ((byte)'s').put ((byte)'u').put ((byte)'b');
+    buffer.put ((byte)inner.capacity ());
+    buffer.put (inner.array ());
+    return buffer.array ();
+  }
+  
+  private static byte[] createNegativeSizeMessage () {
+    // a byte array field whose 2 byte size is negative
+    final ByteBuffer buffer = ByteBuffer.allocate (20);
+    buffer.put ((byte)0).put ((byte)0).putShort ((short)0).putInt (buffer.capacity ());
+    buffer.put ((byte)FudgeFieldPrefixCodec.composeFieldPrefix (false, 300, true, false));
+    buffer.put ((byte)FudgeTypeDictionary.BYTE_ARRAY_TYPE_ID);
+    buffer.putShort ((short)1);
+    buffer.putShort ((short)-6);
+    return buffer.array ();
+  }
+  
+  /**
+   * 
+   */
+  @Test(expected=FudgeRuntimeIOException.class)
+  public void negativeFieldSize () {
+    s_fudgeContext.deserialize (ByteBuffer.wrap (createNegativeSizeMessage ()));
+  }
+  
+  /**
+   * 
+   */
+  @Test(expected=FudgeRuntimeIOException.class, timeout=5000)
+  public void negativeFieldSizeProjected () {
+    final FudgeByteBufferReader reader = new FudgeByteBufferReader (s_fudgeContext, createNegativeSizeMessage ());
+    reader.setProjection (new FudgeFieldProjection ().addOrdinal (2));
+    new FudgeMsgReader (reader).nextMessage ();
+  }
+  
+  private static byte[] createWideCompactOrdinalMessage () {
+    // a compact envelope holding a field whose varint ordinal does not fit in a short
+    final ByteBuffer buffer = ByteBuffer.allocate (14);
+    buffer.put ((byte)FudgeMsgEnvelope.COMPACT_DIRECTIVE).put ((byte)0).putShort ((short)0).putInt (buffer.capacity ());
+    buffer.put ((byte)FudgeFieldPrefixCodec.composeFieldPrefix (true, 0, true, false));
+    buffer.put ((byte)FudgeTypeDictionary.BYTE_TYPE_ID);
+    // zig-zag encoding of 40000 is 80000, which needs three varint bytes
+    buffer.put ((byte)0x80).put ((byte)0xf1).put ((byte)0x04);
+    buffer.put ((byte)1);
+    return buffer.array ();
+  }
+  
+  /**
+   * 
+   */
+  @Test(expected=FudgeRuntimeIOException.class)
+  public void compactOrdinalOutOfRange () {
+    new FudgeMsgReader (new FudgeByteBufferReader (s_fudgeContext, createWideCompactOrdinalMessage ())).nextMessage ();
+  }
+  
+  /**
+   * 
+   */
+  @Test(expected=FudgeRuntimeIOException.class)
+  public void compactOrdinalOutOfRangeStream () {
+    s_fudgeContext.deserialize (new ByteArrayInputStream (createWideCompactOrdinalMessage ()));
+  }
+  
+  private static int indexOf (final byte[] data, final byte[] pattern, final int from, final int to) {
+    for (int i = from; i <= to - pattern.length; i++) {
+      int j = 0;
+      while ((j < pattern.length) && (data[i + j] == pattern[j])) {
+        j++;
+      }
+      if (j == pattern.length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void retainedEncodingWrittenVerbatim () {
+    final byte[] data = createWideIntegerMessage ();
+    final FudgeMsgReader reader = new FudgeMsgReader (new FudgeByteBufferReader (s_fudgeContext, data));
+    reader.setRetainEncoding (true);
+    final FudgeMsg msg = (FudgeMsg)reader.nextMessage ();
+    assertEquals (data.length - 8, msg.getEncodedFields ().remaining ());
+    // unmodified, so the whole message is copied
+    assertArrayEquals (data, s_fudgeContext.toByteArray (msg));
+    final ByteBuffer direct = ByteBuffer.allocateDirect (data.length);
+    s_fudgeContext.serialize (msg, null, direct);
+    direct.flip ();
+    assertEquals (ByteBuffer.wrap (data), direct);
+    // enrich the outer message; the sub-message is still copied with its original 4 byte integer
+    msg.add ("header", "value");
+    assertNull (msg.getEncodedFields ());
+    final FudgeMsg sub = (FudgeMsg)msg.getMessage ("sub");
+    assertEquals (8, sub.getEncodedFields ().remaining ());
+    final byte[] subFields = new byte[8];
+    System.arraycopy (data, data.length - 8, subFields, 0, 8);
+    final byte[] enriched = s_fudgeContext.toByteArray (msg);
+    assertTrue (indexOf (enriched, subFields, 0, enriched.length) >= 0);
+    final FudgeFieldContainer decoded = s_fudgeContext.deserialize (enriched).getMessage ();
+    assertEquals ("value", decoded.getString ("header"));
+    assertEquals (Integer.valueOf (5), decoded.getMessage ("sub").getInt ("a"));
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void retainedEncodingDiscardedByNestedChange () {
+    final MutableFudgeFieldContainer outer = s_fudgeContext.newMessage ();
+    final MutableFudgeFieldContainer middle = s_fudgeContext.newMessage ();
+    final MutableFudgeFieldContainer inner = s_fudgeContext.newMessage ();
+    inner.add ("x", 1.0);
+    middle.add ("inner", inner);
+    middle.add ("y", "y");
+    outer.add ("middle", middle);
+    outer.add ("other", s_fudgeContext.newMessage ());
+    final FudgeMsgReader reader = new FudgeMsgReader (s_fudgeContext.createReader (s_fudgeContext.toByteArray (outer)));
+    reader.setRetainEncoding (true);
+    final FudgeMsg msg = (FudgeMsg)reader.nextMessage ();
+    final FudgeMsg readMiddle = (FudgeMsg)msg.getMessage ("middle");
+    final FudgeMsg readInner = (FudgeMsg)readMiddle.getMessage ("inner");
+    final FudgeMsg readOther = (FudgeMsg)msg.getMessage ("other");
+    assertTrue (msg.getEncodedFields () != null);
+    assertTrue (readInner.getEncodedFields () != null);
+    readInner.add ("z", 2.0);
+    assertNull (readInner.getEncodedFields ());
+    assertNull (readMiddle.getEncodedFields ());
+    assertNull (msg.getEncodedFields ());
+    assertTrue (readOther.getEncodedFields () != null);
+    final FudgeFieldContainer decoded = s_fudgeContext.deserialize (s_fudgeContext.toByteArray (msg)).getMessage ();
+    assertEquals (Double.valueOf (2.0), decoded.getMessage ("middle").getMessage ("inner").getDouble ("z"));
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void encodingNotRetainedByDefault () {
+    final FudgeMsg msg = (FudgeMsg)s_fudgeContext.deserialize (ByteBuffer.wrap (createWideIntegerMessage ())).getMessage ();
+    assertNull (msg.getEncodedFields ());
+    assertNull (((FudgeMsg)msg.getMessage ("sub")).getEncodedFields ());
+  }
+  
+}
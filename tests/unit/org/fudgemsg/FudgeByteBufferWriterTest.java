@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.fudgemsg.types.PrimitiveFieldTypes;
+import org.junit.Test;
+
+/**
+ * Tests the {@link FudgeByteBufferWriter} produces the same encoding as the standard writer.
+ */
+public class FudgeByteBufferWriterTest {
+  
+  private static final FudgeContext s_fudgeContext = new FudgeContext ();
+  
+  private static byte[] encode (final FudgeFieldContainer msg, final ByteBuffer buffer) {
+    buffer.position (3);
+    final int bytes = s_fudgeContext.serialize (msg, null, buffer);
+    assertEquals (3 + bytes, buffer.position ());
+    final byte[] data = new byte[bytes];
+    buffer.position (3);
+    buffer.get (data);
+    return data;
+  }
+  
+  private static void assertEncoding (final FudgeFieldContainer msg) {
+    final byte[] expected = s_fudgeContext.toByteArray (msg);
+    assertArrayEquals (expected, encode (msg, ByteBuffer.allocate (expected.length + 10)));
+    assertArrayEquals (expected, encode (msg, ByteBuffer.allocateDirect (expected.length + 10)));
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void allNames () {
+    assertEncoding (StandardFudgeMessages.createMessageAllNames (s_fudgeContext));
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void allOrdinals () {
+    assertEncoding (StandardFudgeMessages.createMessageAllOrdinals (s_fudgeContext));
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void byteArrays () {
+    assertEncoding (StandardFudgeMessages.createMessageAllByteArrayLengths (s_fudgeContext));
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void subMessages () {
+    assertEncoding (StandardFudgeMessages.createMessageWithSubMsgs (s_fudgeContext));
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void strings () {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage ();
+    msg.add ("ascii", "Hello World");
+    msg.add ("unicode", "Gr\u00fc\u00dfe \u20ac \u4e16\u754c");
+    msg.add ("\u00e9", 42);
+    msg.add ("long", new String (new char[1000]).replace ('\0', 'x'));
+    assertEncoding (msg);
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void deeplyNestedSubMessages () {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage ();
+    MutableFudgeFieldContainer current = msg;
+    for (int i = 0; i < 100; i++) {
+      current.add ("padding", new double[i]);
+      final MutableFudgeFieldContainer subMsg = s_fudgeContext.newMessage ();
+      current.add ("sub", subMsg);
+      current.add (null, i, "after");
+      current = subMsg;
+    }
+    assertEncoding (msg);
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void overflow () {
+    final FudgeFieldContainer msg = StandardFudgeMessages.createMessageWithSubMsgs (s_fudgeContext);
+    final int size = FudgeSize.calculateMessageEnvelopeSize (msg);
+    final ByteBuffer buffer = ByteBuffer.allocate (size - 1);
+    buffer.position (1);
+    try {
+      s_fudgeContext.serialize (msg, null, buffer);
+      fail ();
+    } catch (BufferOverflowException e) {
+      // expected
+    }
+    assertEquals (1, buffer.position ());
+    final ByteBuffer larger = ByteBuffer.allocate (size);
+    assertEquals (size, s_fudgeContext.serialize (msg, null, larger));
+    assertEquals (size, larger.position ());
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void fieldOverflow () {
+    final ByteBuffer buffer = ByteBuffer.allocate (20);
+    final FudgeByteBufferWriter writer = new FudgeByteBufferWriter (s_fudgeContext, buffer);
+    writer.writeField (null, "a", PrimitiveFieldTypes.INT_TYPE, 1);
+    final int written = writer.getBytesWritten ();
+    assertEquals (written, buffer.position ());
+    try {
+      writer.writeField (null, "b", s_fudgeContext.getTypeDictionary ().getByJavaType (double[].class), new double[4]);
+      fail ();
+    } catch (BufferOverflowException e) {
+      // expected
+    }
+    assertEquals (written, writer.getBytesWritten ());
+    assertEquals (written, buffer.position ());
+  }
+  
+  /**
+   * 
+   */
+  @Test
+  public void dataOutputUTF () throws IOException {
+    final String s = "Gr\u00fc\u00dfe \u0000 \u4e16\u754c \ud83d\ude00";
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream ();
+    new DataOutputStream (baos).writeUTF (s);
+    final ByteBuffer buffer = ByteBuffer.allocate (baos.size ());
+    new ByteBufferDataOutput (buffer).writeUTF (s);
+    assertArrayEquals (baos.toByteArray (), buffer.array ());
+    assertEquals (s, new ByteBufferDataInput (ByteBuffer.wrap (buffer.array ())).readUTF ());
+  }
+  
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fudgemsg.compression.DeflateCompressionCodec;
+import org.fudgemsg.compression.FudgeCompressionCodec;
+import org.fudgemsg.compression.LZ4CompressionCodec;
+import org.fudgemsg.test.FudgeUtils;
+import org.junit.Test;
+
+/**
+ * Tests compression of envelopes by {@link FudgeDataOutputStreamWriter} and the readers.
+ */
+public class FudgeCompressionTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private static FudgeFieldContainer createMessage(final int rows) {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("name", "snapshot");
+    for (int i = 0; i < rows; i++) {
+      final MutableFudgeFieldContainer row = s_fudgeContext.newMessage();
+      row.add("ticker", "TICKER" + (i % 10));
+      row.add("bid", 100.0 + (i % 7));
+      row.add("ask", 100.5 + (i % 7));
+      row.add("volume", i);
+      msg.add("row", row);
+    }
+    return msg;
+  }
+
+  private static byte[] encode(final FudgeCompressionCodec codec, final int threshold, final List<FudgeMsgEnvelope> envelopes) {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeDataOutputStreamWriter streamWriter = new FudgeDataOutputStreamWriter(s_fudgeContext, baos);
+    streamWriter.setCompressionCodec(codec);
+    streamWriter.setCompressionThreshold(threshold);
+    final FudgeMsgWriter writer = new FudgeMsgWriter(streamWriter);
+    for (FudgeMsgEnvelope envelope : envelopes) {
+      writer.writeMessageEnvelope(envelope);
+    }
+    return baos.toByteArray();
+  }
+
+  private static List<FudgeMsgEnvelope> createEnvelopes() {
+    final List<FudgeMsgEnvelope> envelopes = new ArrayList<FudgeMsgEnvelope>();
+    envelopes.add(new FudgeMsgEnvelope(createMessage(500), 3, 5));
+    envelopes.add(new FudgeMsgEnvelope(createMessage(1)));
+    envelopes.add(new FudgeMsgEnvelope(createMessage(200), 1, 0));
+    return envelopes;
+  }
+
+  private static void assertRoundTrip(final FudgeCompressionCodec codec) {
+    final List<FudgeMsgEnvelope> envelopes = createEnvelopes();
+    final byte[] uncompressed = encode(null, 0, envelopes);
+    final byte[] compressed = encode(codec, 256, envelopes);
+    assertTrue(compressed.length < uncompressed.length / 3);
+    FudgeUtils.assertEnvelopesEqual(s_fudgeContext, envelopes, FudgeUtils.readAll(s_fudgeContext.createMessageReader(new ByteArrayInputStream(compressed))));
+    FudgeUtils.assertEnvelopesEqual(s_fudgeContext, envelopes, FudgeUtils.readAll(s_fudgeContext.createMessageReader(ByteBuffer.wrap(compressed))));
+    final FudgeEnvelopeScanner scanner = new FudgeEnvelopeScanner(compressed);
+    final List<FudgeMsgEnvelope> lazy = new ArrayList<FudgeMsgEnvelope>();
+    while (scanner.next()) {
+      lazy.add(s_fudgeContext.deserializeLazy(scanner.getEnvelope()));
+    }
+    FudgeUtils.assertEnvelopesEqual(s_fudgeContext, envelopes, lazy);
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void deflateRoundTrip() {
+    assertRoundTrip(new DeflateCompressionCodec());
+  }
+
+  @Test
+  public void lz4RoundTrip() {
+    assertRoundTrip(new LZ4CompressionCodec());
+  }
+
+  @Test
+  public void belowThresholdNotCompressed() {
+    final List<FudgeMsgEnvelope> envelopes = new ArrayList<FudgeMsgEnvelope>();
+    envelopes.add(new FudgeMsgEnvelope(createMessage(1)));
+    assertArrayEquals(encode(null, 0, envelopes), encode(new DeflateCompressionCodec(), 10000, envelopes));
+  }
+
+  @Test
+  public void compressedDirectiveSetOnWire() {
+    final List<FudgeMsgEnvelope> envelopes = new ArrayList<FudgeMsgEnvelope>();
+    envelopes.add(new FudgeMsgEnvelope(createMessage(100), 0, 1));
+    final byte[] compressed = encode(new LZ4CompressionCodec(), 0, envelopes);
+    assertEquals(FudgeMsgEnvelope.COMPRESSED_DIRECTIVE | 1, compressed[0] & 0xFF);
+    assertEquals(LZ4CompressionCodec.CODEC_ID, compressed[8]);
+    final FudgeEnvelopeScanner scanner = new FudgeEnvelopeScanner(compressed);
+    assertTrue(scanner.next());
+    assertEquals(compressed.length, scanner.getEnvelopeSize());
+  }
+
+  @Test
+  public void batchWritesCompressed() {
+    final List<FudgeMsgEnvelope> envelopes = createEnvelopes();
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeDataOutputStreamWriter streamWriter = new FudgeDataOutputStreamWriter(s_fudgeContext, baos);
+    streamWriter.setCompressionCodec(new DeflateCompressionCodec());
+    new FudgeMsgWriter(streamWriter).writeMessageEnvelopes(envelopes);
+    assertArrayEquals(encode(new DeflateCompressionCodec(), FudgeDataOutputStreamWriter.DEFAULT_COMPRESSION_THRESHOLD, envelopes), baos.toByteArray());
+    FudgeUtils.assertEnvelopesEqual(s_fudgeContext, envelopes, FudgeUtils.readAll(s_fudgeContext.createMessageReader(new ByteArrayInputStream(baos.toByteArray()))));
+  }
+
+  @Test(expected = FudgeRuntimeIOException.class)
+  public void unknownCodec() {
+    final List<FudgeMsgEnvelope> envelopes = new ArrayList<FudgeMsgEnvelope>();
+    envelopes.add(new FudgeMsgEnvelope(createMessage(100)));
+    final byte[] compressed = encode(new LZ4CompressionCodec(), 0, envelopes);
+    compressed[8] = 99;
+    s_fudgeContext.deserialize(compressed);
+  }
+
+  private static byte[] createOversizedEnvelope() {
+    // a compressed envelope whose header claims a body of almost 2GB
+    final ByteBuffer buffer = ByteBuffer.allocate(20);
+    buffer.put((byte) FudgeMsgEnvelope.COMPRESSED_DIRECTIVE).put((byte) 0).putShort((short) 0).putInt(buffer.capacity());
+    buffer.put((byte) DeflateCompressionCodec.CODEC_ID).putInt(Integer.MAX_VALUE - 8);
+    return buffer.array();
+  }
+
+  @Test
+  public void oversizedBodyRejected() {
+    final byte[] data = createOversizedEnvelope();
+    final FudgeMsgReader[] readers = new FudgeMsgReader[] {
+        s_fudgeContext.createMessageReader(new ByteArrayInputStream(data)),
+        s_fudgeContext.createMessageReader(ByteBuffer.wrap(data)) };
+    for (FudgeMsgReader reader : readers) {
+      try {
+        reader.nextMessageEnvelope();
+        fail();
+      } catch (FudgeRuntimeIOException e) {
+        // expected
+      }
+    }
+    try {
+      s_fudgeContext.deserializeLazy(ByteBuffer.wrap(data));
+      fail();
+    } catch (FudgeRuntimeIOException e) {
+      // expected
+    }
+  }
+
+  @Test(expected = FudgeRuntimeIOException.class)
+  public void bodyLargerThanDecoderMaximum() {
+    final List<FudgeMsgEnvelope> envelopes = new ArrayList<FudgeMsgEnvelope>();
+    envelopes.add(new FudgeMsgEnvelope(createMessage(500)));
+    final byte[] compressed = encode(new LZ4CompressionCodec(), 0, envelopes);
+    final FudgeMsgDecoder decoder = new FudgeMsgDecoder(s_fudgeContext, compressed.length);
+    decoder.feed(compressed, 0, compressed.length);
+    decoder.poll();
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void immutableContextCodecs() {
+    assertEquals(DeflateCompressionCodec.CODEC_ID, FudgeContext.GLOBAL_DEFAULT.getCompressionCodec(DeflateCompressionCodec.CODEC_ID).getCodecId());
+    FudgeContext.GLOBAL_DEFAULT.registerCompressionCodec(new LZ4CompressionCodec());
+  }
+
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fudgemsg.test.FudgeUtils;
+import org.junit.Test;
+
+/**
+ * Tests {@link FudgeDeltaWriter} and {@link FudgeDeltaReader}.
+ */
+public class FudgeDeltaTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private static MutableFudgeFieldContainer createTick(final String ticker, final int seq) {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("ticker", ticker);
+    msg.add("exchange", "XLON");
+    msg.add("currency", "GBP");
+    msg.add("bid", 100.0 + (seq / 3));
+    msg.add("ask", 100.5 + (seq / 3));
+    msg.add("last", 100.25);
+    msg.add("volume", 1000L * seq);
+    msg.add(null, 7, "ordinal only");
+    final MutableFudgeFieldContainer depth = s_fudgeContext.newMessage();
+    depth.add("levels", new double[] {99.0, 98.5, 98.0 });
+    msg.add("depth", depth);
+    return msg;
+  }
+
+  private static List<FudgeFieldContainer> createTicks() {
+    final List<FudgeFieldContainer> ticks = new ArrayList<FudgeFieldContainer>();
+    for (int i = 0; i < 30; i++) {
+      final MutableFudgeFieldContainer tick = createTick((i % 2 == 0) ? "VOD" : "BARC", i / 2);
+      if (i % 5 == 1) {
+        // added field
+        tick.add("halted", true);
+      }
+      if (i % 7 == 3) {
+        // removed and reordered fields
+        tick.remove("exchange");
+        tick.remove("depth");
+        tick.add("exchange", "XLON");
+      }
+      if (i % 11 == 4) {
+        // type change
+        tick.remove("last");
+        tick.add("last", "n/a");
+      }
+      ticks.add(tick);
+    }
+    ticks.add(s_fudgeContext.newMessage());
+    ticks.add(createTick("VOD", 100));
+    return ticks;
+  }
+
+  private static String getKey(final int i, final int count) {
+    return (i >= count - 2) ? "VOD" : (i % 2 == 0) ? "VOD" : "BARC";
+  }
+
+  private static byte[] encodeDeltas(final List<FudgeFieldContainer> messages) {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeDeltaWriter writer = new FudgeDeltaWriter(s_fudgeContext.createMessageWriter(baos));
+    for (int i = 0; i < messages.size(); i++) {
+      writer.writeMessage(getKey(i, messages.size()), messages.get(i));
+    }
+    writer.flush();
+    return baos.toByteArray();
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void roundTrip() {
+    final List<FudgeFieldContainer> ticks = createTicks();
+    final byte[] full = FudgeUtils.encode(s_fudgeContext, ticks);
+    final byte[] delta = encodeDeltas(ticks);
+    assertTrue(delta.length < full.length * 2 / 3);
+    final FudgeDeltaReader reader = new FudgeDeltaReader(s_fudgeContext.createMessageReader(new ByteArrayInputStream(delta)));
+    for (int i = 0; i < ticks.size(); i++) {
+      assertTrue(reader.hasNext());
+      final FudgeFieldContainer msg = reader.nextMessage();
+      assertEquals(getKey(i, ticks.size()), reader.getKey());
+      assertArrayEquals(s_fudgeContext.toByteArray(ticks.get(i)), s_fudgeContext.toByteArray(msg));
+    }
+    assertFalse(reader.hasNext());
+  }
+
+  @Test
+  public void unchangedMessage() {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeDeltaWriter writer = new FudgeDeltaWriter(s_fudgeContext.createMessageWriter(baos));
+    writer.writeMessage("A", createTick("A", 1));
+    final int first = baos.size();
+    writer.writeMessage("A", createTick("A", 1));
+    writer.flush();
+    final FudgeDeltaReader reader = new FudgeDeltaReader(s_fudgeContext.createMessageReader(new ByteArrayInputStream(baos.toByteArray())));
+    reader.nextMessage();
+    final FudgeFieldContainer msg = reader.nextMessage();
+    assertArrayEquals(s_fudgeContext.toByteArray(createTick("A", 1)), s_fudgeContext.toByteArray(msg));
+    // just the envelope header and key
+    assertTrue(baos.size() - first < 16);
+  }
+
+  @Test
+  public void resetWritesFull() {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeDeltaWriter writer = new FudgeDeltaWriter(s_fudgeContext.createMessageWriter(baos));
+    writer.writeMessage("A", createTick("A", 1));
+    writer.reset("A");
+    writer.writeMessage("A", createTick("A", 2));
+    writer.flush();
+    final FudgeMsgReader reader = s_fudgeContext.createMessageReader(new ByteArrayInputStream(baos.toByteArray()));
+    reader.nextMessage();
+    assertTrue(reader.nextMessage().hasField(FudgeDeltaWriter.FULL_ORDINAL));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void deltaWithoutPrevious() {
+    final MutableFudgeFieldContainer delta = s_fudgeContext.newMessage();
+    delta.add(null, FudgeDeltaWriter.KEY_ORDINAL, "A");
+    delta.add(null, FudgeDeltaWriter.REMOVED_ORDINAL, new int[] {0 });
+    final FudgeDeltaReader reader = new FudgeDeltaReader(s_fudgeContext.createMessageReader(new ByteArrayInputStream(s_fudgeContext.toByteArray(delta))));
+    reader.nextMessage();
+  }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fudgemsg.test.FudgeUtils;
+import org.junit.Test;
+
+/**
+ * Tests the {@link FudgeEnvelopeScanner}.
+ */
+public class FudgeEnvelopeScannerTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  /**
+   * Encodes envelopes that vary the schema version and processing directives, so that the scanned headers can be told
+   * apart.
+   */
+  private static byte[] encode(final int count) {
+    final List<FudgeMsgEnvelope> envelopes = new ArrayList<FudgeMsgEnvelope>(count);
+    for (int i = 0; i < count; i++) {
+      envelopes.add(new FudgeMsgEnvelope(FudgeUtils.createMessage(s_fudgeContext, i), i % 3, i % 2));
+    }
+    return FudgeUtils.encodeEnvelopes(s_fudgeContext, envelopes);
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void scansHeaders() {
+    final byte[] data = encode(10);
+    final FudgeEnvelopeScanner scanner = new FudgeEnvelopeScanner(data);
+    int offset = 0;
+    for (int i = 0; i < 10; i++) {
+      assertTrue(scanner.next());
+      assertEquals(offset, scanner.getOffset());
+      assertEquals(i % 3, scanner.getSchemaVersion());
+      assertEquals(i % 2, scanner.getProcessingDirectives());
+      assertEquals(0, scanner.getTaxonomyId());
+      final int size = FudgeSize.calculateMessageEnvelopeSize(new FudgeMsgEnvelope(FudgeUtils.createMessage(s_fudgeContext, i)));
+      assertEquals(size, scanner.getEnvelopeSize());
+      offset += size;
+      assertEquals(offset, scanner.getPosition());
+      final FudgeMsgEnvelope envelope = new FudgeMsgReader(new FudgeByteBufferReader(s_fudgeContext, scanner.getEnvelope())).nextMessageEnvelope();
+      assertEquals(i % 3, envelope.getVersion());
+      assertEquals(Integer.valueOf(i), envelope.getMessage().getInt("seq"));
+    }
+    assertFalse(scanner.next());
+    assertEquals(data.length, scanner.getPosition());
+  }
+
+  @Test
+  public void stopsAtIncompleteEnvelope() {
+    final byte[] data = encode(3);
+    final int firstSize = FudgeSize.calculateMessageEnvelopeSize(new FudgeMsgEnvelope(FudgeUtils.createMessage(s_fudgeContext, 0)));
+    final ByteBuffer buffer = ByteBuffer.wrap(data, 0, data.length - 1);
+    final FudgeEnvelopeScanner scanner = new FudgeEnvelopeScanner(buffer);
+    assertTrue(scanner.next());
+    assertTrue(scanner.next());
+    assertFalse(scanner.next());
+    final int secondSize = FudgeSize.calculateMessageEnvelopeSize(new FudgeMsgEnvelope(FudgeUtils.createMessage(s_fudgeContext, 1)));
+    assertEquals(firstSize + secondSize, scanner.getPosition());
+    assertEquals(0, buffer.position());
+    try {
+      scanner.getEnvelope();
+      fail();
+    } catch (IllegalStateException ex) {
+      // expected
+    }
+  }
+
+  @Test(expected = FudgeRuntimeIOException.class)
+  public void invalidSize() {
+    new FudgeEnvelopeScanner(new byte[] {0, 0, 0, 0, 0, 0, 0, 7}).next();
+  }
+
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import org.fudgemsg.FudgeStreamReader.FudgeStreamElement;
+import org.junit.Test;
+
+/**
+ * Tests reading messages through a {@link FudgeFieldProjection}.
+ */
+public class FudgeFieldProjectionTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private static FudgeFieldContainer createMessage() {
+    final MutableFudgeFieldContainer inner = s_fudgeContext.newMessage();
+    inner.add("bid", 1.5);
+    inner.add("ask", 1.75);
+    inner.add("notes", "not wanted");
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("ticker", "ABC");
+    msg.add("blob", new byte[1000]);
+    msg.add("quote", inner);
+    msg.add(null, 7, new double[300]);
+    msg.add("history", s_fudgeContext.newMessage(inner));
+    msg.add("volume", 123456789L);
+    msg.add("trailer", "end");
+    return msg;
+  }
+
+  private static FudgeFieldContainer[] readBoth(final FudgeFieldContainer msg, final FudgeFieldProjection projection) {
+    final byte[] data = s_fudgeContext.toByteArray(msg);
+    final FudgeMsgReader streamReader = new FudgeMsgReader(new FudgeDataInputStreamReader(s_fudgeContext, new ByteArrayInputStream(data)), projection);
+    final FudgeMsgReader bufferReader = new FudgeMsgReader(new FudgeByteBufferReader(s_fudgeContext, data), projection);
+    final FudgeFieldContainer[] result = new FudgeFieldContainer[] {streamReader.nextMessage(), bufferReader.nextMessage()};
+    assertFalse(streamReader.hasNext());
+    assertFalse(bufferReader.hasNext());
+    return result;
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void topLevelFields() {
+    final FudgeFieldProjection projection = new FudgeFieldProjection().addName("ticker").addName("volume");
+    for (FudgeFieldContainer msg : readBoth(createMessage(), projection)) {
+      assertEquals(2, msg.getNumFields());
+      assertEquals("ABC", msg.getString("ticker"));
+      assertEquals(Long.valueOf(123456789L), msg.getLong("volume"));
+    }
+  }
+
+  @Test
+  public void nestedPathsAndOrdinals() {
+    final FudgeFieldProjection projection = new FudgeFieldProjection().addPath("quote", "bid").addPath("quote", "ask").addOrdinal(7);
+    for (FudgeFieldContainer msg : readBoth(createMessage(), projection)) {
+      assertEquals(2, msg.getNumFields());
+      final FudgeFieldContainer quote = msg.getMessage("quote");
+      assertEquals(2, quote.getNumFields());
+      assertEquals(Double.valueOf(1.5), quote.getDouble("bid"));
+      assertEquals(Double.valueOf(1.75), quote.getDouble("ask"));
+      assertEquals(300, ((double[]) msg.getValue(7)).length);
+    }
+  }
+
+  @Test
+  public void wholeSubMessage() {
+    final FudgeFieldProjection projection = new FudgeFieldProjection().addName("history").addPath("history", "bid");
+    for (FudgeFieldContainer msg : readBoth(createMessage(), projection)) {
+      assertEquals(1, msg.getNumFields());
+      assertEquals(3, msg.getMessage("history").getNumFields());
+    }
+  }
+
+  @Test
+  public void lastFieldsExcluded() {
+    final FudgeFieldProjection projection = new FudgeFieldProjection().addName("ticker");
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("sub", createMessage());
+    msg.add("ticker", "XYZ");
+    msg.add("after", createMessage());
+    for (FudgeFieldContainer result : readBoth(msg, projection)) {
+      assertEquals(1, result.getNumFields());
+      assertEquals("XYZ", result.getString("ticker"));
+    }
+  }
+
+  @Test
+  public void nothingSelected() {
+    for (FudgeFieldContainer msg : readBoth(createMessage(), new FudgeFieldProjection())) {
+      assertTrue(msg.isEmpty());
+    }
+  }
+
+  @Test
+  public void multipleEnvelopes() {
+    final byte[] first = s_fudgeContext.toByteArray(createMessage());
+    final byte[] data = new byte[first.length * 2];
+    System.arraycopy(first, 0, data, 0, first.length);
+    System.arraycopy(first, 0, data, first.length, first.length);
+    final FudgeByteBufferReader reader = new FudgeByteBufferReader(s_fudgeContext, data);
+    reader.setProjection(new FudgeFieldProjection().addPath("quote", "ask"));
+    for (int i = 0; i < 2; i++) {
+      assertTrue(reader.hasNext());
+      assertEquals(FudgeStreamElement.MESSAGE_ENVELOPE, reader.next());
+      assertEquals(FudgeStreamElement.SUBMESSAGE_FIELD_START, reader.next());
+      assertEquals("quote", reader.getFieldName());
+      assertEquals(FudgeStreamElement.SIMPLE_FIELD, reader.next());
+      assertEquals("ask", reader.getFieldName());
+      assertEquals(FudgeStreamElement.SUBMESSAGE_FIELD_END, reader.next());
+      assertFalse(reader.hasNext());
+    }
+    assertFalse(reader.hasNext());
+    assertNull(reader.next());
+  }
+
+  @Test
+  public void subMessageProjectionsMerged() {
+    final FudgeFieldProjection byName = new FudgeFieldProjection().addName("bid");
+    final FudgeFieldProjection byOrdinal = new FudgeFieldProjection().addName("ask");
+    final FudgeFieldProjection projection = new FudgeFieldProjection().addSubMessage("quote", byName).addSubMessage(3, byOrdinal);
+    final FudgeFieldProjection merged = projection.getSubMessageProjection("quote", 3);
+    assertTrue(merged.includes("bid", null));
+    assertTrue(merged.includes("ask", null));
+    assertFalse(merged.includes("notes", null));
+    assertNull(new FudgeFieldProjection().addName("quote").addSubMessage("quote", byName).getSubMessageProjection("quote", null));
+  }
+
+  @Test
+  public void sameSubMessageAddedTwice() {
+    final FudgeFieldProjection bid = new FudgeFieldProjection().addName("bid");
+    final FudgeFieldProjection ask = new FudgeFieldProjection().addName("ask");
+    final FudgeFieldProjection projection = new FudgeFieldProjection().addSubMessage("quote", bid).addSubMessage("quote", ask);
+    projection.addSubMessage(3, bid).addSubMessage(3, ask);
+    for (FudgeFieldContainer msg : readBoth(createMessage(), projection)) {
+      final FudgeFieldContainer quote = msg.getMessage("quote");
+      assertEquals(2, quote.getNumFields());
+      assertEquals(Double.valueOf(1.5), quote.getDouble("bid"));
+      assertEquals(Double.valueOf(1.75), quote.getDouble("ask"));
+    }
+    final FudgeFieldProjection byOrdinal = projection.getSubMessageProjection(null, 3);
+    assertTrue(byOrdinal.includes("bid", null));
+    assertTrue(byOrdinal.includes("ask", null));
+    // the shared nested projections are not modified
+    assertFalse(bid.includes("ask", null));
+    assertFalse(ask.includes("bid", null));
+    projection.addPath("quote", "notes");
+    assertFalse(bid.includes("notes", null));
+    assertFalse(ask.includes("notes", null));
+    assertTrue(projection.getSubMessageProjection("quote", null).includes("notes", null));
+    assertNull(projection.addName("quote").addSubMessage("quote", bid).getSubMessageProjection("quote", null));
+  }
+
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.fudgemsg.test.FudgeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link FudgeJournalWriter} and {@link FudgeJournalReader}.
+ */
+public class FudgeJournalTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private File _directory;
+
+  @Before
+  public void createDirectory() throws IOException {
+    _directory = File.createTempFile("fudge", ".journal");
+    _directory.delete();
+  }
+
+  @After
+  public void deleteDirectory() {
+    final File[] files = _directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    _directory.delete();
+  }
+
+  /**
+   * Creates a message tagged with the producer that appended it, so that per-producer ordering can be checked when
+   * several threads share a journal.
+   */
+  private static FudgeFieldContainer createMessage(final int producer, final int seq) {
+    final MutableFudgeFieldContainer msg = FudgeUtils.createMessage(s_fudgeContext, seq);
+    msg.add("producer", producer);
+    return msg;
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void appendAndRead() {
+    final FudgeJournalWriter writer = new FudgeJournalWriter(s_fudgeContext, _directory);
+    for (int i = 0; i < 100; i++) {
+      writer.append(createMessage(0, i));
+    }
+    assertEquals(100, writer.getCommittedCount());
+    writer.close();
+    final FudgeJournalReader reader = new FudgeJournalReader(s_fudgeContext, _directory);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(Integer.valueOf(i), reader.poll().getMessage().getInt("seq"));
+    }
+    assertNull(reader.poll());
+    reader.close();
+  }
+
+  @Test
+  public void segmentRotation() {
+    final FudgeJournalWriter writer = new FudgeJournalWriter(s_fudgeContext, _directory);
+    writer.setMaxSegmentSize(800);
+    writer.setSyncPolicy(FudgeJournalWriter.SyncPolicy.NONE);
+    for (int i = 0; i < 200; i++) {
+      writer.append(createMessage(0, i));
+    }
+    writer.close();
+    final long[] segments = FudgeJournalWriter.listSegments(_directory);
+    assertTrue(segments.length > 10);
+    for (long segment : segments) {
+      assertTrue(FudgeJournalWriter.getSegmentFile(_directory, segment).length() <= 800);
+    }
+    final FudgeJournalReader reader = new FudgeJournalReader(s_fudgeContext, _directory);
+    for (int i = 0; i < 200; i++) {
+      assertEquals(Integer.valueOf(i), reader.poll().getMessage().getInt("seq"));
+    }
+    assertNull(reader.poll());
+    reader.close();
+  }
+
+  @Test
+  public void reopenStartsNewSegment() {
+    FudgeJournalWriter writer = new FudgeJournalWriter(s_fudgeContext, _directory);
+    writer.append(createMessage(0, 0));
+    writer.close();
+    writer = new FudgeJournalWriter(s_fudgeContext, _directory);
+    writer.append(createMessage(0, 1));
+    writer.close();
+    assertEquals(2, FudgeJournalWriter.listSegments(_directory).length);
+    final FudgeJournalReader reader = new FudgeJournalReader(s_fudgeContext, _directory);
+    assertEquals(Integer.valueOf(0), reader.poll().getMessage().getInt("seq"));
+    assertEquals(Integer.valueOf(1), reader.poll().getMessage().getInt("seq"));
+    assertNull(reader.poll());
+    reader.close();
+  }
+
+  @Test(timeout = 30000)
+  public void concurrentProducersWithTailingReader() throws Exception {
+    final int producers = 8;
+    final int messages = 500;
+    final FudgeJournalWriter writer = new FudgeJournalWriter(s_fudgeContext, _directory);
+    writer.setMaxSegmentSize(16 * 1024);
+    writer.setSyncPolicy(FudgeJournalWriter.SyncPolicy.COMMIT);
+    final FudgeJournalReader reader = new FudgeJournalReader(s_fudgeContext, _directory);
+    final Thread[] threads = new Thread[producers];
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      threads[p] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < messages; i++) {
+            writer.append(createMessage(producer, i));
+          }
+        }
+      };
+      threads[p].start();
+    }
+    final int[] next = new int[producers];
+    for (int i = 0; i < producers * messages; i++) {
+      final FudgeMsgEnvelope envelope = reader.poll(10, TimeUnit.SECONDS);
+      final FudgeFieldContainer msg = envelope.getMessage();
+      final int producer = msg.getInt("producer");
+      assertEquals(next[producer]++, msg.getInt("seq").intValue());
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    writer.close();
+    assertEquals(producers * messages, writer.getCommittedCount());
+    assertNull(reader.poll());
+    reader.close();
+  }
+
+  @Test
+  public void interruptedProducer() {
+    final FudgeJournalWriter writer = new FudgeJournalWriter(s_fudgeContext, _directory);
+    Thread.currentThread().interrupt();
+    writer.append(createMessage(0, 0));
+    assertTrue(Thread.interrupted());
+    writer.append(createMessage(0, 1));
+    Thread.currentThread().interrupt();
+    writer.close();
+    assertTrue(Thread.interrupted());
+    final FudgeJournalReader reader = new FudgeJournalReader(s_fudgeContext, _directory);
+    assertEquals(Integer.valueOf(0), reader.poll().getMessage().getInt("seq"));
+    assertEquals(Integer.valueOf(1), reader.poll().getMessage().getInt("seq"));
+    assertNull(reader.poll());
+    reader.close();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void appendAfterClose() {
+    final FudgeJournalWriter writer = new FudgeJournalWriter(s_fudgeContext, _directory);
+    writer.close();
+    writer.append(createMessage(0, 0));
+  }
+
+}
@@ -15,6 +15,7 @@
  */
 package org.fudgemsg;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.io.ByteArrayInputStream;
@@ -113,6 +114,27 @@ public class FudgeMsgCodecTest {
     FudgeUtils.assertAllFieldsMatch(inputMsg, outputMsg);
   }
 
+  /**
+   * 
+   */
+  @Test
+  public void deeplyNestedSubMsgs() {
+    MutableFudgeFieldContainer inputMsg = s_fudgeContext.newMessage();
+    MutableFudgeFieldContainer current = inputMsg;
+    for (int i = 0; i < 100; i++) {
+      current.add("depth", i);
+      current.add("padding", new byte[i * 4]);
+      MutableFudgeFieldContainer subMsg = s_fudgeContext.newMessage();
+      current.add("sub", subMsg);
+      current.add("after", "after " + i);
+      current = subMsg;
+    }
+    FudgeFieldContainer outputMsg = cycleMessage(inputMsg);
+    assertNotNull(outputMsg);
+    FudgeUtils.assertAllFieldsMatch(inputMsg, outputMsg);
+    assertEquals(FudgeSize.calculateMessageEnvelopeSize(inputMsg), s_fudgeContext.toByteArray(inputMsg).length);
+  }
+
   /**
    * @param msg [documentation not available]
    * @return [documentation not available]
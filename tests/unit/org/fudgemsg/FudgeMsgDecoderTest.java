@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fudgemsg.test.FudgeUtils;
+import org.junit.Test;
+
+/**
+ * Tests the {@link FudgeMsgDecoder}.
+ */
+public class FudgeMsgDecoderTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  /**
+   * Encodes messages with payloads of increasing size, so that envelopes straddle the buffer boundaries used to feed
+   * the decoder.
+   */
+  private static byte[] encode(final int count) {
+    final List<FudgeFieldContainer> messages = new ArrayList<FudgeFieldContainer>(count);
+    for (int i = 0; i < count; i++) {
+      final MutableFudgeFieldContainer msg = FudgeUtils.createMessage(s_fudgeContext, i);
+      msg.add("payload", new byte[i * 100]);
+      messages.add(msg);
+    }
+    return FudgeUtils.encode(s_fudgeContext, messages);
+  }
+
+  private static void assertMessage(final int seq, final FudgeMsgEnvelope envelope) {
+    final FudgeFieldContainer msg = envelope.getMessage();
+    assertEquals(Integer.valueOf(seq), msg.getInt("seq"));
+    assertEquals("message " + seq, msg.getString("text"));
+    assertEquals(seq * 100, msg.getValue(byte[].class, "payload").length);
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void byteAtATime() {
+    final byte[] data = encode(20);
+    final FudgeMsgDecoder decoder = new FudgeMsgDecoder(s_fudgeContext);
+    int seq = 0;
+    for (int i = 0; i < data.length; i++) {
+      decoder.feed(data, i, 1);
+      FudgeMsgEnvelope envelope;
+      while ((envelope = decoder.poll()) != null) {
+        assertMessage(seq++, envelope);
+      }
+    }
+    assertEquals(20, seq);
+    assertEquals(0, decoder.getBufferedSize());
+  }
+
+  @Test
+  public void irregularChunks() {
+    final byte[] data = encode(50);
+    final FudgeMsgDecoder decoder = new FudgeMsgDecoder(s_fudgeContext);
+    int seq = 0;
+    int offset = 0;
+    int chunk = 1;
+    while (offset < data.length) {
+      final int length = Math.min(chunk, data.length - offset);
+      decoder.feed(ByteBuffer.wrap(data, offset, length));
+      offset += length;
+      chunk = (chunk * 7 + 3) % 5000;
+      while (decoder.hasEnvelope()) {
+        assertMessage(seq++, decoder.poll());
+      }
+    }
+    assertEquals(50, seq);
+    assertNull(decoder.poll());
+  }
+
+  @Test
+  public void nonBlockingChannel() throws Exception {
+    final byte[] data = encode(30);
+    final Pipe pipe = Pipe.open();
+    pipe.source().configureBlocking(false);
+    final FudgeMsgDecoder decoder = new FudgeMsgDecoder(s_fudgeContext);
+    assertEquals(0, decoder.readFrom(pipe.source()));
+    int seq = 0;
+    int offset = 0;
+    while (offset < data.length) {
+      final int length = Math.min(1000, data.length - offset);
+      pipe.sink().write(ByteBuffer.wrap(data, offset, length));
+      offset += length;
+      while (decoder.readFrom(pipe.source()) > 0) {
+        FudgeMsgEnvelope envelope;
+        while ((envelope = decoder.poll()) != null) {
+          assertMessage(seq++, envelope);
+        }
+      }
+    }
+    pipe.sink().close();
+    while (decoder.readFrom(pipe.source()) >= 0) {
+      FudgeMsgEnvelope envelope;
+      while ((envelope = decoder.poll()) != null) {
+        assertMessage(seq++, envelope);
+      }
+    }
+    assertEquals(30, seq);
+    pipe.source().close();
+  }
+
+  @Test(expected = FudgeRuntimeIOException.class)
+  public void envelopeTooLarge() {
+    final byte[] data = encode(10);
+    final FudgeMsgDecoder decoder = new FudgeMsgDecoder(s_fudgeContext, 500);
+    decoder.feed(data, 0, data.length);
+    while (decoder.poll() != null) {
+      // the sixth message is over the limit
+    }
+  }
+
+  @Test
+  public void invalidSizeThenReset() {
+    final FudgeMsgDecoder decoder = new FudgeMsgDecoder(s_fudgeContext);
+    decoder.feed(new byte[] {0, 0, 0, 0, 0, 0, 0, 4}, 0, 8);
+    try {
+      decoder.hasEnvelope();
+      fail();
+    } catch (FudgeRuntimeIOException ex) {
+      // expected
+    }
+    decoder.reset();
+    assertFalse(decoder.hasEnvelope());
+    final byte[] data = encode(1);
+    decoder.feed(data, 0, data.length);
+    assertMessage(0, decoder.poll());
+  }
+
+}
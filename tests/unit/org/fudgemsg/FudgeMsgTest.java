@@ -484,4 +484,198 @@ public class FudgeMsgTest {
     assertFalse(msg1.hasField(4));
   }
 
+  /**
+   * Builds a message large enough to be indexed, with repeated names and ordinals.
+   */
+  private static MutableFudgeFieldContainer createIndexedMessage() {
+    MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    for (int i = 0; i < FudgeMsgBase.INDEX_THRESHOLD * 2; i++) {
+      msg.add("field" + (i % 10), i % 10, i);
+    }
+    msg.add(null, 1000, "sparse");
+    msg.add("unnumbered", "no ordinal");
+    return msg;
+  }
+
+  /**
+   * 
+   */
+  @Test
+  public void indexedLookupByName() {
+    MutableFudgeFieldContainer msg = createIndexedMessage();
+    assertEquals(0, msg.getInt("field0").intValue());
+    assertEquals(7, msg.getInt("field7").intValue());
+    List<FudgeField> fields = msg.getAllByName("field3");
+    assertEquals(3, fields.size());
+    for (int i = 0; i < fields.size(); i++) {
+      assertEquals(3 + i * 10, ((Number) fields.get(i).getValue()).intValue());
+    }
+    assertEquals("sparse", msg.getString(null));
+    assertEquals("no ordinal", msg.getValue(String.class, "unnumbered"));
+    assertTrue(msg.hasField("field9"));
+    assertFalse(msg.hasField("field10"));
+    assertNull(msg.getByName("field10"));
+  }
+
+  /**
+   * 
+   */
+  @Test
+  public void indexedLookupByOrdinal() {
+    MutableFudgeFieldContainer msg = createIndexedMessage();
+    assertEquals(1, msg.getInt(1).intValue());
+    assertEquals("sparse", msg.getString(1000));
+    List<FudgeField> fields = msg.getAllByOrdinal(5);
+    assertEquals(3, fields.size());
+    for (int i = 0; i < fields.size(); i++) {
+      assertEquals(5 + i * 10, ((Number) fields.get(i).getValue()).intValue());
+    }
+    assertTrue(msg.hasField(1000));
+    assertFalse(msg.hasField(10));
+    assertFalse(msg.hasField(Integer.MAX_VALUE));
+    assertNull(msg.getByOrdinal(-1));
+  }
+
+  /**
+   * 
+   */
+  @Test
+  public void indexInvalidatedByModification() {
+    MutableFudgeFieldContainer msg = createIndexedMessage();
+    assertEquals(4, msg.getAllByName("field0").size());
+    msg.add("field0", 0, "added");
+    assertEquals(5, msg.getAllByName("field0").size());
+    assertEquals("added", msg.getString(0));
+    msg.remove("field0");
+    assertNull(msg.getByName("field0"));
+    assertNull(msg.getByOrdinal(0));
+    Iterator<FudgeField> iterator = msg.iterator();
+    while (iterator.hasNext()) {
+      if ("field1".equals(iterator.next().getName())) {
+        iterator.remove();
+      }
+    }
+    assertFalse(msg.hasField("field1"));
+    assertFalse(msg.hasField(1));
+    assertTrue(msg.hasField("field2"));
+    msg.clear();
+    assertFalse(msg.hasField("field2"));
+    assertFalse(msg.hasField(1000));
+  }
+
+  /**
+   * 
+   */
+  @Test
+  public void primitiveAccessorsByName() {
+    FudgeMsg msg = (FudgeMsg) s_fudgeContext.newMessage();
+    msg.add("double", 1.5);
+    msg.add("float", 2.5f);
+    msg.add("long", 5L);
+    msg.add("int", Integer.MAX_VALUE);
+    msg.add("big", Long.MAX_VALUE);
+    msg.add("string", "12");
+    
+    assertEquals(1.5, msg.getDoubleValue("double", 0.0), 0.0);
+    assertEquals(2.5, msg.getDoubleValue("float", 0.0), 0.0);
+    assertEquals(5.0, msg.getDoubleValue("long", 0.0), 0.0);
+    assertEquals(5L, msg.getLongValue("long", 0L));  // narrowed to a byte when added
+    assertEquals(5, msg.getIntValue("long", 0));
+    assertEquals(Integer.MAX_VALUE, msg.getIntValue("int", 0));
+    assertEquals(Integer.MAX_VALUE, msg.getLongValue("int", 0L));
+    assertEquals(Long.MAX_VALUE, msg.getLongValue("big", 0L));
+    assertEquals(-1.0, msg.getDoubleValue("missing", -1.0), 0.0);
+    assertEquals(-1L, msg.getLongValue("missing", -1L));
+    assertEquals(-1, msg.getIntValue("missing", -1));
+    assertEquals(12, msg.getIntValue("string", -1));
+  }
+
+  /**
+   * 
+   */
+  @Test
+  public void primitiveAccessorsByOrdinal() {
+    FudgeMsg msg = (FudgeMsg) s_fudgeContext.newMessage();
+    msg.add(null, 1, "not a number");
+    msg.add(null, 1, 3.25);
+    msg.add(null, 2, (short) 300);
+    
+    assertEquals(3.25, msg.getDoubleValue(1, 0.0), 0.0);
+    assertEquals(300L, msg.getLongValue(2, 0L));
+    assertEquals(300, msg.getIntValue(2, 0));
+    assertEquals(7, msg.getIntValue(3, 7));
+  }
+
+  /**
+   * 
+   */
+  @Test
+  public void primitiveFieldStorage() {
+    FudgeMsg msg = (FudgeMsg) s_fudgeContext.newMessage();
+    msg.add(PrimitiveFudgeMsgField.ofDouble(PrimitiveFieldTypes.DOUBLE_TYPE, 0.125, "price", null));
+    msg.add(PrimitiveFudgeMsgField.ofLong(PrimitiveFieldTypes.LONG_TYPE, 1L << 40, "volume", null));
+    msg.add(PrimitiveFudgeMsgField.ofLong(PrimitiveFieldTypes.INT_TYPE, 42, null, (short) 3));
+    msg.add(PrimitiveFudgeMsgField.ofLong(PrimitiveFieldTypes.BOOLEAN_TYPE, 1, "flag", null));
+    
+    assertTrue(msg.getByName("price") instanceof FudgePrimitiveField);
+    assertEquals(0.125, msg.getDoubleValue("price", 0.0), 0.0);
+    assertEquals(1L << 40, msg.getLongValue("volume", 0L));
+    assertEquals((double) (1L << 40), msg.getDoubleValue("volume", 0.0), 0.0);
+    assertEquals(42, msg.getIntValue(3, 0));
+    assertEquals(1, msg.getIntValue("flag", 0));
+    
+    assertEquals(Double.valueOf(0.125), msg.getValue("price"));
+    assertEquals(Long.valueOf(1L << 40), msg.getLong("volume"));
+    assertEquals(Integer.valueOf(42), msg.getInt(3));
+    assertEquals(Boolean.TRUE, msg.getBoolean("flag"));
+    assertEquals(FudgeMsgField.of(PrimitiveFieldTypes.DOUBLE_TYPE, 0.125, "price"), msg.getByName("price"));
+    
+    PrimitiveFudgeFieldContainer decoded = (PrimitiveFudgeFieldContainer) s_fudgeContext.deserialize(s_fudgeContext.toByteArray(msg)).getMessage();
+    assertTrue(decoded.getByName("price") instanceof FudgePrimitiveField);
+    assertTrue(decoded.getByName("volume") instanceof FudgePrimitiveField);
+    assertEquals(0.125, decoded.getDoubleValue("price", 0.0), 0.0);
+    assertEquals(1L << 40, decoded.getLongValue("volume", 0L));
+    assertEquals(42, decoded.getIntValue(3, 0));
+  }
+
+  /**
+   * 
+   */
+  @Test
+  public void primitiveAccessorBooleanHeldEitherWay() {
+    FudgeMsg msg = (FudgeMsg) s_fudgeContext.newMessage();
+    msg.add("boxed", Boolean.TRUE);
+    msg.add(PrimitiveFudgeMsgField.ofLong(PrimitiveFieldTypes.BOOLEAN_TYPE, 1, "primitive", null));
+    
+    assertEquals(msg.getDoubleValue("boxed", -1.0), msg.getDoubleValue("primitive", -1.0), 0.0);
+    assertEquals(msg.getLongValue("boxed", -1L), msg.getLongValue("primitive", -1L));
+    assertEquals(msg.getIntValue("boxed", -1), msg.getIntValue("primitive", -1));
+  }
+
+  /**
+   * 
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void primitiveFieldOutOfRange() {
+    PrimitiveFudgeMsgField.ofLong(PrimitiveFieldTypes.BYTE_TYPE, 128, "byte", null);
+  }
+
+  /**
+   * 
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void primitiveFieldWrongType() {
+    PrimitiveFudgeMsgField.ofLong(PrimitiveFieldTypes.DOUBLE_TYPE, 1L, "double", null);
+  }
+
+  /**
+   * 
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void primitiveAccessorOutOfRange() {
+    FudgeMsg msg = (FudgeMsg) s_fudgeContext.newMessage();
+    msg.add(PrimitiveFudgeMsgField.ofLong(PrimitiveFieldTypes.LONG_TYPE, 1L << 40, "volume", null));
+    msg.getIntValue("volume", 0);
+  }
+
 }
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fudgemsg.taxon.FudgeTaxonomy;
+import org.fudgemsg.taxon.ImmutableMapTaxonomyResolver;
+import org.fudgemsg.taxon.MapFudgeTaxonomy;
+import org.fudgemsg.test.FudgeUtils;
+import org.junit.Test;
+
+/**
+ * Tests the batch methods of {@link FudgeMsgWriter}.
+ */
+public class FudgeMsgWriterTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+  static {
+    final Map<Short, FudgeTaxonomy> resolverMap = new HashMap<Short, FudgeTaxonomy>();
+    resolverMap.put((short) 7, new MapFudgeTaxonomy(new int[] {1, 2}, new String[] {"seq", "text"}));
+    s_fudgeContext.setTaxonomyResolver(new ImmutableMapTaxonomyResolver(resolverMap));
+  }
+
+  /**
+   * Counts the flushes of the stream.
+   */
+  private static class CountingOutputStream extends ByteArrayOutputStream {
+    private int _writes;
+    private int _flushes;
+    @Override
+    public synchronized void write(final byte[] b, final int off, final int len) {
+      _writes++;
+      super.write(b, off, len);
+    }
+    @Override
+    public synchronized void write(final int b) {
+      _writes++;
+      super.write(b);
+    }
+    @Override
+    public void flush() throws IOException {
+      _flushes++;
+    }
+  }
+
+  /**
+   * Creates messages whose fields are partly named by taxonomy 7, with every tenth message too large to share a block
+   * with its neighbours.
+   */
+  private static List<FudgeFieldContainer> createMessages(final int count) {
+    final List<FudgeFieldContainer> messages = new ArrayList<FudgeFieldContainer>();
+    for (int i = 0; i < count; i++) {
+      final MutableFudgeFieldContainer msg = FudgeUtils.createMessage(s_fudgeContext, i);
+      msg.add("payload", new byte[(i % 10 == 9) ? 70000 : i]);
+      final MutableFudgeFieldContainer sub = s_fudgeContext.newMessage();
+      sub.add("value", i * 0.5);
+      msg.add("sub", sub);
+      messages.add(msg);
+    }
+    return messages;
+  }
+
+  private static byte[] writeSequentially(final List<FudgeFieldContainer> messages, final int taxonomyId) {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeMsgWriter writer = s_fudgeContext.createMessageWriter(baos);
+    for (FudgeFieldContainer message : messages) {
+      writer.writeMessage(message, taxonomyId);
+    }
+    writer.flush();
+    return baos.toByteArray();
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void batchMatchesSequential() {
+    final List<FudgeFieldContainer> messages = createMessages(100);
+    for (int taxonomyId : new int[] {0, 7}) {
+      final CountingOutputStream out = new CountingOutputStream();
+      final FudgeMsgWriter writer = s_fudgeContext.createMessageWriter(out);
+      writer.writeMessages(messages, taxonomyId);
+      assertArrayEquals(writeSequentially(messages, taxonomyId), out.toByteArray());
+      assertEquals(1, out._flushes);
+      // the oversized messages each need their own block
+      assertTrue(out._writes < 30);
+    }
+  }
+
+  @Test
+  public void batchOfEnvelopes() {
+    final List<FudgeFieldContainer> messages = createMessages(20);
+    final List<FudgeMsgEnvelope> envelopes = new ArrayList<FudgeMsgEnvelope>();
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final FudgeMsgWriter expectedWriter = s_fudgeContext.createMessageWriter(expected);
+    for (int i = 0; i < messages.size(); i++) {
+      final FudgeMsgEnvelope envelope = new FudgeMsgEnvelope(messages.get(i), i % 4, i % 2);
+      envelopes.add(envelope);
+      expectedWriter.writeMessageEnvelope(envelope);
+    }
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final FudgeMsgWriter writer = s_fudgeContext.createMessageWriter(out);
+    writer.writeMessageEnvelopes(envelopes);
+    writer.writeMessageEnvelopes(envelopes);
+    final byte[] once = expected.toByteArray();
+    final byte[] twice = new byte[once.length * 2];
+    System.arraycopy(once, 0, twice, 0, once.length);
+    System.arraycopy(once, 0, twice, once.length, once.length);
+    assertArrayEquals(twice, out.toByteArray());
+  }
+
+  @Test
+  public void batchToBuffer() {
+    final List<FudgeFieldContainer> messages = createMessages(20);
+    final ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+    s_fudgeContext.createMessageWriter(buffer).writeMessages(messages, 7);
+    buffer.flip();
+    final byte[] actual = new byte[buffer.remaining()];
+    buffer.get(actual);
+    assertArrayEquals(writeSequentially(messages, 7), actual);
+  }
+
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.fudgemsg.test.FudgeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link FudgeParallelMsgReader}.
+ */
+public class FudgeParallelMsgReaderTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private ExecutorService _executor;
+
+  @Before
+  public void createExecutor() {
+    _executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void shutdownExecutor() {
+    _executor.shutdownNow();
+  }
+
+  /**
+   * Creates messages of varying size, so that the tasks decoding them finish out of order.
+   */
+  private static List<FudgeFieldContainer> createMessages(final int count) {
+    final List<FudgeFieldContainer> messages = new ArrayList<FudgeFieldContainer>();
+    for (int i = 0; i < count; i++) {
+      final MutableFudgeFieldContainer msg = FudgeUtils.createMessage(s_fudgeContext, i);
+      msg.add("values", new double[i % 17]);
+      messages.add(msg);
+    }
+    return messages;
+  }
+
+  private static ByteBuffer encode(final List<FudgeFieldContainer> messages) {
+    return ByteBuffer.wrap(FudgeUtils.encode(s_fudgeContext, messages));
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void decodesInOrder() {
+    final List<FudgeFieldContainer> messages = createMessages(5000);
+    final FudgeParallelMsgReader reader = new FudgeParallelMsgReader(s_fudgeContext, _executor);
+    reader.setEnvelopesPerTask(100);
+    reader.setMaxTasksInFlight(3);
+    final Iterator<FudgeMsgEnvelope> iterator = reader.read(encode(messages));
+    for (int i = 0; i < messages.size(); i++) {
+      final FudgeFieldContainer msg = iterator.next().getMessage();
+      assertEquals(Integer.valueOf(i), msg.getInt("seq"));
+      assertEquals("message " + i, msg.getString("text"));
+      assertEquals(i % 17, msg.getValue(double[].class, "values").length);
+    }
+    assertFalse(iterator.hasNext());
+  }
+
+  @Test
+  public void readAllMatchesSequential() {
+    final List<FudgeFieldContainer> messages = createMessages(1001);
+    final ByteBuffer data = encode(messages);
+    data.position(0);
+    final List<FudgeMsgEnvelope> envelopes = new FudgeParallelMsgReader(s_fudgeContext, _executor).readAll(data);
+    assertEquals(1001, envelopes.size());
+    final FudgeMsgReader sequential = new FudgeMsgReader(new FudgeByteBufferReader(s_fudgeContext, data));
+    for (FudgeMsgEnvelope envelope : envelopes) {
+      final FudgeFieldContainer expected = sequential.nextMessage();
+      assertEquals(expected.getInt("seq"), envelope.getMessage().getInt("seq"));
+      assertEquals(expected.getString("text"), envelope.getMessage().getString("text"));
+    }
+    assertFalse(sequential.hasNext());
+    assertEquals(0, data.position());
+  }
+
+  @Test
+  public void emptyBuffer() {
+    assertFalse(new FudgeParallelMsgReader(s_fudgeContext, _executor).read(ByteBuffer.allocate(0)).hasNext());
+  }
+
+  @Test(expected = FudgeRuntimeIOException.class)
+  public void truncatedBuffer() {
+    final ByteBuffer data = encode(createMessages(10));
+    data.limit(data.limit() - 3);
+    new FudgeParallelMsgReader(s_fudgeContext, _executor).read(data);
+  }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.fudgemsg.test.FudgeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link FudgeParallelMsgWriter}.
+ */
+public class FudgeParallelMsgWriterTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private ExecutorService _executor;
+
+  @Before
+  public void createExecutor() {
+    _executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void shutdownExecutor() {
+    _executor.shutdownNow();
+  }
+
+  /**
+   * Creates messages of varying size with sub-messages, so that the tasks encoding them finish out of order.
+   */
+  private static List<FudgeFieldContainer> createMessages(final int count) {
+    final List<FudgeFieldContainer> messages = new ArrayList<FudgeFieldContainer>();
+    for (int i = 0; i < count; i++) {
+      final MutableFudgeFieldContainer msg = FudgeUtils.createMessage(s_fudgeContext, i);
+      msg.add("values", new double[i % 17]);
+      final MutableFudgeFieldContainer sub = s_fudgeContext.newMessage();
+      sub.add(1, (long) i * i);
+      msg.add("sub", sub);
+      messages.add(msg);
+    }
+    return messages;
+  }
+
+  private FudgeParallelMsgWriter createWriter(final ByteArrayOutputStream baos) {
+    final FudgeParallelMsgWriter writer = new FudgeParallelMsgWriter(new FudgeDataOutputStreamWriter(s_fudgeContext, baos), _executor);
+    writer.setEnvelopesPerTask(50);
+    writer.setMaxTasksInFlight(3);
+    return writer;
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void matchesSequentialEncoding() {
+    final List<FudgeFieldContainer> messages = createMessages(2000);
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    createWriter(baos).writeMessages(messages);
+    assertArrayEquals(FudgeUtils.encode(s_fudgeContext, messages), baos.toByteArray());
+  }
+
+  @Test
+  public void partialFinalTask() {
+    final List<FudgeFieldContainer> messages = createMessages(123);
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    createWriter(baos).writeMessages(messages);
+    assertArrayEquals(FudgeUtils.encode(s_fudgeContext, messages), baos.toByteArray());
+  }
+
+  @Test
+  public void emptyBatch() {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    createWriter(baos).writeMessages(new ArrayList<FudgeFieldContainer>());
+    assertEquals(0, baos.size());
+  }
+
+  @Test
+  public void envelopesKeepHeaders() {
+    final List<FudgeFieldContainer> messages = createMessages(300);
+    final List<FudgeMsgEnvelope> envelopes = new ArrayList<FudgeMsgEnvelope>();
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final FudgeMsgWriter sequential = s_fudgeContext.createMessageWriter(expected);
+    for (int i = 0; i < messages.size(); i++) {
+      final FudgeMsgEnvelope envelope = new FudgeMsgEnvelope(messages.get(i), i % 5, i % 3);
+      envelopes.add(envelope);
+      sequential.writeMessageEnvelope(envelope);
+    }
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    createWriter(baos).writeMessageEnvelopes(envelopes);
+    assertArrayEquals(expected.toByteArray(), baos.toByteArray());
+  }
+
+  @Test
+  public void roundTripThroughParallelReader() {
+    final List<FudgeFieldContainer> messages = createMessages(1000);
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    createWriter(baos).writeMessages(messages);
+    final List<FudgeMsgEnvelope> envelopes = new FudgeParallelMsgReader(s_fudgeContext, _executor).readAll(ByteBuffer.wrap(baos.toByteArray()));
+    assertEquals(messages.size(), envelopes.size());
+    for (int i = 0; i < messages.size(); i++) {
+      assertEquals(Integer.valueOf(i), envelopes.get(i).getMessage().getInt("seq"));
+      assertEquals("message " + i, envelopes.get(i).getMessage().getString("text"));
+    }
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void nullExecutor() {
+    new FudgeParallelMsgWriter(new FudgeDataOutputStreamWriter(s_fudgeContext, new ByteArrayOutputStream()), null);
+  }
+
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fudgemsg.compression.LZ4CompressionCodec;
+import org.fudgemsg.taxon.SessionTaxonomy;
+import org.fudgemsg.test.FudgeUtils;
+import org.junit.Test;
+
+/**
+ * Tests writing and reading field names using a {@link SessionTaxonomy}.
+ */
+public class FudgeSessionTaxonomyTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  /**
+   * Creates a message whose names repeat within and across envelopes, including a field name that is only new in some
+   * envelopes and sub-messages that share an instance.
+   */
+  private static FudgeFieldContainer createMessage(final int seq) {
+    final MutableFudgeFieldContainer msg = FudgeUtils.createMessage(s_fudgeContext, seq);
+    msg.add("source", "X");
+    final MutableFudgeFieldContainer quote = s_fudgeContext.newMessage();
+    quote.add("bid", 100.0 + seq);
+    quote.add("ask", 100.5 + seq);
+    quote.add("quote", seq);
+    msg.add("quote", quote);
+    // the same instance twice, sized differently as its names are only new the first time
+    final MutableFudgeFieldContainer leg = s_fudgeContext.newMessage();
+    leg.add("leg" + (seq % 3), seq);
+    final MutableFudgeFieldContainer legs = s_fudgeContext.newMessage();
+    legs.add("leg", leg);
+    legs.add("leg", leg);
+    msg.add("legs", legs);
+    msg.add("explicit", 5, seq);
+    msg.add(null, 6, seq);
+    return msg;
+  }
+
+  private static List<FudgeMsgEnvelope> createEnvelopes() {
+    final List<FudgeMsgEnvelope> envelopes = new ArrayList<FudgeMsgEnvelope>();
+    for (int i = 0; i < 20; i++) {
+      envelopes.add(new FudgeMsgEnvelope(createMessage(i), 0, i % 2));
+    }
+    return envelopes;
+  }
+
+  private static byte[] encodeWithSession(final List<FudgeMsgEnvelope> envelopes) {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeDataOutputStreamWriter streamWriter = new FudgeDataOutputStreamWriter(s_fudgeContext, baos);
+    streamWriter.setSessionTaxonomy(new SessionTaxonomy());
+    final FudgeMsgWriter writer = new FudgeMsgWriter(streamWriter);
+    for (FudgeMsgEnvelope envelope : envelopes) {
+      writer.writeMessageEnvelope(envelope);
+    }
+    writer.flush();
+    return baos.toByteArray();
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void sessionTaxonomyOrdinals() {
+    final SessionTaxonomy taxonomy = new SessionTaxonomy();
+    assertEquals(Short.valueOf((short) -1), taxonomy.addFieldName("a"));
+    assertEquals(Short.valueOf((short) -2), taxonomy.addFieldName("b"));
+    assertEquals(Short.valueOf((short) -1), taxonomy.addFieldName("a"));
+    assertEquals(2, taxonomy.size());
+    assertEquals("b", taxonomy.getFieldName((short) -2));
+    assertNull(taxonomy.getFieldName((short) -3));
+    assertNull(taxonomy.getFieldName((short) 1));
+    assertNull(taxonomy.getFieldOrdinal("c"));
+  }
+
+  @Test
+  public void sessionTaxonomyFull() {
+    final SessionTaxonomy taxonomy = new SessionTaxonomy();
+    for (int i = 0; i < SessionTaxonomy.MAX_SIZE; i++) {
+      taxonomy.addFieldName("f" + i);
+    }
+    assertTrue(taxonomy.isFull());
+    assertEquals("f32767", taxonomy.getFieldName(Short.MIN_VALUE));
+    assertNull(taxonomy.addFieldName("another"));
+  }
+
+  @Test
+  public void roundTripStream() {
+    final List<FudgeMsgEnvelope> envelopes = createEnvelopes();
+    final byte[] plain = FudgeUtils.encodeEnvelopes(s_fudgeContext, envelopes);
+    final byte[] session = encodeWithSession(envelopes);
+    assertTrue(session.length < plain.length * 4 / 5);
+    assertEquals(FudgeMsgEnvelope.SESSION_TAXONOMY_DIRECTIVE, session[0] & 0xFF);
+    FudgeUtils.assertEnvelopesEqual(s_fudgeContext, envelopes, FudgeUtils.readAll(s_fudgeContext.createMessageReader(new ByteArrayInputStream(session))));
+  }
+
+  @Test
+  public void roundTripBuffer() {
+    final List<FudgeMsgEnvelope> envelopes = createEnvelopes();
+    final FudgeMsgReader reader = s_fudgeContext.createMessageReader(ByteBuffer.wrap(encodeWithSession(envelopes)));
+    reader.setRetainEncoding(true);
+    FudgeUtils.assertEnvelopesEqual(s_fudgeContext, envelopes, FudgeUtils.readAll(reader));
+  }
+
+  @Test
+  public void roundTripDecoder() {
+    final List<FudgeMsgEnvelope> envelopes = createEnvelopes();
+    final byte[] session = encodeWithSession(envelopes);
+    final FudgeMsgDecoder decoder = new FudgeMsgDecoder(s_fudgeContext);
+    final List<FudgeMsgEnvelope> decoded = new ArrayList<FudgeMsgEnvelope>();
+    for (int i = 0; i < session.length; i += 100) {
+      decoder.feed(session, i, Math.min(100, session.length - i));
+      FudgeMsgEnvelope envelope;
+      while ((envelope = decoder.poll()) != null) {
+        decoded.add(envelope);
+      }
+    }
+    FudgeUtils.assertEnvelopesEqual(s_fudgeContext, envelopes, decoded);
+  }
+
+  @Test
+  public void batchAndCompressed() {
+    final List<FudgeMsgEnvelope> envelopes = createEnvelopes();
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeDataOutputStreamWriter streamWriter = new FudgeDataOutputStreamWriter(s_fudgeContext, baos);
+    streamWriter.setSessionTaxonomy(new SessionTaxonomy());
+    streamWriter.setCompressionCodec(new LZ4CompressionCodec());
+    streamWriter.setCompressionThreshold(0);
+    new FudgeMsgWriter(streamWriter).writeMessageEnvelopes(envelopes);
+    FudgeUtils.assertEnvelopesEqual(s_fudgeContext, envelopes, FudgeUtils.readAll(s_fudgeContext.createMessageReader(new ByteArrayInputStream(baos.toByteArray()))));
+    FudgeUtils.assertEnvelopesEqual(s_fudgeContext, envelopes, FudgeUtils.readAll(s_fudgeContext.createMessageReader(ByteBuffer.wrap(baos.toByteArray()))));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void sessionOrdinalRejected() {
+    final FudgeDataOutputStreamWriter streamWriter = new FudgeDataOutputStreamWriter(s_fudgeContext, new ByteArrayOutputStream());
+    streamWriter.setSessionTaxonomy(new SessionTaxonomy());
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add(null, -1, "negative");
+    new FudgeMsgWriter(streamWriter).writeMessage(msg);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void lazyDecodeRejected() {
+    final List<FudgeMsgEnvelope> envelopes = createEnvelopes();
+    s_fudgeContext.deserializeLazy(encodeWithSession(envelopes));
+  }
+
+}
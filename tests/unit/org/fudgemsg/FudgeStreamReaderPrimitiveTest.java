@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.fudgemsg.FudgeStreamReader.FudgeStreamElement;
+import org.junit.Test;
+
+/**
+ * Tests the primitive value getters of the binary {@link PrimitiveFudgeStreamReader} implementations.
+ */
+public class FudgeStreamReaderPrimitiveTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private static PrimitiveFudgeStreamReader[] createReaders(final FudgeFieldContainer msg) {
+    final byte[] data = s_fudgeContext.toByteArray(msg);
+    return new PrimitiveFudgeStreamReader[] {
+        new FudgeDataInputStreamReader(s_fudgeContext, new ByteArrayInputStream(data)),
+        new FudgeByteBufferReader(s_fudgeContext, data) };
+  }
+
+  private static void nextField(final FudgeStreamReader reader, final String name) {
+    assertEquals(FudgeStreamElement.SIMPLE_FIELD, reader.next());
+    assertEquals(name, reader.getFieldName());
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void primitiveValues() {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("byte", (byte) -3);
+    msg.add("short", (short) 1000);
+    msg.add("int", 100000);
+    msg.add("long", 10000000000L);
+    msg.add("float", 0.5f);
+    msg.add("double", -2.25);
+    msg.add("boolean", true);
+    for (PrimitiveFudgeStreamReader reader : createReaders(msg)) {
+      assertEquals(FudgeStreamElement.MESSAGE_ENVELOPE, reader.next());
+      nextField(reader, "byte");
+      assertEquals(-3, reader.getFieldValueAsInt());
+      assertEquals(-3L, reader.getFieldValueAsLong());
+      assertEquals(-3.0, reader.getFieldValueAsDouble(), 0.0);
+      nextField(reader, "short");
+      assertEquals(1000, reader.getFieldValueAsInt());
+      nextField(reader, "int");
+      assertEquals(100000, reader.getFieldValueAsInt());
+      assertEquals(100000.0, reader.getFieldValueAsDouble(), 0.0);
+      nextField(reader, "long");
+      assertEquals(10000000000L, reader.getFieldValueAsLong());
+      assertEquals(1e10, reader.getFieldValueAsDouble(), 0.0);
+      nextField(reader, "float");
+      assertEquals(0.5, reader.getFieldValueAsDouble(), 0.0);
+      nextField(reader, "double");
+      assertEquals(-2.25, reader.getFieldValueAsDouble(), 0.0);
+      nextField(reader, "boolean");
+      assertEquals(1, reader.getFieldValueAsInt());
+      assertFalse(reader.hasNext());
+    }
+  }
+
+  @Test
+  public void boxedOnRequest() {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("double", 3.5);
+    msg.add("long", 10000000000L);
+    for (PrimitiveFudgeStreamReader reader : createReaders(msg)) {
+      reader.next();
+      nextField(reader, "double");
+      final Object value = reader.getFieldValue();
+      assertEquals(Double.valueOf(3.5), value);
+      assertSame(value, reader.getFieldValue());
+      assertEquals(3.5, reader.getFieldValueAsDouble(), 0.0);
+      nextField(reader, "long");
+      assertEquals(Long.valueOf(10000000000L), reader.getFieldValue());
+    }
+  }
+
+  @Test
+  public void nonPrimitiveValuesConverted() {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("string", "42");
+    for (PrimitiveFudgeStreamReader reader : createReaders(msg)) {
+      reader.next();
+      nextField(reader, "string");
+      assertEquals(42, reader.getFieldValueAsInt());
+      assertEquals(42L, reader.getFieldValueAsLong());
+      assertEquals(42.0, reader.getFieldValueAsDouble(), 0.0);
+    }
+  }
+
+  @Test
+  public void subMessageEndClearsValue() {
+    final MutableFudgeFieldContainer inner = s_fudgeContext.newMessage();
+    inner.add("x", 7);
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("inner", inner);
+    for (PrimitiveFudgeStreamReader reader : createReaders(msg)) {
+      reader.next();
+      assertEquals(FudgeStreamElement.SUBMESSAGE_FIELD_START, reader.next());
+      nextField(reader, "x");
+      assertEquals(7, reader.getFieldValueAsInt());
+      assertEquals(FudgeStreamElement.SUBMESSAGE_FIELD_END, reader.next());
+      assertNull(reader.getFieldValue());
+      try {
+        reader.getFieldValueAsInt();
+        fail();
+      } catch (IllegalStateException ex) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void messageReaderWithoutPrimitiveGetters() {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("int", 100000);
+    msg.add("double", -2.25);
+    msg.add("boolean", true);
+    final FudgeStreamReader delegate = new FudgeDataInputStreamReader(s_fudgeContext, new ByteArrayInputStream(s_fudgeContext.toByteArray(msg)));
+    final FudgeStreamReader reader = (FudgeStreamReader) Proxy.newProxyInstance(FudgeStreamReader.class.getClassLoader(),
+        new Class<?>[] {FudgeStreamReader.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            try {
+              return method.invoke(delegate, args);
+            } catch (InvocationTargetException ex) {
+              throw ex.getCause();
+            }
+          }
+        });
+    final FudgeFieldContainer decoded = new FudgeMsgReader(reader).nextMessage();
+    assertEquals(100000, ((PrimitiveFudgeFieldContainer) decoded).getIntValue("int", 0));
+    assertEquals(-2.25, ((PrimitiveFudgeFieldContainer) decoded).getDoubleValue("double", 0.0), 0.0);
+    assertEquals(Boolean.TRUE, decoded.getBoolean("boolean"));
+  }
+
+}
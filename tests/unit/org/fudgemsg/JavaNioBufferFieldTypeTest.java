@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.fudgemsg.types.DoubleArrayFieldType;
+import org.fudgemsg.types.secondary.JavaNioDoubleBufferFieldType;
+import org.fudgemsg.types.secondary.JavaNioLongBufferFieldType;
+import org.fudgemsg.types.secondary.JavaUtilUUIDFieldType;
+import org.junit.Test;
+
+/**
+ * Tests the secondary types holding primitive arrays in direct {@code java.nio} buffers.
+ */
+public class JavaNioBufferFieldTypeTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private static double[] createValues() {
+    double[] values = new double[1000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i * 1.5;
+    }
+    return values;
+  }
+
+  private static FudgeContext createDecodingContext() {
+    FudgeContext context = new FudgeContext();
+    context.getTypeDictionary().setDecodingType(JavaNioDoubleBufferFieldType.INSTANCE);
+    context.getTypeDictionary().setDecodingType(JavaNioLongBufferFieldType.INSTANCE);
+    return context;
+  }
+
+  private static byte[] encodeArrays() {
+    MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("doubles", createValues());
+    msg.add("longs", new long[] {1L, Long.MAX_VALUE, -3L});
+    return s_fudgeContext.toByteArray(msg);
+  }
+
+  private static void assertDirectValues(FudgeFieldContainer msg) {
+    DoubleBuffer doubles = (DoubleBuffer) msg.getValue("doubles");
+    assertTrue(doubles.isDirect());
+    assertArrayEquals(createValues(), msg.getValue(double[].class, "doubles"), 0.0);
+    LongBuffer longs = (LongBuffer) msg.getValue("longs");
+    assertTrue(longs.isDirect());
+    assertEquals(3, longs.remaining());
+    assertEquals(Long.MAX_VALUE, longs.get(1));
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void bufferEncodedAsArray() {
+    MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("doubles", JavaNioDoubleBufferFieldType.INSTANCE.primaryToSecondary(createValues()));
+    msg.add("longs", LongBuffer.wrap(new long[] {0L, 1L, Long.MAX_VALUE, -3L}, 1, 3));
+    assertArrayEquals(encodeArrays(), s_fudgeContext.toByteArray(msg));
+  }
+
+  @Test
+  public void arrayConvertedToBuffer() {
+    FudgeFieldContainer msg = s_fudgeContext.deserialize(encodeArrays()).getMessage();
+    assertTrue(msg.getValue("doubles") instanceof double[]);
+    DoubleBuffer doubles = msg.getValue(DoubleBuffer.class, "doubles");
+    assertTrue(doubles.isDirect());
+    assertEquals(1000, doubles.remaining());
+    assertEquals(1.5, doubles.get(1), 0.0);
+  }
+
+  @Test
+  public void decodedFromStream() {
+    assertDirectValues(createDecodingContext().deserialize(new ByteArrayInputStream(encodeArrays())).getMessage());
+  }
+
+  @Test
+  public void decodedFromHeapBuffer() {
+    assertDirectValues(createDecodingContext().deserialize(encodeArrays()).getMessage());
+  }
+
+  @Test
+  public void decodedAsSliceOfMapping() throws Exception {
+    byte[] data = encodeArrays();
+    File file = File.createTempFile("fudge", ".bin");
+    file.deleteOnExit();
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.write(data);
+      MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, data.length);
+      FudgeFieldContainer msg = createDecodingContext().deserialize(mapped).getMessage();
+      assertDirectValues(msg);
+      DoubleBuffer doubles = (DoubleBuffer) msg.getValue("doubles");
+      // the value shares the mapping
+      int index = 0;
+      while (mapped.getDouble(index) != 1.5) {
+        index++;
+      }
+      mapped.putDouble(index, -1.0);
+      assertEquals(-1.0, doubles.get(1), 0.0);
+    } finally {
+      raf.close();
+    }
+  }
+
+  @Test
+  public void restoreDecodingType() {
+    FudgeContext context = createDecodingContext();
+    assertSame(JavaNioDoubleBufferFieldType.INSTANCE, context.getTypeDictionary().getByTypeId(FudgeTypeDictionary.DOUBLE_ARRAY_TYPE_ID));
+    context.getTypeDictionary().setDecodingType(DoubleArrayFieldType.INSTANCE);
+    assertTrue(context.deserialize(encodeArrays()).getMessage().getValue("doubles") instanceof double[]);
+    assertSame(DoubleArrayFieldType.INSTANCE, s_fudgeContext.getTypeDictionary().getByTypeId(FudgeTypeDictionary.DOUBLE_ARRAY_TYPE_ID));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fixedWidthDecodingType() {
+    new FudgeContext().getTypeDictionary().setDecodingType(JavaUtilUUIDFieldType.INSTANCE);
+  }
+
+  @Test
+  public void directWrite() {
+    DoubleBuffer doubles = JavaNioDoubleBufferFieldType.INSTANCE.primaryToSecondary(createValues());
+    ByteBuffer buffer = ByteBuffer.allocate(9000);
+    FudgeMsgWriter writer = s_fudgeContext.createMessageWriter(buffer);
+    MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("doubles", doubles);
+    writer.writeMessage(msg);
+    writer.flush();
+    assertEquals(0, doubles.position());
+    buffer.flip();
+    assertArrayEquals(createValues(), (double[]) s_fudgeContext.deserialize(buffer).getMessage().getValue("doubles"), 0.0);
+  }
+
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link LazyFudgeMsg} against messages decoded by the standard reader.
+ */
+public class LazyFudgeMsgTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  private static void assertFieldsEqual(final FudgeFieldContainer expected, final FudgeFieldContainer actual) {
+    assertEquals(expected.getNumFields(), actual.getNumFields());
+    final Iterator<FudgeField> expectedIterator = expected.iterator();
+    final Iterator<FudgeField> actualIterator = actual.iterator();
+    while (expectedIterator.hasNext()) {
+      final FudgeField expectedField = expectedIterator.next();
+      final FudgeField actualField = actualIterator.next();
+      assertEquals(expectedField.getName(), actualField.getName());
+      assertEquals(expectedField.getOrdinal(), actualField.getOrdinal());
+      assertEquals(expectedField.getType(), actualField.getType());
+      final Object expectedValue = expectedField.getValue();
+      final Object actualValue = actualField.getValue();
+      if (expectedValue instanceof FudgeFieldContainer) {
+        assertTrue(actualValue instanceof LazyFudgeMsg);
+        assertFieldsEqual((FudgeFieldContainer) expectedValue, (FudgeFieldContainer) actualValue);
+      } else if (expectedValue instanceof Object[]) {
+        assertArrayEquals((Object[]) expectedValue, (Object[]) actualValue);
+      } else if (expectedValue instanceof byte[]) {
+        assertArrayEquals((byte[]) expectedValue, (byte[]) actualValue);
+      } else if (expectedValue instanceof short[]) {
+        assertArrayEquals((short[]) expectedValue, (short[]) actualValue);
+      } else if (expectedValue instanceof int[]) {
+        assertArrayEquals((int[]) expectedValue, (int[]) actualValue);
+      } else if (expectedValue instanceof long[]) {
+        assertArrayEquals((long[]) expectedValue, (long[]) actualValue);
+      } else if (expectedValue instanceof float[]) {
+        assertArrayEquals((float[]) expectedValue, (float[]) actualValue, 0f);
+      } else if (expectedValue instanceof double[]) {
+        assertArrayEquals((double[]) expectedValue, (double[]) actualValue, 0d);
+      } else {
+        assertEquals(expectedValue, actualValue);
+      }
+    }
+    assertFalse(actualIterator.hasNext());
+  }
+
+  private static void assertCycle(final FudgeFieldContainer input) {
+    final byte[] data = s_fudgeContext.toByteArray(input);
+    final FudgeFieldContainer expected = s_fudgeContext.deserialize(data).getMessage();
+    assertFieldsEqual(expected, s_fudgeContext.deserializeLazy(data).getMessage());
+    final ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+    direct.put(data).flip();
+    assertFieldsEqual(expected, s_fudgeContext.deserializeLazy(direct).getMessage());
+    assertEquals(0, direct.position());
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void allNames() {
+    assertCycle(StandardFudgeMessages.createMessageAllNames(s_fudgeContext));
+  }
+
+  @Test
+  public void allOrdinals() {
+    assertCycle(StandardFudgeMessages.createMessageAllOrdinals(s_fudgeContext));
+  }
+
+  @Test
+  public void allByteArrayLengths() {
+    assertCycle(StandardFudgeMessages.createMessageAllByteArrayLengths(s_fudgeContext));
+  }
+
+  @Test
+  public void subMessages() {
+    assertCycle(StandardFudgeMessages.createMessageWithSubMsgs(s_fudgeContext));
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void lookupsParseOnlyAsFarAsNeeded() {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("first", 1);
+    msg.add("second", "two");
+    final byte[] data = s_fudgeContext.toByteArray(msg);
+    // corrupt the type of the second field so parsing it would fail
+    final int secondField = 8 + FudgeSize.calculateFieldSize(s_fudgeContext.deserialize(data).getMessage().getByIndex(0));
+    data[secondField] = (byte) 0x80;
+    data[secondField + 1] = (byte) 0xFF;
+    final LazyFudgeMsg lazy = (LazyFudgeMsg) s_fudgeContext.deserializeLazy(data).getMessage();
+    assertEquals(1, ((Number) lazy.getByName("first").getValue()).intValue());
+    assertEquals(1, ((Number) lazy.getByIndex(0).getValue()).intValue());
+    assertFalse(lazy.isEmpty());
+    try {
+      lazy.getNumFields();
+      throw new AssertionError("Expected the corrupt field to fail");
+    } catch (FudgeRuntimeIOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void typedGettersConvert() {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("a", (byte) 5);
+    msg.add("b", 1234567890123L);
+    msg.add(null, 3, "ordinal");
+    msg.add("c", 2.5);
+    final LazyFudgeMsg lazy = (LazyFudgeMsg) s_fudgeContext.deserializeLazy(s_fudgeContext.toByteArray(msg)).getMessage();
+    assertEquals(Integer.valueOf(5), lazy.getInt("a"));
+    assertEquals(Long.valueOf(5), lazy.getLong("a"));
+    assertEquals(Long.valueOf(1234567890123L), lazy.getLong("b"));
+    assertEquals("ordinal", lazy.getString(3));
+    assertEquals(Double.valueOf(2.5), lazy.getDouble("c"));
+    assertNull(lazy.getValue("missing"));
+    assertNull(lazy.getByOrdinal(4));
+    assertTrue(lazy.hasField(3));
+    assertEquals(4, lazy.getNumFields());
+  }
+
+  @Test
+  public void primitiveAccessors() {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("a", (byte) -5);
+    msg.add("b", 1234567890123L);
+    msg.add(null, 3, 0.75f);
+    msg.add("c", 2.5);
+    msg.add("d", true);
+    final LazyFudgeMsg lazy = (LazyFudgeMsg) s_fudgeContext.deserializeLazy(s_fudgeContext.toByteArray(msg)).getMessage();
+    assertTrue(lazy.getByName("c") instanceof FudgePrimitiveField);
+    assertEquals(-5, lazy.getIntValue("a", 0));
+    assertEquals(-5L, lazy.getLongValue("a", 0L));
+    assertEquals(-5.0, lazy.getDoubleValue("a", 0.0), 0.0);
+    assertEquals(1234567890123L, lazy.getLongValue("b", 0L));
+    assertEquals(0.75, lazy.getDoubleValue(3, 0.0), 0.0);
+    assertEquals(2.5, lazy.getDoubleValue("c", 0.0), 0.0);
+    assertEquals(1, lazy.getIntValue("d", 0));
+    assertEquals(9L, lazy.getLongValue("missing", 9L));
+    assertEquals(Double.valueOf(2.5), lazy.getByName("c").getValue());
+  }
+
+  @Test
+  public void largeMessageLookups() {
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    for (int i = 0; i < 100; i++) {
+      msg.add("field" + (i % 30), i, i);
+    }
+    final LazyFudgeMsg lazy = (LazyFudgeMsg) s_fudgeContext.deserializeLazy(s_fudgeContext.toByteArray(msg)).getMessage();
+    assertEquals(Integer.valueOf(57), lazy.getInt(57));
+    // forces all headers to be parsed, so later lookups use an index
+    assertEquals(100, lazy.getNumFields());
+    final List<FudgeField> fields = lazy.getAllByName("field3");
+    assertEquals(4, fields.size());
+    for (int i = 0; i < fields.size(); i++) {
+      assertEquals(3 + i * 30, ((Number) fields.get(i).getValue()).intValue());
+    }
+    assertEquals(Integer.valueOf(99), lazy.getInt(99));
+    assertNull(lazy.getByName("field30"));
+  }
+
+  @Test
+  public void encodedFieldsOfSubMessage() {
+    final FudgeFieldContainer msg = StandardFudgeMessages.createMessageWithSubMsgs(s_fudgeContext);
+    final LazyFudgeMsg lazy = (LazyFudgeMsg) s_fudgeContext.deserializeLazy(s_fudgeContext.toByteArray(msg)).getMessage();
+    final LazyFudgeMsg sub = (LazyFudgeMsg) lazy.getMessage("sub2");
+    assertEquals(FudgeSize.calculateMessageSize(msg.getMessage("sub2")), sub.getEncodedSize());
+    final ByteBuffer encoded = sub.getEncodedFields();
+    assertEquals(sub.getEncodedSize(), encoded.remaining());
+    assertTrue(encoded.isReadOnly());
+    assertFieldsEqual(sub, new LazyFudgeMsg(s_fudgeContext, null, encoded));
+  }
+
+  @Test(expected = FudgeRuntimeIOException.class)
+  public void truncatedEnvelope() {
+    final byte[] data = s_fudgeContext.toByteArray(StandardFudgeMessages.createMessageAllNames(s_fudgeContext));
+    final byte[] truncated = new byte[data.length - 1];
+    System.arraycopy(data, 0, truncated, 0, truncated.length);
+    s_fudgeContext.deserializeLazy(truncated);
+  }
+
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.fudgemsg.types.DoubleArrayFieldType;
+import org.fudgemsg.types.FloatArrayFieldType;
+import org.fudgemsg.types.IntArrayFieldType;
+import org.fudgemsg.types.LongArrayFieldType;
+import org.fudgemsg.types.ShortArrayFieldType;
+import org.junit.Test;
+
+/**
+ * Tests the primitive array field types produce the same encoding through the bulk buffer paths
+ * and the element-by-element stream paths.
+ */
+public class PrimitiveArrayFieldTypeTest {
+
+  private static final int LENGTH = 10000;
+  private final Random _random = new Random(1);
+
+  private byte[] writeStream(FudgeFieldType<Object> type, Object value) throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(baos);
+    type.writeValue(output, value);
+    output.flush();
+    return baos.toByteArray();
+  }
+
+  private byte[] writeBuffer(FudgeFieldType<Object> type, Object value, int size) throws Exception {
+    ByteBuffer buffer = ByteBuffer.allocate(size + 3);
+    ByteBufferDataOutput output = new ByteBufferDataOutput(buffer);
+    output.writeByte(1);
+    type.writeValue(output, value);
+    output.writeShort(2);
+    assertEquals(size + 3, output.getPosition());
+    byte[] result = new byte[size];
+    System.arraycopy(buffer.array(), 1, result, 0, size);
+    assertEquals(2, buffer.getShort(size + 1));
+    return result;
+  }
+
+  private Object readBuffer(FudgeFieldType<Object> type, byte[] data) throws Exception {
+    byte[] padded = new byte[data.length + 2];
+    System.arraycopy(data, 0, padded, 1, data.length);
+    padded[data.length + 1] = 7;
+    ByteBufferDataInput input = new ByteBufferDataInput(ByteBuffer.wrap(padded));
+    assertEquals(0, input.readByte());
+    Object value = type.readValue(input, data.length);
+    assertEquals(7, input.readByte());
+    return value;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void cycle(FudgeFieldType<?> fieldType, Object value, int size) throws Exception {
+    FudgeFieldType<Object> type = (FudgeFieldType<Object>) fieldType;
+    byte[] streamed = writeStream(type, value);
+    assertEquals(size, streamed.length);
+    assertArrayEquals(streamed, writeBuffer(type, value, size));
+    Object streamValue = type.readValue(new DataInputStream(new ByteArrayInputStream(streamed)), size);
+    Object bufferValue = readBuffer(type, streamed);
+    assertArrayEquals(new Object[] {value}, new Object[] {streamValue});
+    assertArrayEquals(new Object[] {value}, new Object[] {bufferValue});
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * 
+   */
+  @Test
+  public void doubleArray() throws Exception {
+    double[] value = new double[LENGTH];
+    for (int i = 0; i < value.length; i++) {
+      value[i] = _random.nextGaussian();
+    }
+    value[0] = Double.NaN;
+    value[1] = Double.NEGATIVE_INFINITY;
+    cycle(DoubleArrayFieldType.INSTANCE, value, LENGTH * 8);
+  }
+
+  /**
+   * 
+   */
+  @Test
+  public void floatArray() throws Exception {
+    float[] value = new float[LENGTH];
+    for (int i = 0; i < value.length; i++) {
+      value[i] = _random.nextFloat();
+    }
+    cycle(FloatArrayFieldType.INSTANCE, value, LENGTH * 4);
+  }
+
+  /**
+   * 
+   */
+  @Test
+  public void longArray() throws Exception {
+    long[] value = new long[LENGTH];
+    for (int i = 0; i < value.length; i++) {
+      value[i] = _random.nextLong();
+    }
+    cycle(LongArrayFieldType.INSTANCE, value, LENGTH * 8);
+  }
+
+  /**
+   * 
+   */
+  @Test
+  public void intArray() throws Exception {
+    int[] value = new int[LENGTH];
+    for (int i = 0; i < value.length; i++) {
+      value[i] = _random.nextInt();
+    }
+    cycle(IntArrayFieldType.INSTANCE, value, LENGTH * 4);
+  }
+
+  /**
+   * 
+   */
+  @Test
+  public void shortArray() throws Exception {
+    short[] value = new short[LENGTH];
+    for (int i = 0; i < value.length; i++) {
+      value[i] = (short) _random.nextInt();
+    }
+    cycle(ShortArrayFieldType.INSTANCE, value, LENGTH * 2);
+  }
+
+  /**
+   * 
+   */
+  @Test
+  public void emptyArray() throws Exception {
+    cycle(DoubleArrayFieldType.INSTANCE, new double[0], 0);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * 
+   */
+  @Test(expected = EOFException.class)
+  public void bufferUnderflow() throws Exception {
+    ByteBufferDataInput input = new ByteBufferDataInput(ByteBuffer.allocate(12));
+    LongArrayFieldType.INSTANCE.readValue(input, 16);
+  }
+
+  /**
+   * 
+   */
+  @Test
+  public void bufferOverflow() throws Exception {
+    ByteBufferDataOutput output = new ByteBufferDataOutput(ByteBuffer.allocate(12));
+    try {
+      IntArrayFieldType.INSTANCE.writeValue(output, new int[4]);
+    } catch (BufferOverflowException e) {
+      assertEquals(0, output.getPosition());
+      return;
+    }
+    throw new AssertionError("Expected BufferOverflowException");
+  }
+
+}
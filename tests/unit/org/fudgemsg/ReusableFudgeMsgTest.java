@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fudgemsg.test.FudgeUtils;
+import org.junit.Test;
+
+/**
+ * Tests decoding into a {@link ReusableFudgeMsg}.
+ */
+public class ReusableFudgeMsgTest {
+
+  private static final FudgeContext s_fudgeContext = new FudgeContext();
+
+  /**
+   * Creates a message holding a string, an ordinal-only primitive, a sub-message of floating point values and a boolean,
+   * so that each kind of recycled field is exercised.
+   */
+  private static FudgeFieldContainer createMessage(final int seq) {
+    final MutableFudgeFieldContainer quote = s_fudgeContext.newMessage();
+    quote.add("bid", 100.0 + seq);
+    quote.add("ask", 100.5f + seq);
+    final MutableFudgeFieldContainer msg = s_fudgeContext.newMessage();
+    msg.add("ticker", "ABC" + seq);
+    msg.add(null, 1000, seq * 100000L);
+    msg.add("quote", quote);
+    msg.add("flag", (seq % 2) == 0);
+    return msg;
+  }
+
+  private static byte[] encode(final int count) {
+    final List<FudgeFieldContainer> messages = new ArrayList<FudgeFieldContainer>(count);
+    for (int i = 0; i < count; i++) {
+      messages.add(createMessage(i));
+    }
+    return FudgeUtils.encode(s_fudgeContext, messages);
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void decodesEachMessage() {
+    final byte[] data = encode(5);
+    final FudgeMsgReader[] readers = new FudgeMsgReader[] {
+        new FudgeMsgReader(new FudgeDataInputStreamReader(s_fudgeContext, new ByteArrayInputStream(data))),
+        new FudgeMsgReader(new FudgeByteBufferReader(s_fudgeContext, data)) };
+    for (FudgeMsgReader reader : readers) {
+      final ReusableFudgeMsg msg = new ReusableFudgeMsg(s_fudgeContext);
+      for (int i = 0; i < 5; i++) {
+        assertTrue(reader.nextMessage(msg));
+        assertEquals(msg, s_fudgeContext.deserialize(s_fudgeContext.toByteArray(createMessage(i))).getMessage());
+        assertEquals("ABC" + i, msg.getString("ticker"));
+        assertEquals(i * 100000L, msg.getLongValue(1000, -1L));
+        assertEquals(100.0 + i, ((PrimitiveFudgeFieldContainer) msg.getMessage("quote")).getDoubleValue("bid", 0.0), 0.0);
+        assertEquals(100.5 + i, ((PrimitiveFudgeFieldContainer) msg.getMessage("quote")).getDoubleValue("ask", 0.0), 0.0);
+        assertEquals(Boolean.valueOf((i % 2) == 0), msg.getBoolean("flag"));
+      }
+      assertFalse(reader.nextMessage(msg));
+      assertEquals(0, msg.getNumFields());
+    }
+  }
+
+  @Test
+  public void fieldsAndSubMessagesRecycled() {
+    final FudgeMsgReader reader = new FudgeMsgReader(new FudgeByteBufferReader(s_fudgeContext, encode(2)));
+    final ReusableFudgeMsg msg = new ReusableFudgeMsg(s_fudgeContext);
+    assertTrue(reader.hasNext());
+    assertTrue(reader.nextMessage(msg));
+    final FudgeField ticker = msg.getByName("ticker");
+    final FudgeField ordinal = msg.getByOrdinal(1000);
+    final FudgeFieldContainer quote = msg.getMessage("quote");
+    assertTrue(ordinal instanceof FudgePrimitiveField);
+    assertTrue(reader.hasNext());
+    assertTrue(reader.nextMessage(msg));
+    assertSame(ticker, msg.getByName("ticker"));
+    assertSame(ordinal, msg.getByOrdinal(1000));
+    assertSame(quote, msg.getMessage("quote"));
+    assertEquals("ABC1", ticker.getValue());
+    assertEquals(Integer.valueOf(100000), ordinal.getValue());  // narrowed as when decoded into a FudgeMsg
+    assertEquals(Short.valueOf((short) 1000), ordinal.getOrdinal());
+  }
+
+  @Test
+  public void releaseAndModify() {
+    final FudgeMsgReader reader = new FudgeMsgReader(new FudgeByteBufferReader(s_fudgeContext, encode(1)));
+    final ReusableFudgeMsg msg = new ReusableFudgeMsg(s_fudgeContext);
+    assertTrue(reader.nextMessage(msg));
+    msg.add("extra", "value");
+    msg.remove("flag");
+    assertEquals(4, msg.getNumFields());
+    final FudgeFieldContainer copy = s_fudgeContext.deserialize(s_fudgeContext.toByteArray(msg)).getMessage();
+    assertEquals("value", copy.getString("extra"));
+    assertNull(copy.getByName("flag"));
+    msg.release();
+    assertEquals(0, msg.getNumFields());
+    assertNull(msg.getByName("ticker"));
+  }
+
+  @Test
+  public void retainedEncodingWrittenVerbatim() {
+    final byte[] data = encode(1);
+    final FudgeMsgReader reader = new FudgeMsgReader(new FudgeByteBufferReader(s_fudgeContext, data));
+    reader.setRetainEncoding(true);
+    final ReusableFudgeMsg msg = new ReusableFudgeMsg(s_fudgeContext);
+    assertTrue(reader.nextMessage(msg));
+    assertArrayEquals(data, s_fudgeContext.toByteArray(msg));
+    msg.release();
+    assertNull(msg.getEncodedFields());
+  }
+
+}
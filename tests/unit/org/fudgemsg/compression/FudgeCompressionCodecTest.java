@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and other contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fudgemsg.compression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.fudgemsg.FudgeRuntimeIOException;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DeflateCompressionCodec} and {@link LZ4CompressionCodec}.
+ */
+public class FudgeCompressionCodecTest {
+
+  private static byte[] repetitiveData(final int length) {
+    final StringBuilder sb = new StringBuilder();
+    int i = 0;
+    while (sb.length() < length) {
+      sb.append("field").append(i % 37).append('=').append(i % 37 * 7).append(';');
+      i++;
+    }
+    final byte[] data = new byte[length];
+    for (int j = 0; j < length; j++) {
+      data[j] = (byte) sb.charAt(j);
+    }
+    return data;
+  }
+
+  private static byte[] randomData(final int length) {
+    final byte[] data = new byte[length];
+    new Random(42).nextBytes(data);
+    return data;
+  }
+
+  private static void assertRoundTrip(final FudgeCompressionCodec codec, final byte[] data) {
+    final byte[] framed = new byte[data.length + 10];
+    System.arraycopy(data, 0, framed, 3, data.length);
+    final byte[] compressed = codec.compress(framed, 3, data.length);
+    final byte[] target = new byte[data.length + 4];
+    codec.decompress(compressed, 0, compressed.length, target, 2, data.length);
+    final byte[] result = new byte[data.length];
+    System.arraycopy(target, 2, result, 0, data.length);
+    assertArrayEquals(data, result);
+  }
+
+  private static void assertRoundTrips(final FudgeCompressionCodec codec) {
+    for (int length : new int[] {0, 1, 5, 12, 13, 100, 4096, 100000 }) {
+      assertRoundTrip(codec, repetitiveData(length));
+      assertRoundTrip(codec, randomData(length));
+    }
+    assertRoundTrip(codec, new byte[70000]);
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void deflateRoundTrip() {
+    assertRoundTrips(new DeflateCompressionCodec());
+    assertRoundTrips(new DeflateCompressionCodec(1));
+  }
+
+  @Test
+  public void lz4RoundTrip() {
+    assertRoundTrips(new LZ4CompressionCodec());
+  }
+
+  @Test
+  public void repetitiveDataCompresses() {
+    final byte[] data = repetitiveData(100000);
+    assertTrue(new DeflateCompressionCodec().compress(data, 0, data.length).length < data.length / 5);
+    assertTrue(new LZ4CompressionCodec().compress(data, 0, data.length).length < data.length / 3);
+  }
+
+  @Test(expected = FudgeRuntimeIOException.class)
+  public void lz4WrongLength() {
+    final byte[] data = repetitiveData(1000);
+    final byte[] compressed = new LZ4CompressionCodec().compress(data, 0, data.length);
+    new LZ4CompressionCodec().decompress(compressed, 0, compressed.length, new byte[999], 0, 999);
+  }
+
+  @Test(expected = FudgeRuntimeIOException.class)
+  public void lz4Truncated() {
+    final byte[] data = repetitiveData(1000);
+    final byte[] compressed = new LZ4CompressionCodec().compress(data, 0, data.length);
+    new LZ4CompressionCodec().decompress(compressed, 0, compressed.length / 2, new byte[1000], 0, 1000);
+  }
+
+  @Test(expected = FudgeRuntimeIOException.class)
+  public void deflateCorrupt() {
+    final byte[] data = repetitiveData(1000);
+    final byte[] compressed = new DeflateCompressionCodec().compress(data, 0, data.length);
+    compressed[compressed.length / 2] ^= 0x55;
+    compressed[compressed.length / 3] ^= 0x55;
+    new DeflateCompressionCodec().decompress(compressed, 0, compressed.length, new byte[1000], 0, 1000);
+  }
+
+}